@@ -16,6 +16,7 @@ var getPanelTableInitializer;
 // be aborted, as they will no longer be useful.
 var openAjaxRequests = [];
 var includeUnknown = false;
+var pairPageCursor = null; //where the current page of the pair table is, so the next page can be found quickly
 
 $(document).ready(function() {
     initializeGlobalPageVariables();
@@ -1927,6 +1928,9 @@ function fnPaginationHandler(sSource, aoData, fnCallback) {
 		aoData.push({'name': 'sort_by', 'value': getSelectedSort()});
 		aoData.push({'name': 'sort_dir', 'value': isASC()});
 	}
+	if (pairPageCursor != null) {
+		aoData.push({'name': 'cursor', 'value': pairPageCursor});
+	}
 
 	var postUrl = null;
 	if (DETAILS_JOB.isAnonymousPage) {
@@ -1942,6 +1946,7 @@ function fnPaginationHandler(sSource, aoData, fnCallback) {
 		function(nextDataTablePage) {
 			var s = parseReturnCode(nextDataTablePage);
 			if (s) {
+				pairPageCursor = nextDataTablePage.cursor || null;
 				pairTable.fnProcessingIndicator(false);
 				fnCallback(nextDataTablePage);
 				$("#errorField").hide();
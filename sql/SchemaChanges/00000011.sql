@@ -0,0 +1,35 @@
+-- this persists the fair-share state of the job scheduler, which used to live only in
+-- memory and was lost on every redeploy
+
+DROP PROCEDURE IF EXISTS UpdateTo10_11 //
+CREATE PROCEDURE UpdateTo10_11()
+BEGIN
+	CREATE TABLE IF NOT EXISTS queue_user_loads (
+		queue_id INT NOT NULL,
+		user_id INT NOT NULL,
+		user_load BIGINT NOT NULL,
+		min_basis BIGINT NOT NULL,
+		inactive_since TIMESTAMP NULL DEFAULT NULL, -- NULL if the user is active
+		PRIMARY KEY (queue_id, user_id),
+		CONSTRAINT queue_user_loads_queue_id FOREIGN KEY (queue_id) REFERENCES queues(id) ON DELETE CASCADE,
+		CONSTRAINT queue_user_loads_user_id FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE
+	);
+
+	-- Changes to the fair-share state made since the snapshot in queue_user_loads was written.
+	-- Every row holds the full state of one user after a call to submitJobs, and rows are
+	-- applied on top of the snapshot in id order. Emptied whenever a new snapshot is written
+	CREATE TABLE IF NOT EXISTS queue_user_load_log (
+		id BIGINT NOT NULL AUTO_INCREMENT,
+		queue_id INT NOT NULL,
+		user_id INT NOT NULL,
+		user_load BIGINT NOT NULL,
+		min_basis BIGINT NOT NULL,
+		inactive_since TIMESTAMP NULL DEFAULT NULL,
+		PRIMARY KEY (id),
+		CONSTRAINT queue_user_load_log_queue_id FOREIGN KEY (queue_id) REFERENCES queues(id) ON DELETE CASCADE,
+		CONSTRAINT queue_user_load_log_user_id FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE
+	);
+END //
+
+CALL UpdateTo10_11() //
+DROP PROCEDURE IF EXISTS UpdateTo10_11 //
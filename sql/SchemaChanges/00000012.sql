@@ -0,0 +1,51 @@
+-- this lets the pair table of a job space be paged by seeking from the last pair of the previous
+-- page instead of skipping over every pair before the page. Seeking needs sort columns that are
+-- never NULL, and indexes that give the order of the pairs within a job space
+
+DROP PROCEDURE IF EXISTS UpdateTo11_12 //
+CREATE PROCEDURE UpdateTo11_12()
+BEGIN
+	-- pairs that have not run yet were always shown with times of 0. This script is run again on
+	-- every update, so the backfill and the column change only happen while a column is nullable
+	IF EXISTS (
+		SELECT *
+		FROM information_schema.columns
+		WHERE table_schema = DATABASE() AND table_name = 'jobpair_stage_data'
+			AND column_name IN ('cpu', 'wallclock') AND is_nullable = 'YES'
+	) THEN
+		-- both columns are filled in one pass over the table
+		UPDATE jobpair_stage_data
+			SET cpu = COALESCE(cpu, 0), wallclock = COALESCE(wallclock, 0)
+			WHERE cpu IS NULL OR wallclock IS NULL;
+
+		IF NOT EXISTS (
+			SELECT *
+			FROM information_schema.statistics
+			WHERE table_schema = DATABASE() AND table_name = 'jobpair_stage_data' AND index_name = 'job_space_status_code'
+		) THEN
+			-- the columns and the indexes are changed by a single ALTER, so the table is rebuilt only once
+			ALTER TABLE jobpair_stage_data
+				MODIFY COLUMN cpu DOUBLE NOT NULL DEFAULT 0,
+				MODIFY COLUMN wallclock DOUBLE NOT NULL DEFAULT 0,
+				ADD KEY job_space_status_code (job_space_id, status_code),
+				ADD KEY job_space_wallclock (job_space_id, wallclock),
+				ADD KEY job_space_cpu (job_space_id, cpu);
+		ELSE
+			ALTER TABLE jobpair_stage_data
+				MODIFY COLUMN cpu DOUBLE NOT NULL DEFAULT 0,
+				MODIFY COLUMN wallclock DOUBLE NOT NULL DEFAULT 0;
+		END IF;
+	ELSEIF NOT EXISTS (
+		SELECT *
+		FROM information_schema.statistics
+		WHERE table_schema = DATABASE() AND table_name = 'jobpair_stage_data' AND index_name = 'job_space_status_code'
+	) THEN
+		ALTER TABLE jobpair_stage_data
+			ADD KEY job_space_status_code (job_space_id, status_code),
+			ADD KEY job_space_wallclock (job_space_id, wallclock),
+			ADD KEY job_space_cpu (job_space_id, cpu);
+	END IF;
+END //
+
+CALL UpdateTo11_12() //
+DROP PROCEDURE IF EXISTS UpdateTo11_12 //
@@ -0,0 +1,22 @@
+-- this lets several workers post process pairs at once. Workers claim the stages they are
+-- going to process by adding rows to processing_claims, whose primary key makes sure no two
+-- workers ever claim the same stage
+
+DROP PROCEDURE IF EXISTS UpdateTo12_13 //
+CREATE PROCEDURE UpdateTo12_13()
+BEGIN
+	CREATE TABLE IF NOT EXISTS processing_claims (
+		pair_id INT NOT NULL,
+		stage_number INT NOT NULL,
+		job_id INT NOT NULL,
+		owner VARCHAR(64) NOT NULL,
+		claimed TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+		PRIMARY KEY (pair_id, stage_number),
+		KEY (owner),
+		KEY (job_id, claimed),
+		CONSTRAINT processing_claims_pair_id FOREIGN KEY (pair_id) REFERENCES job_pairs(id) ON DELETE CASCADE
+	);
+END //
+
+CALL UpdateTo12_13() //
+DROP PROCEDURE IF EXISTS UpdateTo12_13 //
@@ -0,0 +1,20 @@
+-- compute nodes now report what is in their solver caches, so the head node can see the caches
+-- and evict single solvers from them
+
+DROP PROCEDURE IF EXISTS UpdateTo13_14 //
+CREATE PROCEDURE UpdateTo13_14()
+BEGIN
+	CREATE TABLE IF NOT EXISTS solver_cache (
+		node_id INT NOT NULL,
+		solver_id INT NOT NULL,
+		solver_timestamp VARCHAR(64) NOT NULL, -- the most recent update of the solver when it was cached
+		disk_size BIGINT NOT NULL DEFAULT 0,
+		last_used TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+		PRIMARY KEY (node_id, solver_id, solver_timestamp),
+		KEY (solver_id),
+		CONSTRAINT solver_cache_node_id FOREIGN KEY (node_id) REFERENCES nodes(id) ON DELETE CASCADE
+	);
+END //
+
+CALL UpdateTo13_14() //
+DROP PROCEDURE IF EXISTS UpdateTo13_14 //
@@ -0,0 +1,26 @@
+-- benchmarks now record a hash of their contents, which keys the benchmark cache of the compute
+-- nodes, and the nodes report how often pairs find their benchmarks in the cache
+
+DROP PROCEDURE IF EXISTS UpdateTo14_15 //
+CREATE PROCEDURE UpdateTo14_15()
+BEGIN
+	IF NOT EXISTS (
+		SELECT *
+		FROM information_schema.columns
+		WHERE table_schema = DATABASE() AND table_name = 'benchmarks' AND column_name = 'content_hash'
+	) THEN
+		ALTER TABLE benchmarks
+			ADD COLUMN content_hash CHAR(64) DEFAULT NULL; -- hex SHA-256 of the file when it was added
+	END IF;
+
+	CREATE TABLE IF NOT EXISTS bench_cache_stats (
+		node_id INT NOT NULL,
+		hits BIGINT NOT NULL DEFAULT 0,
+		misses BIGINT NOT NULL DEFAULT 0,
+		PRIMARY KEY (node_id),
+		CONSTRAINT bench_cache_stats_node_id FOREIGN KEY (node_id) REFERENCES nodes(id) ON DELETE CASCADE
+	);
+END //
+
+CALL UpdateTo14_15() //
+DROP PROCEDURE IF EXISTS UpdateTo14_15 //
@@ -0,0 +1,19 @@
+-- the compute nodes report which benchmarks are in their benchmark caches, so pairs can be placed on
+-- the nodes that already hold their benchmarks
+
+DROP PROCEDURE IF EXISTS UpdateTo15_16 //
+CREATE PROCEDURE UpdateTo15_16()
+BEGIN
+	CREATE TABLE IF NOT EXISTS bench_cache (
+		node_id INT NOT NULL,
+		bench_id INT NOT NULL,
+		content_hash CHAR(64) NOT NULL, -- the hash of the benchmark when it was cached
+		last_used TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+		PRIMARY KEY (node_id, bench_id, content_hash),
+		KEY (bench_id),
+		CONSTRAINT bench_cache_node_id FOREIGN KEY (node_id) REFERENCES nodes(id) ON DELETE CASCADE
+	);
+END //
+
+CALL UpdateTo15_16() //
+DROP PROCEDURE IF EXISTS UpdateTo15_16 //
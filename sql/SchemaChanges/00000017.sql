@@ -0,0 +1,18 @@
+-- the compute nodes number their reports, so a report sent again after its response was lost is
+-- only written once
+
+DROP PROCEDURE IF EXISTS UpdateTo16_17 //
+CREATE PROCEDURE UpdateTo16_17()
+BEGIN
+	CREATE TABLE IF NOT EXISTS pair_reports (
+		pair_id INT NOT NULL,
+		run VARCHAR(64) NOT NULL, -- chosen by the jobscript when the pair starts running
+		sequence INT NOT NULL,
+		received TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+		PRIMARY KEY (pair_id, run, sequence),
+		CONSTRAINT pair_reports_pair_id FOREIGN KEY (pair_id) REFERENCES job_pairs(id) ON DELETE CASCADE
+	);
+END //
+
+CALL UpdateTo16_17() //
+DROP PROCEDURE IF EXISTS UpdateTo16_17 //
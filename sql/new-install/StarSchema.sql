@@ -151,6 +151,7 @@ CREATE TABLE benchmarks (
 	disk_size BIGINT NOT NULL,
 	deleted BOOLEAN DEFAULT FALSE,
 	recycled BOOLEAN DEFAULT FALSE,
+	content_hash CHAR(64) DEFAULT NULL, -- hex SHA-256 of the file when it was added, NULL if unknown
 	PRIMARY KEY (id),
 	CONSTRAINT benchmarks_user_id FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE,
 	CONSTRAINT benchmarks_bench_type FOREIGN KEY (bench_type) REFERENCES processors(id) ON DELETE SET NULL
@@ -231,6 +232,41 @@ CREATE TABLE nodes (
 	UNIQUE KEY (name)
 );
 
+-- The solvers in the solver cache of every compute node, as reported by the job pairs that add to,
+-- use and evict from the caches
+CREATE TABLE solver_cache (
+	node_id INT NOT NULL,
+	solver_id INT NOT NULL,
+	solver_timestamp VARCHAR(64) NOT NULL, -- the most recent update of the solver when it was cached
+	disk_size BIGINT NOT NULL DEFAULT 0,
+	last_used TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+	PRIMARY KEY (node_id, solver_id, solver_timestamp),
+	KEY (solver_id),
+	CONSTRAINT solver_cache_node_id FOREIGN KEY (node_id) REFERENCES nodes(id) ON DELETE CASCADE
+);
+
+-- The benchmarks in the benchmark cache of every compute node, as reported by the job pairs that
+-- add to, use and evict from the caches
+CREATE TABLE bench_cache (
+	node_id INT NOT NULL,
+	bench_id INT NOT NULL,
+	content_hash CHAR(64) NOT NULL, -- the hash of the benchmark when it was cached
+	last_used TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+	PRIMARY KEY (node_id, bench_id, content_hash),
+	KEY (bench_id),
+	CONSTRAINT bench_cache_node_id FOREIGN KEY (node_id) REFERENCES nodes(id) ON DELETE CASCADE
+);
+
+-- How often the job pairs on every compute node found their benchmarks in the benchmark cache of
+-- the node, and how often they had to copy them from the shared file system
+CREATE TABLE bench_cache_stats (
+	node_id INT NOT NULL,
+	hits BIGINT NOT NULL DEFAULT 0,
+	misses BIGINT NOT NULL DEFAULT 0,
+	PRIMARY KEY (node_id),
+	CONSTRAINT bench_cache_stats_node_id FOREIGN KEY (node_id) REFERENCES nodes(id) ON DELETE CASCADE
+);
+
 -- All the SGE node queues on the system
 CREATE TABLE queue_assoc (
 	queue_id INT NOT NULL,
@@ -370,8 +406,8 @@ CREATE TABLE jobpair_stage_data (
 	stage_number INT NOT NULL, -- this id orders the stages
 	jobpair_id INT NOT NULL,
 	stage_id INT, -- References pipeline_stages stages are ordered by this ID as well.
-	cpu DOUBLE,
-	wallclock DOUBLE,
+	cpu DOUBLE NOT NULL DEFAULT 0,
+	wallclock DOUBLE NOT NULL DEFAULT 0,
 	max_vmem DOUBLE,
 	max_res_set DOUBLE,
 	user_time DOUBLE,
@@ -386,6 +422,10 @@ CREATE TABLE jobpair_stage_data (
 	KEY (job_space_id, config_id),
 	KEY (job_space_id, solver_name),
 	KEY (job_space_id, config_name),
+	-- these give the order of the pair table of a job space, along with the jobpair_id of the primary key
+	KEY job_space_status_code (job_space_id, status_code),
+	KEY job_space_wallclock (job_space_id, wallclock),
+	KEY job_space_cpu (job_space_id, cpu),
 	KEY (status_code),
 	PRIMARY KEY (jobpair_id,stage_number),
 	CONSTRAINT jobpair_stage_data_jobpair_id FOREIGN KEY (jobpair_id) REFERENCES job_pairs(id) ON DELETE CASCADE,
@@ -408,6 +448,50 @@ CREATE TABLE jobpair_time_delta (
 	CONSTRAINT jobpair_time_delta_user_id FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE
 );
 
+-- Snapshot of the fair-share state of the job scheduler: the load of every user the
+-- LoadBalanceMonitor of a queue knows about. Written periodically by the JobManager and
+-- read back when StarExec starts, so that fairness survives a restart
+CREATE TABLE queue_user_loads (
+	queue_id INT NOT NULL,
+	user_id INT NOT NULL,
+	user_load BIGINT NOT NULL,
+	min_basis BIGINT NOT NULL,
+	inactive_since TIMESTAMP NULL DEFAULT NULL, -- NULL if the user is active
+	PRIMARY KEY (queue_id, user_id),
+	CONSTRAINT queue_user_loads_queue_id FOREIGN KEY (queue_id) REFERENCES queues(id) ON DELETE CASCADE,
+	CONSTRAINT queue_user_loads_user_id FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE
+);
+
+-- Changes to the fair-share state made since the snapshot in queue_user_loads was written.
+-- Every row holds the full state of one user after a call to submitJobs, and rows are
+-- applied on top of the snapshot in id order. Emptied whenever a new snapshot is written
+CREATE TABLE queue_user_load_log (
+	id BIGINT NOT NULL AUTO_INCREMENT,
+	queue_id INT NOT NULL,
+	user_id INT NOT NULL,
+	user_load BIGINT NOT NULL,
+	min_basis BIGINT NOT NULL,
+	inactive_since TIMESTAMP NULL DEFAULT NULL,
+	PRIMARY KEY (id),
+	CONSTRAINT queue_user_load_log_queue_id FOREIGN KEY (queue_id) REFERENCES queues(id) ON DELETE CASCADE,
+	CONSTRAINT queue_user_load_log_user_id FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE
+);
+
+-- Stages waiting on post processing that a worker of the ProcessingManager has claimed. The
+-- primary key makes sure no two workers ever process the same stage. Rows are deleted along
+-- with the results of the stage; rows of stages that failed stay until they time out
+CREATE TABLE processing_claims (
+	pair_id INT NOT NULL,
+	stage_number INT NOT NULL,
+	job_id INT NOT NULL,
+	owner VARCHAR(64) NOT NULL, -- identifies the batch that claimed the stage
+	claimed TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+	PRIMARY KEY (pair_id, stage_number),
+	KEY (owner),
+	KEY (job_id, claimed),
+	CONSTRAINT processing_claims_pair_id FOREIGN KEY (pair_id) REFERENCES job_pairs(id) ON DELETE CASCADE
+);
+
 -- Stores all inputs to a particular job pair, outside of the primary benchmark
 CREATE TABLE jobpair_inputs (
 	jobpair_id INT NOT NULL,
@@ -440,6 +524,17 @@ CREATE TABLE job_attributes (
 	CONSTRAINT job_attributes_pair_id FOREIGN KEY (pair_id) REFERENCES job_pairs(id) ON DELETE CASCADE
 );
 
+-- The reports the compute nodes have sent for each run of a job pair, so that a report sent again
+-- after the response to it was lost is not written twice
+CREATE TABLE pair_reports (
+	pair_id INT NOT NULL,
+	run VARCHAR(64) NOT NULL, -- chosen by the jobscript when the pair starts running
+	sequence INT NOT NULL,
+	received TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+	PRIMARY KEY (pair_id, run, sequence),
+	CONSTRAINT pair_reports_pair_id FOREIGN KEY (pair_id) REFERENCES job_pairs(id) ON DELETE CASCADE
+);
+
 -- The table that keeps track of verification codes that should
 -- be redeemed when the user verifies their e-mail address
 CREATE TABLE verify (
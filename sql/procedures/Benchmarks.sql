@@ -4,11 +4,11 @@
 -- Adds a benchmark into the system and associates it with a space
 -- Author: Tyler Jensen
 DROP PROCEDURE IF EXISTS AddBenchmark //
-CREATE PROCEDURE AddBenchmark(IN _name VARCHAR(256), IN _path TEXT, IN _downloadable TINYINT(1), IN _userId INT, IN _typeId INT, IN _diskSize BIGINT, IN _description TEXT, OUT _benchId INT)
+CREATE PROCEDURE AddBenchmark(IN _name VARCHAR(256), IN _path TEXT, IN _downloadable TINYINT(1), IN _userId INT, IN _typeId INT, IN _diskSize BIGINT, IN _description TEXT, IN _contentHash CHAR(64), OUT _benchId INT)
 	BEGIN
 		UPDATE users SET disk_size=disk_size+_diskSize WHERE id = _userId;
-		INSERT INTO benchmarks (user_id, name, bench_type, uploaded, path, downloadable, disk_size, description)
-		VALUES (_userId, _name, _typeId, SYSDATE(), _path, _downloadable, _diskSize, _description);
+		INSERT INTO benchmarks (user_id, name, bench_type, uploaded, path, downloadable, disk_size, description, content_hash)
+		VALUES (_userId, _name, _typeId, SYSDATE(), _path, _downloadable, _diskSize, _description, _contentHash);
 
 		SELECT LAST_INSERT_ID() INTO _benchId;
 	END //
@@ -101,7 +101,7 @@ CREATE PROCEDURE GetBenchmarkDependencies(IN _pBenchId INT)
 DROP PROCEDURE IF EXISTS GetPathsForBenchmarkDependencies //
 CREATE PROCEDURE GetPathsForBenchmarkDependencies(IN _pBenchId INT)
 	BEGIN
-                SELECT benchmarks.id , benchmarks.name , benchmarks.path , bench_dependency.include_path
+                SELECT benchmarks.id , benchmarks.name , benchmarks.path , benchmarks.content_hash , bench_dependency.include_path
 		FROM benchmarks JOIN bench_dependency
 		ON benchmarks.id = bench_dependency.secondary_bench_id 
                 WHERE primary_bench_id = _pBenchId;
@@ -444,3 +444,27 @@ CREATE PROCEDURE GetBrokenBenchDependencies(IN _benchId INT)
             OR benchmarks.recycled = 1)
             AND primary_bench_id = _benchId;
     END //
+
+-- Gets the IDs and names of the benchmarks in a space with IDs greater than the given one, in order of ID
+DROP PROCEDURE IF EXISTS GetBenchmarkListingInSpace //
+CREATE PROCEDURE GetBenchmarkListingInSpace(IN _spaceId INT, IN _afterId INT, IN _limit INT)
+	BEGIN
+		SELECT benchmarks.id, benchmarks.name
+		FROM bench_assoc
+			JOIN benchmarks ON benchmarks.id=bench_assoc.bench_id
+		WHERE bench_assoc.space_id=_spaceId AND bench_assoc.bench_id>_afterId
+		ORDER BY bench_assoc.bench_id
+		LIMIT _limit;
+	END //
+
+-- Gets the IDs and names of the benchmarks a user owns with IDs greater than the given one, in order of ID.
+-- Deleted and recycled benchmarks are left out
+DROP PROCEDURE IF EXISTS GetBenchmarkListingByOwner //
+CREATE PROCEDURE GetBenchmarkListingByOwner(IN _userId INT, IN _afterId INT, IN _limit INT)
+	BEGIN
+		SELECT id, name
+		FROM benchmarks
+		WHERE user_id=_userId AND id>_afterId AND deleted=false AND recycled=false
+		ORDER BY id
+		LIMIT _limit;
+	END //
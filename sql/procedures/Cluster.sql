@@ -203,3 +203,96 @@ CREATE PROCEDURE DeleteNode(IN _id INT)
 	BEGIN
 		DELETE FROM nodes WHERE id=_id;
 	END //
+
+-- Records that a node added a solver to its solver cache, or used a solver from it
+DROP PROCEDURE IF EXISTS UpdateSolverCacheEntry //
+CREATE PROCEDURE UpdateSolverCacheEntry(IN _nodeName VARCHAR(128), IN _solverId INT, IN _timestamp VARCHAR(64), IN _diskSize BIGINT)
+	BEGIN
+		INSERT INTO solver_cache (node_id, solver_id, solver_timestamp, disk_size, last_used)
+		SELECT id, _solverId, _timestamp, COALESCE(_diskSize, 0), NOW()
+		FROM nodes
+		WHERE name = _nodeName
+		ON DUPLICATE KEY UPDATE disk_size = COALESCE(_diskSize, disk_size), last_used = NOW();
+	END //
+
+-- Records that a node evicted a solver from its solver cache
+DROP PROCEDURE IF EXISTS RemoveSolverCacheEntry //
+CREATE PROCEDURE RemoveSolverCacheEntry(IN _nodeName VARCHAR(128), IN _solverId INT, IN _timestamp VARCHAR(64))
+	BEGIN
+		DELETE solver_cache
+		FROM solver_cache
+		JOIN nodes ON nodes.id = solver_cache.node_id
+		WHERE nodes.name = _nodeName AND solver_id = _solverId AND solver_timestamp = _timestamp;
+	END //
+
+-- Forgets every cached copy of a solver, or of every solver if _solverId is NULL
+DROP PROCEDURE IF EXISTS ClearSolverCacheEntries //
+CREATE PROCEDURE ClearSolverCacheEntries(IN _solverId INT)
+	BEGIN
+		DELETE FROM solver_cache WHERE _solverId IS NULL OR solver_id = _solverId;
+	END //
+
+-- Gets the solvers in the solver caches of the active nodes of a queue
+DROP PROCEDURE IF EXISTS GetSolverCacheNodesForQueue //
+CREATE PROCEDURE GetSolverCacheNodesForQueue(IN _queueId INT)
+	BEGIN
+		SELECT nodes.name AS node_name, solver_cache.solver_id, solver_cache.solver_timestamp
+		FROM solver_cache
+		JOIN queue_assoc ON queue_assoc.node_id = solver_cache.node_id
+		JOIN nodes ON nodes.id = solver_cache.node_id
+		WHERE queue_assoc.queue_id = _queueId AND nodes.status = "ACTIVE";
+	END //
+
+-- Records that a node added a benchmark to its benchmark cache, or used a benchmark from it
+DROP PROCEDURE IF EXISTS UpdateBenchCacheEntry //
+CREATE PROCEDURE UpdateBenchCacheEntry(IN _nodeName VARCHAR(128), IN _benchId INT, IN _contentHash CHAR(64))
+	BEGIN
+		INSERT INTO bench_cache (node_id, bench_id, content_hash, last_used)
+		SELECT id, _benchId, _contentHash, NOW()
+		FROM nodes
+		WHERE name = _nodeName
+		ON DUPLICATE KEY UPDATE last_used = NOW();
+	END //
+
+-- Records that a node evicted a benchmark from its benchmark cache
+DROP PROCEDURE IF EXISTS RemoveBenchCacheEntry //
+CREATE PROCEDURE RemoveBenchCacheEntry(IN _nodeName VARCHAR(128), IN _benchId INT, IN _contentHash CHAR(64))
+	BEGIN
+		DELETE bench_cache
+		FROM bench_cache
+		JOIN nodes ON nodes.id = bench_cache.node_id
+		WHERE nodes.name = _nodeName AND bench_id = _benchId AND content_hash = _contentHash;
+	END //
+
+-- Adds to the number of times pairs on a node found their benchmarks in the benchmark cache, and did not
+DROP PROCEDURE IF EXISTS AddBenchmarkCacheCounts //
+CREATE PROCEDURE AddBenchmarkCacheCounts(IN _nodeName VARCHAR(128), IN _hits BIGINT, IN _misses BIGINT)
+	BEGIN
+		INSERT INTO bench_cache_stats (node_id, hits, misses)
+		SELECT id, _hits, _misses
+		FROM nodes
+		WHERE name = _nodeName
+		ON DUPLICATE KEY UPDATE hits = hits + _hits, misses = misses + _misses;
+	END //
+
+-- Gets how often pairs on every node found their benchmarks in the benchmark cache
+DROP PROCEDURE IF EXISTS GetBenchmarkCacheCounts //
+CREATE PROCEDURE GetBenchmarkCacheCounts()
+	BEGIN
+		SELECT nodes.name AS node_name, hits, misses
+		FROM bench_cache_stats
+		JOIN nodes ON nodes.id = bench_cache_stats.node_id
+		ORDER BY nodes.name;
+	END //
+
+-- Gets what is in the solver cache of every node, most recently used first
+DROP PROCEDURE IF EXISTS GetSolverCacheEntries //
+CREATE PROCEDURE GetSolverCacheEntries()
+	BEGIN
+		SELECT nodes.name AS node_name, solver_cache.solver_id, solvers.name AS solver_name, solver_timestamp,
+			solver_cache.disk_size, last_used
+		FROM solver_cache
+		JOIN nodes ON nodes.id = solver_cache.node_id
+		LEFT JOIN solvers ON solvers.id = solver_cache.solver_id
+		ORDER BY last_used DESC;
+	END //
@@ -23,6 +23,15 @@ CREATE PROCEDURE UpdatePairNodeId(IN _jobPairId INT, IN _nodeId INT)
 		UPDATE job_pairs SET node_id=_nodeId WHERE id=_jobPairId;
 	END  //
 
+-- Records that a report from a run of a job pair is being written. _added is false if the report was
+-- recorded before, in which case it has already been written and must not be written again
+DROP PROCEDURE IF EXISTS AddPairReport //
+CREATE PROCEDURE AddPairReport(IN _jobPairId INT, IN _run VARCHAR(64), IN _sequence INT, OUT _added BOOLEAN)
+	BEGIN
+		INSERT IGNORE INTO pair_reports (pair_id, run, sequence) VALUES (_jobPairId, _run, _sequence);
+		SELECT ROW_COUNT() > 0 INTO _added;
+	END //
+
 -- Updates a job pair's statistics directly from the execution node
 -- Author: Benton McCune
 DROP PROCEDURE IF EXISTS UpdatePairRunSolverStats //
@@ -143,6 +152,15 @@ CREATE PROCEDURE UpdateLaterStageStatuses(IN _jobPairId INT, IN _stageNumber INT
 		UPDATE jobpair_stage_data SET status_code=_statusCode WHERE jobpair_id=_jobPairId AND stage_number>_stageNumber;
 	END //
 
+-- Sets the status code of a pair and every one of its stages. Lets the job manager
+-- update a whole batch of submitted pairs with one call per pair.
+DROP PROCEDURE IF EXISTS UpdatePairAndStageStatuses //
+CREATE PROCEDURE UpdatePairAndStageStatuses(IN _jobPairId INT, IN _statusCode TINYINT)
+	BEGIN
+		CALL UpdatePairStatus(_jobPairId, _statusCode);
+		CALL UpdateLaterStageStatuses(_jobPairId, -1, _statusCode);
+	END //
+
 -- Sets all run stats to 0 for stages that come after the given stage. This is used for
 -- pipelines where an early stage fails, causing later stages to not run
 DROP PROCEDURE IF EXISTS SetRunStatsForLaterStagesToZero //
@@ -224,6 +242,73 @@ CREATE PROCEDURE GetPairsToBeProcessed(IN _processingStatus INT)
 		WHERE jobpair_stage_data.status_code=_processingStatus;
 	END //
 
+-- Gets every job with stages awaiting processing, along with how many stages are awaiting processing
+DROP PROCEDURE IF EXISTS GetJobsWithPairsToBeProcessed //
+CREATE PROCEDURE GetJobsWithPairsToBeProcessed(IN _processingStatus INT)
+	BEGIN
+		SELECT job_pairs.job_id, COUNT(*) AS stages
+		FROM jobpair_stage_data
+		JOIN job_pairs ON job_pairs.id = jobpair_stage_data.jobpair_id
+		WHERE jobpair_stage_data.status_code=_processingStatus
+		GROUP BY job_pairs.job_id;
+	END //
+
+-- Claims up to _limit stages of a job that are awaiting processing for the given owner, and gets
+-- every stage the owner has claimed. Claims older than _timeout seconds belong to workers that
+-- failed or went away, so they are given up first. INSERT IGNORE skips stages another owner
+-- claimed in the meantime, so no two owners ever claim the same stage. Only stages with stage
+-- params are claimed, since the others are never returned and would only use up the limit
+DROP PROCEDURE IF EXISTS ClaimPairsToBeProcessed //
+CREATE PROCEDURE ClaimPairsToBeProcessed(IN _processingStatus INT, IN _jobId INT, IN _owner VARCHAR(64), IN _limit INT, IN _timeout INT)
+	BEGIN
+		DELETE FROM processing_claims WHERE job_id=_jobId AND claimed < NOW() - INTERVAL _timeout SECOND;
+
+		INSERT IGNORE INTO processing_claims (pair_id, stage_number, job_id, owner)
+		SELECT jobpair_stage_data.jobpair_id, jobpair_stage_data.stage_number, _jobId, _owner
+		FROM job_pairs
+		JOIN jobpair_stage_data ON jobpair_stage_data.jobpair_id = job_pairs.id
+		JOIN job_stage_params ON (job_stage_params.job_id=job_pairs.job_id AND job_stage_params.stage_number=jobpair_stage_data.stage_number)
+		LEFT JOIN processing_claims AS claimed ON (claimed.pair_id=jobpair_stage_data.jobpair_id AND claimed.stage_number=jobpair_stage_data.stage_number)
+		WHERE job_pairs.job_id=_jobId AND jobpair_stage_data.status_code=_processingStatus AND claimed.pair_id IS NULL
+		LIMIT _limit;
+
+		SELECT post_processor, processing_claims.pair_id, processing_claims.stage_number AS stageNumber
+		FROM processing_claims
+		JOIN job_stage_params ON (job_stage_params.job_id=processing_claims.job_id AND job_stage_params.stage_number=processing_claims.stage_number)
+		WHERE owner=_owner;
+	END //
+
+-- Gives up the claim on a stage, once its results have been saved
+DROP PROCEDURE IF EXISTS RemoveProcessingClaim //
+CREATE PROCEDURE RemoveProcessingClaim(IN _pairId INT, IN _stageNumber INT)
+	BEGIN
+		DELETE FROM processing_claims WHERE pair_id=_pairId AND stage_number=_stageNumber;
+	END //
+
+-- Renews every claim of the given owner, so its stages stay claimed while they are still being processed
+DROP PROCEDURE IF EXISTS RefreshProcessingClaims //
+CREATE PROCEDURE RefreshProcessingClaims(IN _owner VARCHAR(64))
+	BEGIN
+		UPDATE processing_claims SET claimed=CURRENT_TIMESTAMP WHERE owner=_owner;
+	END //
+
+-- Gets every stage the given owner has claimed, with the job the stage belongs to
+DROP PROCEDURE IF EXISTS GetProcessingClaims //
+CREATE PROCEDURE GetProcessingClaims(IN _owner VARCHAR(64))
+	BEGIN
+		SELECT post_processor, processing_claims.pair_id, processing_claims.stage_number AS stageNumber, processing_claims.job_id
+		FROM processing_claims
+		JOIN job_stage_params ON (job_stage_params.job_id=processing_claims.job_id AND job_stage_params.stage_number=processing_claims.stage_number)
+		WHERE owner=_owner;
+	END //
+
+-- Gives up every claim of the given owner, so that the stages can be claimed by someone else
+DROP PROCEDURE IF EXISTS ReleaseProcessingClaims //
+CREATE PROCEDURE ReleaseProcessingClaims(IN _owner VARCHAR(64))
+	BEGIN
+		DELETE FROM processing_claims WHERE owner=_owner;
+	END //
+
 DROP PROCEDURE IF EXISTS RemovePairFromCompletedTable //
 CREATE PROCEDURE RemovePairFromCompletedTable(IN _id INT)
 	BEGIN
@@ -80,6 +80,75 @@ CREATE PROCEDURE CountOlderPairs(IN _id INT, IN _since INT)
 		WHERE completion_id<=_since and job_id=_id;
 	END //
 
+-- Gets the largest completion ID among the pairs of a job. Reads neither the stages nor the pairs themselves, only
+-- the job_id key of job_pairs and the pair_id key of job_pair_completion
+DROP PROCEDURE IF EXISTS GetMaxCompletionId //
+CREATE PROCEDURE GetMaxCompletionId(IN _jobId INT)
+	BEGIN
+		SELECT MAX(completion_id) AS max_completion
+		FROM job_pairs JOIN job_pair_completion ON job_pairs.id=job_pair_completion.pair_id
+		WHERE job_pairs.job_id=_jobId;
+	END //
+
+-- Counts the pairs and stages of a job, and gets the largest completion ID among them. If _since is not null,
+-- only pairs with a completion ID greater than _since are counted
+DROP PROCEDURE IF EXISTS CountJobPairsAndStages //
+CREATE PROCEDURE CountJobPairsAndStages(IN _jobId INT, IN _since INT)
+	BEGIN
+		SELECT COUNT(DISTINCT job_pairs.id) AS pairs, COUNT(*) AS stages, MAX(completion_id) AS max_completion
+		FROM job_pairs
+			JOIN jobpair_stage_data ON jobpair_stage_data.jobpair_id=job_pairs.id
+			LEFT JOIN job_pair_completion ON job_pairs.id=job_pair_completion.pair_id
+		WHERE job_pairs.job_id=_jobId AND (_since IS NULL OR completion_id>_since);
+	END //
+
+-- Gets the names of every attribute of the complete pairs of a job, including the expected result if any of
+-- their benchmarks have one, in alphabetical order. If _since is not null, only pairs with a completion ID greater
+-- than _since are considered
+DROP PROCEDURE IF EXISTS GetCompletedPairAttributeNames //
+CREATE PROCEDURE GetCompletedPairAttributeNames(IN _jobId INT, IN _since INT)
+	BEGIN
+		SELECT DISTINCT attr_key
+		FROM job_attributes
+			JOIN job_pairs ON job_pairs.id=job_attributes.pair_id
+			LEFT JOIN job_pair_completion ON job_pairs.id=job_pair_completion.pair_id
+		WHERE job_attributes.job_id=_jobId AND job_pairs.status_code=7 AND (_since IS NULL OR completion_id>_since)
+		UNION
+		SELECT DISTINCT bench_attributes.attr_key
+		FROM job_pairs
+			JOIN bench_attributes ON (job_pairs.bench_id=bench_attributes.bench_id AND bench_attributes.attr_key="starexec-expected-result")
+			LEFT JOIN job_pair_completion ON job_pairs.id=job_pair_completion.pair_id
+		WHERE job_pairs.job_id=_jobId AND job_pairs.status_code=7 AND (_since IS NULL OR completion_id>_since)
+		ORDER BY attr_key;
+	END //
+
+-- Gets every stage of the pairs of a job with its attributes, one row for every attribute of the stage or a single
+-- row if it has none, and the expected result of its benchmark. Ordered by pair and stage, so that it can be read
+-- with a streaming result set one pair at a time.
+-- If _since is not null, only pairs with a completion ID greater than _since and at most _until are returned.
+-- If _onlyCompleted is true, only pairs that finished running are returned
+DROP PROCEDURE IF EXISTS GetJobPairStagesInOrder //
+CREATE PROCEDURE GetJobPairStagesInOrder(IN _jobId INT, IN _since INT, IN _until INT, IN _onlyCompleted BOOLEAN)
+	BEGIN
+		SELECT job_pairs.id, job_pairs.path, job_pairs.bench_id, job_pairs.bench_name, job_pairs.status_code,
+		job_pairs.primary_jobpair_data, completion_id,
+		jobpair_stage_data.stage_number, jobpair_stage_data.stage_id, jobpair_stage_data.status_code,
+		jobpair_stage_data.solver_id, jobpair_stage_data.solver_name,
+		jobpair_stage_data.config_id, jobpair_stage_data.config_name,
+		jobpair_stage_data.cpu, jobpair_stage_data.wallclock, jobpair_stage_data.max_vmem,
+		bench_attributes.attr_value AS expected,
+		job_attributes.attr_key, job_attributes.attr_value
+		FROM job_pairs
+			JOIN jobpair_stage_data ON jobpair_stage_data.jobpair_id=job_pairs.id
+			LEFT JOIN job_pair_completion ON job_pairs.id=job_pair_completion.pair_id
+			LEFT JOIN bench_attributes ON (job_pairs.bench_id=bench_attributes.bench_id AND bench_attributes.attr_key="starexec-expected-result")
+			LEFT JOIN job_attributes ON (job_attributes.pair_id=job_pairs.id AND job_attributes.stage_number=jobpair_stage_data.stage_number)
+		WHERE job_pairs.job_id=_jobId
+			AND (_since IS NULL OR (completion_id>_since AND completion_id<=_until))
+			AND (NOT _onlyCompleted OR job_pairs.status_code BETWEEN 7 AND 18)
+		ORDER BY job_pairs.id, jobpair_stage_data.stage_number;
+	END //
+
 -- Returns the number of jobs pairs for a given job that match a given query for the given stage
 -- Author: Eric Burns
 DROP PROCEDURE IF EXISTS GetJobPairCountByJobInJobSpaceWithQuery //
@@ -436,6 +505,135 @@ CREATE PROCEDURE GetJobPairStagesInJobSpaceHierarchy(IN _jobSpaceId INT, IN _sin
 			WHERE ancestor=_jobSpaceId AND ((_since is null) OR job_pair_completion.completion_id>_since);
 	END //
 
+-- Gets the job pairs in a job space hierarchy that are not finished but have a complete stage. No stages are retrieved
+DROP PROCEDURE IF EXISTS GetUnfinishedJobPairsInJobSpaceHierarchy //
+CREATE PROCEDURE GetUnfinishedJobPairsInJobSpaceHierarchy(IN _jobSpaceId INT)
+	BEGIN
+		SELECT
+		status_code,
+		job_pairs.id,
+		job_pairs.bench_id,
+		job_pairs.bench_name,
+		anonymous_primitive_names.anonymous_name AS anon_bench_name,
+		job_pairs.path,
+		completion_id,
+		primary_jobpair_data
+			FROM job_pairs
+			JOIN job_spaces ON job_spaces.id = job_pairs.job_space_id
+			LEFT JOIN anonymous_primitive_names ON
+				anonymous_primitive_names.primitive_id=job_pairs.bench_id AND anonymous_primitive_names.primitive_type="bench"
+						AND anonymous_primitive_names.job_id=job_spaces.job_id
+			JOIN job_space_closure ON descendant=job_space_id
+			LEFT JOIN job_pair_completion ON job_pairs.id=job_pair_completion.pair_id
+			WHERE ancestor=_jobSpaceId AND job_pair_completion.pair_id IS NULL
+				AND EXISTS (SELECT 1 FROM jobpair_stage_data AS complete_stages
+					WHERE complete_stages.jobpair_id=job_pairs.id AND complete_stages.status_code=7);
+	END //
+
+-- Gets all the stages of the job pairs in a job space hierarchy that are not finished but have a complete stage
+DROP PROCEDURE IF EXISTS GetUnfinishedJobPairStagesInJobSpaceHierarchy //
+CREATE PROCEDURE GetUnfinishedJobPairStagesInJobSpaceHierarchy(IN _jobSpaceId INT)
+	BEGIN
+		SELECT
+		job_pairs.id AS pair_id,
+		jobpair_stage_data.solver_id,
+		jobpair_stage_data.solver_name,
+		jobpair_stage_data.status_code,
+		jobpair_stage_data.config_id,
+		jobpair_stage_data.config_name,
+		jobpair_stage_data.cpu,
+		jobpair_stage_data.stage_id,
+		jobpair_stage_data.wallclock AS wallclock,
+		job_pairs.id, jobpair_stage_data.stage_number,
+		jobpair_stage_data.max_vmem,
+		bench_attributes.attr_value AS expected,
+		job_attributes.attr_value AS result,
+		anonymous_solver_names.anonymous_name AS anon_solver_name,
+		anonymous_config_names.anonymous_name AS anon_config_name
+			FROM job_pairs
+			JOIN job_spaces ON job_spaces.id=job_pairs.job_space_id
+			JOIN job_space_closure ON descendant=job_space_id
+			JOIN jobpair_stage_data ON jobpair_stage_data.jobpair_id=job_pairs.id
+			LEFT JOIN anonymous_primitive_names AS anonymous_solver_names ON
+						anonymous_solver_names.primitive_id=jobpair_stage_data.solver_id AND anonymous_solver_names.primitive_type="solver"
+						AND anonymous_solver_names.job_id = job_spaces.job_id
+			LEFT JOIN anonymous_primitive_names AS anonymous_config_names ON
+						anonymous_config_names.primitive_id=jobpair_stage_data.config_id AND anonymous_config_names.primitive_type="config"
+						AND anonymous_config_names.job_id = job_spaces.job_id
+			LEFT JOIN job_attributes on (job_attributes.pair_id=job_pairs.id AND job_attributes.stage_number=jobpair_stage_data.stage_number and job_attributes.attr_key="starexec-result")
+			LEFT JOIN job_pair_completion ON job_pairs.id=job_pair_completion.pair_id
+
+			LEFT JOIN bench_attributes ON (job_pairs.bench_id=bench_attributes.bench_id AND bench_attributes.attr_key = "starexec-expected-result")
+			WHERE ancestor=_jobSpaceId AND job_pair_completion.pair_id IS NULL
+				AND EXISTS (SELECT 1 FROM jobpair_stage_data AS complete_stages
+					WHERE complete_stages.jobpair_id=job_pairs.id AND complete_stages.status_code=7);
+	END //
+
+-- Counts the stages of the unfinished pairs in a job space hierarchy that have no complete stage, by stage,
+-- configuration and status. NoOp stages are left out.
+DROP PROCEDURE IF EXISTS CountUnfinishedJobPairStagesInJobSpaceHierarchy //
+CREATE PROCEDURE CountUnfinishedJobPairStagesInJobSpaceHierarchy(IN _jobSpaceId INT)
+	BEGIN
+		SELECT
+		jobpair_stage_data.stage_number,
+		jobpair_stage_data.status_code,
+		jobpair_stage_data.config_id,
+		MIN(jobpair_stage_data.config_name) AS config_name,
+		MIN(jobpair_stage_data.solver_id) AS solver_id,
+		MIN(jobpair_stage_data.solver_name) AS solver_name,
+		MIN(anonymous_solver_names.anonymous_name) AS anon_solver_name,
+		MIN(anonymous_config_names.anonymous_name) AS anon_config_name,
+		jobpair_stage_data.stage_number=job_pairs.primary_jobpair_data AS is_primary,
+		COUNT(*) AS stage_count
+			FROM job_pairs
+			JOIN job_spaces ON job_spaces.id=job_pairs.job_space_id
+			JOIN job_space_closure ON descendant=job_space_id
+			JOIN jobpair_stage_data ON jobpair_stage_data.jobpair_id=job_pairs.id
+			LEFT JOIN anonymous_primitive_names AS anonymous_solver_names ON
+						anonymous_solver_names.primitive_id=jobpair_stage_data.solver_id AND anonymous_solver_names.primitive_type="solver"
+						AND anonymous_solver_names.job_id = job_spaces.job_id
+			LEFT JOIN anonymous_primitive_names AS anonymous_config_names ON
+						anonymous_config_names.primitive_id=jobpair_stage_data.config_id AND anonymous_config_names.primitive_type="config"
+						AND anonymous_config_names.job_id = job_spaces.job_id
+			LEFT JOIN job_pair_completion ON job_pairs.id=job_pair_completion.pair_id
+			WHERE ancestor=_jobSpaceId AND job_pair_completion.pair_id IS NULL AND jobpair_stage_data.solver_id IS NOT NULL
+				AND NOT EXISTS (SELECT 1 FROM jobpair_stage_data AS complete_stages
+					WHERE complete_stages.jobpair_id=job_pairs.id AND complete_stages.status_code=7)
+			GROUP BY jobpair_stage_data.stage_number, jobpair_stage_data.status_code, jobpair_stage_data.config_id, is_primary;
+	END //
+
+-- Gets every stage of every pair in a job, ordered so that the stages of a pair are together
+DROP PROCEDURE IF EXISTS GetJobResultCube //
+CREATE PROCEDURE GetJobResultCube(IN _jobId INT)
+	BEGIN
+		SELECT
+		job_pairs.id AS pair_id,
+		job_pairs.status_code AS pair_status,
+		job_pair_completion.completion_id,
+		job_pairs.bench_id,
+		job_pairs.bench_name,
+		job_pairs.job_space_id,
+		job_pairs.primary_jobpair_data,
+		jobpair_stage_data.stage_number,
+		jobpair_stage_data.solver_id,
+		jobpair_stage_data.solver_name,
+		jobpair_stage_data.config_id,
+		jobpair_stage_data.config_name,
+		jobpair_stage_data.status_code,
+		jobpair_stage_data.cpu,
+		jobpair_stage_data.wallclock,
+		jobpair_stage_data.max_vmem,
+		job_attributes.attr_value AS result,
+		bench_attributes.attr_value AS expected
+			FROM job_pairs
+			JOIN jobpair_stage_data ON jobpair_stage_data.jobpair_id=job_pairs.id
+			LEFT JOIN job_pair_completion ON job_pair_completion.pair_id=job_pairs.id
+			LEFT JOIN job_attributes ON (job_attributes.pair_id=job_pairs.id AND job_attributes.stage_number=jobpair_stage_data.stage_number AND job_attributes.attr_key="starexec-result")
+			LEFT JOIN bench_attributes ON (job_pairs.bench_id=bench_attributes.bench_id AND bench_attributes.attr_key="starexec-expected-result")
+			WHERE job_pairs.job_id=_jobId
+			ORDER BY job_pairs.id, jobpair_stage_data.stage_number;
+	END //
+
 -- Counts the number of pairs in a job
 -- Author Eric Burns
 DROP PROCEDURE IF EXISTS countPairsForJob //
@@ -525,6 +723,40 @@ CREATE PROCEDURE GetPendingJobPairsByJob(IN _id INT, IN _limit INT)
 		ON temp.id=job_pairs.id;
 	END //
 
+-- Retrieves the IDs of all pending job pairs with the given job id, using the same
+-- filter as GetPendingJobPairsByJob. Used to build the in-memory pending pair index
+DROP PROCEDURE IF EXISTS GetPendingJobPairIdsByJob //
+CREATE PROCEDURE GetPendingJobPairIdsByJob(IN _id INT)
+	BEGIN
+		SELECT job_pairs.id FROM job_pairs FORCE INDEX (job_id_2)
+		WHERE job_id = _id AND job_pairs.status_code = 1
+		AND NOT EXISTS (SELECT 1 FROM jobpair_stage_data
+		LEFT JOIN solvers ON solvers.id = jobpair_stage_data.solver_id
+		JOIN job_pairs AS jp ON jp.id=jobpair_id
+		JOIN jobs ON jobs.id=jp.job_id
+		WHERE jobpair_stage_data.jobpair_id = job_pairs.id AND solvers.build_status=0 AND buildJob=false)
+		ORDER BY job_pairs.id ASC;
+	END //
+
+-- Same as GetPendingJobPairsByJob, but only for pairs with IDs between _fromId and _toId
+-- inclusive, so pairs picked from the pending pair index can be loaded by primary key
+DROP PROCEDURE IF EXISTS GetPendingJobPairsByJobInRange //
+CREATE PROCEDURE GetPendingJobPairsByJobInRange(IN _id INT, IN _fromId INT, IN _toId INT)
+	BEGIN
+		SELECT *,
+		(SELECT count(*) FROM bench_dependency WHERE primary_bench_id = benchmarks.id) AS dependency_count
+		FROM job_pairs
+		JOIN jobpair_stage_data ON jobpair_stage_data.jobpair_id = job_pairs.id
+		LEFT JOIN benchmarks ON benchmarks.id = job_pairs.bench_id
+		LEFT JOIN solvers ON solvers.id = jobpair_stage_data.solver_id
+		WHERE job_pairs.id BETWEEN _fromId AND _toId AND job_pairs.job_id = _id AND job_pairs.status_code = 1
+		AND NOT EXISTS (SELECT 1 FROM jobpair_stage_data
+		LEFT JOIN solvers ON solvers.id = jobpair_stage_data.solver_id
+		JOIN job_pairs AS jp ON jp.id=jobpair_id
+		JOIN jobs ON jobs.id=jp.job_id
+		WHERE jobpair_stage_data.jobpair_id = job_pairs.id AND solvers.build_status=0 AND buildJob=false);
+	END //
+
 -- Retrieves basic info about enqueued job pairs for the given job id
 -- Author: Wyatt Kaiser
 DROP PROCEDURE IF EXISTS GetEnqueuedJobPairsByJob //
@@ -950,6 +1182,9 @@ CREATE PROCEDURE PrepareJobForPostProcessing(IN _jobId INT, IN _procId INT, IN _
 
 	UPDATE job_stage_params SET post_processor = _procId WHERE job_id=_jobId AND stage_number=_stageNumber;
 
+	-- claims of stages that failed to process with the old processor would hold up the new one
+	DELETE FROM processing_claims WHERE job_id=_jobId;
+
 	END //
 
 DROP PROCEDURE IF EXISTS SetJobStageParams //
@@ -1103,3 +1338,27 @@ CREATE PROCEDURE GetSumOfJobAttributes(IN _jobSpaceId INT)
         GROUP BY attr_value
 				ORDER BY attr_value;
     END //
+
+-- Gets the IDs and names of the jobs in a space with IDs greater than the given one, in order of ID
+DROP PROCEDURE IF EXISTS GetJobListingInSpace //
+CREATE PROCEDURE GetJobListingInSpace(IN _spaceId INT, IN _afterId INT, IN _limit INT)
+	BEGIN
+		SELECT jobs.id, jobs.name
+		FROM job_assoc
+			JOIN jobs ON jobs.id=job_assoc.job_id
+		WHERE job_assoc.space_id=_spaceId AND job_assoc.job_id>_afterId
+		ORDER BY job_assoc.job_id
+		LIMIT _limit;
+	END //
+
+-- Gets the IDs and names of the jobs a user owns with IDs greater than the given one, in order of ID.
+-- Deleted jobs are left out
+DROP PROCEDURE IF EXISTS GetJobListingByOwner //
+CREATE PROCEDURE GetJobListingByOwner(IN _userId INT, IN _afterId INT, IN _limit INT)
+	BEGIN
+		SELECT id, name
+		FROM jobs
+		WHERE user_id=_userId AND id>_afterId AND deleted=false
+		ORDER BY id
+		LIMIT _limit;
+	END //
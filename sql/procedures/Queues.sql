@@ -238,4 +238,42 @@ CREATE PROCEDURE SetDescForQueue(IN _qID INT, IN _desc VARCHAR(200))
 		UPDATE queues
 		SET description = _desc
 		WHERE id = _qid;
-	END //
\ No newline at end of file
+	END //
+
+-- Records the state of a user's load on a queue after a round of job submission
+DROP PROCEDURE IF EXISTS AddQueueUserLoadLogEntry //
+CREATE PROCEDURE AddQueueUserLoadLogEntry(IN _queueId INT, IN _userId INT, IN _load BIGINT, IN _minBasis BIGINT, IN _inactiveSince TIMESTAMP)
+	BEGIN
+		INSERT INTO queue_user_load_log (queue_id, user_id, user_load, min_basis, inactive_since)
+		VALUES (_queueId, _userId, _load, _minBasis, _inactiveSince);
+	END //
+
+-- Adds a user's load on a queue to the fair-share snapshot
+DROP PROCEDURE IF EXISTS AddQueueUserLoad //
+CREATE PROCEDURE AddQueueUserLoad(IN _queueId INT, IN _userId INT, IN _load BIGINT, IN _minBasis BIGINT, IN _inactiveSince TIMESTAMP)
+	BEGIN
+		REPLACE INTO queue_user_loads (queue_id, user_id, user_load, min_basis, inactive_since)
+		VALUES (_queueId, _userId, _load, _minBasis, _inactiveSince);
+	END //
+
+-- Gets the fair-share snapshot for every queue
+DROP PROCEDURE IF EXISTS GetQueueUserLoads //
+CREATE PROCEDURE GetQueueUserLoads()
+	BEGIN
+		SELECT queue_id, user_id, user_load, min_basis, inactive_since FROM queue_user_loads;
+	END //
+
+-- Gets every change to the fair-share state made since the snapshot, oldest first
+DROP PROCEDURE IF EXISTS GetQueueUserLoadLog //
+CREATE PROCEDURE GetQueueUserLoadLog()
+	BEGIN
+		SELECT queue_id, user_id, user_load, min_basis, inactive_since FROM queue_user_load_log ORDER BY id ASC;
+	END //
+
+-- Deletes the fair-share snapshot and log for the given queue, or for every queue if _queueId is -1
+DROP PROCEDURE IF EXISTS ClearQueueUserLoads //
+CREATE PROCEDURE ClearQueueUserLoads(IN _queueId INT)
+	BEGIN
+		DELETE FROM queue_user_loads WHERE queue_id=_queueId OR _queueId=-1;
+		DELETE FROM queue_user_load_log WHERE queue_id=_queueId OR _queueId=-1;
+	END //
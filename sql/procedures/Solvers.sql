@@ -52,6 +52,34 @@ CREATE PROCEDURE GetConflictsForConfigInJob(IN _jobId INT, IN _configId INT, IN
 	;
   END //
 
+-- Gets the number of conflicting benchmarks every config in a job was run against for a stage.
+-- Configs without conflicting benchmarks are left out.
+DROP PROCEDURE IF EXISTS GetConflictsByConfigInJob //
+CREATE PROCEDURE GetConflictsByConfigInJob(IN _jobId INT, IN _stageNumber INT)
+  BEGIN
+	SELECT jpsd_o.config_id, COUNT(DISTINCT jp_o.bench_id) AS conflicting_benchmarks
+	FROM job_pairs jp_o
+		JOIN jobpair_stage_data jpsd_o ON jpsd_o.jobpair_id=jp_o.id
+		JOIN job_attributes ja_o ON ja_o.pair_id=jp_o.id
+		JOIN
+			(SELECT jp.bench_id
+			FROM jobs j join job_pairs jp ON j.id=jp.job_id
+				JOIN jobpair_stage_data jpsd ON jpsd.jobpair_id=jp.id
+				JOIN job_attributes ja ON ja.pair_id=jp.id
+			WHERE j.id=_jobId
+				AND ja.stage_number=_stageNumber
+				AND ja.attr_key='starexec-result'
+				AND ja.attr_value!='starexec-unknown'
+			GROUP BY jp.bench_id
+			HAVING COUNT(DISTINCT ja.attr_value) > 1) AS conflicting
+		ON jp_o.bench_id=conflicting.bench_id
+	WHERE jp_o.job_id=_jobId
+		AND ja_o.attr_key='starexec-result'
+		AND ja_o.attr_value!='starexec-unknown'
+	GROUP BY jpsd_o.config_id
+	;
+  END //
+
 -- Gets the data for conflicting benchmarks in the job.
 -- A conflicting benchmark is a benchmark for which two solvers gave different results.
 DROP PROCEDURE IF EXISTS GetConflictingBenchmarksForConfigInJob //
@@ -613,3 +641,27 @@ CREATE PROCEDURE RebuildSolver(IN _solverId INT)
 			AND build_status = 2  -- 2 = Built by StarExec
 		;
 	END //
+
+-- Gets the IDs and names of the solvers in a space with IDs greater than the given one, in order of ID
+DROP PROCEDURE IF EXISTS GetSolverListingInSpace //
+CREATE PROCEDURE GetSolverListingInSpace(IN _spaceId INT, IN _afterId INT, IN _limit INT)
+	BEGIN
+		SELECT solvers.id, solvers.name
+		FROM solver_assoc
+			JOIN solvers ON solvers.id=solver_assoc.solver_id
+		WHERE solver_assoc.space_id=_spaceId AND solver_assoc.solver_id>_afterId
+		ORDER BY solver_assoc.solver_id
+		LIMIT _limit;
+	END //
+
+-- Gets the IDs and names of the solvers a user owns with IDs greater than the given one, in order of ID.
+-- Deleted and recycled solvers are left out
+DROP PROCEDURE IF EXISTS GetSolverListingByOwner //
+CREATE PROCEDURE GetSolverListingByOwner(IN _userId INT, IN _afterId INT, IN _limit INT)
+	BEGIN
+		SELECT id, name
+		FROM solvers
+		WHERE user_id=_userId AND id>_afterId AND deleted=false AND recycled=false
+		ORDER BY id
+		LIMIT _limit;
+	END //
@@ -334,6 +334,18 @@ CREATE PROCEDURE GetSubSpaceIds(IN _spaceId INT)
 		SELECT child_id AS id FROM set_assoc WHERE space_id=_spaceId;
 	END //
 
+-- Gets every parent/child edge in the hierarchy rooted at the given space, along with the
+-- name of the child. Used to resolve many subspace paths with a single query
+DROP PROCEDURE IF EXISTS GetSubSpaceTreeEdges //
+CREATE PROCEDURE GetSubSpaceTreeEdges(IN _spaceId INT)
+	BEGIN
+		SELECT set_assoc.space_id AS parent_id, spaces.id, spaces.name
+		FROM closure
+			JOIN set_assoc ON set_assoc.space_id=closure.descendant
+			JOIN spaces ON spaces.id=set_assoc.child_id
+		WHERE closure.ancestor=_spaceId;
+	END //
+
 -- Returns the recursive number of subspaces a user can see in a given space
 -- Author: Eric Burns
 DROP PROCEDURE IF EXISTS GetSubspaceCountBySpaceIdInHierarchy //
@@ -624,3 +636,22 @@ CREATE PROCEDURE CreateUsersSpace(IN _communityId INT)
 		);
 		CALL AssociateSpaces(_communityId, _newSpaceId);
 	END //
+
+-- Gets the IDs and names of the subspaces of a space with IDs greater than the given one, in order of ID.
+-- Only subspaces the user can see are included: public ones, ones the user is a member of, or all of them for admins
+DROP PROCEDURE IF EXISTS GetSubspaceListingInSpace //
+CREATE PROCEDURE GetSubspaceListingInSpace(IN _spaceId INT, IN _userId INT, IN _afterId INT, IN _limit INT)
+	BEGIN
+		SELECT spaces.id, spaces.name
+		FROM set_assoc
+			JOIN spaces ON spaces.id=set_assoc.child_id
+		WHERE set_assoc.space_id=_spaceId AND set_assoc.child_id>_afterId
+			AND (spaces.public_access=true
+				OR EXISTS (SELECT 1 FROM user_assoc WHERE user_assoc.space_id=spaces.id AND user_assoc.user_id=_userId)
+				OR (SELECT (role='admin')
+					FROM user_roles
+					JOIN users ON users.email=user_roles.email
+					WHERE users.id=_userId))
+		ORDER BY set_assoc.child_id
+		LIMIT _limit;
+	END //
@@ -411,3 +411,15 @@ CREATE PROCEDURE SetUserReportSubscription(IN _userId INT, IN _willBeSubscribed
 		SET subscribed_to_reports = _willBeSubscribed
 		WHERE id = _userId;
 	END //
+
+-- Gets the IDs and full names of the users in a space with IDs greater than the given one, in order of ID
+DROP PROCEDURE IF EXISTS GetUserListingInSpace //
+CREATE PROCEDURE GetUserListingInSpace(IN _spaceId INT, IN _afterId INT, IN _limit INT)
+	BEGIN
+		SELECT users.id, CONCAT(first_name, ' ', last_name) AS name
+		FROM user_assoc
+			JOIN users ON users.id=user_assoc.user_id
+		WHERE user_assoc.space_id=_spaceId AND user_assoc.user_id>_afterId
+		ORDER BY user_assoc.user_id
+		LIMIT _limit;
+	END //
@@ -15,6 +15,8 @@ import org.starexec.exceptions.StarExecException;
 import org.starexec.jobs.JobManager;
 import org.starexec.jobs.ProcessingManager;
 import org.starexec.logger.StarLogger;
+import org.starexec.util.JobArchiveCache;
+import org.starexec.util.LaneScheduler;
 import org.starexec.util.Mail;
 import org.starexec.util.RobustRunnable;
 import org.starexec.util.Util;
@@ -41,31 +43,74 @@ class PeriodicTasks {
 
     private static final StarLogger log = StarLogger.getLogger(PeriodicTasks.class);
 
+    /**
+     * The lanes periodic tasks run in. Every lane has its own threads, so the tasks that keep pairs moving through the
+     * cluster never wait behind slow housekeeping.
+     */
+    enum Lane {
+        // tasks that nodes and users are waiting on
+        CRITICAL(R.PERIODIC_CRITICAL_THREADS, Thread.NORM_PRIORITY + 2),
+        // housekeeping and reports
+        BACKGROUND(R.PERIODIC_BACKGROUND_THREADS, Thread.MIN_PRIORITY);
+
+        public final int threads;
+        public final int priority;
+
+        Lane(int threads, int priority) {
+            this.threads = threads;
+            this.priority = priority;
+        }
+    }
+
+    static final LaneScheduler scheduler = new LaneScheduler("periodic");
+
+    static {
+        for (Lane lane : Lane.values()) {
+            scheduler.addLane(lane.name(), lane.threads, R.PERIODIC_LANE_QUEUE, lane.priority);
+        }
+    }
+
+    /**
+     * Schedules every periodic task that should run on this instance. A task that is still running when it is due
+     * again skips that run.
+     */
+    static void scheduleAll() {
+        for (PeriodicTask task : PeriodicTask.values()) {
+            if (R.IS_FULL_STAREXEC_INSTANCE || !task.fullInstanceOnly) {
+                scheduler.schedule(task.name(), task.lane.name(), task.task, task.delay, task.period.get(), task.unit);
+            }
+        }
+    }
+
     // Enum constants of all the periodic tasks.
     enum PeriodicTask {
         // period needs to be a supplier since CLUSTER_UPDATE_PERIOD is dynamically set by configuration.
-        UPDATE_CLUSTER(true, UPDATE_CLUSTER_TASK, 0, () -> R.CLUSTER_UPDATE_PERIOD, TimeUnit.SECONDS),
-        SUBMIT_JOBS(true, SUBMIT_JOBS_TASK, 0, () -> 60, TimeUnit.SECONDS),
-        POST_PROCESS_JOBS(true, POST_PROCESS_JOBS_TASK, 0, () -> 45, TimeUnit.SECONDS),
-        RERUN_FAILED_PAIRS(true, RERUN_FAILED_PAIRS_TASK, 0, () -> 90, TimeUnit.MINUTES),
-        FIND_BROKEN_JOB_PAIRS(true, FIND_BROKEN_JOB_PAIRS_TASK, 0, () -> 3, TimeUnit.HOURS),
-        SEND_ERROR_LOGS(true, SEND_ERROR_LOGS_TASK, 0, () -> 1, TimeUnit.DAYS),
-        CLEAR_TEMPORARY_FILES(false, CLEAR_TEMPORARY_FILES_TASK, 0, () -> 3, TimeUnit.HOURS),
-        CLEAR_JOB_LOG(false, CLEAR_JOB_LOG_TASK, 0, () -> 7, TimeUnit.DAYS),
-        CLEAR_JOB_GRAPHS(false, CLEAR_JOB_GRAPHS_TASK, 0, () -> 7, TimeUnit.DAYS),
-	FIND_BROKEN_NODES(true, FIND_BROKEN_NODES_TASK, 0, () -> 6, TimeUnit.HOURS),
-        CLEAR_JOB_SCRIPTS(false, CLEAR_JOB_SCRIPTS_TASK, 0, () -> 12, TimeUnit.HOURS),
-        CLEAN_DATABASE(false, CLEAN_DATABASE_TASK, 0, () -> 7, TimeUnit.DAYS),
-        CREATE_WEEKLY_REPORTS(false, CREATE_WEEKLY_REPORTS_TASK, 0, () -> 1, TimeUnit.DAYS),
-        DELETE_OLD_ANONYMOUS_LINKS(false, DELETE_OLD_ANONYMOUS_LINKS_TASK, 0, () -> 30, TimeUnit.DAYS),
-        UPDATE_USER_DISK_SIZES(false, UPDATE_USER_DISK_SIZES_TASK, 0, () -> 1, TimeUnit.DAYS),
-        UPDATE_COMMUNITY_STATS(false, UPDATE_COMMUNITY_STATS_TASK, 0, () -> 6, TimeUnit.HOURS),
-        SAVE_ANALYTICS(false, SAVE_ANALYTICS_TASK, 10, () -> 10, TimeUnit.MINUTES),
-        NOTIFY_USERS_OF_JOBS(false, NOTIFY_USERS_OF_JOBS_TASK, 0, () -> 5, TimeUnit.MINUTES),
-	GENERATE_CLUSTER_GRAPH(true, GENERATE_CLUSTER_GRAPH_TASK, 5, () -> 5, TimeUnit.SECONDS);
+        UPDATE_CLUSTER(true, Lane.CRITICAL, UPDATE_CLUSTER_TASK, 0, () -> R.CLUSTER_UPDATE_PERIOD, TimeUnit.SECONDS),
+        SUBMIT_JOBS(true, Lane.CRITICAL, SUBMIT_JOBS_TASK, 0, () -> 60, TimeUnit.SECONDS),
+        POST_PROCESS_JOBS(true, Lane.CRITICAL, POST_PROCESS_JOBS_TASK, 0, () -> 45, TimeUnit.SECONDS),
+        RERUN_FAILED_PAIRS(true, Lane.BACKGROUND, RERUN_FAILED_PAIRS_TASK, 0, () -> 90, TimeUnit.MINUTES),
+        FIND_BROKEN_JOB_PAIRS(true, Lane.BACKGROUND, FIND_BROKEN_JOB_PAIRS_TASK, 0, () -> 3, TimeUnit.HOURS),
+        SEND_ERROR_LOGS(true, Lane.BACKGROUND, SEND_ERROR_LOGS_TASK, 0, () -> 1, TimeUnit.DAYS),
+        CLEAR_TEMPORARY_FILES(false, Lane.BACKGROUND, CLEAR_TEMPORARY_FILES_TASK, 0, () -> 3, TimeUnit.HOURS),
+        CLEAR_JOB_LOG(false, Lane.BACKGROUND, CLEAR_JOB_LOG_TASK, 0, () -> 7, TimeUnit.DAYS),
+        CLEAR_JOB_GRAPHS(false, Lane.BACKGROUND, CLEAR_JOB_GRAPHS_TASK, 0, () -> 7, TimeUnit.DAYS),
+	FIND_BROKEN_NODES(true, Lane.BACKGROUND, FIND_BROKEN_NODES_TASK, 0, () -> 6, TimeUnit.HOURS),
+        CLEAR_JOB_SCRIPTS(false, Lane.BACKGROUND, CLEAR_JOB_SCRIPTS_TASK, 0, () -> 12, TimeUnit.HOURS),
+        CLEAN_DATABASE(false, Lane.BACKGROUND, CLEAN_DATABASE_TASK, 0, () -> 7, TimeUnit.DAYS),
+        CREATE_WEEKLY_REPORTS(false, Lane.BACKGROUND, CREATE_WEEKLY_REPORTS_TASK, 0, () -> 1, TimeUnit.DAYS),
+        DELETE_OLD_ANONYMOUS_LINKS(false, Lane.BACKGROUND, DELETE_OLD_ANONYMOUS_LINKS_TASK, 0, () -> 30, TimeUnit.DAYS),
+        UPDATE_USER_DISK_SIZES(false, Lane.BACKGROUND, UPDATE_USER_DISK_SIZES_TASK, 0, () -> 1, TimeUnit.DAYS),
+        UPDATE_COMMUNITY_STATS(false, Lane.BACKGROUND, UPDATE_COMMUNITY_STATS_TASK, 0, () -> 6, TimeUnit.HOURS),
+        SAVE_ANALYTICS(false, Lane.BACKGROUND, SAVE_ANALYTICS_TASK, 10, () -> 10, TimeUnit.MINUTES),
+        NOTIFY_USERS_OF_JOBS(false, Lane.BACKGROUND, NOTIFY_USERS_OF_JOBS_TASK, 0, () -> 5, TimeUnit.MINUTES),
+        SAVE_LOAD_BALANCE_STATE(true, Lane.CRITICAL, SAVE_LOAD_BALANCE_STATE_TASK, 10, () -> 10, TimeUnit.MINUTES),
+        LOG_QUERY_METRICS(false, Lane.BACKGROUND, LOG_QUERY_METRICS_TASK, 60, () -> 60, TimeUnit.MINUTES),
+        EVICT_JOB_ARCHIVES(false, Lane.BACKGROUND, EVICT_JOB_ARCHIVES_TASK, 0, () -> 1, TimeUnit.HOURS),
+	GENERATE_CLUSTER_GRAPH(true, Lane.BACKGROUND, GENERATE_CLUSTER_GRAPH_TASK, 5, () -> 5, TimeUnit.SECONDS);
 	//CLEAR_JOB_SCRIPTS(true, CLEAR_JOB_SCRIPTS_TASK, 0, () -> 7, TimeUnit.DAYS); 
 
         public final boolean fullInstanceOnly;
+        public final Lane lane;
         public final Runnable task;
         public final int delay;
         public final Supplier<Integer> period;
@@ -74,13 +119,15 @@ class PeriodicTasks {
         /**
          *
          * @param fullInstanceOnly true if this task should only be run when a working backend is configured
+         * @param lane the lane the task runs in.
          * @param task the runnable that will be run for the task.
          * @param delay initial delay before the task should be run.
          * @param period the period between each successive run of the task.
          * @param unit the time unit to use for period and delay.
          */
-        PeriodicTask(boolean fullInstanceOnly, Runnable task, int delay, Supplier<Integer> period, TimeUnit unit) {
+        PeriodicTask(boolean fullInstanceOnly, Lane lane, Runnable task, int delay, Supplier<Integer> period, TimeUnit unit) {
             this.fullInstanceOnly = fullInstanceOnly;
+            this.lane = lane;
             this.delay = delay;
             this.period = period;
             this.unit = unit;
@@ -382,6 +429,33 @@ class PeriodicTasks {
 		}
 	};
 
+	private static final String saveLoadBalanceStateTask = "saveLoadBalanceStateTask";
+	// Create a task that saves a snapshot of the load balancing data of every queue
+	private static final Runnable SAVE_LOAD_BALANCE_STATE_TASK = new RobustRunnable(saveLoadBalanceStateTask) {
+		@Override
+		protected void dorun() {
+			JobManager.saveLoadBalanceMonitors();
+		}
+	};
+
+	private static final String logQueryMetricsTask = "logQueryMetricsTask";
+	// Create a task that logs the stored procedures taking up the most database time
+	private static final Runnable LOG_QUERY_METRICS_TASK = new RobustRunnable(logQueryMetricsTask) {
+		@Override
+		protected void dorun() {
+			QueryMetrics.logTopStatements(R.QUERY_METRICS_LOG_TOP);
+		}
+	};
+
+	private static final String evictJobArchivesTask = "evictJobArchivesTask";
+	// Create a task that keeps the cached archives of job output within their disk budget
+	private static final Runnable EVICT_JOB_ARCHIVES_TASK = new RobustRunnable(evictJobArchivesTask) {
+		@Override
+		protected void dorun() {
+			JobArchiveCache.evict(R.JOB_ARCHIVE_CACHE_BYTES);
+		}
+	};
+
 	// Create a task that notifies Users of status changes to Jobs they have
 	// subscribed to
 	private static final String notifyUsersOfJobsTask = "notifyUsersOfJobsTask";
@@ -60,6 +60,7 @@ public class RESTHelpers {
 	private static final String SORT_COLUMN = "iSortCol_0";
 	private static final String SORT_COLUMN_OVERRIDE = "sort_by";
 	private static final String SORT_COLUMN_OVERRIDE_DIR = "sort_dir";
+	private static final String PAGE_CURSOR = "cursor";
 	private static final String STARTING_RECORD = "iDisplayStart";
 	private static final String RECORDS_PER_PAGE = "iDisplayLength";
 	/**
@@ -430,14 +431,7 @@ public class RESTHelpers {
 		if (query == null) {
 			return null;
 		}
-		query.setTotalRecords(Jobs.getJobPairCountInJobSpaceByStage(jobSpaceId, stageNumber));
-
-		if (query.getTotalRecords() > R.MAXIMUM_JOB_PAIRS) {
-			//there are too many job pairs to display quickly, so just don't query for them
-			JsonObject ob = new JsonObject();
-			ob.addProperty("maxpairs", true);
-			return ob;
-		}
+		query.setTotalRecords(Jobs.getApproximateJobPairCountInJobSpaceByStage(jobSpaceId, stageNumber));
 
 		String sortOverride = request.getParameter(SORT_COLUMN_OVERRIDE);
 		if (sortOverride != null) {
@@ -446,25 +440,42 @@ public class RESTHelpers {
 		}
 
 		List<JobPair> jobPairsToDisplay;
+		PageCursor nextCursor = null;
 		// Retrieves the relevant Job objects to use in constructing the JSON to
 		// send to the client
 		int[] totals = new int[2];
 
 		if (!syncResults) {
-			jobPairsToDisplay = Jobs.getJobPairsForNextPageInJobSpace(query, jobSpaceId, stageNumber, wallclock, primitivesToAnonymize);
 			if (!query.hasSearchQuery()) {
 				query.setTotalRecordsAfterQuery(query.getTotalRecords());
 			} else {
 				query.setTotalRecordsAfterQuery(Jobs.getJobPairCountInJobSpaceByStage(jobSpaceId, query.getSearchQuery(), stageNumber));
 			}
+			// pages are gotten by seeking from the page the client has, so any number of pairs can be shown
+			PageCursor cursor = PageCursor.decode(request.getParameter(PAGE_CURSOR));
+			jobPairsToDisplay = Jobs.getJobPairsForNextPageInJobSpace(query, jobSpaceId, stageNumber, wallclock, primitivesToAnonymize, cursor);
+			nextCursor = Jobs.getJobPairPageCursor(query, jobSpaceId, stageNumber, wallclock, primitivesToAnonymize, jobPairsToDisplay);
 		} else {
+			if (query.getTotalRecords() > R.MAXIMUM_JOB_PAIRS) {
+				//there are too many job pairs to synchronize quickly, so just don't query for them
+				JsonObject ob = new JsonObject();
+				ob.addProperty("maxpairs", true);
+				return ob;
+			}
 			log.debug("returning synchronized results");
 			jobPairsToDisplay = Jobs.getSynchronizedJobPairsForNextPageInJobSpace(query, jobSpaceId, wallclock, stageNumber, totals, primitivesToAnonymize);
 			query.setTotalRecords(totals[0]);
 			query.setTotalRecordsAfterQuery(totals[1]);
 		}
 
-		return convertJobPairsToJsonObject(jobPairsToDisplay, query, wallclock, 0, primitivesToAnonymize);
+		if (jobPairsToDisplay == null) {
+			return null;
+		}
+		JsonObject nextPage = convertJobPairsToJsonObject(jobPairsToDisplay, query, wallclock, 0, primitivesToAnonymize);
+		if (nextCursor != null) {
+			nextPage.addProperty(PAGE_CURSOR, nextCursor.encode());
+		}
+		return nextPage;
 	}
 
 	/**
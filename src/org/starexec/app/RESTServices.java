@@ -3,6 +3,7 @@ package org.starexec.app;
 import com.google.gson.*;
 import com.google.gson.annotations.Expose;
 import org.apache.commons.io.FileUtils;
+import org.jboss.resteasy.annotations.GZIP;
 import org.starexec.command.Connection;
 import org.starexec.constants.R;
 import org.starexec.constants.R.DefaultSettingAttribute;
@@ -20,6 +21,7 @@ import org.starexec.exceptions.StarExecException;
 import org.starexec.exceptions.RESTException;
 import org.starexec.jobs.ClearCacheManager;
 import org.starexec.jobs.JobManager;
+import org.starexec.jobs.ProcessingManager;
 import org.starexec.logger.StarLevel;
 import org.starexec.logger.StarLogger;
 import org.starexec.test.integration.TestManager;
@@ -733,8 +735,10 @@ public class RESTServices {
 		log.debug(method, "Inputs: jobId="+jobId+" jobSpaceId="+jobSpaceId+" stageId="+stageNumber);
 
 		Map<String, SimpleMatrixElement> benchSolverConfigElementMap = new HashMap<>();
-		// Get all the latest new completed job pairs.
-		List<JobPair> completedJobPairs = Jobs.getNewCompletedPairsDetailed(jobId, 0);
+		// Get all the latest new completed job pairs. A complete job's pairs come from its result cube
+		JobResultCube cube = JobResultCube.get(jobId);
+		List<JobPair> completedJobPairs =
+				cube != null ? cube.getPairsForStage(stageNumber) : Jobs.getNewCompletedPairsDetailed(jobId, 0);
 		for (JobPair pair : completedJobPairs) {
 			JoblineStage stage = pair.getStageFromNumber(stageNumber);
 			if (stage != null) {
@@ -1715,6 +1719,93 @@ public class RESTServices {
 		return nextDataTablesPage == null ? gson.toJson(ERROR_DATABASE) : gson.toJson(nextDataTablesPage);
 	}
 
+	/**
+	 * Lists the IDs and names of the primitives of some type in a space, a page at a time
+	 *
+	 * @param spaceId The ID of the space
+	 * @param primType The type of primitive: solvers, benchmarks, jobs, users or spaces
+	 * @param after Only primitives with IDs greater than this are listed. Omit to start at the beginning
+	 * @param limit The most primitives to list, up to R.LISTING_PAGE_SIZE
+	 * @param request HTTP request
+	 * @return A JSON object with the id and name of every primitive on the page, in order of ID, and the ID to pass as
+	 * after to get the next page, which is left out on the last page. A ValidatorStatusCode on failure
+	 */
+	@GET
+	@GZIP
+	@Path("/space/{id}/{primType}/listing")
+	@Produces("application/json")
+	public String getPrimitiveListingInSpace(@PathParam("id") int spaceId, @PathParam("primType") String primType, @QueryParam("after") int after, @QueryParam("limit") int limit, @Context HttpServletRequest request) {
+		int userId = SessionUtil.getUserId(request);
+		ValidatorStatusCode status = SpaceSecurity.canUserSeeSpace(spaceId, userId);
+		if (!status.isSuccess()) {
+			return gson.toJson(status);
+		}
+		return getPrimitiveListing(primType, false, spaceId, userId, after, limit);
+	}
+
+	/**
+	 * Lists the IDs and names of the primitives of some type a user owns, a page at a time
+	 *
+	 * @param usrId The ID of the user
+	 * @param primType The type of primitive: solvers, benchmarks or jobs
+	 * @param after Only primitives with IDs greater than this are listed. Omit to start at the beginning
+	 * @param limit The most primitives to list, up to R.LISTING_PAGE_SIZE
+	 * @param request HTTP request
+	 * @return The page, as for getPrimitiveListingInSpace
+	 */
+	@GET
+	@GZIP
+	@Path("/users/{id}/{primType}/listing")
+	@Produces("application/json")
+	public String getPrimitiveListingForUser(@PathParam("id") int usrId, @PathParam("primType") String primType, @QueryParam("after") int after, @QueryParam("limit") int limit, @Context HttpServletRequest request) {
+		int userId = SessionUtil.getUserId(request);
+		ValidatorStatusCode status = UserSecurity.canViewUserPrimitives(usrId, userId);
+		if (!status.isSuccess()) {
+			return gson.toJson(status);
+		}
+		return getPrimitiveListing(primType, true, usrId, userId, after, limit);
+	}
+
+	private String getPrimitiveListing(String primType, boolean byOwner, int id, int userId, int after, int limit) {
+		Primitive type;
+		switch (primType) {
+		case "solvers":
+			type = Primitive.SOLVER;
+			break;
+		case "benchmarks":
+			type = Primitive.BENCHMARK;
+			break;
+		case "jobs":
+			type = Primitive.JOB;
+			break;
+		case "users":
+			type = Primitive.USER;
+			break;
+		case "spaces":
+			type = Primitive.SPACE;
+			break;
+		default:
+			type = null;
+		}
+		if (type == null || !PrimitiveListings.canList(type, byOwner)) {
+			return gson.toJson(new ValidatorStatusCode(false, "Primitives of type " + primType + " can not be listed"));
+		}
+		if (limit <= 0 || limit > R.LISTING_PAGE_SIZE) {
+			limit = R.LISTING_PAGE_SIZE;
+		}
+		JsonArray prims = PrimitiveListings.getPage(type, byOwner, id, userId, Math.max(after, 0), limit);
+		if (prims == null) {
+			return gson.toJson(ERROR_DATABASE);
+		}
+		JsonObject page = new JsonObject();
+		page.add("prims", prims);
+		// a short page is the last one
+		if (prims.size() == limit) {
+			page.addProperty("next", prims.get(prims.size() - 1).getAsJsonObject().get("id").getAsInt());
+		}
+		return gson.toJson(page);
+	}
+
 	/**
 	 * Gets the permissions a given user has in a given space
 	 *
@@ -4765,6 +4856,29 @@ public class RESTServices {
 		return gson.toJson(new ValidatorStatusCode(true,"Solver cache clearing jobs started successfully"));
 	}
 
+	/**
+	 * Evicts one solver from the solver cache of all compute nodes, for example after its files were changed by hand
+	 * @param id The ID of the solver
+	 * @param request HTTP request
+	 * @return Json ValidatorStatusCode representing success or failure
+	 */
+	@POST
+	@Path("/solvers/{id}/evictcache")
+	@Produces("application/json")
+	public String evictSolverFromCache(@PathParam("id") int id, @Context HttpServletRequest request) {
+		int userId=SessionUtil.getUserId(request);
+		if (!GeneralSecurity.hasAdminWritePrivileges(userId)) {
+			return gson.toJson(ERROR_INVALID_PERMISSIONS);
+		}
+		try {
+			ClearCacheManager.evictSolverOnAllNodes(id);
+		} catch (Exception e) {
+			log.error(e.getMessage(),e);
+			return gson.toJson(new ValidatorStatusCode(false, "There was an internal error evicting the solver from the cache"));
+		}
+		return gson.toJson(new ValidatorStatusCode(true,"Solver cache eviction jobs started successfully"));
+	}
+
 	/**
 	 * Toggles debug mode on or off
 	 * @param value True to turn debug mode on and false to turn it off
@@ -5326,6 +5440,104 @@ public class RESTServices {
 		}
 	}
 
+	/**
+	 * @param request HTTP request
+	 * @return JSON object with the state of the database connection pool and the latency of getting connections
+	 */
+	@GET
+	@Path("/admin/metrics/connectionPool")
+	@Produces("application/json")
+	public String getConnectionPoolMetrics(@Context HttpServletRequest request) {
+		int userId = SessionUtil.getUserId(request);
+		if (!GeneralSecurity.hasAdminReadPrivileges(userId)) {
+			return gson.toJson(ERROR_INVALID_PERMISSIONS);
+		}
+		JsonObject metrics = Common.getPoolMetrics();
+		return metrics == null ? gson.toJson(ERROR_DATABASE) : gson.toJson(metrics);
+	}
+
+	/**
+	 * @param request HTTP request
+	 * @return JSON of the call count, latency percentiles, rows and connection wait of every stored procedure called
+	 * since startup, the one taking the most time first
+	 */
+	@GET
+	@Path("/admin/metrics/queries")
+	@Produces("application/json")
+	public String getQueryMetrics(@Context HttpServletRequest request) {
+		int userId = SessionUtil.getUserId(request);
+		if (!GeneralSecurity.hasAdminReadPrivileges(userId)) {
+			return gson.toJson(ERROR_INVALID_PERMISSIONS);
+		}
+		return gson.toJson(QueryMetrics.toJson());
+	}
+
+	/**
+	 * @param request HTTP request
+	 * @return JSON of the threads and queue of every lane periodic tasks run in, and of how often every periodic task
+	 * ran, skipped a run, and how long its runs took and waited to start
+	 */
+	@GET
+	@Path("/admin/metrics/periodicTasks")
+	@Produces("application/json")
+	public String getPeriodicTaskMetrics(@Context HttpServletRequest request) {
+		int userId = SessionUtil.getUserId(request);
+		if (!GeneralSecurity.hasAdminReadPrivileges(userId)) {
+			return gson.toJson(ERROR_INVALID_PERMISSIONS);
+		}
+		return gson.toJson(PeriodicTasks.scheduler.toJson());
+	}
+
+	/**
+	 * @param request HTTP request
+	 * @return JSON of the solvers the compute nodes reported having in their solver caches, with their sizes and last
+	 * uses
+	 */
+	@GET
+	@Path("/admin/metrics/solverCache")
+	@Produces("application/json")
+	public String getSolverCacheMetrics(@Context HttpServletRequest request) {
+		int userId = SessionUtil.getUserId(request);
+		if (!GeneralSecurity.hasAdminReadPrivileges(userId)) {
+			return gson.toJson(ERROR_INVALID_PERMISSIONS);
+		}
+		JsonArray entries = Cluster.getSolverCacheEntries();
+		return entries == null ? gson.toJson(ERROR_DATABASE) : gson.toJson(entries);
+	}
+
+	/**
+	 * @param request HTTP request
+	 * @return JSON of how often the pairs on every compute node found their benchmarks in the benchmark cache of the
+	 * node, and how often they copied them from the shared file system
+	 */
+	@GET
+	@Path("/admin/metrics/benchmarkCache")
+	@Produces("application/json")
+	public String getBenchmarkCacheMetrics(@Context HttpServletRequest request) {
+		int userId = SessionUtil.getUserId(request);
+		if (!GeneralSecurity.hasAdminReadPrivileges(userId)) {
+			return gson.toJson(ERROR_INVALID_PERMISSIONS);
+		}
+		JsonArray counts = Cluster.getBenchmarkCacheCounts();
+		return counts == null ? gson.toJson(ERROR_DATABASE) : gson.toJson(counts);
+	}
+
+	/**
+	 * @param request HTTP request
+	 * @return JSON of how many stages of every job being post processed were processed, failed and remain, and how
+	 * many stages per second are being processed
+	 */
+	@GET
+	@Path("/admin/metrics/postProcessing")
+	@Produces("application/json")
+	public String getPostProcessingMetrics(@Context HttpServletRequest request) {
+		int userId = SessionUtil.getUserId(request);
+		if (!GeneralSecurity.hasAdminReadPrivileges(userId)) {
+			return gson.toJson(ERROR_INVALID_PERMISSIONS);
+		}
+		return gson.toJson(ProcessingManager.getProgressJson());
+	}
+
 	/**
 	 * @return JSON representation of current status
 	 */
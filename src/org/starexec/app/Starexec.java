@@ -8,10 +8,15 @@ import org.starexec.constants.PaginationQueries;
 import org.starexec.constants.R;
 import org.starexec.data.database.Analytics;
 import org.starexec.data.database.Common;
+import org.starexec.data.database.PairReports;
 import org.starexec.data.database.Users;
 import org.starexec.exceptions.StarExecException;
+import org.starexec.jobs.JobManager;
+import org.starexec.jobs.ProcessingManager;
 import org.starexec.logger.StarLogger;
 import org.starexec.test.integration.TestManager;
+import org.starexec.util.ArchiveExtractor;
+import org.starexec.util.LaneScheduler;
 import org.starexec.util.Util;
 import org.starexec.util.Validator;
 
@@ -19,10 +24,6 @@ import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
 import java.io.File;
 import java.io.IOException;
-import java.util.EnumSet;
-import java.util.Set;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 // import java.lang.reflect.Field;
@@ -35,7 +36,7 @@ import java.util.concurrent.TimeUnit;
  */
 public class Starexec implements ServletContextListener {
 	private StarLogger log;
-	private final ScheduledExecutorService taskScheduler = Executors.newScheduledThreadPool(10);
+	private final LaneScheduler taskScheduler = PeriodicTasks.scheduler;
 	// private Session session; // GridEngine session
 
 	@Override
@@ -70,6 +71,18 @@ public class Starexec implements ServletContextListener {
 			log.debug("Releasing Util threadpool...");
 			Util.shutdownThreadPool();
 
+			log.debug("Releasing jobscript writer threadpool...");
+			JobManager.shutdownScriptWriterPool();
+
+			log.debug("Stopping job pair report writer...");
+			PairReports.shutdown();
+
+			log.debug("Releasing archive extraction threadpool...");
+			ArchiveExtractor.shutdown();
+
+			log.debug("Stopping post processing workers...");
+			ProcessingManager.shutdown();
+
 			R.BACKEND.destroyIf();
 			// Wait for the task scheduler to finish
 			taskScheduler.awaitTermination(10, TimeUnit.SECONDS);
@@ -143,7 +156,16 @@ public class Starexec implements ServletContextListener {
 		if (R.IS_FULL_STAREXEC_INSTANCE) {
 			// log.debug( "\n\nR.BACKEND_ROOT: "+R.BACKEND_ROOT+"\n" );
 
+			// compute nodes present this secret with their results, so it must never be left empty
+			if (Util.isNullOrEmpty(R.REPORT_TOKEN)) {
+				log.fatal("!!! Cluster.Report.Token is not set !!! Cannot continue !!!");
+				throw new IllegalStateException("Cluster.Report.Token must be set to a secret of its own");
+			}
+
 			R.BACKEND.initialize(R.BACKEND_ROOT);
+
+			// pick up fairness between users where the last run left off
+			JobManager.loadLoadBalanceMonitors();
 		}
 
 		try {
@@ -184,12 +206,7 @@ public class Starexec implements ServletContextListener {
 
 		// Gets all the periodic tasks and runs them.
 		// If you need to create a new periodic task, add another enum instance to PeriodicTasks.PeriodicTask
-		Set<PeriodicTasks.PeriodicTask> periodicTasks = EnumSet.allOf(PeriodicTasks.PeriodicTask.class);
-		for (PeriodicTasks.PeriodicTask task : periodicTasks) {
-			if (R.IS_FULL_STAREXEC_INSTANCE || !task.fullInstanceOnly) {
-				taskScheduler.scheduleWithFixedDelay(task.task, task.delay, task.period.get(), task.unit);
-			}
-		}
+		PeriodicTasks.scheduleAll();
 
 		try {
 			PaginationQueries.loadPaginationQueries();
@@ -1,6 +1,8 @@
 package org.starexec.backend;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -55,7 +57,24 @@ public interface Backend{
      * @return an identifier for the task that submitScript starts, should allow a user to identify which task/script to kill
      **/
     int submitScript(String scriptPath, String workingDirectoryPath, String logPath);
-    
+
+    /**
+     * Submits a batch of jobscripts. Backends that can submit many scripts with a single
+     * command should override this; by default every request goes through submitScript.
+     * Backends that can steer a script toward some nodes without requiring them should
+     * honor the preferred nodes of a request; the default ignores them.
+     * @param requests the scripts to submit
+     * @return one execution code per request, in the same order as the requests. Codes for
+     * scripts that could not be submitted satisfy isError
+     **/
+    default List<Integer> submitScripts(List<SubmitRequest> requests) {
+        List<Integer> execIds = new ArrayList<>(requests.size());
+        for (SubmitRequest r : requests) {
+            execIds.add(submitScript(r.getScriptPath(), r.getWorkingDirectoryPath(), r.getLogPath()));
+        }
+        return execIds;
+    }
+
 
     /**
      * @param execId an int that identifies the pair to be killed, should match what is returned by submitScript
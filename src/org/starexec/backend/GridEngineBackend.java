@@ -12,8 +12,12 @@ import org.starexec.logger.StarLogger;
 import org.starexec.util.Util;
 import org.starexec.util.Validator;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.*;
 import java.util.regex.Pattern;
 
@@ -154,6 +158,81 @@ public class GridEngineBackend implements Backend{
 		}
 	}
 
+	/**
+	 * Submits every request with the same qsub options used by submitScript. The qsub calls are
+	 * run by a single bash process, so Tomcat forks once per batch instead of once per script,
+	 * but qsub itself still runs and contacts the qmaster once per script. SGE array jobs are not
+	 * used, since every pair needs its own execution ID for killPair and getActiveExecutionIds.
+	 * Each qsub call writes exactly one line to stdout: the job ID on success, or the
+	 * error output of qsub on failure. Preferred nodes become a soft hostname request.
+	 * @param requests the scripts to submit
+	 * @return one execution code per request, in order. -1 for any script that was not submitted.
+	 */
+	@Override
+	public List<Integer> submitScripts(List<SubmitRequest> requests) {
+		final String methodName = "submitScripts";
+		List<Integer> execIds = new ArrayList<>(requests.size());
+		if (requests.isEmpty()) {
+			return execIds;
+		}
+		StringBuilder sb = new StringBuilder();
+		for (SubmitRequest r : requests) {
+			sb.append("echo \"$(qsub -b n -v TMPDIR=");
+			sb.append(shellQuote(r.getWorkingDirectoryPath()));
+			sb.append(" -o ");
+			sb.append(shellQuote(r.getLogPath()));
+			if (!r.getPreferredNodes().isEmpty()) {
+				// a soft request, so the scheduler picks one of these hosts when one has a free slot and any
+				// other host of the queue when none does
+				sb.append(" -soft -l hostname=");
+				sb.append(shellQuote(String.join("|", r.getPreferredNodes())));
+				sb.append(" -hard");
+			}
+			sb.append(" -terse ");
+			sb.append(shellQuote(r.getScriptPath()));
+			sb.append(" 2>&1 | tr '\\n' ' ')\"\n");
+		}
+		try {
+			Process p = Util.executeCommandAndReturnProcess(new String[] {"bash", "-s"}, null, null);
+			try (Writer stdin = new OutputStreamWriter(p.getOutputStream())) {
+				stdin.write(sb.toString());
+			}
+			try (BufferedReader stdout = new BufferedReader(new InputStreamReader(p.getInputStream()))) {
+				String line;
+				while (execIds.size() < requests.size() && (line = stdout.readLine()) != null) {
+					line = line.trim();
+					if (Validator.isValidInteger(line)) {
+						execIds.add(Integer.parseInt(line));
+					} else {
+						log.error(methodName, "qsub rejected " + requests.get(execIds.size()).getScriptPath() + ": " + line);
+						execIds.add(-1);
+					}
+				}
+			}
+			p.waitFor();
+		} catch (IOException e) {
+			log.error(methodName, "Could not run batched qsub", e);
+		} catch (InterruptedException e) {
+			log.error(methodName, "Interrupted waiting for batched qsub", e);
+			Thread.currentThread().interrupt();
+		}
+		// anything we did not hear back about was not submitted
+		while (execIds.size() < requests.size()) {
+			execIds.add(-1);
+		}
+		log.debug(methodName, "Ran qsub for " + requests.size() + " scripts from a single bash process");
+		return execIds;
+	}
+
+	/**
+	 * Wraps a string in single quotes so that bash treats it as a single literal word.
+	 * @param s the string to quote
+	 * @return the quoted string
+	 */
+	private static String shellQuote(String s) {
+		return "'" + s.replace("'", "'\\''") + "'";
+	}
+
 
     /**
      * Kills all running pairs
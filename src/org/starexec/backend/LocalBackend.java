@@ -7,11 +7,25 @@ import org.starexec.util.Util;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This backend implementation does not rely on any external system outside of basic Unix
- * utilities. It uses a single static queue and node and runs a single job pair at a time
+ * utilities. It uses a single static queue and node, and runs as many jobs at once as it has slots.
+ * Every slot has a thread that takes the next job as soon as it is submitted and waits for it to end,
+ * and its own share of the cores of the machine, which the job is pinned to with taskset when it is
+ * available. Slots are only made while the cores and memory every slot should have are there. The memory is only
+ * used to count the slots, and is not enforced on the scripts a slot runs: a job pair is held to the memory limit of
+ * its own job, like on the grid.
+ * <p>
+ * Every job pair runs in a sandbox of its own, as one of the sandbox users in R.LOCAL_BACKEND_SANDBOX_USERS, and
+ * there is a sandbox for every slot while there are users for them. Slots without a free sandbox run the other
+ * scripts, like post processing, and pairs wait for a sandbox to be free while the scripts behind them start.
  *
  */
 public class LocalBackend implements Backend {
@@ -23,7 +37,12 @@ public class LocalBackend implements Backend {
 		public String workingDirectoryPath = "";
 		public String logPath = "";
 		public Process process;
-		
+		public boolean killed = false;
+		// whether the script is a jobscript, which needs a sandbox
+		public boolean pair = false;
+		// the index of the sandbox the pair runs in, or -1 while it has none
+		public int sandbox = -1;
+
 	@Override
 	public String toString() {
 			StringBuilder sb = new StringBuilder();
@@ -36,33 +55,40 @@ public class LocalBackend implements Backend {
 			}
 			return sb.toString();
 		}
-	}	
-	private final Map<Integer, LocalJob> activeIds = new HashMap<>();
-	
+	}
+	/**
+	 * Every job that has been submitted to the backend and has not yet completed or been killed
+	 */
+	private final ConcurrentMap<Integer, LocalJob> activeIds = new ConcurrentHashMap<>();
+
 	private String NODE_NAME = "n001";
 	/**
-	 * An ordered queue of all jobs that have been submitted to the backend and have not yet
-	 * completed. Jobs are kept in this queue until they are finished executing, meaning
-	 * that the running job will be the head of the queue
+	 * The users job pairs run as, one for every sandbox. Set when the backend is initialized
 	 */
-	final java.util.Queue<LocalJob> jobsToRun = new ArrayDeque<>();
-	
-	private int curID = 1;
+	private List<String> sandboxUsers = Collections.emptyList();
+
+	/**
+	 * An ordered queue of the jobs that are waiting for a slot. Slots take the first job in the
+	 * queue that can run, so jobs start in the order they were submitted, except that pairs wait
+	 * while every sandbox is in use. Guarded by itself, and notified whenever a job is added or a
+	 * sandbox is freed
+	 */
+	final Deque<LocalJob> jobsToRun = new ArrayDeque<>();
+
+	// the indexes of the sandboxes no pair is running in. Guarded by jobsToRun
+	private final Deque<Integer> freeSandboxes = new ArrayDeque<>();
+
+	private final AtomicInteger curID = new AtomicInteger(1);
 	/**
 	 * Generates a new ID that is unique among all jobs currently enqueued/ running
 	 * @return
-	 * @throws Exception
 	 */
-	private int generateExecId() throws Exception {
-		if (activeIds.size()==Integer.MAX_VALUE) {
-			throw new Exception("Cannot support more that Integer.MAX_VALUE pairs");
-		}
+	private int generateExecId() {
 		while (true) {
-			curID= (curID+1) % Integer.MAX_VALUE;
-			// make sure the ID is not 0 when we return it
-			curID = Math.max(curID, 1);
-			if (!activeIds.containsKey(curID)) {
-				return curID;
+			// make sure the ID is not 0 or negative when we return it
+			int id = curID.updateAndGet(i -> i == Integer.MAX_VALUE ? 1 : i + 1);
+			if (!activeIds.containsKey(id)) {
+				return id;
 			}
 		}
 	}
@@ -71,64 +97,201 @@ public class LocalBackend implements Backend {
 	public boolean isError(int execCode) {
 		return execCode<=0;
 	}
-	
+
+	/**
+	 * Gets how many slots to run jobs in. A slot is only made while there are enough cores and memory
+	 * left for it, and there is always at least one.
+	 * @param configured The slots asked for, or 0 for as many as the cores and memory allow
+	 * @param coresPerSlot The cores every slot should have
+	 * @param cores The cores of the machine
+	 * @param memoryPerSlot The megabytes of memory every slot should have, or 0 to not budget memory
+	 * @param memory The megabytes of memory of the machine
+	 * @return The number of slots
+	 */
+	public static int getSlotCount(int configured, int coresPerSlot, int cores, long memoryPerSlot, long memory) {
+		int slots = cores / Math.max(1, coresPerSlot);
+		if (memoryPerSlot > 0) {
+			slots = (int) Math.min(slots, memory / memoryPerSlot);
+		}
+		if (configured > 0) {
+			slots = Math.min(slots, configured);
+		}
+		return Math.max(1, slots);
+	}
+
+	/**
+	 * @param slot The index of a slot
+	 * @param coresPerSlot The cores every slot has
+	 * @param cores The cores of the machine
+	 * @return The cores of the slot as a CPU list for taskset, like 4-7. Slots share cores when there
+	 * are more slots than the cores allow
+	 */
+	public static String getSlotCores(int slot, int coresPerSlot, int cores) {
+		coresPerSlot = Math.max(1, Math.min(coresPerSlot, cores));
+		int first = (slot * coresPerSlot) % (cores - cores % coresPerSlot);
+		int last = first + coresPerSlot - 1;
+		return first == last ? String.valueOf(first) : first + "-" + last;
+	}
+
+	/**
+	 * @param configured The sandbox users from the configuration, separated by commas, or nothing to use the two
+	 * sandbox users of the cluster
+	 * @param slots The number of slots
+	 * @return The users job pairs run as, one for every sandbox. There are no more sandboxes than slots
+	 */
+	public static List<String> getSandboxUsers(String configured, int slots) {
+		List<String> users = new ArrayList<>();
+		for (String user : configured.split(",")) {
+			user = user.trim();
+			if (!user.isEmpty() && !users.contains(user)) {
+				users.add(user);
+			}
+		}
+		if (users.isEmpty()) {
+			users.add(R.SANDBOX_USER_ONE);
+			users.add(R.SANDBOX_USER_TWO);
+		}
+		return new ArrayList<>(users.subList(0, Math.min(Math.max(1, slots), users.size())));
+	}
+
+	/**
+	 * @param scriptPath The path of a script
+	 * @return true if the script is the jobscript of a pair, named like R.JOBFILE_FORMAT
+	 */
+	public static boolean isJobScript(String scriptPath) {
+		String[] format = R.JOBFILE_FORMAT.split("%d", 2);
+		String name = new File(scriptPath).getName();
+		return format.length == 2 && name.length() > format[0].length() + format[1].length() &&
+				name.startsWith(format[0]) && name.endsWith(format[1]);
+	}
+
+	/**
+	 * @return true if taskset can be run on this machine
+	 */
+	private static boolean hasTaskset() {
+		try {
+			return new ProcessBuilder("taskset", "-V").redirectErrorStream(true).start().waitFor() == 0;
+		} catch (IOException e) {
+			return false;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
 	/**
 	 * Runs a local job. This function does not return until the job is complete.
 	 * @param j
+	 * @param cores The cores of the slot the job runs on, which its solvers are limited to
+	 * @param pin Whether to pin the whole job to the cores with taskset
 	 */
-	private void runJob(LocalJob j){
+	private void runJob(LocalJob j, String cores, boolean pin){
 		try {
-			j.process = Util.executeCommandAndReturnProcess(new String[] {j.scriptPath}, null, new File(j.workingDirectoryPath));
-	    	ProcessBuilder builder = new ProcessBuilder(j.scriptPath);
-	    	builder.redirectErrorStream(true);
-	    	builder.directory(new File(j.workingDirectoryPath));
-	    	builder.redirectOutput(new File(j.logPath));
-	    	j.process = builder.start();
+			synchronized (j) {
+				// the job may have been killed between leaving the queue and getting here
+				if (j.killed) {
+					return;
+				}
+				List<String> command = new ArrayList<>();
+				if (pin) {
+					command.add("taskset");
+					command.add("-c");
+					command.add(cores);
+				}
+				command.add(j.scriptPath);
+				ProcessBuilder builder = new ProcessBuilder(command);
+				builder.redirectErrorStream(true);
+				builder.directory(new File(j.workingDirectoryPath));
+				builder.redirectOutput(new File(j.logPath));
+				// job pairs run their solvers on these cores, instead of the ones a sandbox uses on a grid node.
+				// This is set even without taskset, or every slot would run its solvers on the same cores
+				builder.environment().put("STAREXEC_CORES", cores);
+				if (j.sandbox >= 0) {
+					// and in this sandbox, instead of one of the two a grid node has
+					builder.environment().put("STAREXEC_SANDBOX", String.valueOf(j.sandbox + 1));
+					builder.environment().put("STAREXEC_SANDBOX_USER", sandboxUsers.get(j.sandbox));
+				}
+				j.process = builder.start();
+			}
 			j.process.waitFor();
+		} catch (InterruptedException e) {
+			log.error(e.getMessage(),e);
+			Thread.currentThread().interrupt();
 		} catch (Exception e) {
 			log.error(e.getMessage(),e);
 		}
 	}
-	
-	private synchronized void removeJob(LocalJob j) {
-		jobsToRun.remove(j);
-		activeIds.remove(j.execId);
+
+	/**
+	 * Takes the first job in jobsToRun that can run, waiting until there is one. A job pair can
+	 * run while a sandbox is free, and takes the sandbox until finishJob is called for it.
+	 */
+	private LocalJob takeJob() throws InterruptedException {
+		synchronized (jobsToRun) {
+			while (true) {
+				Iterator<LocalJob> waiting = jobsToRun.iterator();
+				while (waiting.hasNext()) {
+					LocalJob job = waiting.next();
+					if (!job.pair || !freeSandboxes.isEmpty()) {
+						waiting.remove();
+						if (job.pair) {
+							job.sandbox = freeSandboxes.poll();
+						}
+						return job;
+					}
+				}
+				jobsToRun.wait();
+			}
+		}
+	}
+
+	private void finishJob(LocalJob job) {
+		activeIds.remove(job.execId, job);
+		if (job.sandbox >= 0) {
+			synchronized (jobsToRun) {
+				freeSandboxes.add(job.sandbox);
+				jobsToRun.notifyAll();
+			}
+		}
 	}
-	
+
 	/**
-	 * Loops forever, executing the jobs in jobsToRun. Sleeps for 20 seconds at a time if the queue is empty, and
-	 * runs a single job at a time when it is not empty.
+	 * Runs the jobs in jobsToRun one after another, waiting for the next one that can run when
+	 * there are none. Returns only when interrupted.
+	 * @param cores The cores of the slot
+	 * @param pin Whether to pin jobs to the cores with taskset
 	 */
-	@SuppressWarnings("InfiniteLoopStatement")
-	private void runJobsForever() {
-		while (true) {
+	private void runJobsForever(String cores, boolean pin) {
+		while (!Thread.currentThread().isInterrupted()) {
+			LocalJob job;
 			try {
-				if (jobsToRun.isEmpty()) {
-					Thread.sleep(R.JOB_SUBMISSION_PERIOD * 1000);
-					continue;
-				}
-			
-			} catch (Exception e) {
-				log.error(e.getMessage(),e);
-				continue;
+				job = takeJob();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			try {
+				runJob(job, cores, pin);
+			} finally {
+				finishJob(job);
 			}
-			LocalJob job = jobsToRun.peek();
-			runJob(job);
-			removeJob(job);
-			
 		}
 	}
 
 	@Override
-	public synchronized int submitScript(String scriptPath, String workingDirectoryPath, String logPath) {
+	public int submitScript(String scriptPath, String workingDirectoryPath, String logPath) {
 		try {
 			LocalJob j = new LocalJob();
 			j.execId = generateExecId();
 			j.scriptPath = scriptPath;
 			j.workingDirectoryPath = workingDirectoryPath;
 			j.logPath = logPath;
+			j.pair = isJobScript(scriptPath);
 			activeIds.put(j.execId, j);
-			jobsToRun.add(j);
+			synchronized (jobsToRun) {
+				jobsToRun.add(j);
+				jobsToRun.notifyAll();
+			}
 			return j.execId;
 		} catch (Exception e) {
 			log.error(e.getMessage(),e);
@@ -137,47 +300,45 @@ public class LocalBackend implements Backend {
 	}
 
 	@Override
-	public synchronized boolean killPair(int execId) {
+	public boolean killPair(int execId) {
 		try {
-			if (activeIds.containsKey(execId)) {
-				LocalJob job = activeIds.get(execId);
-				
-				if (job.process!=null) {
-					job.process.destroyForcibly();
+			LocalJob job = activeIds.remove(execId);
+			boolean waiting;
+			synchronized (jobsToRun) {
+				waiting = job != null && jobsToRun.remove(job);
+			}
+			if (job != null && !waiting) {
+				// a slot already took the job
+				synchronized (job) {
+					job.killed = true;
+					if (job.process!=null) {
+						job.process.destroyForcibly();
+					}
 				}
-				jobsToRun.remove(job);
-				activeIds.remove(execId);
-			}	
+			}
 			return true;
 		} catch (Exception e) {
 			log.debug(e.getMessage(), e);
 			return false;
 		}
-		
+
 	}
 
 	@Override
-	public synchronized boolean killAll() {
-		try {
-			while (!jobsToRun.isEmpty()) {
-				LocalJob j = jobsToRun.poll();
-				if (j.process!=null) {
-					j.process.destroyForcibly();
-				}
-				activeIds.remove(j.execId);
-			}
-			return true;
-		} catch (Exception e) {
-			log.debug(e.getMessage(), e);
-			return false;
+	public boolean killAll() {
+		boolean success = true;
+		for (Integer execId : getActiveExecutionIds()) {
+			success = killPair(execId) && success;
 		}
-		
+		return success;
 	}
 
 	@Override
-	public synchronized String getRunningJobsStatus() {
+	public String getRunningJobsStatus() {
 		StringBuilder sb = new StringBuilder();
-		for (LocalJob j : jobsToRun) {
+		List<LocalJob> jobs = new ArrayList<>(activeIds.values());
+		jobs.sort(Comparator.comparingInt(j -> j.execId));
+		for (LocalJob j : jobs) {
 			sb.append(j.toString());
 			sb.append("\n");
 		}
@@ -185,13 +346,11 @@ public class LocalBackend implements Backend {
 	}
 
 	@Override
-	public Set<Integer> getActiveExecutionIds() throws IOException {
+	public Set<Integer> getActiveExecutionIds() {
 		// we don't want to return the keyset of activeIds, since
 		// changes to that set are reflected in the map, meaning returning it
 		// makes activeIds externally mutable
-		Set<Integer> newSet = new HashSet<>();
-		newSet.addAll(activeIds.keySet());
-		return newSet;
+		return new HashSet<>(activeIds.keySet());
 	}
 
 	@Override
@@ -241,7 +400,7 @@ public class LocalBackend implements Backend {
 	@Override
 	public void moveNode(String nodeName, String queueName) {
 	}
-	
+
 	@Override
 	public void destroyIf() {
 		// no deconstruction needed
@@ -249,8 +408,9 @@ public class LocalBackend implements Backend {
 
 	/**
 	 * BACKEND_ROOT is not meaningful for this backend and will be ignored.
-	 * Initialization creates the execution loop for local jobs
+	 * Initialization starts a thread for every slot
 	 */
+	@SuppressWarnings("deprecation")
 	@Override
 	public void initialize(String BACKEND_ROOT) {
 		// set the name of the single node used by this backend to the name of the system
@@ -260,14 +420,42 @@ public class LocalBackend implements Backend {
 		} catch (Exception e) {
 			log.error(e.getMessage(), e);
 		}
-		final Runnable runLocalJobsRunnable = new RobustRunnable("runLocalJobsRunnable") {
-			@Override
-			protected void dorun() {
-				log.info("initializing local job execution");
-				runJobsForever();
+		int cores = Runtime.getRuntime().availableProcessors();
+		long memory = 0;
+		OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+		if (os instanceof com.sun.management.OperatingSystemMXBean) {
+			memory = Util.bytesToMegabytes(((com.sun.management.OperatingSystemMXBean) os).getTotalPhysicalMemorySize());
+		}
+		// without knowing the memory of the machine, do not hold back slots for it
+		long memoryPerSlot = memory > 0 ? R.LOCAL_BACKEND_MEMORY_PER_SLOT : 0;
+		int slots = getSlotCount(R.LOCAL_BACKEND_SLOTS, R.LOCAL_BACKEND_CORES_PER_SLOT, cores, memoryPerSlot, memory);
+		boolean pin = hasTaskset();
+		List<String> users = getSandboxUsers(R.LOCAL_BACKEND_SANDBOX_USERS, slots);
+		synchronized (jobsToRun) {
+			sandboxUsers = users;
+			for (int i = 0; i < users.size(); i++) {
+				freeSandboxes.add(i);
 			}
-		};
-		new Thread(runLocalJobsRunnable).start();
+			jobsToRun.notifyAll();
+		}
+		if (users.size() < slots) {
+			log.warn("initialize", "there are " + slots + " slots but only " + users.size() +
+			         " sandbox users, so no more than " + users.size() + " job pairs run at once");
+		}
+		log.info("initializing local job execution with " + slots + " slots and " + users.size() +
+		         " sandboxes" + (pin ? "" : ", without taskset"));
+		for (int i = 0; i < slots; i++) {
+			final String slotCores = getSlotCores(i, R.LOCAL_BACKEND_CORES_PER_SLOT, cores);
+			final Runnable runLocalJobsRunnable = new RobustRunnable("runLocalJobsRunnable" + i) {
+				@Override
+				protected void dorun() {
+					runJobsForever(slotCores, pin);
+				}
+			};
+			Thread t = new Thread(runLocalJobsRunnable, "local-backend-slot-" + i);
+			t.setDaemon(true);
+			t.start();
+		}
 		log.debug("returning from local backend initialization");
 	}
 
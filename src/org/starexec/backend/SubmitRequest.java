@@ -0,0 +1,62 @@
+package org.starexec.backend;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Holds everything a backend needs to submit a single jobscript. Used to hand
+ * a whole batch of scripts to Backend.submitScripts at once.
+ */
+public class SubmitRequest {
+	private final String scriptPath;
+	private final String workingDirectoryPath;
+	private final String logPath;
+	private final List<String> preferredNodes;
+
+	/**
+	 * @param scriptPath the full path to the jobscript file
+	 * @param workingDirectoryPath path to a directory that can be used for scratch space (read/write)
+	 * @param logPath path to the file that should be used to store the jobscript log
+	 */
+	public SubmitRequest(String scriptPath, String workingDirectoryPath, String logPath) {
+		this(scriptPath, workingDirectoryPath, logPath, Collections.emptyList());
+	}
+
+	/**
+	 * @param scriptPath the full path to the jobscript file
+	 * @param workingDirectoryPath path to a directory that can be used for scratch space (read/write)
+	 * @param logPath path to the file that should be used to store the jobscript log
+	 * @param preferredNodes names of the worker nodes the script should run on if one of them has room. This is only
+	 * a hint: the script may run on any node of its queue
+	 */
+	public SubmitRequest(String scriptPath, String workingDirectoryPath, String logPath, List<String> preferredNodes) {
+		this.scriptPath = scriptPath;
+		this.workingDirectoryPath = workingDirectoryPath;
+		this.logPath = logPath;
+		this.preferredNodes = Collections.unmodifiableList(preferredNodes);
+	}
+
+	public String getScriptPath() {
+		return scriptPath;
+	}
+
+	public String getWorkingDirectoryPath() {
+		return workingDirectoryPath;
+	}
+
+	public String getLogPath() {
+		return logPath;
+	}
+
+	/**
+	 * @return the names of the worker nodes the script should preferably run on, empty for no preference
+	 */
+	public List<String> getPreferredNodes() {
+		return preferredNodes;
+	}
+
+	@Override
+	public String toString() {
+		return scriptPath + " " + workingDirectoryPath + " " + logPath;
+	}
+}
@@ -50,6 +50,8 @@ public class C {
 	public static final String URL_GETPRIM = "services/space/{id}/{type}/pagination";
 	public static final String URL_GETPRIMJSON = "services/details/{type}/{id}/";
 	public static final String URL_GETUSERPRIM = "services/users/{id}/{type}/pagination";
+	public static final String URL_GETPRIMLISTING = "services/space/{id}/{type}/listing";
+	public static final String URL_GETUSERPRIMLISTING = "services/users/{id}/{type}/listing";
 	public static final String URL_GET_BENCH_UPLOAD_STATUS = "services/benchmarks/uploadDescription/{statusId}";
 	public static final String URL_GETID = "services/users/getid";
 	public static final String URL_COPYBENCH = "services/spaces/{spaceID}/add/benchmark";
@@ -1,9 +1,7 @@
 package org.starexec.command;
 
-import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonPrimitive;
 import org.apache.commons.compress.archivers.zip.ZipFile;
 import org.apache.commons.compress.utils.IOUtils;
 import org.apache.http.Header;
@@ -1880,7 +1878,8 @@ public class Connection {
 	}
 
 	/**
-	 * Lists the IDs and names of some kind of primitives in a given space
+	 * Lists the IDs and names of some kind of primitives in a given space. The primitives are fetched a page at a
+	 * time and read as they arrive, so long listings do not have to be held in memory as text
 	 *
 	 * @return A Map mapping integer ids to string names
 	 * @author Eric Burns
@@ -1890,11 +1889,6 @@ public class Connection {
 		Map<Integer, String> prims = new HashMap<>();
 		HttpResponse response = null;
 		try {
-
-			Map<String, String> urlParams = new HashMap<>();
-
-			urlParams.put(C.FORMPARAM_TYPE, type);
-
 			String URL;
 			if (forUser) {
 				int id = getUserID();
@@ -1902,99 +1896,41 @@ public class Connection {
 					errorMap.put(id, null);
 					return errorMap;
 				}
-
-				urlParams.put(C.FORMPARAM_ID, String.valueOf(id));
-				URL = baseURL + C.URL_GETUSERPRIM;
+				URL = baseURL + C.URL_GETUSERPRIMLISTING.replace("{id}", String.valueOf(id));
 			} else {
-				urlParams.put(C.FORMPARAM_ID, spaceID.toString());
-				URL = baseURL + C.URL_GETPRIM;
+				URL = baseURL + C.URL_GETPRIMLISTING.replace("{id}", spaceID.toString());
 			}
+			URL = URL.replace("{type}", type);
 			// in the absence of limit, we want all the primitives
 			int maximum = Integer.MAX_VALUE;
 			if (limit != null) {
 				maximum = limit;
 			}
 
-			// need to specify the number of columns according to what
-			// GetNextPageOfPrimitives in RESTHelpers
-			// expects
-			String columns = "0";
-			switch (type) {
-			case "solvers":
-				columns = "2";
-				break;
-			case "users":
-				columns = "3";
-				break;
-			case "benchmarks":
-				columns = "2";
-				break;
-			case "jobs":
-				columns = "6";
-				break;
-			case "spaces":
-				columns = "2";
-				break;
-			}
+			int after = 0;
+			while (prims.size() < maximum) {
+				int pageSize = Math.min(maximum - prims.size(), R.LISTING_PAGE_SIZE);
+				HttpGet get = new HttpGet(URL + "?after=" + after + "&limit=" + pageSize);
+				get = (HttpGet) setHeaders(get);
+				get.addHeader("Accept-Encoding", "gzip");
 
-			URL = URL.replace("{id}", urlParams.get(C.PARAM_ID));
-			URL = URL.replace("{type}", urlParams.get("type"));
-			HttpPost post = new HttpPost(URL);
-			post = (HttpPost) setHeaders(post);
-
-			List<NameValuePair> params = new ArrayList<>();
-
-			params.add(new BasicNameValuePair("sEcho", "1"));
-			params.add(new BasicNameValuePair("iColumns", columns));
-			params.add(new BasicNameValuePair("sColumns", ""));
-			params.add(new BasicNameValuePair("iDisplayStart", "0"));
-
-			params.add(new BasicNameValuePair("iDisplayLength", String.valueOf(maximum)));
-			params.add(new BasicNameValuePair("iSortCol_0", "0"));
-			params.add(new BasicNameValuePair("sSearch", ""));
-			params.add(new BasicNameValuePair("sSortDir_0", "asc"));
-
-			post.setEntity(new UrlEncodedFormEntity(params, "UTF-8"));
-
-			response = executeGetOrPost(post);
-
-			JsonElement jsonE = JsonHandler.getJsonString(response);
-			JsonObject obj = jsonE.getAsJsonObject();
-			String message = JsonHandler.getMessageOfResponse(obj);
-
-			// if we got back a ValidatorStatusCode, there was an error
-			if (message != null) {
-				setLastError(message);
-				errorMap.put(Status.ERROR_SERVER, null);
-				return errorMap;
-			}
-
-			// we should get back a jsonObject which has a jsonArray of
-			// primitives labeled 'aaData'
-			JsonArray json = jsonE.getAsJsonObject().get("aaData").getAsJsonArray();
-			JsonArray curPrim;
-			String name;
-			Integer id;
-			JsonPrimitive element;
-
-			// the array is itself composed of arrays, with each array
-			// containing multiple elements
-			// describing a single primitive
-			for (JsonElement x : json) {
-				curPrim = x.getAsJsonArray();
-				for (JsonElement y : curPrim) {
-					element = y.getAsJsonPrimitive();
-
-					id = HTMLParser.extractIDFromJson(element.getAsString());
-					name = HTMLParser.extractNameFromJson(element.getAsString(), urlParams.get("type"));
-
-					// if the element has an ID and a name, save them
-					if (id != null && name != null) {
-						prims.put(id, name);
-					}
+				response = executeGetOrPost(get);
+				JsonObject page = JsonHandler.readPrimListing(response, prims, maximum);
+				safeCloseResponse(response);
+				response = null;
 
+				// if we got back a ValidatorStatusCode, there was an error
+				String message = JsonHandler.getMessageOfResponse(page);
+				if (message != null) {
+					setLastError(message);
+					errorMap.put(Status.ERROR_SERVER, null);
+					return errorMap;
 				}
-
+				// the last page does not say where the next one starts
+				if (!page.has("next")) {
+					break;
+				}
+				after = page.get("next").getAsInt();
 			}
 
 			return prims;
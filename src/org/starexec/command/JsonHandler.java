@@ -3,13 +3,18 @@ package org.starexec.command;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
+import org.apache.http.client.entity.GzipDecompressingEntity;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Map.Entry;
 
 public class JsonHandler {
@@ -103,4 +108,62 @@ public class JsonHandler {
 		}
 		return attrs;
 	}
+
+	/**
+	 * Reads a page of a listing of primitives as it arrives, without holding the whole response in memory. The
+	 * response may be compressed with gzip.
+	 *
+	 * @param response The response holding a JSON object with the primitives of the page in a "prims" array of
+	 *        objects with an id and a name
+	 * @param prims The map to add the ID and name of every primitive on the page to
+	 * @param maximum The most primitives the map should hold. Primitives past this are skipped
+	 * @return The members of the object other than "prims", such as where the next page starts or a
+	 *         ValidatorStatusCode
+	 * @throws IOException If the response could not be read
+	 */
+	public static JsonObject readPrimListing(HttpResponse response, Map<Integer, String> prims, int maximum)
+			throws IOException {
+		HttpEntity entity = response.getEntity();
+		Header encoding = entity.getContentEncoding();
+		if (encoding != null && encoding.getValue().toLowerCase().contains("gzip")) {
+			entity = new GzipDecompressingEntity(entity);
+		}
+		JsonObject rest = new JsonObject();
+		JsonParser parser = new JsonParser();
+		try (JsonReader reader = new JsonReader(new InputStreamReader(entity.getContent(), "UTF-8"))) {
+			reader.beginObject();
+			while (reader.hasNext()) {
+				String member = reader.nextName();
+				if (!member.equals("prims")) {
+					rest.add(member, parser.parse(reader));
+					continue;
+				}
+				reader.beginArray();
+				while (reader.hasNext()) {
+					Integer id = null;
+					String name = null;
+					reader.beginObject();
+					while (reader.hasNext()) {
+						switch (reader.nextName()) {
+						case "id":
+							id = reader.nextInt();
+							break;
+						case "name":
+							name = reader.nextString();
+							break;
+						default:
+							reader.skipValue();
+						}
+					}
+					reader.endObject();
+					if (id != null && name != null && prims.size() < maximum) {
+						prims.put(id, name);
+					}
+				}
+				reader.endArray();
+			}
+			reader.endObject();
+		}
+		return rest;
+	}
 }
@@ -193,10 +193,14 @@ function makeLockFile {
 	log "putting this job into sandbox $1 $$"
 }
 
-#first argument is the sandbox (1 or 2) and second argument is the pair ID
+#first argument is the sandbox (1 or 2). The local backend also gives the user of its sandbox as the second argument,
+#which names the lock
 function trySandbox {
 
-	if (($1 == 1)); then
+	if [ -n "$2" ]; then
+		LOCK_DIR=$WORKING_DIR_BASE"/${2}lock.lock"
+		LOCK_USED=$WORKING_DIR_BASE"/${2}lock.active"
+	elif (($1 == 1)); then
 		LOCK_DIR="$SANDBOX_LOCK_DIR"
 		LOCK_USED="$SANDBOX_LOCK_USED"
 	else
@@ -252,16 +256,31 @@ function trySandbox {
 # figures out which sandbox the given job pair should run in.
 # If no sandbox can be secured, terminate this jobpair
 function initSandbox {
+	if [ -n "$STAREXEC_SANDBOX_USER" ]; then
+		# the local backend hands every pair it runs a sandbox of its own, with its own user and cores
+		if (trySandbox "$STAREXEC_SANDBOX" "$STAREXEC_SANDBOX_USER"); then
+			SANDBOX=$STAREXEC_SANDBOX
+			SANDBOX_PARAM=$STAREXEC_SANDBOX_USER
+			CORES=${STAREXEC_CORES:-0-3}
+			WORKING_DIR=$WORKING_DIR_BASE'/'$STAREXEC_SANDBOX_USER
+		else
+			log "unable to secure sandbox $STAREXEC_SANDBOX for this job!"
+			sendNode "$HOSTNAME" "0"
+			sendStatus "$ERROR_RUNSCRIPT"
+			sendStatusToLaterStages "$ERROR_RUNSCRIPT" 0
+			exit 0
+		fi
 	#try to get sandbox1 first
-	if (trySandbox 1); then
+	elif (trySandbox 1); then
 		SANDBOX=1
 		SANDBOX_PARAM=$SANDBOX_USER_ONE
-		CORES="0-3"
+		# the local backend hands every slot its own cores
+		CORES=${STAREXEC_CORES:-0-3}
 		WORKING_DIR=$WORKING_DIR_BASE'/sandbox'
 	elif (trySandbox 2); then
 		SANDBOX=2
 		SANDBOX_PARAM=$SANDBOX_USER_TWO
-		CORES="4-7"
+		CORES=${STAREXEC_CORES:-4-7}
 		WORKING_DIR=$WORKING_DIR_BASE'/sandbox2'
 	else #failed to get either sandbox
 		log "unable to secure any sandbox for this job!"
@@ -418,7 +437,9 @@ function cleanWorkspace {
 		sudo -u $2 find /tmp/* -user $2 -exec rm -fr {} \; 2>/dev/null
 		cd $WORKING_DIR
 
-		if ((SANDBOX == 1)); then
+		if [ -n "$STAREXEC_SANDBOX_USER" ]; then
+			safeRmLock "$WORKING_DIR_BASE/${STAREXEC_SANDBOX_USER}lock.lock"
+		elif ((SANDBOX == 1)); then
 			safeRmLock "$SANDBOX_LOCK_DIR"
 		elif ((SANDBOX == 2)); then
 			safeRmLock "$SANDBOX2_LOCK_DIR"
@@ -427,48 +448,150 @@ function cleanWorkspace {
 	log "execution host $HOSTNAME cleaned"
 }
 
-function dbExec {
-	local ATTEMPT=2
-	while
-		((ATTEMPT != 0)) &&
-		! (mysql -u"$DB_USER" -p"$DB_PASS" -h "$REPORT_HOST" "$DB_NAME" -e "$1")
-	do
-		log "Unable to connect to database."
-		sleep 20
+# Results are sent to the head node over HTTP (see org.starexec.servlets.ReportResults) instead of
+# through the database. Records are queued in REPORT_QUEUE, one per line with tab separated fields,
+# and flushReport sends everything queued in a single request, so a stage is reported all at once.
+# The jobscript flushes before each solver run, after each stage and when it exits. The queue lives
+# only in this shell, so queueReport also flushes once REPORT_FLUSH_RECORDS records are queued or
+# REPORT_FLUSH_SECONDS have passed since the last flush. A pair killed outright (e.g. by SIGKILL)
+# therefore loses at most the records of the last REPORT_FLUSH_SECONDS, and never any from before
+# the solver it was running.
+# Every report is numbered, and the head node writes each number of a run only once. Records whose
+# report may have reached the head node wait in REPORT_SENDING and are sent again under the same
+# number, apart from anything queued since, so a lost response never gets them written twice.
+REPORT_QUEUE=""
+REPORT_QUEUE_RECORDS=0
+REPORT_SENDING=""
+REPORT_SENDING_SEQUENCE=0
+REPORT_SEQUENCE=0
+REPORT_RUN=$(cat /proc/sys/kernel/random/uuid)
+REPORT_FLUSH_RECORDS=50
+REPORT_FLUSH_SECONDS=60
+REPORT_FLUSHED_AT=$SECONDS
+
+# Sets REPORT_RECORD to a record made of the given fields. Tabs and newlines are replaced with spaces,
+# except that the last field may contain tabs.
+function makeRecord {
+	REPORT_RECORD="$1"
+	shift
+	while (($# > 0)); do
+		local FIELD=${1//$'\n'/ }
+		if (($# > 1)); then
+			FIELD=${FIELD//$'\t'/ }
+		fi
+		REPORT_RECORD+=$'\t'"$FIELD"
+		shift
+	done
+}
+
+# Adds a record to the queue
+# $1 The type of record
+# $@ The fields of the record
+function queueReport {
+	makeRecord "$@"
+	REPORT_QUEUE+="$REPORT_RECORD"$'\n'
+	((++REPORT_QUEUE_RECORDS))
+	if ((REPORT_QUEUE_RECORDS >= REPORT_FLUSH_RECORDS || SECONDS - REPORT_FLUSHED_AT >= REPORT_FLUSH_SECONDS)); then
+		# try once, so that an unreachable head node does not hold up the pair
+		flushReport 1
+	fi
+}
+
+# Sends records to the head node
+# $1 The records, one per line
+# $2 The number of times to try while the head node cannot be reached
+# $3 The number of the report
+# returns 0 if the records were saved, 1 if the head node rejected them, and 2 if it could not be reached
+function sendReport {
+	local ATTEMPT=$2
+	local RESPONSE
+	local CODE
+	while ((ATTEMPT > 0)); do
+		RESPONSE=$(printf '%s' "$1" | curl -sS -w '\n%{http_code}' -H "X-StarExec-Report-Token: $REPORT_TOKEN" \
+			-H 'Content-Type: text/plain; charset=UTF-8' --data-binary @- "$REPORT_URL?pair=$PAIR_ID&run=$REPORT_RUN&seq=$3")
+		CODE=${RESPONSE##*$'\n'}
+		RESPONSE=${RESPONSE%$'\n'*}
+		RESPONSE=${RESPONSE%$'\n'}
+		case $CODE in
+		200)
+			if [[ -n $RESPONSE ]]; then
+				log "the head node could not save part of the report {"
+				echo "$RESPONSE"
+				log "}"
+			fi
+			return 0
+			;;
+		000|502|503|504)
+			log "unable to send report to $REPORT_URL (status $CODE)"
+			;;
+		*)
+			log "the head node rejected the report with status $CODE. The report was {"
+			echo "$1"
+			log "}"
+			return 1
+			;;
+		esac
 		((--ATTEMPT))
-		false # set $? to fail on last iteration
+		if ((ATTEMPT > 0)); then
+			sleep 20
+		fi
 	done
+	return 2
 }
 
-# Will strip quotes from arguments passed
-function dbEscape {
-	echo ${@//[\'\"]/}
+# Sends every queued record to the head node. If the head node cannot be reached, the records are
+# sent again, under the same number, before the next report.
+# $1 The number of times to try, 3 if not given
+function flushReport {
+	REPORT_FLUSHED_AT=$SECONDS
+	local RESULT=0
+	if [[ -n $REPORT_SENDING ]]; then
+		sendReport "$REPORT_SENDING" "${1:-3}" $REPORT_SENDING_SEQUENCE
+		RESULT=$?
+		if ((RESULT == 2)); then
+			return $RESULT
+		fi
+		REPORT_SENDING=""
+	fi
+	if [[ -z $REPORT_QUEUE ]]; then
+		return $RESULT
+	fi
+	REPORT_SENDING=$REPORT_QUEUE
+	REPORT_SENDING_SEQUENCE=$((++REPORT_SEQUENCE))
+	REPORT_QUEUE=""
+	REPORT_QUEUE_RECORDS=0
+	sendReport "$REPORT_SENDING" "${1:-3}" $REPORT_SENDING_SEQUENCE
+	RESULT=$?
+	if ((RESULT != 2)); then
+		REPORT_SENDING=""
+	fi
+	return $RESULT
 }
 
 function sendStageStatus {
 	local STAGE_NUMBER=$(($2))
 	local STATUS=$(($1))
 	log "sending status for stage number $STAGE_NUMBER"
-	dbExec "CALL UpdatePairStageStatus($PAIR_ID, $STAGE_NUMBER, $STATUS)"
+	queueReport stage-status $STAGE_NUMBER $STATUS
 }
 
 function sendStatusToLaterStages {
 	local STAGE_NUMBER=$(($2))
 	local STATUS=$(($1))
 	log "sending status for stage numbers greater than $STAGE_NUMBER"
-	dbExec "CALL UpdateLaterStageStatuses($PAIR_ID, $STAGE_NUMBER, $STATUS)"
+	queueReport later-stage-status $STAGE_NUMBER $STATUS
 }
 
 function setRunStatsToZeroForLaterStages {
 	local STAGE=$(($1))
 	log "setting all stats to 0 for stages greater than $STAGE"
-	dbExec "CALL SetRunStatsForLaterStagesToZero($PAIR_ID, $STAGE)"
+	queueReport later-stats-zero $STAGE
 }
 
 function sendStatus {
 	local STATUS=$(($1))
 	log "sending job status $STATUS"
-	dbExec "CALL UpdatePairStatus($PAIR_ID, $STATUS)"
+	queueReport status $STATUS
 }
 
 function sendWallclockExceededStatus {
@@ -491,27 +614,21 @@ function sendExceedMemStatus {
 
 function setStartTime {
 	log "sending start time for pair id = $PAIR_ID"
-	dbExec "CALL SetPairStartTime($PAIR_ID)"
+	queueReport start-time
 }
 
 function setEndTime {
 	log "sending end time for pair id = $PAIR_ID"
-	dbExec "
-		CALL SetPairEndTime($PAIR_ID);
-		CALL AddToEventOccurrencesNotRelatedToQueue('job pairs run', 1);
-		CALL AddToEventOccurrencesForJobPairsQueue('job pairs run', 1, $PAIR_ID);
-	"
+	queueReport end-time
 }
 
 function sendNode {
-	local NODE=$(dbEscape $1)
+	local NODE=$1
 	local SANDBOX=$(($2))
-	log "sending Node Id $NODE to $REPORT_HOST in sandbox $SANDBOX"
+	log "sending Node Id $NODE to $REPORT_URL in sandbox $SANDBOX"
 	sendStatus $STATUS_RUNNING
 	sendStageStatus $STATUS_RUNNING ${STAGE_NUMBERS[STAGE_INDEX]}
-	dbExec "
-		CALL UpdateNodeId($PAIR_ID, '$NODE', $SANDBOX);
-	"
+	queueReport node "$NODE" $SANDBOX
 }
 
 function limitExceeded {
@@ -531,7 +648,6 @@ function processAttributes {
 	fi
 
 	a=0
-	local QUERY=""
 	while read line; do
 		if [[ -z $line ]]; then
 			continue # line is empty, can be skipped
@@ -541,19 +657,12 @@ function processAttributes {
 		value=${line#*=} # everything after  '='
 		# Only process if key and value are both non-null strings
 		if [[ -n $key && -n $value ]]; then
-			key=$(dbEscape $key)
-			# value=$(dbEscape $value)
 			log "processing attribute $a (pair=$PAIR_ID, key='$key', value='$value' stage='$STAGE')"
-			QUERY+="CALL AddJobAttr($PAIR_ID, '$key', '$value', $STAGE);"
+			queueReport attr $STAGE "$key" "$value"
 		else
 			log "bad post processing - cannot process attribute $a"
 		fi
 	done < $1
-
-	if [[ -n $QUERY ]]; then
-		log "saving attributes to database"
-		dbExec "$QUERY"
-	fi
 }
 
 # updates stats for the pair - parameters are var.out ($1) and watcher.out ($2) from runsolver
@@ -620,18 +729,10 @@ function updateStats {
 
 	EXEC_HOST=$(hostname)
 	getTotalOutputSizeToCopy $3 $4
-	log "sending Pair Stats"
+	log "queueing Pair Stats"
 
-	if ! (dbExec "CALL UpdatePairRunSolverStats($PAIR_ID, '$EXEC_HOST', $WALLCLOCK_TIME, $CPU_TIME, $CPU_USER_TIME, $SYSTEM_TIME, $MAX_VIRTUAL_MEMORY, $((MAX_RESIDENT_SET_SIZE)), $((CURRENT_STAGE_NUMBER)), $((DISK_SIZE)))") ; then
-		log "Error copying stats from watchfile into database. Copying varfile to log {"
-		cat $1
-		log "} End varfile."
-		log "Copying watchfile to log {"
-		cat $2
-		log "} End watchfile."
-	fi
-
-	log "sent job stats to $REPORT_HOST"
+	queueReport stats "$EXEC_HOST" "$WALLCLOCK_TIME" "$CPU_TIME" "$CPU_USER_TIME" "$SYSTEM_TIME" "$MAX_VIRTUAL_MEMORY" $((MAX_RESIDENT_SET_SIZE)) $((CURRENT_STAGE_NUMBER)) $((DISK_SIZE))
+	queueBenchCacheCounts
 
 	log "cpu usage = $CPU_TIME"
 	log "wallclock time = $WALLCLOCK_TIME"
@@ -729,9 +830,15 @@ function fillDependArrays {
 	log "has depends = $HAS_DEPENDS"
 
 	if ((HAS_DEPENDS == 1)); then
+		# every line is <shared path>,,,<local path>,,,<benchmark cache key>
 		while read line; do
-			BENCH_DEPENDS_ARRAY[INDEX]=${line//$sep*};
-			LOCAL_DEPENDS_ARRAY[INDEX]=${line//*$sep};
+			BENCH_DEPENDS_ARRAY[INDEX]=${line%%$sep*};
+			line=${line#*$sep}
+			LOCAL_DEPENDS_ARRAY[INDEX]=${line%%$sep*};
+			DEPENDS_CACHE_KEYS[INDEX]=""
+			if [[ $line == *$sep* ]]; then
+				DEPENDS_CACHE_KEYS[INDEX]=${line#*$sep}
+			fi
 			((++INDEX))
 		done < "$JOB_IN_DIR/depend_$PAIR_ID.txt"
 	fi
@@ -774,10 +881,15 @@ function copyBenchmarkDependencies {
 		mkdir -p $NEW_D
 		if [ "$PRIMARY_PREPROCESSOR_PATH" != "" ]; then
 			log "copying benchmark ${BENCH_DEPENDS_ARRAY[i]} to $LOCAL_BENCH_DIR/${LOCAL_DEPENDS_ARRAY[i]} on execution host..."
-			"./process" "${BENCH_DEPENDS_ARRAY[i]}" $RAND_SEED > "$LOCAL_BENCH_DIR/${LOCAL_DEPENDS_ARRAY[i]}"
+			# the pre processor reads the cached copy rather than the shared one when it can
+			DEPEND_SOURCE=${BENCH_DEPENDS_ARRAY[i]}
+			if findCachedBenchmark "$DEPEND_SOURCE" "${DEPENDS_CACHE_KEYS[i]}"; then
+				DEPEND_SOURCE=$CACHED_BENCH_PATH
+			fi
+			"./process" "$DEPEND_SOURCE" $RAND_SEED > "$LOCAL_BENCH_DIR/${LOCAL_DEPENDS_ARRAY[i]}"
 		else
 			log "copying benchmark ${BENCH_DEPENDS_ARRAY[i]} to $LOCAL_BENCH_DIR/${LOCAL_DEPENDS_ARRAY[i]} on execution host..."
-			cp "${BENCH_DEPENDS_ARRAY[i]}" "$LOCAL_BENCH_DIR/${LOCAL_DEPENDS_ARRAY[i]}"
+			fetchBenchmark "${BENCH_DEPENDS_ARRAY[i]}" "${DEPENDS_CACHE_KEYS[i]}" "$LOCAL_BENCH_DIR/${LOCAL_DEPENDS_ARRAY[i]}"
 		fi
 	done
 
@@ -798,13 +910,8 @@ function sandboxWorkspace {
 
 	# First, recursively change the owner of everything *inside* WORKING_DIR to
 	# the sandbox user
-	if [[ $WORKING_DIR == *sandbox2* ]]; then
-		log "sandboxing workspace with second sandbox user"
-		sudo chown -R $SANDBOX_USER_TWO $WORKING_DIR
-	else
-		log "sandboxing workspace with first sandbox user"
-		sudo chown -R $SANDBOX_USER_ONE $WORKING_DIR
-	fi
+	log "sandboxing workspace with sandbox user $SANDBOX_PARAM"
+	sudo chown -R $SANDBOX_PARAM $WORKING_DIR
 
 	# Then, change the owner of the WORKING_DIR *itself* back to tomcat
 	# and change the owner of everything inside the benchmark dir to tomcat
@@ -816,15 +923,250 @@ function sandboxWorkspace {
 	chmod -R a=rX,u+w "$LOCAL_BENCH_DIR"
 }
 
-#will see if a solver is cached and change the SOLVER_PATH to the cache if so
+# The solver cache of a node holds a copy of every solver the pairs on the node have used, in
+# $SOLVER_CACHE_ROOT/<solver timestamp>/<solver id>. An entry is complete once it holds a finished.lock
+# directory, whose modification time is the last time the entry was used. Entries are copied next to
+# where they belong and then renamed into place, so an entry is either complete or not there at all.
+#
+# Pairs hold a shared flock on <entry>.lock while they copy a solver out of an entry, and entries are
+# only evicted while their lock can be held exclusively, so an entry is never removed while it is being
+# copied. Once the cache is bigger than SOLVER_CACHE_MAX_MB megabytes (0 for no limit), the entries used
+# least recently are evicted. What is added, used and evicted is reported to the head node.
+SOLVER_CACHE_ROOT="$WORKING_DIR_BASE/solvercache"
+SOLVER_CACHE_FD=""
+
+# Opens a lock file read only, creating it first if needed, and puts the descriptor in LOCK_FD.
+# Read only descriptors can still be flocked, and need no write permission on files other users made
+# $1 The lock file
+function openLockFile {
+	if [ ! -e "$1" ]; then
+		touch "$1" 2> /dev/null && chmod gu+rw "$1" 2> /dev/null
+	fi
+	exec {LOCK_FD}< "$1"
+}
+
+#will see if a solver is cached and change the SOLVER_PATH to the cache if so. The entry is kept
+#locked until releaseCacheLock is called
 function checkCache {
-	if [ -d "$SOLVER_CACHE_PATH" ]; then
+	if [ -d "$SOLVER_CACHE_PATH/finished.lock" ] && openLockFile "$SOLVER_CACHE_PATH.lock"; then
+		SOLVER_CACHE_FD=$LOCK_FD
+		flock -s "$SOLVER_CACHE_FD"
+		# the entry may have been evicted while we waited for the lock
 		if [ -d "$SOLVER_CACHE_PATH/finished.lock" ]; then
 			log "solver exists in cache at $SOLVER_CACHE_PATH"
 			SOLVER_PATH=$SOLVER_CACHE_PATH
 			SOLVER_CACHED=1
+			touch "$SOLVER_CACHE_PATH/finished.lock"
+			queueReport cache-hit "$HOSTNAME" $((SOLVER_ID)) "$SOLVER_TIMESTAMP"
+		else
+			releaseCacheLock
+		fi
+	fi
+}
+
+# Lets the cache entry checkCache found be evicted again
+function releaseCacheLock {
+	if [[ -n $SOLVER_CACHE_FD ]]; then
+		exec {SOLVER_CACHE_FD}<&-
+		SOLVER_CACHE_FD=""
+	fi
+}
+
+# Adds the solver in LOCAL_SOLVER_DIR to the cache, unless another pair got there first
+function addSolverToCache {
+	local PARENT
+	local STAGING
+	PARENT=$(dirname "$SOLVER_CACHE_PATH")
+	mkdir -p "$PARENT"
+	chmod gu+rwx "$SOLVER_CACHE_ROOT" "$PARENT" 2> /dev/null
+	if [ -d "$SOLVER_CACHE_PATH/finished.lock" ]; then
+		return 0
+	fi
+	if ! STAGING=$(mktemp -d "$PARENT/.staging.$((SOLVER_ID)).XXXXXX"); then
+		log "the solver could not be copied into the cache"
+		return 1
+	fi
+	if safeCpAll "storing solver in cache" "$LOCAL_SOLVER_DIR" "$STAGING" && mkdir -p "$STAGING/finished.lock"; then
+		chmod -R gu+rwx "$STAGING"
+		# renaming onto an entry another pair already published fails
+		if mv -T "$STAGING" "$SOLVER_CACHE_PATH" 2> /dev/null; then
+			log "the solver was successfully copied into the cache"
+			queueReport cache-add "$HOSTNAME" $((SOLVER_ID)) "$SOLVER_TIMESTAMP" "$(du -sb "$SOLVER_CACHE_PATH" | cut -f1)"
+			evictFromSolverCache
+			return 0
 		fi
 	fi
+	log "the solver was not copied into the cache"
+	rm -rf "$STAGING"
+	return 1
+}
+
+# Removes an entry from the cache, unless a pair is copying the solver out of it
+# $1 The entry
+# returns 0 if the entry was evicted and 1 if it is in use
+function evictSolverCacheEntry {
+	local ENTRY=$1
+	local TRASH
+	openLockFile "$ENTRY.lock" || return 1
+	if ! flock -n -x "$LOCK_FD"; then
+		exec {LOCK_FD}<&-
+		log "not evicting $ENTRY from the solver cache, since it is in use"
+		return 1
+	fi
+	# once renamed, the entry is gone for every pair that looks for it
+	TRASH="$(dirname "$ENTRY")/.evicted.$(basename "$ENTRY").$$"
+	mv -T "$ENTRY" "$TRASH"
+	exec {LOCK_FD}<&-
+	rm -rf "$TRASH"
+	log "evicted $ENTRY from the solver cache"
+	queueReport cache-evict "$HOSTNAME" "$(basename "$ENTRY")" "$(basename "$(dirname "$ENTRY")")"
+	return 0
+}
+
+# Evicts the entries used least recently until the cache fits in SOLVER_CACHE_MAX_MB. Only one pair on a
+# node evicts at a time, and the entry of the current stage is never evicted
+function evictFromSolverCache {
+	local MAX_KB=$((SOLVER_CACHE_MAX_MB * 1024))
+	local TOTAL_KB
+	local USED
+	local ENTRY
+	local SIZE_KB
+	if ((MAX_KB <= 0)); then
+		return 0
+	fi
+	TOTAL_KB=$(du -sk "$SOLVER_CACHE_ROOT" | cut -f1)
+	if ((TOTAL_KB <= MAX_KB)); then
+		return 0
+	fi
+	openLockFile "$SOLVER_CACHE_ROOT/evict.lock" || return 1
+	local EVICT_FD=$LOCK_FD
+	if flock -n -x "$EVICT_FD"; then
+		log "the solver cache holds $TOTAL_KB KB, more than the $MAX_KB KB it may hold"
+		# copies that were never finished or evicted entries that were never deleted
+		find "$SOLVER_CACHE_ROOT" -mindepth 2 -maxdepth 2 -type d -name '.*' -mmin +60 -exec rm -rf {} + 2> /dev/null
+		while read -r USED ENTRY; do
+			if ((TOTAL_KB <= MAX_KB)); then
+				break
+			fi
+			if [[ $ENTRY == "$SOLVER_CACHE_PATH" ]]; then
+				continue
+			fi
+			SIZE_KB=$(du -sk "$ENTRY" | cut -f1)
+			if evictSolverCacheEntry "$ENTRY"; then
+				((TOTAL_KB -= SIZE_KB))
+			fi
+		done < <(find "$SOLVER_CACHE_ROOT" -mindepth 3 -maxdepth 3 -type d -name finished.lock -printf '%T@ %h\n' | sort -n)
+	fi
+	exec {EVICT_FD}<&-
+}
+
+# The benchmark cache of a node holds a copy of the benchmarks the pairs on the node have read, in
+# $BENCH_CACHE_ROOT/<benchmark id>-<SHA-256 of the benchmark>. The hash is recorded when the benchmark
+# is added, so an entry never holds a benchmark that was changed since, and copies whose hash does not
+# match are not cached. Entries are copied next to where they belong and renamed into place.
+#
+# Pairs copy cached benchmarks into their sandboxes, as reflinks where the file system supports them.
+# They are not hard linked, since sandboxWorkspace changes the owner and mode of everything in the
+# sandbox and would change the shared entry along with it.
+# Once the cache is bigger than BENCH_CACHE_MAX_MB megabytes, the entries used least recently are
+# evicted. 0 turns the cache off. Hits and misses are reported to the head node along with the stats
+# of every stage, and every entry that is added, used or evicted is reported so the head node can
+# place pairs on the nodes that hold their benchmarks.
+BENCH_CACHE_ROOT="$WORKING_DIR_BASE/benchcache"
+BENCH_CACHE_HITS=0
+BENCH_CACHE_MISSES=0
+
+# Copies a benchmark to the execution host, through the benchmark cache if possible
+# $1 The path of the benchmark on the shared file system
+# $2 The key of the benchmark in the cache, or empty if it can not be cached
+# $3 Where to put the copy
+function fetchBenchmark {
+	# the entry may be evicted at any moment, in which case the shared copy is still there
+	if findCachedBenchmark "$1" "$2"; then
+		if cp --reflink=auto "$CACHED_BENCH_PATH" "$3" 2> /dev/null; then
+			return 0
+		fi
+	fi
+	cp "$1" "$3"
+}
+
+# Looks a benchmark up in the benchmark cache, adding it first if it is not there. Sets
+# CACHED_BENCH_PATH to the cached copy
+# $1 The path of the benchmark on the shared file system
+# $2 The key of the benchmark in the cache, or empty if it can not be cached
+# returns 0 if the benchmark is in the cache, and 1 otherwise
+function findCachedBenchmark {
+	local KEY=$2
+	local STAGING
+	CACHED_BENCH_PATH="$BENCH_CACHE_ROOT/$KEY"
+	if ((BENCH_CACHE_MAX_MB <= 0)) || [[ -z $KEY || $BUILD_JOB == "true" ]]; then
+		return 1
+	fi
+	if [ -f "$CACHED_BENCH_PATH" ]; then
+		((++BENCH_CACHE_HITS))
+		touch -c "$CACHED_BENCH_PATH" 2> /dev/null
+		queueReport bench-cache-hit "$HOSTNAME" $((${KEY%%-*})) "${KEY#*-}"
+		return 0
+	fi
+	((++BENCH_CACHE_MISSES))
+	mkdir -p "$BENCH_CACHE_ROOT"
+	chmod gu+rwx "$BENCH_CACHE_ROOT" 2> /dev/null
+	if ! STAGING=$(mktemp "$BENCH_CACHE_ROOT/.staging.XXXXXX"); then
+		return 1
+	fi
+	if cp "$1" "$STAGING" && [[ $(sha256sum "$STAGING" | cut -d ' ' -f 1) == "${KEY#*-}" ]]; then
+		chmod a=r,u+w "$STAGING"
+		mv -f "$STAGING" "$CACHED_BENCH_PATH"
+		log "benchmark $1 added to the benchmark cache"
+		queueReport bench-cache-add "$HOSTNAME" $((${KEY%%-*})) "${KEY#*-}"
+		evictFromBenchCache
+		return 0
+	fi
+	log "benchmark $1 does not match its recorded hash and was not cached"
+	rm -f "$STAGING"
+	return 1
+}
+
+# Evicts the benchmarks used least recently until the cache fits in BENCH_CACHE_MAX_MB. Only one pair
+# on a node evicts at a time, and the benchmark just added is never evicted
+function evictFromBenchCache {
+	local MAX_KB=$((BENCH_CACHE_MAX_MB * 1024))
+	local TOTAL_KB
+	local LOCK_FD
+	local USED
+	local SIZE
+	local ENTRY
+	local KEY
+	TOTAL_KB=$(du -sk "$BENCH_CACHE_ROOT" | cut -f1)
+	if ((TOTAL_KB <= MAX_KB)); then
+		return 0
+	fi
+	openLockFile "$BENCH_CACHE_ROOT/.evict.lock" || return 1
+	if flock -n -x "$LOCK_FD"; then
+		log "the benchmark cache holds $TOTAL_KB KB, more than the $MAX_KB KB it may hold"
+		# copies that were never finished
+		find "$BENCH_CACHE_ROOT" -maxdepth 1 -type f -name '.staging.*' -mmin +60 -delete 2> /dev/null
+		while read -r USED SIZE ENTRY; do
+			if ((TOTAL_KB <= MAX_KB)); then
+				break
+			fi
+			if [[ $ENTRY != "$CACHED_BENCH_PATH" ]] && rm -f "$ENTRY"; then
+				((TOTAL_KB -= (SIZE + 1023) / 1024))
+				KEY=$(basename "$ENTRY")
+				queueReport bench-cache-evict "$HOSTNAME" $((${KEY%%-*})) "${KEY#*-}"
+			fi
+		done < <(find "$BENCH_CACHE_ROOT" -maxdepth 1 -type f ! -name '.*' -printf '%T@ %s %p\n' | sort -n)
+	fi
+	exec {LOCK_FD}<&-
+}
+
+# Sends the hits and misses of the benchmark cache since they were last sent
+function queueBenchCacheCounts {
+	if ((BENCH_CACHE_HITS + BENCH_CACHE_MISSES > 0)); then
+		queueReport bench-cache "$HOSTNAME" $((BENCH_CACHE_HITS)) $((BENCH_CACHE_MISSES))
+		BENCH_CACHE_HITS=0
+		BENCH_CACHE_MISSES=0
+	fi
 }
 
 #this is run after a solver is built on starexec
@@ -854,12 +1196,10 @@ function copySolverBack {
 	log "set build status to built on starexec for $SOLVER_ID"
 	log "deleting build configuration from db for solver: $SOLVER_ID"
 	log "removing benchmark bench name: $BENCH_NAME id: $BENCH_ID from the db"
-	dbExec "
-		CALL SetSolverPath($((SOLVER_ID)), '$(dbEscape $NEW_SOLVER_PATH)');
-		CALL SetSolverBuildStatus($((SOLVER_ID)), 2);
-		CALL DeleteBuildConfig($((SOLVER_ID)));
-		CALL RemoveBenchmarkFromDatabase($((BENCH_ID)));
-	"
+	queueReport solver-path $((SOLVER_ID)) "$NEW_SOLVER_PATH"
+	queueReport solver-build-status $((SOLVER_ID)) 2
+	queueReport delete-build-config $((SOLVER_ID))
+	queueReport remove-benchmark $((BENCH_ID))
 
 	rm $BENCH_PATH
 }
@@ -870,11 +1210,9 @@ function cleanUpAfterKilledBuildJob {
 		log "Build job has been failed, cleaning up:"
 		log "deleting build configuration from db for solver: $SOLVER_ID"
 		log "removing benchmark bench name: $BENCH_NAME id: $BENCH_ID from the db"
-		dbExec "
-			CALL SetSolverBuildStatus($((SOLVER_ID)), 3);
-			CALL DeleteBuildConfig($((SOLVER_ID)));
-			CALL RemoveBenchmarkFromDatabase($((BENCH_ID)));
-		"
+		queueReport solver-build-status $((SOLVER_ID)) 3
+		queueReport delete-build-config $((SOLVER_ID))
+		queueReport remove-benchmark $((BENCH_ID))
 
 		BENCH_PATH_DIR=$(dirname $BENCH_PATH)
 		log "Deleting benchmark directory: $BENCH_PATH_DIR"
@@ -885,24 +1223,10 @@ function cleanUpAfterKilledBuildJob {
 
 function copyDependencies {
 	safeCpAll "copying solver" "$SOLVER_PATH" "$LOCAL_SOLVER_DIR"
+	releaseCacheLock
 	log "solver copy complete"
 	if ((SOLVER_CACHED == 0)) && [[ $BUILD_JOB != "true" ]]; then
-		mkdir -p "$SOLVER_CACHE_PATH"
-		if mkdir "$SOLVER_CACHE_PATH/lock.lock" ; then
-			if [ ! -d "$SOLVER_CACHE_PATH/finished.lock" ]; then
-				#store solver in a cache
-				#if the copy was successful
-				if safeCpAll "storing solver in cache" "$LOCAL_SOLVER_DIR" "$SOLVER_CACHE_PATH" ; then
-					log "the solver was successfully copied into the cache"
-					mkdir "$SOLVER_CACHE_PATH/finished.lock"
-					rm -r "$SOLVER_CACHE_PATH/lock.lock"
-				else
-					#if we failed to copy the solver, remove the cache entry for the solver
-					log "the solver could not be copied into the cache successfully"
-					rm -r "$SOLVER_CACHE_PATH"
-				fi
-			fi
-		fi
+		addSolverToCache
 	fi
 
 	log "chmod gu+rwx on the solver directory on the execution host ($LOCAL_SOLVER_DIR)"
@@ -915,7 +1239,7 @@ function copyDependencies {
 	ls -l "$LOCAL_RUNSOLVER_PATH"
 
 	log "copying benchmark $BENCH_PATH to $LOCAL_BENCH_PATH on execution host..."
-	cp "$BENCH_PATH" "$LOCAL_BENCH_PATH"
+	fetchBenchmark "$BENCH_PATH" "$BENCH_CACHE_KEY" "$LOCAL_BENCH_PATH"
 
 	log "benchmark copy complete"
 
@@ -976,9 +1300,11 @@ function saveFileAsBenchmark {
 
 	CURRENT_BENCH_PATH=$CURRENT_BENCH_PATH/$CURRENT_BENCH_NAME
 
-	QUERY="CALL AddAndAssociateBenchmark('$(dbEscape $CURRENT_BENCH_NAME)', '$(dbEscape $CURRENT_BENCH_PATH)', false, $((USER_ID)), 1, $((FILE_SIZE_IN_BYTES)), $((SPACE_ID)), @id)"
-	log "Adding benchmark using query: $QUERY"
-	if ! (dbExec "$QUERY") ; then
+	# the benchmark is sent on its own, since the file is only copied once we know it was added
+	flushReport
+	makeRecord add-benchmark "$CURRENT_BENCH_NAME" "$CURRENT_BENCH_PATH" $((USER_ID)) $((FILE_SIZE_IN_BYTES)) $((SPACE_ID))
+	log "Adding benchmark using record: $REPORT_RECORD"
+	if ! sendReport "$REPORT_RECORD" 3 $((++REPORT_SEQUENCE)) ; then
 		log "error saving output as benchmark-- benchmark was not created"
 	else
 		cp $CURRENT_OUTPUT_FILE "$CURRENT_BENCH_PATH"
@@ -989,7 +1315,11 @@ function saveFileAsBenchmark {
 # sets the variable REMAINING_DISK_QUOTA with the number of bytes the user should be allowed
 # to write. This includes a 1G buffer for going over their quota
 function setRemainingDiskQuota {
-	DISK_USAGE=$(mysql -u"$DB_USER" -p"$DB_PASS" -h $REPORT_HOST $DB_NAME -N -e "CALL GetUserDiskUsage($((USER_ID)))")
+	DISK_USAGE=$(curl -sS --fail -H "X-StarExec-Report-Token: $REPORT_TOKEN" "$REPORT_URL?user=$((USER_ID))")
+	if ! isInteger "$DISK_USAGE" ; then
+		log "unable to get user disk usage from $REPORT_URL"
+		DISK_USAGE=0
+	fi
 	log "user disk usage is $DISK_USAGE"
 	((REMAINING_DISK_QUOTA = DISK_QUOTA - DISK_USAGE + 1073741824))
 	log "remaining user disk quota: $REMAINING_DISK_QUOTA"
@@ -1079,7 +1409,9 @@ function verifyWorkspace {
 	if ! [ -x "$LOCAL_CONFIG_PATH" ]; then
 		log "job error: could not locate the configuration script '$CONFIG_NAME' on the execution host"
 		#get rid of the cache, as if we're here then something is probably wrong with it
-		rm -r "$SOLVER_CACHE_PATH"
+		if [ -d "$SOLVER_CACHE_PATH" ]; then
+			evictSolverCacheEntry "$SOLVER_CACHE_PATH"
+		fi
 		sendStatus $ERROR_RUNSCRIPT
 	else
 		log "execution host solver configuration verified"
@@ -1098,7 +1430,7 @@ function verifyWorkspace {
 # $1 The current stage number
 function markRunscriptError {
 	local STAGE=$(($1-1))
-	dbExec "CALL RunscriptError('$HOSTNAME', $PAIR_ID, $STAGE)"
+	queueReport runscript-error "$HOSTNAME" $STAGE
 }
 
 # this function checks to make sure that runsolver output was generated correctly.
@@ -1137,5 +1469,6 @@ function isOutputValid {
 }
 
 function exitJobscript {
+	flushReport 10
 	echo "Jobscript ending."
 }
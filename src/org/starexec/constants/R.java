@@ -71,6 +71,10 @@ public class R {
 		return STAREXEC_DATA_DIR+"/sge_scripts";
 	}
 
+	public static String getJobArchiveCacheDir() {
+		return STAREXEC_DATA_DIR + "/jobArchiveCache";
+	}
+
 
 	public static final String JOB_OUTPUT_DIRECTORY = "@Job.OutputDirectory@";
 	public static final String JOB_LOG_DIRECTORY = "@Job.LogDirectory@";
@@ -80,6 +84,11 @@ public class R {
 	 */
 	public static final String JOB_SOLVER_CACHE_CLEAR_LOG_DIRECTORY = "@Job.SolverCacheClearLogDir@";
 
+	/* This is the directory where the backend writes output from
+	 * post processing jobs
+	 */
+	public static final String JOB_POST_PROCESS_LOG_DIRECTORY = "@Job.PostProcessLogDir@";
+
 	/*
 	 * Used during disk migration.
 	 * StarExec will first look for job output in this directory, while writing
@@ -194,9 +203,8 @@ public class R {
 	public static final String MYSQL_PASSWORD              = "@Web.DB.Pass@";     // Starexec database password
 	public static final int MYSQL_POOL_MAX_SIZE            =  @DB.Pool.Max@;      // The maximum number of connections in the database pool
 	public static final int MYSQL_POOL_MIN_SIZE            =  @DB.Pool.Min@;      // The minimum number of connections to keep open to the database
-	public static final String COMPUTE_NODE_MYSQL_USERNAME = "@Cluster.DB.User@"; // username for database to use from compute nodes
-	public static final String COMPUTE_NODE_MYSQL_PASSWORD = "@Cluster.DB.Pass@"; // DB password for COMPUTE_NODE_MYSQL_USERNAME
-	public static final String REPORT_HOST                 = "@Cluster.DB.Url@";  // where to report job status updates during jobs
+	public static final String REPORT_URL                  = "@Cluster.Report.Url@";   // where compute nodes send job pair status updates and run statistics
+	public static final String REPORT_TOKEN                = "@Cluster.Report.Token@"; // secret compute nodes must present when sending to REPORT_URL
 	public static final String MYSQL_DRIVER = "com.mysql.jdbc.Driver"; // MySQL java driver class (we use JDBC)
 
 	// Global path information
@@ -292,6 +300,10 @@ public class R {
 	// BACKEND configurations
 	public static final String BACKEND_ROOT = "@Backend.Root@"; // root directory for the backend executable
 	public static final String BACKEND_WORKING_DIR = "@Backend.WorkingDir@";
+	public static final int LOCAL_BACKEND_SLOTS = @Backend.Local.Slots@; // the most scripts the local backend runs at once. 0 runs as many as the cores and memory allow
+	public static final int LOCAL_BACKEND_CORES_PER_SLOT = @Backend.Local.CoresPerSlot@; // the cores every slot of the local backend is pinned to
+	public static final long LOCAL_BACKEND_MEMORY_PER_SLOT = @Backend.Local.MemoryPerSlot@; // the memory (in megabytes) every slot of the local backend needs. 0 does not budget memory
+	public static final String LOCAL_BACKEND_SANDBOX_USERS = "@Backend.Local.SandboxUsers@"; // the users job pairs run as on the local backend, one per sandbox, separated by commas. Empty uses the two cluster users
 	public static final long MAX_PAIR_FILE_WRITE = @JobPair.MaxFileWrite@;      // The largest possible amount disk space (in kilobytes) a job pair is allowed to use
 	public static final String JOBPAIR_EXECUTION_PREFIX = "@JobPair.ExecutionPrefix@"; // Prefix to (ie) enable GCC 7 for Solver build jobs
 	public static final long DEFAULT_PAIR_VMEM = 17179869184L;                              // The default limit on memory (in bytes) for job pairs
@@ -299,7 +311,38 @@ public class R {
 
 	public static final int MAX_STAGES_PER_PIPELINE = 10000;
 	public static final int NUM_JOB_PAIRS_AT_A_TIME = 5;  // the number of job pairs from a job to submit at the same time, as we cycle through all jobs submitting pairs.
-	public static final int NUM_REPOSTPROCESS_AT_A_TIME = 200; // number of job pairs to re-postprocess at a time with our periodic task
+	public static final int SUBMIT_BATCH_SIZE = 100; // the maximum number of job scripts handed to the backend in a single submission
+	public static final int PLACEMENT_HINT_MAX_NODES = 16; // the most nodes holding its solvers a pair is steered toward. 0 submits pairs without placement hints
+	public static final int JOB_PAIR_INSERT_CHUNK_SIZE = 5000; // the number of job pairs added to the database in each transaction while a job is created
+	public static final int PENDING_PAIR_INDEX_RELOAD_MINUTES = 5; // how often the in-memory index of a job's pending pairs is reloaded from the database
+	public static final int JOB_SCRIPT_WRITER_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors()); // threads used to write job scripts while pairs are being submitted
+	public static final int PAIR_REPORT_QUEUE_SIZE = 2000; // the maximum number of reports from compute nodes waiting to be written. Compute nodes retry reports that are turned away
+	public static final int PAIR_REPORT_BATCH_SIZE = 200; // the maximum number of reports from compute nodes written in a single transaction
+	public static final int QUERY_METRICS_MAX_STATEMENTS = 2000; // the most distinct statements QueryMetrics keeps statistics for. Further statements are counted together
+	public static final int LISTING_PAGE_SIZE = 5000; // the most IDs and names of primitives returned in a single page of a listing
+	public static final int QUERY_METRICS_LOG_TOP = 25; // the number of statements taking the most time that are logged periodically
+	public static final long JOB_ARCHIVE_CACHE_BYTES = 50L * 1024 * 1024 * 1024; // disk space kept for archives of complete jobs' output. The least recently downloaded are deleted past this
+	public static final int JOB_STATS_CACHE_SPACES = 2000; // job space hierarchies whose recent pair counts are kept in memory
+	public static final int JOB_STATS_CACHE_PAIRS = 1000000; // finished pairs whose solver stats may be kept in memory, across every job space
+	public static final int JOB_STATS_COMPLETION_LOOKBACK = 1000; // how far below the last completion ID kept stats read pairs again, since completion IDs may be committed out of order
+	public static final long JOB_PAIR_COUNT_CACHE_MILLIS = 60 * 1000; // how long the count of pairs in a job space is reused for pages of its pair table
+	public static final long JOB_RESULT_CUBE_BYTES = 512L * 1024 * 1024; // memory for the in-memory result cubes of complete jobs. The least recently viewed are dropped past this
+	public static final int PERIODIC_CRITICAL_THREADS = 4; // threads for the periodic tasks that keep pairs moving, like submitting and post-processing
+	public static final int PERIODIC_BACKGROUND_THREADS = 3; // threads for periodic housekeeping and reports
+	public static final int PERIODIC_LANE_QUEUE = 32; // periodic tasks that can wait for a thread in each lane. Tasks that do not fit skip their run
+	public static final int POST_PROCESS_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors() / 2); // workers that run post processors on pairs
+	public static final int POST_PROCESS_BATCH_SIZE = 20; // stages of one job a post processing worker claims at a time. Results are saved a batch at a time
+	public static final int POST_PROCESS_RESCAN_BATCHES = 50; // batches post processing hands out before it looks for jobs with stages to process again
+	public static final int POST_PROCESS_CLAIM_TIMEOUT = 60 * 60; // seconds before a claimed stage that was never saved can be claimed again
+	public static final int POST_PROCESS_CLUSTER_MIN_STAGES = @Job.PostProcess.ClusterMinStages@; // batches of at least this many stages are post processed on the compute nodes. 0 turns this off
+	public static final int POST_PROCESS_CLUSTER_BATCH_SIZE = 2000; // most stages post processed by one backend job
+	public static final int BENCHMARK_CACHE_MAX_MB = @Job.BenchmarkCacheMaxSize@; // megabytes of benchmarks the cache of every compute node may hold. 0 turns the benchmark cache off
+	public static final int SOLVER_CACHE_MAX_MB = @Job.SolverCacheMaxSize@; // megabytes of solvers the cache of every compute node may hold. 0 for no limit
+	public static final int BENCHMARK_PROCESSOR_SLOTS = Runtime.getRuntime().availableProcessors(); // benchmark processor shells running at once, across every upload
+	public static final int ARCHIVE_EXTRACTION_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors()); // threads used to write out the files of uploaded archives
+	public static final int ARCHIVE_MAX_ENTRIES = 1000000; // the most files and directories an uploaded archive may contain
+	public static final long ARCHIVE_MAX_ENTRY_BYTES = 20L * 1024 * 1024 * 1024; // the largest a single file extracted from an uploaded archive may be
+	public static final long ARCHIVE_MAX_EXTRACTED_BYTES = 100L * 1024 * 1024 * 1024; // the most bytes the files of an uploaded archive may take up once extracted
 	public static final int DEFAULT_MAX_TIMEOUT = 259200;
         public static final Long LOAD_DIFFERENCE_THRESHOLD = 5400L; // 90 minutes in seconds
 	public static final int PROCESSOR_TIME_LIMIT = 45;
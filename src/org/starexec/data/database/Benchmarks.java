@@ -18,9 +18,16 @@ import java.io.IOException;
 import java.io.StringReader;
 import java.sql.CallableStatement;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.Supplier;
 
 /**
@@ -28,6 +35,15 @@ import java.util.function.Supplier;
  */
 public class Benchmarks {
 	private static final StarLogger log = StarLogger.getLogger(Benchmarks.class);
+	private static final String REPLACE_ATTR_SQL =
+			"REPLACE INTO bench_attributes (bench_id, attr_key, attr_value) VALUES (?, ?, ?)";
+	// the same condition as GetBrokenBenchDependencies, for many benchmarks at once. The IN list is filled in
+	private static final String GET_BENCHES_WITH_BROKEN_DEPENDENCIES_SQL =
+			"SELECT DISTINCT bench_dependency.primary_bench_id FROM bench_dependency " +
+			"JOIN benchmarks ON benchmarks.id = bench_dependency.secondary_bench_id " +
+			"WHERE (benchmarks.deleted = 1 OR benchmarks.recycled = 1) AND bench_dependency.primary_bench_id IN (%s)";
+	// the most benchmark IDs bound to one statement
+	private static final int BENCH_ID_BATCH_SIZE = 1000;
 
 	/**
 	 * Deletes a benchmark and permanently removes it from the database. This is NOT the normal procedure for
@@ -122,24 +138,49 @@ public class Benchmarks {
 		// Discard the valid attribute, we don't need it
 		attrs.remove(R.VALID_BENCHMARK_ATTRIBUTE);
 		log.info("bench is valid.  Adding " + attrs.entrySet().size() + " attributes");
-		// For each attribute (key, value)...
-		int count = 0;
-		for (String key : attrs.keySet()) {
-			String val = attrs.get(key);
-			// Add the attribute to the database
-			count++;
-			log.debug("Adding att number " + count + " " + key + ", " + val + " to bench " + benchmark.getId());
-
-			if (!Benchmarks.addBenchAttr(con, benchmark.getId(), key, val)) {
-				Uploads.setBenchmarkErrorMessage(
-						statusId, "Problem adding the following attribute-value pair to the db, for benchmark " +
-								benchmark.getId() + ": " + key + ", " + val);
-				return false;
-			}
+		if (!Benchmarks.addBenchAttrs(con, benchmark.getId(), attrs)) {
+			Uploads.setBenchmarkErrorMessage(
+					statusId, "Problem adding the attributes of benchmark " + benchmark.getId() + " to the db");
+			return false;
 		}
 		return true;
 	}
 
+	/**
+	 * Adds many attributes to a benchmark in a single batch
+	 *
+	 * @param con The connection to make the insertion on
+	 * @param benchId The id of the benchmark the attributes are for
+	 * @param attrs The attributes. Each will overwrite any other attribute of the benchmark with the same key
+	 * @return True if the operation was a success, false otherwise
+	 */
+	private static boolean addBenchAttrs(Connection con, int benchId, Map<String, String> attrs) {
+		if (attrs.isEmpty()) {
+			return true;
+		}
+		PreparedStatement statement = null;
+		try {
+			statement = con.prepareStatement(REPLACE_ATTR_SQL);
+			for (Map.Entry<String, String> attr : attrs.entrySet()) {
+				if (attr.getKey().length() > 128 || attr.getValue().length() > 128) {
+					log.warn("addBenchAttrs", "key or val exceeds max length\n\tbenchId :" + benchId + "\n\tkey:     " +
+					                          attr.getKey() + "\n\tval:     " + attr.getValue());
+				}
+				statement.setInt(1, benchId);
+				statement.setString(2, attr.getKey());
+				statement.setString(3, attr.getValue());
+				statement.addBatch();
+			}
+			statement.executeBatch();
+			return true;
+		} catch (Exception e) {
+			log.error("addBenchAttrs", "benchId: " + benchId, e);
+		} finally {
+			Common.safeClose(statement);
+		}
+		return false;
+	}
+
 	/**
 	 * Adds an attribute to an existing benchmark
 	 *
@@ -294,7 +335,7 @@ public class Benchmarks {
 
 			Map<String, String> attrs = benchmark.getAttributes();
 			// Setup normal information for the benchmark
-			procedure = con.prepareCall("{CALL AddBenchmark(?, ?, ?, ?, ?, ?, ?, ?)}");
+			procedure = con.prepareCall("{CALL AddBenchmark(?, ?, ?, ?, ?, ?, ?, ?, ?)}");
 			procedure.setString(1, benchmark.getName());
 			procedure.setString(2, benchmark.getPath());
 			procedure.setBoolean(3, benchmark.isDownloadable());
@@ -302,11 +343,14 @@ public class Benchmarks {
 			procedure.setInt(5, Benchmarks.isBenchValid(attrs) ? benchmark.getType().getId() : R.NO_TYPE_PROC_ID);
 			procedure.setLong(6, FileUtils.sizeOf(new File(benchmark.getPath())));
 			procedure.setString(7, benchmark.getDescription());
-			procedure.registerOutParameter(8, java.sql.Types.INTEGER);
+			// keys the copies of the benchmark that compute nodes cache
+			benchmark.setContentHash(Hash.hashFile(new File(benchmark.getPath())));
+			procedure.setString(8, benchmark.getContentHash());
+			procedure.registerOutParameter(9, java.sql.Types.INTEGER);
 
 			// Execute procedure and get back the benchmark's id
 			procedure.executeUpdate();
-			benchmark.setId(procedure.getInt(8));
+			benchmark.setId(procedure.getInt(9));
 
 			// If the benchmark is valid according to its processor...
 
@@ -610,66 +654,78 @@ public class Benchmarks {
 		int validatedCounter = 0; //stores the number of benchmarks that have been validated since the last update
 		int failedCounter = 0; //stores the TOTAL number of benchmarks that failed
 		Timer timer = new Timer();
-		for (Benchmark b : benchmarks) {
-			List<File> files = new ArrayList<>();
-			files.add(new File(p.getFilePath()));
-			files.add(new File(b.getPath()));
-			File sandbox = Util.copyFilesToNewSandbox(files);
-			String benchPath = new File(sandbox, new File(b.getPath()).getName()).getAbsolutePath();
-			File working = new File(sandbox, new File(p.getFilePath()).getName());
-			// Run the processor on the benchmark file
-			log.info("executing - " + p.getExecutablePath() + " \"" + b.getPath() + "\"");
-			String[] procCmd = new String[2];
-
-			procCmd[0] = "./" + R.PROCESSOR_RUN_SCRIPT;
-			procCmd[1] = benchPath;
-			String propstr = null;
-			propstr = Util.executeSandboxCommand(procCmd, null, working);
+		// the processor runs on many benchmarks at once, and the results are handled here as they come in
+		ProcessorPool pool =
+				new ProcessorPool(new File(p.getFilePath()), Math.min(R.BENCHMARK_PROCESSOR_SLOTS, benchmarks.size()),
+				                  p.getTimeLimit());
+		ExecutorService runners = Executors.newFixedThreadPool(pool.getSlots());
+		try {
+			CompletionService<String> done = new ExecutorCompletionService<>(runners);
+			Map<Future<String>, Benchmark> running = new HashMap<>();
+			for (Benchmark b : benchmarks) {
+				log.debug("queueing - " + p.getExecutablePath() + " \"" + b.getPath() + "\"");
+				running.put(done.submit(() -> pool.process(new File(b.getPath()))), b);
+			}
+			for (int i = 0; i < benchmarks.size(); i++) {
+				Future<String> next = done.take();
+				Benchmark b = running.remove(next);
+				String propstr = next.get();
 
-			checkProcessorOutput(propstr);
+				checkProcessorOutput(propstr);
 
-			FileUtils.deleteQuietly(sandbox);
-			// Load results into a properties file
-			Properties prop = new Properties();
+				// Load results into a properties file
+				Properties prop = new Properties();
 
-			prop.load(new StringReader(propstr));
+				prop.load(new StringReader(propstr));
 
-			log.debug("read this string from the processor: " + propstr);
-			log.debug("read " + prop.size() + " properties");
+				log.debug("read this string from the processor: " + propstr);
+				log.debug("read " + prop.size() + " properties");
 
-			// Attach the attributes to the benchmark
-			Map<String, String> attrs = new HashMap<>();
+				// Attach the attributes to the benchmark
+				Map<String, String> attrs = new HashMap<>();
 
-			for (Object o : prop.keySet()) {
-				attrs.put((String) o, (String) prop.get(o));
-			}
-			b.setAttributes(attrs);
-			count--;
-			if (Benchmarks.isBenchValid(attrs)) {
-				validatedCounter++;
-				if (timer.getTime() > R.UPLOAD_STATUS_TIME_BETWEEN_UPDATES) {
-					Uploads.incrementValidatedBenchmarks(statusId, validatedCounter);
-					validatedCounter = 0;
-					timer.reset();
+				for (Object o : prop.keySet()) {
+					attrs.put((String) o, (String) prop.get(o));
 				}
-			} else {
-				failedCounter++;
-				Uploads.incrementFailedBenchmarks(statusId, 1);
-				if (failedCounter < R.MAX_FAILED_VALIDATIONS) {
-					if (propstr.length() > DB.TEXT_FIELD_LEN) {
-						propstr = propstr.substring(0, DB.TEXT_FIELD_LEN);
+				b.setAttributes(attrs);
+				count--;
+				if (Benchmarks.isBenchValid(attrs)) {
+					validatedCounter++;
+					if (timer.getTime() > R.UPLOAD_STATUS_TIME_BETWEEN_UPDATES) {
+						Uploads.incrementValidatedBenchmarks(statusId, validatedCounter);
+						validatedCounter = 0;
+						timer.reset();
 					}
-					Uploads.addFailedBenchmark(statusId, b.getName(), propstr);
-					String message = b.getName() + " failed validation";
-					log.debug(message);
-					Uploads.setBenchmarkErrorMessage(statusId, message);
 				} else {
-					String message = "Major Benchmark Validation Errors - examine your validator";
-					log.warn(message + ", status id = " + statusId);
-					Uploads.setBenchmarkErrorMessage(statusId, message);
+					failedCounter++;
+					Uploads.incrementFailedBenchmarks(statusId, 1);
+					if (failedCounter < R.MAX_FAILED_VALIDATIONS) {
+						if (propstr.length() > DB.TEXT_FIELD_LEN) {
+							propstr = propstr.substring(0, DB.TEXT_FIELD_LEN);
+						}
+						Uploads.addFailedBenchmark(statusId, b.getName(), propstr);
+						String message = b.getName() + " failed validation";
+						log.debug(message);
+						Uploads.setBenchmarkErrorMessage(statusId, message);
+					} else {
+						String message = "Major Benchmark Validation Errors - examine your validator";
+						log.warn(message + ", status id = " + statusId);
+						Uploads.setBenchmarkErrorMessage(statusId, message);
+					}
 				}
+				log.info(b.getName() + " processed. " + count + " more benchmarks to go.");
 			}
-			log.info(b.getName() + " processed. " + count + " more benchmarks to go.");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while processing benchmarks", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("Could not process benchmarks", e.getCause());
+		} finally {
+			runners.shutdownNow();
+			pool.close();
 		}
 		if (validatedCounter > 0) {
 			Uploads.incrementValidatedBenchmarks(statusId, validatedCounter);
@@ -1339,6 +1395,7 @@ public class Benchmarks {
 				secondary.setId(results.getInt("id"));
 				secondary.setName(results.getString("name"));
 				secondary.setPath(results.getString("path"));
+				secondary.setContentHash(results.getString("content_hash"));
 				benchD.setSecondaryBench(secondary);
 				benchD.setDependencyPath(results.getString("include_path"));
 
@@ -2646,6 +2703,36 @@ public class Benchmarks {
 		}
 	}
 
+	/**
+	 * Finds which of the given benchmarks have a dependency that has been deleted or recycled, with one query for
+	 * every thousand benchmarks instead of one for every benchmark
+	 *
+	 * @param benchIds The IDs of the benchmarks to check
+	 * @return The IDs of the given benchmarks that have broken dependencies
+	 * @throws SQLException If there is a problem with the database
+	 */
+	public static Set<Integer> getBenchmarksWithBrokenDependencies(Collection<Integer> benchIds) throws SQLException {
+		final List<Integer> ids = new ArrayList<>(benchIds);
+		final Set<Integer> broken = new HashSet<>();
+		for (int from = 0; from < ids.size(); from += BENCH_ID_BATCH_SIZE) {
+			final List<Integer> batch = ids.subList(from, Math.min(ids.size(), from + BENCH_ID_BATCH_SIZE));
+			final String sql = String.format(GET_BENCHES_WITH_BROKEN_DEPENDENCIES_SQL,
+			                                 String.join(", ", Collections.nCopies(batch.size(), "?")));
+			broken.addAll(Common.query(sql, procedure -> {
+				for (int i = 0; i < batch.size(); i++) {
+					procedure.setInt(i + 1, batch.get(i));
+				}
+			}, results -> {
+				Set<Integer> found = new HashSet<>();
+				while (results.next()) {
+					found.add(results.getInt("primary_bench_id"));
+				}
+				return found;
+			}));
+		}
+		return broken;
+	}
+
 	public static Boolean benchHasBrokenDependencies(int benchId) {
 		Connection con = null;
 		CallableStatement procedure = null;
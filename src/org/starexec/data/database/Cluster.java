@@ -1,5 +1,7 @@
 package org.starexec.data.database;
 
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
 import org.starexec.constants.R;
 import org.starexec.data.to.Job;
 import org.starexec.data.to.Queue;
@@ -9,6 +11,12 @@ import org.starexec.logger.StarLogger;
 import java.sql.CallableStatement;
 import java.sql.Connection;
 import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -19,6 +27,15 @@ import java.util.Map;
 
 public class Cluster {
 	private static final StarLogger log = StarLogger.getLogger(Cluster.class);
+	// the cached copies of some benchmarks on the active nodes of a queue. The IN list is filled in, and bound
+	// rather than passed as one string so the bench_id key of bench_cache can be used
+	private static final String GET_BENCH_CACHE_NODES_SQL =
+			"SELECT nodes.name AS node_name, bench_cache.bench_id, bench_cache.content_hash FROM bench_cache " +
+			"JOIN queue_assoc ON queue_assoc.node_id = bench_cache.node_id " +
+			"JOIN nodes ON nodes.id = bench_cache.node_id " +
+			"WHERE queue_assoc.queue_id = ? AND nodes.status = 'ACTIVE' AND bench_cache.bench_id IN (%s)";
+	// the most benchmark IDs bound to one statement
+	private static final int BENCH_ID_BATCH_SIZE = 1000;
 
 	/**
 	 * Gets the worker nodes from BACKEND and adds them to the database if they don't already exist. This must be done
@@ -491,4 +508,132 @@ public class Cluster {
 		}
 		return null;
 	}
+
+	/**
+	 * Gets the solvers the compute nodes reported having in their solver caches
+	 *
+	 * @return A JSON array with the node, solver, solver timestamp, size in bytes and last use of every cached solver,
+	 * the most recently used first, or null on error
+	 */
+	public static JsonArray getSolverCacheEntries() {
+		try {
+			return Common.query("{CALL GetSolverCacheEntries()}", procedure -> {}, results -> {
+				JsonArray entries = new JsonArray();
+				while (results.next()) {
+					JsonObject entry = new JsonObject();
+					entry.addProperty("node", results.getString("node_name"));
+					entry.addProperty("solverId", results.getInt("solver_id"));
+					entry.addProperty("solverName", results.getString("solver_name"));
+					entry.addProperty("solverTimestamp", results.getString("solver_timestamp"));
+					entry.addProperty("diskSize", results.getLong("disk_size"));
+					entry.addProperty("lastUsed", results.getTimestamp("last_used").toString());
+					entries.add(entry);
+				}
+				return entries;
+			});
+		} catch (SQLException e) {
+			log.error("getSolverCacheEntries", e);
+		}
+		return null;
+	}
+
+	/**
+	 * Gets how often the pairs on every node found their benchmarks in the benchmark cache of the node
+	 *
+	 * @return A JSON array with the node, hits and misses of every node pairs reported on, or null on error
+	 */
+	public static JsonArray getBenchmarkCacheCounts() {
+		try {
+			return Common.query("{CALL GetBenchmarkCacheCounts()}", procedure -> {}, results -> {
+				JsonArray counts = new JsonArray();
+				while (results.next()) {
+					JsonObject node = new JsonObject();
+					node.addProperty("node", results.getString("node_name"));
+					node.addProperty("hits", results.getLong("hits"));
+					node.addProperty("misses", results.getLong("misses"));
+					counts.add(node);
+				}
+				return counts;
+			});
+		} catch (SQLException e) {
+			log.error("getBenchmarkCacheCounts", e);
+		}
+		return null;
+	}
+
+	/**
+	 * Gets which active nodes of a queue hold which solvers in their solver caches
+	 *
+	 * @param queueId The ID of the queue
+	 * @return A map from solver ID to solver timestamp to the names of the nodes that hold that version of the solver
+	 * @throws SQLException on database error
+	 */
+	public static Map<Integer, Map<String, List<String>>> getSolverCacheNodesForQueue(int queueId) throws SQLException {
+		return Common.query("{CALL GetSolverCacheNodesForQueue(?)}", procedure -> procedure.setInt(1, queueId),
+				results -> {
+					Map<Integer, Map<String, List<String>>> nodes = new HashMap<>();
+					while (results.next()) {
+						nodes.computeIfAbsent(results.getInt("solver_id"), k -> new HashMap<>())
+						     .computeIfAbsent(results.getString("solver_timestamp"), k -> new ArrayList<>())
+						     .add(results.getString("node_name"));
+					}
+					return nodes;
+				});
+	}
+
+	/**
+	 * Gets which of the given benchmarks are in the benchmark caches of the active nodes of a queue
+	 *
+	 * @param queueId The ID of the queue
+	 * @param benchIds The IDs of the benchmarks to look for, usually those of the pairs about to be submitted
+	 * @return A map from benchmark ID to content hash to the names of the nodes that hold that version of the benchmark
+	 * @throws SQLException If there is a problem with the database
+	 */
+	public static Map<Integer, Map<String, List<String>>> getBenchCacheNodesForQueue(
+			int queueId, Collection<Integer> benchIds
+	) throws SQLException {
+		final List<Integer> ids = new ArrayList<>(benchIds);
+		final Map<Integer, Map<String, List<String>>> nodes = new HashMap<>();
+		for (int from = 0; from < ids.size(); from += BENCH_ID_BATCH_SIZE) {
+			final List<Integer> batch = ids.subList(from, Math.min(ids.size(), from + BENCH_ID_BATCH_SIZE));
+			final String sql = String.format(GET_BENCH_CACHE_NODES_SQL,
+			                                 String.join(", ", Collections.nCopies(batch.size(), "?")));
+			Common.query(sql, procedure -> {
+				procedure.setInt(1, queueId);
+				for (int i = 0; i < batch.size(); i++) {
+					procedure.setInt(i + 2, batch.get(i));
+				}
+			}, results -> {
+				while (results.next()) {
+					nodes.computeIfAbsent(results.getInt("bench_id"), k -> new HashMap<>())
+					     .computeIfAbsent(results.getString("content_hash"), k -> new ArrayList<>())
+					     .add(results.getString("node_name"));
+				}
+				return null;
+			});
+		}
+		return nodes;
+	}
+
+	/**
+	 * Forgets the solver cache records of one solver, or of every solver
+	 *
+	 * @param solverId The ID of the solver, or null for every solver
+	 * @return True on success and false otherwise
+	 */
+	public static boolean clearSolverCacheEntries(Integer solverId) {
+		try {
+			Common.update("{CALL ClearSolverCacheEntries(?)}", procedure -> {
+				if (solverId == null) {
+					procedure.setNull(1, Types.INTEGER);
+				} else {
+					procedure.setInt(1, solverId);
+				}
+			});
+			return true;
+		} catch (SQLException e) {
+			log.error("clearSolverCacheEntries", e);
+		}
+		return false;
+	}
 }
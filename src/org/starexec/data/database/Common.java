@@ -1,9 +1,11 @@
 package org.starexec.data.database;
 
+import com.google.gson.JsonObject;
 import org.apache.tomcat.jdbc.pool.DataSource;
 import org.apache.tomcat.jdbc.pool.PoolProperties;
 import org.starexec.constants.R;
 import org.starexec.logger.NonSavingStarLogger;
+import org.starexec.util.LatencyHistogram;
 import org.starexec.util.NamedParameterStatement;
 import org.starexec.util.Util;
 import org.starexec.util.functionalInterfaces.ThrowingBiFunction;
@@ -11,6 +13,8 @@ import org.starexec.util.functionalInterfaces.ThrowingConsumer;
 import org.starexec.util.functionalInterfaces.ThrowingFunction;
 
 import java.sql.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * The common database class which provides common methods used by other database accessors such
@@ -24,8 +28,12 @@ public class Common {
 	private static final NonSavingStarLogger log = NonSavingStarLogger.getLogger(Common.class);
 	private static DataSource dataPool = null;
 
-	private static int connectionsOpened = 0;
-	private static int connectionsDrift  = 0;
+	// Connection accounting is lock free since every database call in the webapp goes through getConnection
+	private static final LongAdder connectionsBorrowed = new LongAdder();
+	private static final LongAdder connectionsReturned = new LongAdder();
+	private static final LongAdder borrowFailures = new LongAdder();
+	private static final LatencyHistogram borrowLatency = new LatencyHistogram();
+	private static final AtomicLong connectionsDrift = new AtomicLong();
 
 	//args to append to the mysql URL.
 	private static final String MYSQL_URL_ARGUMENTS = "?autoReconnect=true&zeroDateTimeBehavior=convertToNull&rewriteBatchedStatements=true";
@@ -96,8 +104,38 @@ public class Common {
 		log.info("logConnectionsOpen",
 				"idle=" + dataPool.getIdle()
 				+ "\tactive=" + dataPool.getActive()
-				+ "\tinternal count=" + String.valueOf(connectionsOpened)
+				+ "\tinternal count=" + String.valueOf(getConnectionsOpened())
 		);
+		checkConnectionsCount();
+	}
+
+	/**
+	 * Gets the state of the connection pool and how long it has taken to get connections from it, for monitoring.
+	 * @return The pool metrics, or null if the pool has not been initialized
+	 */
+	public static JsonObject getPoolMetrics() {
+		if (dataPool == null) {
+			return null;
+		}
+		JsonObject json = new JsonObject();
+		json.addProperty("active", dataPool.getActive());
+		json.addProperty("idle", dataPool.getIdle());
+		json.addProperty("maxActive", dataPool.getMaxActive());
+		json.addProperty("waitCount", dataPool.getWaitCount());
+		json.addProperty("borrowed", connectionsBorrowed.sum());
+		json.addProperty("returned", connectionsReturned.sum());
+		json.addProperty("borrowFailures", borrowFailures.sum());
+		json.addProperty("drift", getConnectionsOpened() - dataPool.getActive());
+		json.add("borrowLatency", borrowLatency.toJson());
+		return json;
+	}
+
+	/**
+	 * @return The number of connections that have been taken from the pool through getConnection and not yet
+	 * returned through safeClose
+	 */
+	private static long getConnectionsOpened() {
+		return connectionsBorrowed.sum() - connectionsReturned.sum();
 	}
 
 	/**
@@ -116,26 +154,37 @@ public class Common {
 	 * @return a new connection to the database from the connection pool
 	 * @author Tyler Jensen
 	 */
-	protected synchronized static Connection getConnection() throws SQLException {
+	protected static Connection getConnection() throws SQLException {
+		long start = System.nanoTime();
 		try {
 			Connection c = dataPool.getConnection();
-			++connectionsOpened;
-			checkConnectionsCount();
+			long wait = System.nanoTime() - start;
+			borrowLatency.record(wait);
+			QueryMetrics.recordBorrowWait(wait);
+			connectionsBorrowed.increment();
 			return c;
 		} catch (SQLException e) {
-			log.error("getConnection", "connectionsOpened: "+connectionsOpened, e);
+			borrowFailures.increment();
+			log.error("getConnection", "connectionsOpened: "+getConnectionsOpened(), e);
 			throw e;
 		}
 	}
 
-	private synchronized static void checkConnectionsCount() {
-		if (connectionsOpened-dataPool.getActive() != connectionsDrift) {
+	/**
+	 * Logs when the number of connections we have handed out but not taken back stops matching the number the pool
+	 * reports as active, which means a connection was closed without safeClose or leaked. Both counts move while this
+	 * runs, so it is only checked periodically rather than on every borrow.
+	 */
+	private static void checkConnectionsCount() {
+		long active = dataPool.getActive();
+		long opened = getConnectionsOpened();
+		long drift = opened - active;
+		if (connectionsDrift.getAndSet(drift) != drift) {
 			log.info("logConnectionsOpen",
 			         "Number of active connections reported by dataPool differs from internal count." +
-			         "\n\tconnectionsOpened:    " + connectionsOpened +
-			         "\n\tdataPool.getActive(): " + dataPool.getActive()
+			         "\n\tconnectionsOpened:    " + opened +
+			         "\n\tdataPool.getActive(): " + active
 			);
-			connectionsDrift = connectionsOpened-dataPool.getActive();
 		}
 	}
 
@@ -161,9 +210,6 @@ public class Common {
 			if (Util.isNullOrEmpty(R.MYSQL_USERNAME)) {
 				log.warn("Attempted to initialize datapool without MYSQL properties being set");
 				return;
-			} else if (dataPool != null) {
-				log.warn("Attempted to initialize datapool when it was already initialized");
-				return;
 			}
 
 			log.debug("Setting up data connection pool properties");
@@ -188,16 +234,31 @@ public class Common {
                         poolProp.setRemoveAbandonedTimeout(18000);         // How long to wait (seconds) before reclaiming an open connection (should be the time of longest query)
                         poolProp.setRemoveAbandoned(true);                // Enable removing connections that are open too long
                         poolProp.setLogAbandoned(true);                   // supposed to log stack traces (where?) when an abandoned connection is removed
+			poolProp.setJdbcInterceptors(QueryMetrics.Interceptor.class.getName()); // Time every statement, see QueryMetrics
 
-			log.debug("Creating new datapool with supplied properties");
-			dataPool = new DataSource(poolProp);              // Create the connection pool with the supplied properties
-
-			log.debug("Datapool successfully created!");
+			initialize(poolProp);
 		} catch (Exception e) {
 			log.fatal("initialize", e);
 		}
 	}
 
+	/**
+	 * Sets up the connection pool with the given properties instead of the ones from the StarExec configuration.
+	 * Used by initialize() and by benchmarks that supply their own data source. Like initialize(), this can only be
+	 * called once in the lifetime of the application.
+	 * @param poolProp The properties of the pool
+	 */
+	public static void initialize(PoolProperties poolProp) {
+		if (dataPool != null) {
+			log.warn("Attempted to initialize datapool when it was already initialized");
+			return;
+		}
+		log.debug("Creating new datapool with supplied properties");
+		dataPool = new DataSource(poolProp);              // Create the connection pool with the supplied properties
+
+		log.debug("Datapool successfully created!");
+	}
+
 	/**
 	 * Makes a query and allows the user to make additional calls on the same connection.
 	 * @param callPreparationSql the SQL to prepare the SQL Procedure (e.g. "{Call MyProcedure(?, ?)}")
@@ -409,7 +470,7 @@ public class Common {
 		}
 	}
 
-	protected static synchronized void safeClose(Statement statement) {
+	protected static void safeClose(Statement statement) {
 		try {
 			if (statement!=null && !statement.isClosed()) {
 				statement.close();
@@ -448,16 +509,15 @@ public class Common {
 	 * and doesn't raise any errors
 	 * @param c The connection to safely close
 	 */
-	protected static synchronized void safeClose(Connection c) {
+	protected static void safeClose(Connection c) {
 		try {
 			if(c != null && !c.isClosed()) {
 				c.close();
-				--connectionsOpened;
+				connectionsReturned.increment();
 			}
 		} catch (SQLException e) {
 			// Do nothing
 			log.error("safeClose", e);
 		}
-		checkConnectionsCount();
 	}
 }
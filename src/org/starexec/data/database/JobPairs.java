@@ -1,6 +1,7 @@
 package org.starexec.data.database;
 
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 import org.apache.commons.io.FileUtils;
 import org.starexec.constants.R;
 import org.starexec.data.to.*;
@@ -29,47 +30,52 @@ import java.util.Map.Entry;
 public class JobPairs {
 	private static final StarLogger log = StarLogger.getLogger(JobPairs.class);
 
-	private static void addJobPairInputs(List<JobPair> pairs, Connection con) {
-		final String methodName = "addJobPairInputs";
-		CallableStatement procedure = null;
-		int batchCounter = 0;
-		int totalPairsSubmitted = 0;
-		try {
-			procedure = con.prepareCall("{CALL AddJobPairInput(?,?,?)}");
+	// Adding pairs uses plain inserts rather than AddJobPair, AddJobPairStage and AddJobPairInput so that batches of
+	// them are rewritten into multi-row inserts by the driver (rewriteBatchedStatements), which procedure calls are not
+	private static final String INSERT_PAIR_SQL =
+			"INSERT INTO job_pairs (job_id, bench_id, status_code, path, job_space_id, bench_name, primary_jobpair_data) " +
+			"VALUES (?, ?, ?, ?, ?, ?, ?)";
+	private static final String INSERT_STAGE_SQL =
+			"INSERT INTO jobpair_stage_data (jobpair_id, stage_id, stage_number, solver_id, solver_name, config_id, " +
+			"config_name, job_space_id, status_code, disk_size) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, 0)";
+	private static final String INSERT_INPUT_SQL =
+			"INSERT INTO jobpair_inputs (jobpair_id, input_number, bench_id) VALUES (?, ?, ?)";
+	// a plain REPLACE for the same reason: AddJobAttr calls cannot be rewritten into multi-row statements
+	private static final String REPLACE_ATTR_SQL =
+			"REPLACE INTO job_attributes (pair_id, attr_key, attr_value, job_id, stage_number) VALUES (?, ?, ?, ?, ?)";
+	private static final String GET_PAIR_IDS_IN_RANGE_SQL =
+			"SELECT id FROM job_pairs WHERE job_id = ? AND id BETWEEN ? AND ? ORDER BY id";
+	// the newest pairs of a job with a status, newest first. Served by the (job_id, status_code) key
+	private static final String GET_NEWEST_PAIR_IDS_SQL =
+			"SELECT id FROM job_pairs WHERE job_id = ? AND status_code = ? ORDER BY id DESC LIMIT ?";
 
+	/**
+	 * Adds the benchmark inputs of the given pairs to the database. The inserts are batched, and the driver rewrites
+	 * them into multi-row inserts.
+	 *
+	 * @param pairs The pairs to add the inputs of. They must already have IDs
+	 * @param con The open connection to make the inserts on
+	 * @throws SQLException If the inputs could not be added
+	 */
+	private static void addJobPairInputs(List<JobPair> pairs, Connection con) throws SQLException {
+		PreparedStatement insert = null;
+		try {
+			insert = con.prepareStatement(INSERT_INPUT_SQL);
+			int inputs = 0;
 			for (JobPair pair : pairs) {
 				for (int i = 0; i < pair.getBenchInputs().size(); i++) {
-
-					procedure.setInt(1, pair.getId());
-					procedure.setInt(2, i + 1);
-					procedure.setInt(3, pair.getBenchInputs().get(i));
-
-					procedure.addBatch();
-					batchCounter++;
-					final int batchSize = 1000;
-					if (batchCounter > batchSize) {
-						totalPairsSubmitted += batchSize;
-						log.debug(
-								methodName,
-								"Submitting batch of " + batchSize + ", total pairs submitted: " + totalPairsSubmitted
-						);
-						procedure.executeBatch();
-						batchCounter = 0;
-					}
+					insert.setInt(1, pair.getId());
+					insert.setInt(2, i + 1);
+					insert.setInt(3, pair.getBenchInputs().get(i));
+					insert.addBatch();
+					inputs++;
 				}
 			}
-			if (batchCounter > 0) {
-				totalPairsSubmitted += batchCounter;
-				log.debug(
-						methodName,
-						"Submitting batch of " + batchCounter + ", total pairs submitted: " + totalPairsSubmitted
-				);
-				procedure.executeBatch();
+			if (inputs > 0) {
+				insert.executeBatch();
 			}
-		} catch (Exception e) {
-			log.error(e.getMessage(), e);
 		} finally {
-			Common.safeClose(procedure);
+			Common.safeClose(insert);
 		}
 	}
 
@@ -225,142 +231,271 @@ public class JobPairs {
 	}
 
 	/**
-	 * Adds all the jobline stages for all of the given pairs to the database
+	 * Adds all the jobline stages for all of the given pairs to the database. The inserts are batched, and the driver
+	 * rewrites them into multi-row inserts.
 	 *
-	 * @param pairs The pairs to add the stages of
-	 * @param con The open connection to make the call on
+	 * @param pairs The pairs to add the stages of. They must already have IDs
+	 * @param con The open connection to make the inserts on
+	 * @throws SQLException If the stages could not be added
 	 */
-	private static void addJobPairStages(List<JobPair> pairs, Connection con) {
-		final String methodName = "addJobPairStages";
-		CallableStatement procedure = null;
-		int totalPairsSubmitted = 0;
+	private static void addJobPairStages(List<JobPair> pairs, Connection con) throws SQLException {
+		PreparedStatement insert = null;
 		try {
-			int batchCounter = 0;
-			procedure = con.prepareCall("{CALL AddJobPairStage(?,?,?,?,?,?,?,?,?)}");
-
+			insert = con.prepareStatement(INSERT_STAGE_SQL);
+			int stages = 0;
 			for (JobPair pair : pairs) {
 				for (JoblineStage stage : pair.getStages()) {
 					if (stage.isNoOp()) {
 						continue;
 					}
-
-					procedure.setInt(1, pair.getId());
+					insert.setInt(1, pair.getId());
 					if (stage.getStageId() != null) {
-						procedure.setInt(2, stage.getStageId());
+						insert.setInt(2, stage.getStageId());
 					} else {
-						procedure.setNull(2, java.sql.Types.INTEGER);
-					}
-					procedure.setInt(3, stage.getStageNumber());
-					procedure.setBoolean(4, Objects.equals(pair.getPrimaryStageNumber(), stage.getStageNumber()));
-					procedure.setInt(5, stage.getSolver().getId());
-					procedure.setString(6, stage.getSolver().getName());
-					procedure.setInt(7, stage.getConfiguration().getId());
-					procedure.setString(8, stage.getConfiguration().getName());
-					procedure.setInt(9, pair.getJobSpaceId());
-					// Update the pair's ID so it can be used outside this method
-					procedure.addBatch();
-
-					batchCounter++;
-					final int batchSize = 1000;
-					if (batchCounter > batchSize) {
-						totalPairsSubmitted += batchSize;
-						log.debug(
-								methodName,
-								"Submitting batch of " + batchSize + ", total pairs submitted: " + totalPairsSubmitted
-						);
-						procedure.executeBatch();
-						batchCounter = 0;
+						insert.setNull(2, java.sql.Types.INTEGER);
 					}
+					insert.setInt(3, stage.getStageNumber());
+					insert.setInt(4, stage.getSolver().getId());
+					insert.setString(5, stage.getSolver().getName());
+					insert.setInt(6, stage.getConfiguration().getId());
+					insert.setString(7, stage.getConfiguration().getName());
+					insert.setInt(8, pair.getJobSpaceId());
+					insert.setInt(9, StatusCode.STATUS_PENDING_SUBMIT.getVal());
+					insert.addBatch();
+					stages++;
 				}
 			}
-			if (batchCounter > 0) {
-				totalPairsSubmitted += batchCounter;
-				log.debug(
-						methodName,
-						"Submitting batch of " + batchCounter + ", total pairs submitted: " + totalPairsSubmitted
-				);
-				procedure.executeBatch();
+			if (stages > 0) {
+				insert.executeBatch();
 			}
-		} catch (Exception e) {
-			log.error(e.getMessage(), e);
 		} finally {
-			Common.safeClose(procedure);
+			Common.safeClose(insert);
 		}
 	}
 
+	/**
+	 * Adds pairs to an existing job. The pairs are added in chunks of R.JOB_PAIR_INSERT_CHUNK_SIZE, each in its own
+	 * transaction, and the job's pair count goes up with each chunk, so the pairs become visible as they are added.
+	 * Each chunk is added to the pending pair index once it is committed, so the pairs are submitted as they come.
+	 *
+	 * @param jobId The job to add the pairs to
+	 * @param pairs The pairs to add. Their IDs are set
+	 */
 	public static void addJobPairs(int jobId, List<JobPair> pairs) {
 		final String methodName = "addJobPairs";
 
 		Connection con = null;
 		try {
 			con = Common.getConnection();
-			Common.beginTransaction(con);
-			log.entry(methodName);
-			boolean success = incrementTotalJobPairsForJob(jobId, pairs.size(), con);
-			if (!success) {
-				return;
-			}
-			log.trace(methodName, "two");
-			addJobPairs(con, jobId, pairs);
-			log.exit(methodName);
+			addJobPairs(con, jobId, pairs, true);
 		} catch (SQLException e) {
 			log.error(methodName, e);
 		} finally {
-			Common.endTransaction(con);
 			Common.safeClose(con);
 		}
 	}
 
 	/**
-	 * Adds a job pair record to the database. This is a helper method for the Jobs.add method
+	 * Adds the job pair records of a new job to the database. This is a helper method for the Jobs.add method; the job
+	 * must still be paused, since the pairs are committed in chunks of R.JOB_PAIR_INSERT_CHUNK_SIZE. Commits any
+	 * transaction already open on the connection, and leaves it in auto-commit mode.
 	 *
 	 * @param con The connection the update will take place on
-	 * @return True if the operation was successful
+	 * @param jobId The job the pairs belong to
+	 * @param pairs The pairs to add. Their IDs are set
+	 * @return True if the operation was successful. If not, the chunks before the one that failed have been committed
 	 */
 	protected static boolean addJobPairs(Connection con, int jobId, List<JobPair> pairs) {
+		return addJobPairs(con, jobId, pairs, false);
+	}
+
+	private static boolean addJobPairs(Connection con, int jobId, List<JobPair> pairs, boolean incrementTotal) {
 		final String methodName = "addJobPairs";
-		log.entry(methodName);
+		long start = System.currentTimeMillis();
+		int added = 0;
+		try {
+			if (!con.getAutoCommit()) {
+				con.commit();
+			}
+			for (List<JobPair> chunk : Lists.partition(pairs, R.JOB_PAIR_INSERT_CHUNK_SIZE)) {
+				Common.beginTransaction(con);
+				if (incrementTotal && !incrementTotalJobPairsForJob(jobId, chunk.size(), con)) {
+					throw new SQLException("could not update the pair count of job " + jobId);
+				}
+				addJobPairRows(con, jobId, chunk);
+				addJobPairStages(chunk, con);
+				addJobPairInputs(chunk, con);
+				// not endTransaction, which would hide a failed commit
+				con.commit();
+				// pairs of a job that is being created are put in the index once they are all added
+				if (incrementTotal) {
+					PendingPairIndex.add(jobId, PendingPairIndex.getSubmittableIds(chunk, false));
+				}
+				added += chunk.size();
+				log.info(methodName, "Added " + added + " of " + pairs.size() + " pairs to job " + jobId + " in "
+						+ (System.currentTimeMillis() - start) + " ms");
+			}
+			Common.enableAutoCommit(con);
+			return true;
+		} catch (SQLException e) {
+			log.error(methodName, "failed after adding " + added + " of " + pairs.size() + " pairs to job " + jobId, e);
+			Common.doRollback(con);
+		}
+		return false;
+	}
+
+	/**
+	 * Inserts job_pairs rows for the given pairs and sets their IDs. The inserts are batched so that the driver
+	 * rewrites them into multi-row inserts, and the IDs are read back from the generated keys. Those are only correct
+	 * if each multi-row insert was given consecutive IDs, which the auto-increment lock mode does not promise when other
+	 * inserts run at the same time, so they are checked against the rows of the job. If they are wrong, the IDs are
+	 * looked up instead: pairs of a job are only inserted by one thread at a time, and auto-increment IDs only grow, so
+	 * the rows just inserted are the newest of the job, in the order they were inserted. Only if that fails too are the
+	 * pairs inserted again one at a time.
+	 *
+	 * @param con The connection, in a transaction
+	 * @param jobId The job the pairs belong to
+	 * @param pairs The pairs to insert
+	 * @throws SQLException If the pairs could not be inserted
+	 */
+	private static void addJobPairRows(Connection con, int jobId, List<JobPair> pairs) throws SQLException {
+		final String methodName = "addJobPairRows";
+		PreparedStatement insert = null;
+		ResultSet keys = null;
+		Savepoint beforeInsert = con.setSavepoint();
+		try {
+			insert = con.prepareStatement(INSERT_PAIR_SQL, Statement.RETURN_GENERATED_KEYS);
+			for (JobPair pair : pairs) {
+				pair.setJobId(jobId);
+				insert.setInt(1, jobId);
+				insert.setInt(2, pair.getBench().getId());
+				insert.setInt(3, StatusCode.STATUS_PENDING_SUBMIT.getVal());
+				insert.setString(4, pair.getPath());
+				insert.setInt(5, pair.getJobSpaceId());
+				insert.setString(6, pair.getBench().getName());
+				insert.setInt(7, pair.getPrimaryStageNumber());
+				insert.addBatch();
+			}
+			insert.executeBatch();
+			keys = insert.getGeneratedKeys();
+			int[] ids = new int[pairs.size()];
+			int count = 0;
+			while (keys.next() && count < ids.length) {
+				ids[count++] = keys.getInt(1);
+			}
+			if (count != ids.length || !pairRowsHaveIds(con, jobId, ids)) {
+				log.warn(methodName, "generated keys do not match the inserted pairs of job " + jobId
+						+ ", looking up their IDs");
+				ids = getNewestPairIds(con, jobId, pairs.size());
+			}
+			if (ids != null) {
+				for (int i = 0; i < ids.length; i++) {
+					pairs.get(i).setId(ids[i]);
+				}
+				return;
+			}
+			log.warn(methodName, "could not look up the IDs of the inserted pairs of job " + jobId
+					+ ", inserting them one at a time");
+		} finally {
+			Common.safeClose(keys);
+			Common.safeClose(insert);
+		}
+		con.rollback(beforeInsert);
+		addJobPairRowsOneAtATime(con, jobId, pairs);
+	}
+
+	/**
+	 * Checks that the given IDs are exactly the IDs of the job_pairs rows just inserted for a job. Pairs of a job are
+	 * only inserted while it is created, or by addJobPairs, so the IDs are right if the rows of the job between the
+	 * smallest and the largest of them have exactly those IDs.
+	 */
+	private static boolean pairRowsHaveIds(Connection con, int jobId, int[] ids) throws SQLException {
+		if (ids.length == 0) {
+			return true;
+		}
+		int[] sorted = ids.clone();
+		Arrays.sort(sorted);
+		PreparedStatement select = null;
+		ResultSet results = null;
+		try {
+			select = con.prepareStatement(GET_PAIR_IDS_IN_RANGE_SQL);
+			select.setInt(1, jobId);
+			select.setInt(2, sorted[0]);
+			select.setInt(3, sorted[sorted.length - 1]);
+			results = select.executeQuery();
+			int i = 0;
+			while (results.next()) {
+				if (i == sorted.length || results.getInt(1) != sorted[i]) {
+					return false;
+				}
+				i++;
+			}
+			return i == sorted.length;
+		} finally {
+			Common.safeClose(results);
+			Common.safeClose(select);
+		}
+	}
+
+	/**
+	 * Gets the IDs of the newest pending pairs of a job, oldest first.
+	 *
+	 * @param con The connection, in the transaction the pairs were inserted in
+	 * @param jobId The job the pairs belong to
+	 * @param count How many pairs were inserted
+	 * @return The IDs, or null if the job does not have that many pending pairs
+	 * @throws SQLException If the IDs could not be read
+	 */
+	private static int[] getNewestPairIds(Connection con, int jobId, int count) throws SQLException {
+		PreparedStatement select = null;
+		ResultSet results = null;
+		try {
+			select = con.prepareStatement(GET_NEWEST_PAIR_IDS_SQL);
+			select.setInt(1, jobId);
+			select.setInt(2, StatusCode.STATUS_PENDING_SUBMIT.getVal());
+			select.setInt(3, count);
+			results = select.executeQuery();
+			int[] ids = new int[count];
+			int read = 0;
+			while (results.next()) {
+				ids[count - 1 - read++] = results.getInt(1);
+			}
+			return read == count ? ids : null;
+		} finally {
+			Common.safeClose(results);
+			Common.safeClose(select);
+		}
+	}
+
+	/**
+	 * Inserts job_pairs rows for the given pairs one at a time and sets their IDs
+	 *
+	 * @param con The connection the inserts will take place on
+	 * @param jobId The job the pairs belong to
+	 * @param pairs The pairs to insert
+	 * @throws SQLException If the pairs could not be inserted
+	 */
+	private static void addJobPairRowsOneAtATime(Connection con, int jobId, List<JobPair> pairs) throws SQLException {
 		CallableStatement procedure = null;
 		try {
 			procedure = con.prepareCall("{CALL AddJobPair(?, ?, ?, ?, ?, ?, ?, ?)}");
-			int pairsProcessed = 0;
 			for (JobPair pair : pairs) {
 				pair.setJobId(jobId);
 				procedure.setInt(1, jobId);
 				procedure.setInt(2, pair.getBench().getId());
 				procedure.setInt(3, StatusCode.STATUS_PENDING_SUBMIT.getVal());
-
 				procedure.setString(4, pair.getPath());
 				procedure.setInt(5, pair.getJobSpaceId());
-
 				procedure.setString(6, pair.getBench().getName());
-				// The procedure will return the pair's new ID in this parameter
 				procedure.setInt(7, pair.getPrimaryStageNumber());
+				// The procedure will return the pair's new ID in this parameter
 				procedure.registerOutParameter(8, java.sql.Types.INTEGER);
 				procedure.executeUpdate();
-
-				// Update the pair's ID so it can be used outside this method
-				int newPairId = procedure.getInt(8);
-				pair.setId(newPairId);
-
-				pairsProcessed += 1;
-				if (pairsProcessed % 1000 == 0) {
-					log.debug(methodName, "Pairs Processed: " + pairsProcessed);
-				}
+				pair.setId(procedure.getInt(8));
 			}
-			log.debug(methodName, "Pairs Processed: " + pairsProcessed);
-
-			log.debug(methodName, "Adding job pair stages.");
-			addJobPairStages(pairs, con);
-			log.debug(methodName, "Adding job pair inputs.");
-			addJobPairInputs(pairs, con);
-			return true;
-		} catch (Exception e) {
-			log.error(methodName, e);
 		} finally {
 			Common.safeClose(procedure);
 		}
-		return false;
 	}
 
 	/**
@@ -411,6 +546,121 @@ public class JobPairs {
 		return null;
 	}
 
+	/**
+	 * Gets every job with stages awaiting post processing
+	 *
+	 * @return A map from the ID of each job to the number of its stages awaiting processing, or null on error
+	 */
+	public static Map<Integer, Integer> getJobsWithPairsToBeProcessed() {
+		try {
+			return Common.query("{CALL GetJobsWithPairsToBeProcessed(?)}",
+			                    procedure -> procedure.setInt(1, StatusCode.STATUS_PROCESSING.getVal()), results -> {
+						Map<Integer, Integer> jobs = new LinkedHashMap<>();
+						while (results.next()) {
+							jobs.put(results.getInt("job_id"), results.getInt("stages"));
+						}
+						return jobs;
+					}
+			);
+		} catch (SQLException e) {
+			log.error("getJobsWithPairsToBeProcessed", e);
+		}
+		return null;
+	}
+
+	/**
+	 * Claims stages of a job that are awaiting post processing, so that no other worker processes them. The claims
+	 * are given up by savePostProcessingResults, or time out R.POST_PROCESS_CLAIM_TIMEOUT seconds after they were made
+	 * or last refreshed.
+	 *
+	 * @param jobId The ID of the job to claim stages of
+	 * @param owner A string that identifies this claim. Must be unique
+	 * @param limit The most stages to claim
+	 * @return The claimed stages, which are empty if every stage of the job is processed or claimed, or null on error
+	 */
+	public static List<PairStageProcessorTriple> claimPairsToBeProcessed(int jobId, String owner, int limit) {
+		try {
+			return Common.query("{CALL ClaimPairsToBeProcessed(?, ?, ?, ?, ?)}", procedure -> {
+				procedure.setInt(1, StatusCode.STATUS_PROCESSING.getVal());
+				procedure.setInt(2, jobId);
+				procedure.setString(3, owner);
+				procedure.setInt(4, limit);
+				procedure.setInt(5, R.POST_PROCESS_CLAIM_TIMEOUT);
+			}, results -> {
+				List<PairStageProcessorTriple> list = new ArrayList<>();
+				while (results.next()) {
+					PairStageProcessorTriple next = new PairStageProcessorTriple();
+					next.setPairId(results.getInt("pair_id"));
+					next.setStageNumber(results.getInt("stageNumber"));
+					next.setProcessorId(results.getInt("post_processor"));
+					list.add(next);
+				}
+				return list;
+			});
+		} catch (SQLException e) {
+			log.error("claimPairsToBeProcessed", "jobId: " + jobId, e);
+		}
+		return null;
+	}
+
+	/**
+	 * Renews every claim of a single owner, so its stages are not claimed by someone else while it is still working
+	 * on them
+	 *
+	 * @param owner The string that identifies the claims
+	 * @return True on success and false otherwise
+	 */
+	public static boolean refreshProcessingClaims(String owner) {
+		try {
+			Common.update("{CALL RefreshProcessingClaims(?)}", procedure -> procedure.setString(1, owner));
+			return true;
+		} catch (SQLException e) {
+			log.error("refreshProcessingClaims", "owner: " + owner, e);
+		}
+		return false;
+	}
+
+	/**
+	 * Gets every stage a single owner has claimed
+	 *
+	 * @param owner The string that identifies the claims
+	 * @return A map from job ID to the stages of that job the owner has claimed, or null on error
+	 */
+	public static Map<Integer, List<PairStageProcessorTriple>> getProcessingClaims(String owner) {
+		try {
+			return Common.query("{CALL GetProcessingClaims(?)}", procedure -> procedure.setString(1, owner), results -> {
+				Map<Integer, List<PairStageProcessorTriple>> claims = new HashMap<>();
+				while (results.next()) {
+					PairStageProcessorTriple next = new PairStageProcessorTriple();
+					next.setPairId(results.getInt("pair_id"));
+					next.setStageNumber(results.getInt("stageNumber"));
+					next.setProcessorId(results.getInt("post_processor"));
+					claims.computeIfAbsent(results.getInt("job_id"), k -> new ArrayList<>()).add(next);
+				}
+				return claims;
+			});
+		} catch (SQLException e) {
+			log.error("getProcessingClaims", "owner: " + owner, e);
+		}
+		return null;
+	}
+
+	/**
+	 * Gives up every claim of a single owner, so the stages can be claimed again right away
+	 *
+	 * @param owner The string that identifies the claims
+	 * @return True on success and false otherwise
+	 */
+	public static boolean releaseProcessingClaims(String owner) {
+		try {
+			Common.update("{CALL ReleaseProcessingClaims(?)}", procedure -> procedure.setString(1, owner));
+			return true;
+		} catch (SQLException e) {
+			log.error("releaseProcessingClaims", "owner: " + owner, e);
+		}
+		return false;
+	}
+
 	/**
 	 * Updates the total_pairs column for the given job by summing it with the given increment
 	 *
@@ -481,40 +731,106 @@ public class JobPairs {
 	}
 
 	/**
-	 * Post processes the given pair with the given processor ID, add the properties to the pair attributes table, and
-	 * removes the pair from the processing job pairs table
+	 * Saves the results of post processing stages of a job: adds the properties to the pair attributes table, marks
+	 * the stages and pairs complete and gives up the claims on the stages. The writes of every stage are batched and
+	 * made in one transaction. If that fails, the stages are saved one at a time, so that one bad stage does not keep
+	 * the others from being saved.
 	 *
-	 * @param pairId The ID of the pair to process
-	 * @param stageNumber
-	 * @param processorId The ID of the processor to use
+	 * @param jobId The ID of the job the stages belong to
+	 * @param stages The processed stages
+	 * @param results The properties the processor produced for each stage, in the same order as the stages
+	 * @return The number of stages that were saved
 	 */
-	public static void postProcessPair(int pairId, int stageNumber, int processorId) {
+	public static int savePostProcessingResults(
+			int jobId, List<PairStageProcessorTriple> stages, List<Properties> results
+	) {
+		if (stages.isEmpty()) {
+			return 0;
+		}
+		if (trySavePostProcessingResults(jobId, stages, results)) {
+			return stages.size();
+		}
+		if (stages.size() == 1) {
+			return 0;
+		}
+		int saved = 0;
+		for (int i = 0; i < stages.size(); i++) {
+			if (trySavePostProcessingResults(jobId, stages.subList(i, i + 1), results.subList(i, i + 1))) {
+				saved++;
+			}
+		}
+		return saved;
+	}
+
+	private static boolean trySavePostProcessingResults(
+			int jobId, List<PairStageProcessorTriple> stages, List<Properties> results
+	) {
 		Connection con = null;
+		PreparedStatement attrs = null;
+		CallableStatement stageStatus = null;
+		CallableStatement pairStatus = null;
+		CallableStatement claims = null;
 		try {
-			Properties props = runPostProcessorOnPair(pairId, stageNumber, processorId);
 			con = Common.getConnection();
 			Common.beginTransaction(con);
-			JobPairs.addJobPairAttributes(pairId, stageNumber, props, con);
-			JobPairs.setPairStatus(pairId, StatusCode.STATUS_COMPLETE.getVal(), con);
-			JobPairs.setPairStageStatus(pairId, StatusCode.STATUS_COMPLETE.getVal(), stageNumber, con);
+			attrs = con.prepareStatement(REPLACE_ATTR_SQL);
+			stageStatus = con.prepareCall("{CALL UpdatePairStageStatus(?, ?, ?)}");
+			pairStatus = con.prepareCall("{CALL UpdatePairStatus(?, ?)}");
+			claims = con.prepareCall("{CALL RemoveProcessingClaim(?, ?)}");
+			int attrCount = 0;
+			for (int i = 0; i < stages.size(); i++) {
+				PairStageProcessorTriple stage = stages.get(i);
+				for (Entry<Object, Object> keyVal : results.get(i).entrySet()) {
+					attrs.setInt(1, stage.getPairId());
+					attrs.setString(2, (String) keyVal.getKey());
+					attrs.setString(3, (String) keyVal.getValue());
+					attrs.setInt(4, jobId);
+					attrs.setInt(5, stage.getStageNumber());
+					attrs.addBatch();
+					attrCount++;
+				}
+				stageStatus.setInt(1, stage.getPairId());
+				stageStatus.setInt(2, stage.getStageNumber());
+				stageStatus.setInt(3, StatusCode.STATUS_COMPLETE.getVal());
+				stageStatus.addBatch();
+				pairStatus.setInt(1, stage.getPairId());
+				pairStatus.setInt(2, StatusCode.STATUS_COMPLETE.getVal());
+				pairStatus.addBatch();
+				claims.setInt(1, stage.getPairId());
+				claims.setInt(2, stage.getStageNumber());
+				claims.addBatch();
+			}
+			if (attrCount > 0) {
+				attrs.executeBatch();
+			}
+			stageStatus.executeBatch();
+			pairStatus.executeBatch();
+			claims.executeBatch();
 			Common.endTransaction(con);
+			return true;
 		} catch (Exception e) {
 			Common.doRollback(con);
-			log.error("postProcessPair", e);
+			log.error("savePostProcessingResults", "jobId: " + jobId, e);
 		} finally {
 			Common.endTransaction(con);
+			Common.safeClose(attrs);
+			Common.safeClose(stageStatus);
+			Common.safeClose(pairStatus);
+			Common.safeClose(claims);
 			Common.safeClose(con);
 		}
+		return false;
 	}
 
 	/**
 	 * Runs the given post processor on the given pair stage and returns the properties that were obtained
 	 *
 	 * @param pairId The ID of the pair in question
+	 * @param stageNumber The stage to process the output of
 	 * @param processorId The ID of the processor in question
 	 * @return The properties on success, or null otherwise
 	 */
-	private static Properties runPostProcessorOnPair(int pairId, int stageNumber, int processorId) {
+	public static Properties runPostProcessorOnPair(int pairId, int stageNumber, int processorId) {
 		try {
 			JobPair pair = JobPairs.getPairDetailed(pairId);
 			File output = new File(JobPairs.getFilePath(pair, stageNumber));
@@ -1051,18 +1367,28 @@ public class JobPairs {
 	 */
 	public static String getLogFilePath(JobPair pair) {
 		try {
-
-			File file = new File(Jobs.getLogDirectory(pair.getJobId()));
-			file = new File(file, String.valueOf(pair.getJobSpaceId()));
-			file = new File(file, pair.getId() + ".txt");
-			log.trace("found this log path " + file.getAbsolutePath());
-			return file.getAbsolutePath();
+			return getLogFilePath(Jobs.getLogDirectory(pair.getJobId()), pair);
 		} catch (Exception e) {
 			log.error("getLogFilePath", e);
 		}
 		return null;
 	}
 
+	/**
+	 * Returns the absolute path to where the log for a pair is stored, given the log directory of its job. Lets
+	 * callers that handle many pairs of one job look up the directory only once.
+	 *
+	 * @param logDirectory The log directory of the job, as returned by Jobs.getLogDirectory
+	 * @param pair
+	 * @return The absolute path to the log file for the given pair
+	 */
+	public static String getLogFilePath(String logDirectory, JobPair pair) {
+		File file = new File(logDirectory, String.valueOf(pair.getJobSpaceId()));
+		file = new File(file, pair.getId() + ".txt");
+		log.trace("found this log path " + file.getAbsolutePath());
+		return file.getAbsolutePath();
+	}
+
 	/**
 	 * Retrieves the output of a single stage of the given job pair. Requires that the jobId, path, solver name, config
 	 * name, and bench names of the PRIMARY STAGE be populated. The fields do NOT need to be populated for given stage,
@@ -1498,6 +1824,42 @@ public class JobPairs {
 		return false;
 	}
 
+	/**
+	 * Assigns a given status code to every given job pair and all of their stages. All of the updates are sent as a
+	 * single batch in one transaction.
+	 *
+	 * @param pairIds The pairs to update
+	 * @param statusCode
+	 * @return True on success and false otherwise
+	 */
+	public static boolean setStatusForPairsAndStages(Collection<Integer> pairIds, int statusCode) {
+		if (pairIds.isEmpty()) {
+			return true;
+		}
+		Connection con = null;
+		CallableStatement procedure = null;
+		try {
+			con = Common.getConnection();
+			Common.beginTransaction(con);
+			procedure = con.prepareCall("{CALL UpdatePairAndStageStatuses(?, ?)}");
+			for (Integer pairId : pairIds) {
+				procedure.setInt(1, pairId);
+				procedure.setInt(2, statusCode);
+				procedure.addBatch();
+			}
+			procedure.executeBatch();
+			Common.endTransaction(con);
+			return true;
+		} catch (Exception e) {
+			log.error("setStatusForPairsAndStages", e);
+			Common.doRollback(con);
+		} finally {
+			Common.safeClose(con);
+			Common.safeClose(procedure);
+		}
+		return false;
+	}
+
 	/**
 	 * Sets the status code of every stage for the given pair to the given code
 	 *
@@ -1716,6 +2078,42 @@ public class JobPairs {
 		return false;
 	}
 
+	/**
+	 * Updates the backend execution IDs of many pairs at once. All of the updates are sent as a single batch in one
+	 * transaction.
+	 *
+	 * @param pairIdsToExecIds Maps the id of every pair to update to its new backend id
+	 * @return True if the operation was a success, false otherwise.
+	 */
+	public static boolean updateBackendExecIds(Map<Integer, Integer> pairIdsToExecIds) {
+		if (pairIdsToExecIds.isEmpty()) {
+			return true;
+		}
+		Connection con = null;
+		CallableStatement procedure = null;
+		try {
+			con = Common.getConnection();
+			Common.beginTransaction(con);
+			procedure = con.prepareCall("{CALL SetBackendExecId(?, ?)}");
+			for (Entry<Integer, Integer> e : pairIdsToExecIds.entrySet()) {
+				procedure.setInt(1, e.getKey());
+				procedure.setInt(2, e.getValue());
+				procedure.addBatch();
+			}
+			procedure.executeBatch();
+			Common.endTransaction(con);
+			return true;
+		} catch (Exception e) {
+			log.error("updateBackendExecIds", e);
+			Common.doRollback(con);
+		} finally {
+			Common.safeClose(con);
+			Common.safeClose(procedure);
+		}
+
+		return false;
+	}
+
 	/**
 	 * Updates the database to give the job pair with the given ID the given job space.
 	 *
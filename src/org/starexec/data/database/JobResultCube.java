@@ -0,0 +1,565 @@
+package org.starexec.data.database;
+
+import org.starexec.constants.R;
+import org.starexec.data.to.Benchmark;
+import org.starexec.data.to.Configuration;
+import org.starexec.data.to.JobPair;
+import org.starexec.data.to.Solver;
+import org.starexec.data.to.Status;
+import org.starexec.data.to.Status.StatusCode;
+import org.starexec.data.to.pipelines.JoblineStage;
+import org.starexec.logger.StarLogger;
+import org.starexec.util.DataTablesQuery;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Every stage of every pair of a complete job, held in memory as one primitive array per column. Strings are kept
+ * once each in a dictionary and the columns hold their indexes. The job page tables and graphs of a complete job are
+ * answered from the cube, so they no longer load the same pairs from the database on every request.
+ * <p>
+ * Cubes are kept for the most recently viewed jobs, up to R.JOB_RESULT_CUBE_BYTES in all. A job's cube is dropped
+ * whenever its cached job stats are, which happens whenever pairs of the job are rerun, deleted or processed again.
+ */
+public class JobResultCube {
+	private static final StarLogger log = StarLogger.getLogger(JobResultCube.class);
+
+	private static final int NONE = -1;
+
+	// in order of use, least recent first
+	private static final LinkedHashMap<Integer, JobResultCube> cubes = new LinkedHashMap<>(16, 0.75f, true);
+	private static long cachedBytes = 0;
+	// incremented whenever cubes are dropped, so that a cube loaded from before then is not cached
+	private static long generation = 0;
+	// the loads in progress, which threads that want the same cube wait for instead of loading it again
+	private static final Map<Integer, CompletableFuture<JobResultCube>> loading = new ConcurrentHashMap<>();
+
+	private final int rows;
+	private final int[] pairIds;
+	private final int[] pairStatuses;
+	private final int[] completionIds;
+	private final int[] benchIds;
+	private final int[] benchNames;
+	private final int[] spaceIds;
+	private final int[] primaryStages;
+	private final int[] stageNumbers;
+	private final int[] solverIds;
+	private final int[] solverNames;
+	private final int[] configIds;
+	private final int[] configNames;
+	private final int[] statuses;
+	private final int[] results;
+	private final int[] expected;
+	private final double[] cpu;
+	private final double[] wallclock;
+	private final double[] memory;
+	private final String[] strings;
+
+	private JobResultCube(Builder b) {
+		rows = b.pairIds.size;
+		pairIds = b.pairIds.toArray();
+		pairStatuses = b.pairStatuses.toArray();
+		completionIds = b.completionIds.toArray();
+		benchIds = b.benchIds.toArray();
+		benchNames = b.benchNames.toArray();
+		spaceIds = b.spaceIds.toArray();
+		primaryStages = b.primaryStages.toArray();
+		stageNumbers = b.stageNumbers.toArray();
+		solverIds = b.solverIds.toArray();
+		solverNames = b.solverNames.toArray();
+		configIds = b.configIds.toArray();
+		configNames = b.configNames.toArray();
+		statuses = b.statuses.toArray();
+		results = b.results.toArray();
+		expected = b.expected.toArray();
+		cpu = Arrays.copyOf(b.cpu, rows);
+		wallclock = Arrays.copyOf(b.wallclock, rows);
+		memory = Arrays.copyOf(b.memory, rows);
+		strings = b.strings.toArray(new String[0]);
+	}
+
+	/**
+	 * Builds a cube one stage at a time. The stages of a pair must be added one after another.
+	 */
+	public static class Builder {
+		private final IntColumn pairIds = new IntColumn();
+		private final IntColumn pairStatuses = new IntColumn();
+		private final IntColumn completionIds = new IntColumn();
+		private final IntColumn benchIds = new IntColumn();
+		private final IntColumn benchNames = new IntColumn();
+		private final IntColumn spaceIds = new IntColumn();
+		private final IntColumn primaryStages = new IntColumn();
+		private final IntColumn stageNumbers = new IntColumn();
+		private final IntColumn solverIds = new IntColumn();
+		private final IntColumn solverNames = new IntColumn();
+		private final IntColumn configIds = new IntColumn();
+		private final IntColumn configNames = new IntColumn();
+		private final IntColumn statuses = new IntColumn();
+		private final IntColumn results = new IntColumn();
+		private final IntColumn expected = new IntColumn();
+		private double[] cpu = new double[16];
+		private double[] wallclock = new double[16];
+		private double[] memory = new double[16];
+		private final List<String> strings = new ArrayList<>();
+		private final Map<String, Integer> dictionary = new HashMap<>();
+
+		/**
+		 * Adds one stage of a pair. Solver and configuration IDs of 0 mean the stage is a noOp stage, and a completion ID
+		 * of 0 means the pair has not completed.
+		 *
+		 * @return This builder
+		 */
+		public Builder addStage(
+				int pairId, int pairStatus, int completionId, int benchId, String benchName, int jobSpaceId, int primaryStage,
+				int stageNumber, int solverId, String solverName, int configId, String configName, int status,
+				double cpuTime, double wallclockTime, double maxMemory, String result, String expectedResult
+		) {
+			int row = pairIds.size;
+			if (row == cpu.length) {
+				cpu = Arrays.copyOf(cpu, row * 2);
+				wallclock = Arrays.copyOf(wallclock, row * 2);
+				memory = Arrays.copyOf(memory, row * 2);
+			}
+			pairIds.add(pairId);
+			pairStatuses.add(pairStatus);
+			completionIds.add(completionId);
+			benchIds.add(benchId);
+			benchNames.add(encode(benchName));
+			spaceIds.add(jobSpaceId);
+			primaryStages.add(primaryStage);
+			stageNumbers.add(stageNumber);
+			solverIds.add(solverId);
+			solverNames.add(encode(solverName));
+			configIds.add(configId);
+			configNames.add(encode(configName));
+			statuses.add(status);
+			results.add(encode(result));
+			expected.add(encode(expectedResult));
+			cpu[row] = cpuTime;
+			wallclock[row] = wallclockTime;
+			memory[row] = maxMemory;
+			return this;
+		}
+
+		private int encode(String s) {
+			if (s == null) {
+				return NONE;
+			}
+			Integer index = dictionary.get(s);
+			if (index == null) {
+				index = strings.size();
+				strings.add(s);
+				dictionary.put(s, index);
+			}
+			return index;
+		}
+
+		public JobResultCube build() {
+			return new JobResultCube(this);
+		}
+	}
+
+	private static class IntColumn {
+		private int[] values = new int[16];
+		private int size = 0;
+
+		private void add(int value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+
+		private int[] toArray() {
+			return Arrays.copyOf(values, size);
+		}
+	}
+
+	/**
+	 * Gets the cube of a job, loading it if the job is complete and its cube is not cached
+	 *
+	 * @param jobId The ID of the job
+	 * @return The cube, or null if the job is not complete or the cube could not be loaded
+	 */
+	public static JobResultCube get(int jobId) {
+		JobResultCube cube = getCached(jobId);
+		if (cube != null || !Jobs.isJobComplete(jobId)) {
+			return cube;
+		}
+		// only one thread loads any one job's cube; the others wait for its result
+		CompletableFuture<JobResultCube> load = new CompletableFuture<>();
+		CompletableFuture<JobResultCube> running = loading.putIfAbsent(jobId, load);
+		if (running != null) {
+			return running.join();
+		}
+		try {
+			cube = getCached(jobId);
+			if (cube == null) {
+				long loadedGeneration;
+				synchronized (cubes) {
+					loadedGeneration = generation;
+				}
+				cube = load(jobId);
+				if (cube != null) {
+					put(jobId, cube, loadedGeneration);
+				}
+			}
+			return cube;
+		} finally {
+			// the cube is cached before the load is unmarked, and threads already waiting get it from the load
+			load.complete(cube);
+			loading.remove(jobId, load);
+		}
+	}
+
+	private static JobResultCube getCached(int jobId) {
+		synchronized (cubes) {
+			return cubes.get(jobId);
+		}
+	}
+
+	private static void put(int jobId, JobResultCube cube, long loadedGeneration) {
+		synchronized (cubes) {
+			// a cube larger than the whole budget would push every other cube out and still not fit
+			if (loadedGeneration != generation || cube.estimateBytes() > R.JOB_RESULT_CUBE_BYTES) {
+				return;
+			}
+			cubes.put(jobId, cube);
+			cachedBytes += cube.estimateBytes();
+			Iterator<JobResultCube> leastRecent = cubes.values().iterator();
+			while (cachedBytes > R.JOB_RESULT_CUBE_BYTES && leastRecent.hasNext()) {
+				JobResultCube evicted = leastRecent.next();
+				if (evicted != cube) {
+					cachedBytes -= evicted.estimateBytes();
+					leastRecent.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Drops the cube of a job, if there is one
+	 *
+	 * @param jobId The ID of the job
+	 */
+	public static void invalidate(int jobId) {
+		synchronized (cubes) {
+			generation++;
+			JobResultCube cube = cubes.remove(jobId);
+			if (cube != null) {
+				cachedBytes -= cube.estimateBytes();
+			}
+		}
+	}
+
+	/**
+	 * Drops every cube
+	 */
+	public static void invalidateAll() {
+		synchronized (cubes) {
+			generation++;
+			cubes.clear();
+			cachedBytes = 0;
+		}
+	}
+
+	private static JobResultCube load(int jobId) {
+		try {
+			return Common.query("{CALL GetJobResultCube(?)}", procedure -> procedure.setInt(1, jobId), results -> {
+				Builder builder = new Builder();
+				while (results.next()) {
+					builder.addStage(
+							results.getInt("pair_id"), results.getInt("pair_status"), results.getInt("completion_id"),
+							results.getInt("bench_id"),
+							results.getString("bench_name"), results.getInt("job_space_id"),
+							results.getInt("primary_jobpair_data"), results.getInt("stage_number"),
+							results.getInt("solver_id"), results.getString("solver_name"), results.getInt("config_id"),
+							results.getString("config_name"), results.getInt("status_code"), results.getDouble("cpu"),
+							results.getDouble("wallclock"), results.getDouble("max_vmem"), results.getString("result"),
+							results.getString("expected")
+					);
+				}
+				JobResultCube cube = builder.build();
+				log.debug("loaded the result cube of job " + jobId + " with " + cube.rows + " stages");
+				return cube;
+			});
+		} catch (SQLException e) {
+			log.error("load", "jobId: " + jobId, e);
+		}
+		return null;
+	}
+
+	/**
+	 * @return Roughly how much memory the cube takes up
+	 */
+	public long estimateBytes() {
+		long bytes = (long) rows * (15 * Integer.BYTES + 3 * Double.BYTES);
+		for (String s : strings) {
+			bytes += 40 + 2L * s.length();
+		}
+		return bytes;
+	}
+
+	private String string(int index) {
+		return index == NONE ? null : strings[index];
+	}
+
+	// noOp stages have no solver, so they never match
+	private boolean stageMatches(int row, int stageNumber) {
+		if (solverIds[row] == 0) {
+			return false;
+		}
+		return stageNumber <= 0 ? stageNumbers[row] == primaryStages[row] : stageNumbers[row] == stageNumber;
+	}
+
+	/**
+	 * Gets the pairs in the given job spaces with all their stages
+	 *
+	 * @param jobSpaceIds The job spaces to get pairs in, such as every space in a job space hierarchy
+	 * @return The pairs, with the fields needed for SolverStats tables, comparisons and graphs
+	 */
+	public List<JobPair> getPairs(Set<Integer> jobSpaceIds) {
+		Materializer m = new Materializer();
+		List<JobPair> pairs = new ArrayList<>();
+		JobPair current = null;
+		for (int row = 0; row < rows; row++) {
+			if (!jobSpaceIds.contains(spaceIds[row])) {
+				continue;
+			}
+			if (current == null || current.getId() != pairIds[row]) {
+				current = m.pair(row);
+				pairs.add(current);
+			}
+			current.addStage(m.stage(row, true));
+		}
+		return pairs;
+	}
+
+	/**
+	 * Gets the pairs of a stage in the whole job. Each pair has only that stage, which is also its primary stage. Pairs
+	 * whose stage is a noOp stage are left out.
+	 *
+	 * @param stageNumber The stage number, or 0 for the primary stage of every pair
+	 * @return The pairs
+	 */
+	public List<JobPair> getPairsForStage(int stageNumber) {
+		Materializer m = new Materializer();
+		List<JobPair> pairs = new ArrayList<>();
+		for (int row = 0; row < rows; row++) {
+			if (stageMatches(row, stageNumber)) {
+				pairs.add(m.singleStagePair(row));
+			}
+		}
+		return pairs;
+	}
+
+	/**
+	 * Gets the pairs in a single job space whose benchmark was completed by every configuration used in the space.
+	 * Only stages that are complete count. Each pair has only the given stage, which is also its primary stage.
+	 *
+	 * @param jobSpaceId The job space
+	 * @param stageNumber The stage number, or 0 for the primary stage of every pair
+	 * @return The synchronized pairs
+	 */
+	public List<JobPair> getSynchronizedPairs(int jobSpaceId, int stageNumber) {
+		Materializer m = new Materializer();
+		List<JobPair> pairs = new ArrayList<>();
+		for (int row : getSynchronizedRows(jobSpaceId, stageNumber)) {
+			pairs.add(m.singleStagePair(row));
+		}
+		return pairs;
+	}
+
+	/**
+	 * Gets a page of the synchronized pairs of a job space, as getSynchronizedPairs would return them after
+	 * Jobs.getJobPairsForNextPage searched, sorted and paged them. The rows are searched, sorted and paged here, so only
+	 * the pairs on the page are made.
+	 *
+	 * @param jobSpaceId The job space
+	 * @param stageNumber The stage number, or 0 for the primary stage of every pair
+	 * @param query The search, sort and page the table asks for
+	 * @param wallclock Whether the time column is wallclock time rather than CPU time
+	 * @param totals Gets the number of synchronized pairs, and then the number that match the search
+	 * @return The pairs on the page
+	 */
+	public List<JobPair> getSynchronizedPairsPage(
+			int jobSpaceId, int stageNumber, DataTablesQuery query, boolean wallclock, int[] totals
+	) {
+		List<Integer> rows = getSynchronizedRows(jobSpaceId, stageNumber);
+		totals[0] = rows.size();
+		String search = query.getSearchQuery();
+		if (search != null && !search.isEmpty()) {
+			String lower = search.toLowerCase();
+			rows.removeIf(row -> !rowMatches(row, lower));
+		}
+		totals[1] = rows.size();
+		int column = query.getSortColumn();
+		if (!wallclock && column == 4) {
+			column = 8;
+		}
+		Comparator<Integer> compare = rowComparator(column);
+		rows.sort(query.isSortASC() ? compare : compare.reversed());
+
+		Materializer m = new Materializer();
+		List<JobPair> pairs = new ArrayList<>();
+		int end = Math.min(rows.size(), query.getStartingRecord() + query.getNumRecords());
+		for (int i = query.getStartingRecord(); i < end; i++) {
+			pairs.add(m.singleStagePair(rows.get(i)));
+		}
+		return pairs;
+	}
+
+	// the search of JobPairs.filterPairs
+	private boolean rowMatches(int row, String search) {
+		String result = string(results[row]);
+		return contains(benchNames[row], search) ||
+				String.valueOf(StatusCode.toStatusCode(statuses[row]).getVal()).equals(search) ||
+				contains(solverNames[row], search) || contains(configNames[row], search) ||
+				(result == null ? "--" : result).contains(search);
+	}
+
+	private boolean contains(int index, String search) {
+		return index != NONE && strings[index].toLowerCase().contains(search);
+	}
+
+	// the order of JobPairComparator, ascending
+	private Comparator<Integer> rowComparator(int column) {
+		switch (column) {
+		case 0:
+			return (a, b) -> compareStrings(string(benchNames[a]), string(benchNames[b]));
+		case 2:
+			return (a, b) -> compareStrings(string(configNames[a]), string(configNames[b]));
+		case 3:
+			return (a, b) -> compareStrings(StatusCode.toStatusCode(statuses[a]).getStatus(),
+			                                StatusCode.toStatusCode(statuses[b]).getStatus());
+		case 5:
+			return (a, b) -> compareStrings(string(results[a]), string(results[b]));
+		case 4:
+			return (a, b) -> Double.compare(wallclock[a], wallclock[b]);
+		case 6:
+			return (a, b) -> Integer.compare(pairIds[a], pairIds[b]);
+		case 7:
+			return (a, b) -> Integer.compare(completionIds[a], completionIds[b]);
+		case 8:
+			return (a, b) -> Double.compare(cpu[a], cpu[b]);
+		default:
+			return (a, b) -> compareStrings(string(solverNames[a]), string(solverNames[b]));
+		}
+	}
+
+	private static int compareStrings(String a, String b) {
+		return a == null || b == null ? 0 : a.compareToIgnoreCase(b);
+	}
+
+	// the rows of the synchronized pairs of a job space, in the order getSynchronizedPairs returns them
+	private List<Integer> getSynchronizedRows(int jobSpaceId, int stageNumber) {
+		Set<Integer> configs = new HashSet<>();
+		Map<Integer, Integer> benchCounts = new HashMap<>();
+		List<Integer> complete = new ArrayList<>();
+		for (int row = 0; row < rows; row++) {
+			if (spaceIds[row] != jobSpaceId || !stageMatches(row, stageNumber) ||
+					!StatusCode.toStatusCode(statuses[row]).statComplete()) {
+				continue;
+			}
+			complete.add(row);
+			configs.add(configIds[row]);
+			benchCounts.merge(benchIds[row], 1, Integer::sum);
+		}
+		List<Integer> synced = new ArrayList<>();
+		for (int row : complete) {
+			if (benchCounts.get(benchIds[row]) == configs.size()) {
+				synced.add(row);
+			}
+		}
+		return synced;
+	}
+
+	// makes pair objects out of rows, sharing one solver and configuration object for every row that uses them
+	private class Materializer {
+		private final Map<Integer, Solver> solvers = new HashMap<>();
+		private final Map<Integer, Configuration> configs = new HashMap<>();
+		private final Map<Integer, Benchmark> benches = new HashMap<>();
+
+		private JobPair pair(int row) {
+			JobPair jp = new JobPair();
+			jp.setId(pairIds[row]);
+			jp.setJobSpaceId(spaceIds[row]);
+			jp.setCompletionId(completionIds[row]);
+			jp.setPrimaryStageNumber(primaryStages[row]);
+			Status status = new Status();
+			status.setCode(pairStatuses[row]);
+			jp.setStatus(status);
+			jp.setBench(benches.computeIfAbsent(benchIds[row], id -> {
+				Benchmark b = new Benchmark();
+				b.setId(id);
+				b.setName(string(benchNames[row]));
+				return b;
+			}));
+			return jp;
+		}
+
+		private JobPair singleStagePair(int row) {
+			JobPair jp = pair(row);
+			jp.setPrimaryStageNumber(stageNumbers[row]);
+			// the job pair table links the first configuration of the stage's solver, so the solver is not shared
+			jp.addStage(stage(row, false));
+			return jp;
+		}
+
+		private JoblineStage stage(int row, boolean shareSolver) {
+			JoblineStage stage = new JoblineStage();
+			stage.setStageNumber(stageNumbers[row]);
+			stage.getStatus().setCode(statuses[row]);
+			stage.setCpuUsage(cpu[row]);
+			stage.setWallclockTime(wallclock[row]);
+			stage.setMaxVirtualMemory(memory[row]);
+			if (solverIds[row] == 0) {
+				stage.setNoOp(true);
+				return stage;
+			}
+			Solver solver = shareSolver ? solvers.get(solverIds[row]) : null;
+			if (solver == null) {
+				solver = new Solver();
+				solver.setId(solverIds[row]);
+				solver.setName(string(solverNames[row]));
+				if (shareSolver) {
+					solvers.put(solverIds[row], solver);
+				}
+			}
+			Configuration config = configs.get(configIds[row]);
+			if (config == null) {
+				config = new Configuration();
+				config.setId(configIds[row]);
+				config.setName(string(configNames[row]));
+				configs.put(configIds[row], config);
+			}
+			if (!shareSolver || !solver.getConfigurations().contains(config)) {
+				solver.addConfiguration(config);
+			}
+			stage.setSolver(solver);
+			stage.setConfiguration(config);
+			Properties attributes = new Properties();
+			if (results[row] != NONE) {
+				attributes.put(R.STAREXEC_RESULT, string(results[row]));
+			}
+			if (expected[row] != NONE) {
+				attributes.put(R.EXPECTED_RESULT, string(expected[row]));
+			}
+			stage.setAttributes(attributes);
+			return stage;
+		}
+	}
+}
@@ -21,14 +21,17 @@ import org.starexec.data.to.pipelines.SolverPipeline;
 import org.starexec.data.to.pipelines.StageAttributes;
 import org.starexec.data.to.pipelines.StageAttributes.SaveResultsOption;
 import org.starexec.data.to.tuples.AttributesTableData;
+import org.starexec.data.to.tuples.JobPairCounts;
 import org.starexec.data.to.tuples.TimePair;
 import org.starexec.exceptions.StarExecDatabaseException;
 import org.starexec.exceptions.StarExecException;
 import org.starexec.logger.StarLogger;
 import org.starexec.util.DataTablesQuery;
 import org.starexec.util.NamedParameterStatement;
+import org.starexec.util.PageCursor;
 import org.starexec.util.PaginationQueryBuilder;
 import org.starexec.util.Util;
+import org.starexec.util.functionalInterfaces.ThrowingConsumer;
 
 import java.io.File;
 import java.io.IOException;
@@ -44,6 +47,30 @@ import java.util.*;
 public class Jobs {
 	private static final StarLogger log = StarLogger.getLogger(Jobs.class);
 
+	// stats of the finished pairs in the job spaces whose stats were viewed most recently, keyed by job, job space,
+	// whether unknown results are included and what is anonymized. Bounded by the finished pairs the stats remember,
+	// see trimFinishedStats
+	private static final Map<String, SolverStatsAccumulator> finishedStats =
+			Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true));
+
+	// bumped whenever the finished stats of a job are dropped, so that stats compiled from pairs read before then are
+	// not put back. Both are guarded by finishedStats
+	private static final Map<Integer, Integer> finishedStatsGenerations = new HashMap<>();
+	private static int finishedStatsCleared = 0;
+
+	// recent counts of the pairs in a job space, keyed by job space and stage number. Each value holds the count and
+	// the time it was taken
+	private static final Map<String, long[]> pairCounts =
+			Collections.synchronizedMap(new LinkedHashMap<String, long[]>(16, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, long[]> eldest) {
+					return size() > R.JOB_STATS_CACHE_SPACES;
+				}
+			});
+
+	// pending pairs whose IDs are at most this far apart are loaded with a single range query
+	private static final int MAX_PENDING_PAIR_ID_GAP = 1000;
+
 	/**
 	 * Returns a list of job spaces that are present in the given path. Spaces are returned ordered from top level to
 	 * bottom level. An exception is thrown if the given path is null or empty
@@ -529,21 +556,32 @@ public class Jobs {
 				Jobs.addJobStageAttributes(attrs, con);
 			}
 
-			log.debug("adding job pairs");
-
-			JobPairs.addJobPairs(con, job.getId(), job.getJobPairs());
-
 			Common.endTransaction(con);
+
+			log.debug("adding job pairs");
+			// commits the pairs in chunks; the job stays paused until they are all in
+			if (!JobPairs.addJobPairs(con, job.getId(), job.getJobPairs())) {
+				throw new SQLException("could not add the pairs of job " + job.getId());
+			}
 			//Create the output directory for the job up front. This ensures that if a user
 			//tries to download output before any exists, they will get a correctly formatted
 			//zip containing an empty directory.
 			new File(Jobs.getDirectory(job.getId())).mkdirs();
 			log.debug("job added successfully");
 			Jobs.resume(job.getId(), con); // now that the job has been added, we can resume
+			PendingPairIndex.set(job.getId(), PendingPairIndex.getSubmittableIds(job.getJobPairs(), job.isBuildJob()));
 			return true;
 		} catch (Exception e) {
 			log.error("add", e);
 			Common.doRollback(con);
+			// the job and some of its pairs may already be committed, so they have to be deleted instead
+			if (job.getId() > 0) {
+				try {
+					Jobs.delete(job.getId());
+				} catch (Exception deleteError) {
+					log.error("add", "could not delete job " + job.getId() + " after failing to add it", deleteError);
+				}
+			}
 		} finally {
 			Common.safeClose(con);
 			Common.safeClose(procedure);
@@ -737,6 +775,184 @@ public class Jobs {
 		return -1;
 	}
 
+	private static void setSince(CallableStatement procedure, int index, Integer since) throws SQLException {
+		if (since == null) {
+			procedure.setNull(index, java.sql.Types.INTEGER);
+		} else {
+			procedure.setInt(index, since);
+		}
+	}
+
+	/**
+	 * Counts the pairs and stages of a job and finds the largest completion ID among the pairs
+	 *
+	 * @param jobId The ID of the job
+	 * @param since If not null, only pairs with a completion ID greater than this are counted
+	 * @return The counts, or null on error
+	 */
+	public static JobPairCounts getPairAndStageCounts(int jobId, Integer since) {
+		try {
+			return Common.query("{CALL CountJobPairsAndStages(?,?)}", procedure -> {
+				procedure.setInt(1, jobId);
+				setSince(procedure, 2, since);
+			}, results -> {
+				if (!results.next()) {
+					return new JobPairCounts(0, 0, 0);
+				}
+				return new JobPairCounts(results.getInt("pairs"), results.getInt("stages"), results.getInt("max_completion"));
+			});
+		} catch (SQLException e) {
+			log.error("getPairAndStageCounts", "jobId: " + jobId, e);
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the largest completion ID among the pairs of a job. Much cheaper than getPairAndStageCounts, since it reads
+	 * no stages, so it is what cached downloads of a job are keyed on: a pair that finishes again gets a new one.
+	 *
+	 * @param jobId The ID of the job
+	 * @return The largest completion ID, 0 if no pair has completed, or null on error
+	 */
+	public static Integer getMaxCompletionId(int jobId) {
+		try {
+			return Common.query("{CALL GetMaxCompletionId(?)}", procedure -> procedure.setInt(1, jobId),
+			                    results -> results.next() ? results.getInt("max_completion") : 0);
+		} catch (SQLException e) {
+			log.error("getMaxCompletionId", "jobId: " + jobId, e);
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the names of all the attributes of the complete pairs of a job, including the expected result if any of
+	 * their benchmarks have one
+	 *
+	 * @param jobId The ID of the job
+	 * @param since If not null, only pairs with a completion ID greater than this are considered
+	 * @return The names in alphabetical order, or null on error
+	 */
+	public static List<String> getCompletedPairAttributeNames(int jobId, Integer since) {
+		try {
+			return Common.query("{CALL GetCompletedPairAttributeNames(?,?)}", procedure -> {
+				procedure.setInt(1, jobId);
+				setSince(procedure, 2, since);
+			}, results -> {
+				List<String> names = new ArrayList<>();
+				while (results.next()) {
+					names.add(results.getString("attr_key"));
+				}
+				return names;
+			});
+		} catch (SQLException e) {
+			log.error("getCompletedPairAttributeNames", "jobId: " + jobId, e);
+		}
+		return null;
+	}
+
+	/**
+	 * Reads the pairs of a job one at a time, with their stages and stage attributes, without holding more than one
+	 * pair in memory. The stages are read with one streaming query on one connection, ordered by pair and stage, with a
+	 * row for every attribute of a stage. Each stage has the attributes the job pair page would show: its own
+	 * attributes if it has any, and otherwise the expected result of the benchmark. The primary stage always has the
+	 * expected result of the benchmark, if there is one.
+	 *
+	 * @param jobId The ID of the job
+	 * @param since If not null, only pairs with a completion ID greater than this and at most until are read
+	 * @param until The largest completion ID to read when since is not null, so that pairs completing while the
+	 * job is being read are left for the next read
+	 * @param onlyCompleted True to skip pairs that have not finished running
+	 * @param consumer Given each pair in order of ID, with its stages in order
+	 * @throws SQLException If the pairs could not be read
+	 * @throws IOException If the consumer throws it
+	 */
+	public static void forEachPairWithAttributes(
+			int jobId, Integer since, int until, boolean onlyCompleted, ThrowingConsumer<JobPair, IOException> consumer
+	) throws SQLException, IOException {
+		Connection con = null;
+		CallableStatement procedure = null;
+		ResultSet results = null;
+		try {
+			con = Common.getConnection();
+			procedure = con.prepareCall("{CALL GetJobPairStagesInOrder(?,?,?,?)}");
+			procedure.setInt(1, jobId);
+			setSince(procedure, 2, since);
+			procedure.setInt(3, until);
+			procedure.setBoolean(4, onlyCompleted);
+			// tells the MySQL driver to stream rows instead of reading the whole result into memory
+			procedure.setFetchSize(Integer.MIN_VALUE);
+			results = procedure.executeQuery();
+
+			JobPair pair = null;
+			JoblineStage stage = null;
+			String expected = null;
+			while (results.next()) {
+				int pairId = results.getInt("job_pairs.id");
+				int stageNumber = results.getInt("stage_number");
+				if (stage != null && (pair.getId() != pairId || stage.getStageNumber() != stageNumber)) {
+					finishStage(pair, stage, expected);
+					stage = null;
+				}
+				if (pair != null && pair.getId() != pairId) {
+					consumer.accept(pair);
+					pair = null;
+				}
+				if (pair == null) {
+					pair = new JobPair();
+					pair.setId(pairId);
+					pair.setJobId(jobId);
+					pair.setPath(results.getString("job_pairs.path"));
+					pair.getBench().setId(results.getInt("job_pairs.bench_id"));
+					pair.getBench().setName(results.getString("job_pairs.bench_name"));
+					pair.getStatus().setCode(results.getInt("job_pairs.status_code"));
+					pair.setPrimaryStageNumber(results.getInt("primary_jobpair_data"));
+					pair.setCompletionId(results.getInt("completion_id"));
+				}
+				if (stage == null) {
+					stage = new JoblineStage();
+					stage.setStageNumber(stageNumber);
+					stage.setStageId(results.getInt("stage_id"));
+					stage.getStatus().setCode(results.getInt("jobpair_stage_data.status_code"));
+					stage.setCpuUsage(results.getDouble("cpu"));
+					stage.setWallclockTime(results.getDouble("wallclock"));
+					stage.setMaxVirtualMemory(results.getDouble("max_vmem"));
+					Solver solver = new Solver();
+					solver.setId(results.getInt("solver_id"));
+					solver.setName(results.getString("solver_name"));
+					Configuration config = new Configuration();
+					config.setId(results.getInt("config_id"));
+					config.setName(results.getString("config_name"));
+					stage.setSolver(solver);
+					stage.setConfiguration(config);
+					stage.setAttributes(new Properties());
+					expected = results.getString("expected");
+				}
+				String key = results.getString("attr_key");
+				if (key != null) {
+					stage.getAttributes().put(key, results.getString("attr_value"));
+				}
+			}
+			if (stage != null) {
+				finishStage(pair, stage, expected);
+				consumer.accept(pair);
+			}
+		} finally {
+			Common.safeClose(results);
+			Common.safeClose(procedure);
+			Common.safeClose(con);
+		}
+	}
+
+	// gives a stage read by forEachPairWithAttributes the expected result of its benchmark, and adds it to its pair
+	private static void finishStage(JobPair pair, JoblineStage stage, String expected) {
+		Properties props = stage.getAttributes();
+		boolean primary = stage.getStageNumber().equals(pair.getPrimaryStageNumber());
+		if (expected != null && (props.isEmpty() || primary)) {
+			props.put(R.EXPECTED_RESULT, expected);
+		}
+		pair.addStage(stage);
+	}
+
 	/**
 	 * Deletes the job with the given id from disk, and permanently removes the job from the database. This is used for
 	 * testing and is NOT the normal procedure for deleting a job! Call "delete" instead.
@@ -1158,12 +1374,27 @@ public class Jobs {
 		//we will cache the stats only if the job is complete
 		boolean isJobComplete = Jobs.isJobComplete(jobId);
 
-		//otherwise, we need to compile the stats
+		//otherwise, we need to compile the stats. Only the pairs that finished since the stats were last compiled
+		//are read, and pairs that are still running are counted as they are now
 		log.debug("stats not present in database -- compiling stats now");
-		List<JobPair> pairs = getJobPairsInJobSpaceHierarchy(spaceId, primitivesToAnonymize);
-
-		//compiles pairs into solver stats
-		stats = processPairsToSolverStats(jobId, pairs, includeUnknown);
+		SolverStatsAccumulator accumulator = getFinishedStats(jobId, spaceId, primitivesToAnonymize, includeUnknown);
+		if (accumulator == null) {
+			return null;
+		}
+		List<JobPair> unfinished = getUnfinishedJobPairsInJobSpaceHierarchy(spaceId, primitivesToAnonymize);
+		if (unfinished == null || !addUnfinishedStageCounts(spaceId, accumulator, primitivesToAnonymize)) {
+			return null;
+		}
+		for (JobPair jp : unfinished) {
+			accumulator.addPair(jp);
+		}
+		try {
+			accumulator.setConflicts(getConflicts(jobId, accumulator.getConflictStages()));
+		} catch (SQLException e) {
+			log.error("getAllJobStatsInJobSpaceHierarchyIncludeDeletedConfigs", e);
+			return null;
+		}
+		stats = accumulator.getStats();
 		for (SolverStats s : stats) {
 			s.setJobSpaceId(spaceId);
 		}
@@ -1179,6 +1410,139 @@ public class Jobs {
 		return stats;
 	}
 
+	/**
+	 * Gets the stats of the pairs in a job space hierarchy that have finished. The stats are kept in memory and only
+	 * the pairs that finished since the last call are read. Completion IDs may be committed out of order, so pairs a
+	 * little below the last completion ID are read again as well. A pair that finished again, such as after a rerun,
+	 * got a new completion ID, and its first finish can not be taken back out, so the stats are then compiled anew.
+	 *
+	 * @return A copy of the stats that the caller may add to, or null on error
+	 */
+	private static SolverStatsAccumulator getFinishedStats(
+			int jobId, int jobSpaceId, PrimitivesToAnonymize primitivesToAnonymize, boolean includeUnknown
+	) {
+		String key = jobId + ":" + jobSpaceId + ":" + includeUnknown + ":" +
+				AnonymousLinks.getPrimitivesToAnonymizeName(primitivesToAnonymize);
+		int generation = getFinishedStatsGeneration(jobId);
+		SolverStatsAccumulator finished =
+				finishedStats.computeIfAbsent(key, k -> new SolverStatsAccumulator(includeUnknown));
+		synchronized (finished) {
+			int since = Math.max(0, finished.getLastCompletionId() - R.JOB_STATS_COMPLETION_LOOKBACK);
+			List<JobPair> pairs = getJobPairsInJobSpaceHierarchy(jobSpaceId, since, primitivesToAnonymize);
+			if (pairs == null) {
+				return null;
+			}
+			log.debug("adding " + pairs.size() + " newly finished pairs to the stats of job space " + jobSpaceId);
+			if (!addFinishedPairs(finished, pairs)) {
+				log.debug("pairs in job space " + jobSpaceId + " finished again, compiling their stats anew");
+				finished = new SolverStatsAccumulator(includeUnknown);
+				pairs = getJobPairsInJobSpaceHierarchy(jobSpaceId, 0, primitivesToAnonymize);
+				if (pairs == null) {
+					return null;
+				}
+				addFinishedPairs(finished, pairs);
+				synchronized (finishedStats) {
+					if (generation == getFinishedStatsGeneration(jobId)) {
+						finishedStats.put(key, finished);
+					}
+				}
+			}
+			trimFinishedStats();
+			return finished.copy();
+		}
+	}
+
+	// the generation of the finished stats of a job, which grows every time they are dropped
+	private static int getFinishedStatsGeneration(int jobId) {
+		synchronized (finishedStats) {
+			return finishedStatsCleared + finishedStatsGenerations.getOrDefault(jobId, 0);
+		}
+	}
+
+	// drops the stats of the job spaces viewed least recently until the stats kept remember no more than
+	// R.JOB_STATS_CACHE_PAIRS finished pairs. The stats viewed most recently are always kept
+	private static void trimFinishedStats() {
+		synchronized (finishedStats) {
+			long pairs = 0;
+			for (SolverStatsAccumulator stats : finishedStats.values()) {
+				pairs += stats.getFinishedPairCount();
+			}
+			Iterator<SolverStatsAccumulator> eldest = finishedStats.values().iterator();
+			while (pairs > R.JOB_STATS_CACHE_PAIRS && finishedStats.size() > 1) {
+				pairs -= eldest.next().getFinishedPairCount();
+				eldest.remove();
+			}
+		}
+	}
+
+	// adds finished pairs to stats, returning false if one of them was already counted with another completion ID
+	private static boolean addFinishedPairs(SolverStatsAccumulator accumulator, List<JobPair> pairs) {
+		boolean consistent = true;
+		for (JobPair jp : pairs) {
+			consistent = accumulator.addFinishedPair(jp) && consistent;
+		}
+		return consistent;
+	}
+
+	/**
+	 * Adds the stages of unfinished pairs that have no complete stage to the given stats. Only the status of such
+	 * stages matters, so they are counted by the database rather than loaded.
+	 *
+	 * @return True on success and false otherwise
+	 */
+	private static boolean addUnfinishedStageCounts(
+			int jobSpaceId, SolverStatsAccumulator accumulator, PrimitivesToAnonymize primitivesToAnonymize
+	) {
+		boolean anonymize = AnonymousLinks.areSolversAnonymized(primitivesToAnonymize);
+		try {
+			Common.query("{CALL CountUnfinishedJobPairStagesInJobSpaceHierarchy(?)}",
+			             procedure -> procedure.setInt(1, jobSpaceId), results -> {
+				while (results.next()) {
+					Solver solver = new Solver();
+					solver.setId(results.getInt("solver_id"));
+					solver.setName(results.getString(anonymize ? "anon_solver_name" : "solver_name"));
+					Configuration config = new Configuration();
+					config.setId(results.getInt("config_id"));
+					config.setName(results.getString(anonymize ? "anon_config_name" : "config_name"));
+					solver.addConfiguration(config);
+					accumulator.addStages(solver, config, results.getInt("stage_number"), results.getBoolean("is_primary"),
+					                      StatusCode.toStatusCode(results.getInt("status_code")),
+					                      results.getInt("stage_count"));
+				}
+				return null;
+			});
+			return true;
+		} catch (SQLException e) {
+			log.error("addUnfinishedStageCounts", "jobSpaceId: " + jobSpaceId, e);
+		}
+		return false;
+	}
+
+	/**
+	 * @param jobId The job to count conflicts in
+	 * @param stageNumbers The stages to count conflicts in
+	 * @return A map from stage number to a map from configuration ID to the number of conflicting benchmarks
+	 * @throws SQLException If there is a problem with the database
+	 */
+	private static Map<Integer, Map<Integer, Integer>> getConflicts(int jobId, Set<Integer> stageNumbers)
+			throws SQLException {
+		Map<Integer, Map<Integer, Integer>> conflicts = new HashMap<>();
+		for (int stageNumber : stageNumbers) {
+			conflicts.put(stageNumber, Solvers.getConflictsByConfigInJobWithStage(jobId, stageNumber));
+		}
+		return conflicts;
+	}
+
+	// drops the stats of finished pairs kept in memory for every job space of a job, and the job's result cube
+	private static void removeFinishedStats(int jobId) {
+		JobResultCube.invalidate(jobId);
+		String prefix = jobId + ":";
+		synchronized (finishedStats) {
+			finishedStatsGenerations.merge(jobId, 1, Integer::sum);
+			finishedStats.keySet().removeIf(key -> key.startsWith(prefix));
+		}
+	}
+
 	/**
 	 * @param job The job to make the mapping for
 	 * @param stageNumber Stage number to get mapping for
@@ -1706,6 +2070,42 @@ public class Jobs {
 		return -1;
 	}
 
+	/**
+	 * Gets the number of pairs in a job space, as counted at most R.JOB_PAIR_COUNT_CACHE_MILLIS ago. The pairs of a job
+	 * space rarely change once the job is created, so this is exact nearly always, and it saves counting every pair
+	 * of the space each time a page of them is shown.
+	 *
+	 * @param jobSpaceId The ID of the job space containing the pairs to count
+	 * @param stageNumber The stage number to consider
+	 * @return The number of pairs, or -1 on error
+	 */
+	public static int getApproximateJobPairCountInJobSpaceByStage(int jobSpaceId, int stageNumber) {
+		String key = jobSpaceId + ":" + stageNumber;
+		long[] count = pairCounts.get(key);
+		long now = System.currentTimeMillis();
+		if (count != null && now - count[1] < R.JOB_PAIR_COUNT_CACHE_MILLIS) {
+			return (int) count[0];
+		}
+		return countJobPairsInJobSpaceByStage(jobSpaceId, stageNumber);
+	}
+
+	/**
+	 * Counts the pairs in a job space exactly and caches the count for getApproximateJobPairCountInJobSpaceByStage.
+	 *
+	 * @param jobSpaceId The ID of the job space containing the pairs to count
+	 * @param stageNumber The stage number to consider
+	 * @return The number of pairs, or -1 on error
+	 */
+	private static int countJobPairsInJobSpaceByStage(int jobSpaceId, int stageNumber) {
+		long now = System.currentTimeMillis();
+		int pairs = getJobPairCountInJobSpaceByStage(jobSpaceId, stageNumber);
+		if (pairs >= 0) {
+			String key = jobSpaceId + ":" + stageNumber;
+			pairCounts.put(key, new long[]{pairs, now});
+		}
+		return pairs;
+	}
+
 	/**
 	 * Returns the number of job pairs that exist for a given job in a given space
 	 *
@@ -1761,7 +2161,7 @@ public class Jobs {
 			DataTablesQuery query, int jobSpaceId, int configId1, int configId2, int[] totals, boolean wallclock,
 			int stageNumber
 	) {
-		List<JobPair> pairs = Jobs.getJobPairsInJobSpaceHierarchy(jobSpaceId, PrimitivesToAnonymize.NONE);
+		List<JobPair> pairs = Jobs.getViewedJobPairsInJobSpaceHierarchy(jobSpaceId, PrimitivesToAnonymize.NONE);
 		List<JobPair> pairs1 = new ArrayList<>();
 		List<JobPair> pairs2 = new ArrayList<>();
 		for (JobPair jp : pairs) {
@@ -1936,6 +2336,12 @@ public class Jobs {
 		HashMap<Integer, Integer> benchmarksCount = new HashMap<>(); //will store the number of pairs every benchmark
 		// has
 		try {
+			if (primitivesToAnonymize == PrimitivesToAnonymize.NONE) {
+				JobResultCube cube = JobResultCube.get(Spaces.getJobSpace(jobSpaceId).getJobId());
+				if (cube != null) {
+					return cube.getSynchronizedPairs(jobSpaceId, stageNumber);
+				}
+			}
 			//first, get all the completed pairs in the space
 			List<JobPair> pairs = Jobs.getJobPairsInJobSpace(jobSpaceId, stageNumber, primitivesToAnonymize);
 			pairs = JobPairs.filterPairsByType(pairs, "complete", 1); //1 because we get only one stage above
@@ -1984,6 +2390,12 @@ public class Jobs {
 			DataTablesQuery query, int jobSpaceId, boolean wallclock, int stageNumber, int[] totals,
 			PrimitivesToAnonymize primitivesToAnonymize
 	) {
+		if (primitivesToAnonymize == PrimitivesToAnonymize.NONE) {
+			JobResultCube cube = JobResultCube.get(Spaces.getJobSpace(jobSpaceId).getJobId());
+			if (cube != null) {
+				return cube.getSynchronizedPairsPage(jobSpaceId, stageNumber, query, wallclock, totals);
+			}
+		}
 		List<JobPair> pairs = Jobs.getSynchronizedPairsInJobSpace(jobSpaceId, stageNumber, primitivesToAnonymize);
 		return getJobPairsForNextPage(pairs, query, "all", wallclock, stageNumber, totals);
 	}
@@ -2025,22 +2437,112 @@ public class Jobs {
 		return "job_pairs.benchmark_name";
 	}
 
+	/**
+	 * Gets the column that breaks ties when pairs are sorted by the given column. Pairs can only be paged by seeking
+	 * when they are sorted by a column that is never NULL and whose values are not anonymized.
+	 *
+	 * @param orderIndex The index of the column the pairs are sorted by, as in getJobPairOrderColumn
+	 * @param primitivesToAnonymize The primitives whose names the page shows anonymized
+	 * @return The tiebreak column, or null if the pairs cannot be paged by seeking
+	 */
+	private static String getJobPairIdColumn(int orderIndex, PrimitivesToAnonymize primitivesToAnonymize) {
+		switch (orderIndex) {
+		case 0:
+			return AnonymousLinks.areBenchmarksAnonymized(primitivesToAnonymize) ? null : "job_pairs.id";
+		case 1:
+		case 2:
+			return AnonymousLinks.areSolversAnonymized(primitivesToAnonymize) ? null :
+			       "jobpair_stage_data.jobpair_id";
+		case 3:
+		case 4:
+			// the stage data column, so that the job space indexes of jobpair_stage_data give the order
+			return "jobpair_stage_data.jobpair_id";
+		case 6:
+			return "job_pairs.id";
+		}
+		// result and completion ID can be NULL
+		return null;
+	}
+
+	/**
+	 * @return The value of the order column of a pair loaded by getJobPairsForDataTable, as a string
+	 */
+	private static String getJobPairSortKey(int orderIndex, boolean wallclock, JobPair jp) {
+		JoblineStage stage = jp.getPrimaryStage();
+		switch (orderIndex) {
+		case 0:
+			return jp.getBench().getName();
+		case 1:
+			return stage.getSolver().getName();
+		case 2:
+			return stage.getConfiguration().getName();
+		case 3:
+			return String.valueOf(stage.getStatus().getCode().getVal());
+		case 4:
+			return String.valueOf(wallclock ? stage.getWallclockTime() : stage.getCpuTime());
+		default:
+			return String.valueOf(jp.getId());
+		}
+	}
+
+	/**
+	 * @return A string that is the same for two pages exactly when they are pages of the same table
+	 */
+	private static String getJobPairPageScope(
+			DataTablesQuery query, int jobSpaceId, int stageNumber, boolean wallclock
+	) {
+		return jobSpaceId + ":" + stageNumber + ":" + wallclock + ":" + query.getSortColumn() + ":" +
+		       query.isSortASC() + ":" + (query.hasSearchQuery() ? query.getSearchQuery() : "");
+	}
+
+	/**
+	 * Gets a cursor for a page of pairs that lets the page after it or before it be gotten by seeking.
+	 *
+	 * @param query The query the page was gotten with
+	 * @param jobSpaceId The ID of the job space containing the pairs
+	 * @param stageNumber The stage number the page shows
+	 * @param wallclock True if the page shows wallclock time and false if it shows CPU time
+	 * @param primitivesToAnonymize The primitives whose names the page shows anonymized
+	 * @param pairs The pairs on the page, as returned by getJobPairsForNextPageInJobSpace
+	 * @return The cursor, or null if neighbouring pages cannot be gotten by seeking
+	 */
+	public static PageCursor getJobPairPageCursor(
+			DataTablesQuery query, int jobSpaceId, int stageNumber, boolean wallclock,
+			PrimitivesToAnonymize primitivesToAnonymize, List<JobPair> pairs
+	) {
+		int orderIndex = query.getSortColumn();
+		if (pairs == null || pairs.isEmpty() || getJobPairIdColumn(orderIndex, primitivesToAnonymize) == null) {
+			return null;
+		}
+		JobPair first = pairs.get(0);
+		JobPair last = pairs.get(pairs.size() - 1);
+		return new PageCursor(getJobPairPageScope(query, jobSpaceId, stageNumber, wallclock),
+		                      query.getStartingRecord(), pairs.size(),
+		                      getJobPairSortKey(orderIndex, wallclock, first), first.getId(),
+		                      getJobPairSortKey(orderIndex, wallclock, last), last.getId()
+		);
+	}
+
 	/**
 	 * Gets the minimal number of Job Pairs necessary in order to service the client's request for the next page of Job
-	 * Pairs in their DataTables object
+	 * Pairs in their DataTables object. If the page is right after or right before the page of the given cursor, it is
+	 * gotten by seeking from that page, so that paging through the table costs the same on every page. Otherwise, pages
+	 * in the second half of the table are counted from its end.
 	 *
-	 * @param query Parameters from data table describing which pairs to get in which order
+	 * @param query Parameters from data table describing which pairs to get in which order. The total records after
+	 * the query must be set
 	 * @param jobSpaceId The ID of the job space containing the pairs in question
 	 * @param stageNumber The stage number to get data for
 	 * @param wallclock True to use wallclock time and false to use CPU time
 	 * @param primitivesToAnonymize PrimitivesToAnonymize instance
+	 * @param cursor The cursor of the page the client has, or null if it has none
 	 * @return a list of 10, 25, 50, or 100 Job Pairs containing the minimal amount of data necessary
 	 * @author Todd Elvers
 	 */
 
 	public static List<JobPair> getJobPairsForNextPageInJobSpace(
 			DataTablesQuery query, int jobSpaceId, int stageNumber, boolean wallclock,
-			PrimitivesToAnonymize primitivesToAnonymize
+			PrimitivesToAnonymize primitivesToAnonymize, PageCursor cursor
 	) {
 		Connection con = null;
 		NamedParameterStatement procedure = null;
@@ -2054,15 +2556,38 @@ public class Jobs {
 			PaginationQueryBuilder builder = new PaginationQueryBuilder(PaginationQueries.GET_PAIRS_IN_SPACE_QUERY,
 			                                                            getJobPairOrderColumn(query.getSortColumn(),
 			                                                                                  wallclock
+			                                                            ),
+			                                                            getJobPairIdColumn(query.getSortColumn(),
+			                                                                               primitivesToAnonymize
 			                                                            ), query
 			);
+			String scope = getJobPairPageScope(query, jobSpaceId, stageNumber, wallclock);
+			if (cursor == null || !cursor.seek(builder, query, scope)) {
+				// a page counted from the end is found by its distance from the end, so the total must be exact. Only
+				// the total without a search query comes from the cached count
+				int total = query.getTotalRecordsAfterQuery();
+				if (!query.hasSearchQuery() && query.getStartingRecord() > total / 2) {
+					int exact = countJobPairsInJobSpaceByStage(jobSpaceId, stageNumber);
+					if (exact >= 0) {
+						total = exact;
+						query.setTotalRecords(total);
+						query.setTotalRecordsAfterQuery(total);
+					}
+				}
+				builder.countFromEnd(total);
+			}
 			con = Common.getConnection();
 			procedure = new NamedParameterStatement(con, builder.getSQL());
 			procedure.setString("query", searchQuery);
 			procedure.setInt("stageNumber", stageNumber);
 			procedure.setInt("jobSpaceId", jobSpaceId);
+			builder.setParameters(procedure);
 			results = procedure.executeQuery();
-			return getJobPairsForDataTable(jobId, results, false, false, primitivesToAnonymize);
+			List<JobPair> pairs = getJobPairsForDataTable(jobId, results, false, false, primitivesToAnonymize);
+			if (pairs != null && builder.isReversed()) {
+				Collections.reverse(pairs);
+			}
+			return pairs;
 		} catch (Exception e) {
 			log.error("getJobPairsForNextPageInJobSpace", "jobId: " + jobId, e);
 		} finally {
@@ -2271,6 +2796,31 @@ public class Jobs {
 		return getJobPairsInJobSpaceHierarchy(jobSpaceId, null, primitivesToAnonymize);
 	}
 
+	/**
+	 * Gets every pair in a job space hierarchy with all of its stages, for comparing solvers on the job page. The
+	 * pairs of a complete job come from the job's result cube, and the pairs of other jobs from the database.
+	 *
+	 * @param jobSpaceId The root of the job space hierarchy
+	 * @param primitivesToAnonymize PrimitivesToAnonymize instance
+	 * @return A list of job pairs, or null on error
+	 */
+	public static List<JobPair> getViewedJobPairsInJobSpaceHierarchy(
+			int jobSpaceId, PrimitivesToAnonymize primitivesToAnonymize
+	) {
+		if (primitivesToAnonymize == PrimitivesToAnonymize.NONE) {
+			JobResultCube cube = JobResultCube.get(Spaces.getJobSpace(jobSpaceId).getJobId());
+			if (cube != null) {
+				Set<Integer> jobSpaceIds = new HashSet<>();
+				jobSpaceIds.add(jobSpaceId);
+				for (JobSpace s : Spaces.getSubSpacesForJob(jobSpaceId, true)) {
+					jobSpaceIds.add(s.getId());
+				}
+				return cube.getPairs(jobSpaceIds);
+			}
+		}
+		return getJobPairsInJobSpaceHierarchy(jobSpaceId, primitivesToAnonymize);
+	}
+
 	/**
 <<<<<<< HEAD
 	 * Returns all of the successfully completed job pairs in a given job space hierarchy, populated with all the fields necessary to display
@@ -2306,7 +2856,42 @@ public class Jobs {
 	public static List<JobPair> getJobPairsInJobSpaceHierarchy(
 			int jobSpaceId, Integer since, PrimitivesToAnonymize primitivesToAnonymize
 	) {
-		final String methodName = "getJobPairsInJobSpaceHierarchy";
+		return getJobPairsInJobSpaceHierarchy(
+				"getJobPairsInJobSpaceHierarchy", "GetJobPairsInJobSpaceHierarchy(?,?)",
+				"GetJobPairStagesInJobSpaceHierarchy(?,?)", jobSpaceId, procedure -> {
+					procedure.setInt(1, jobSpaceId);
+					if (since == null) {
+						procedure.setNull(2, java.sql.Types.INTEGER);
+					} else {
+						procedure.setInt(2, since);
+					}
+				}, primitivesToAnonymize
+		);
+	}
+
+	/**
+	 * Returns the job pairs in a given job space hierarchy that are not finished but have at least one stage that is,
+	 * populated with all the fields necessary to display in a SolverStats table. All job pair stages are obtained.
+	 *
+	 * @param jobSpaceId The space ID of the space containing the solvers to get stats for
+	 * @param primitivesToAnonymize PrimitivesToAnonymize instance
+	 * @return A list of job pairs, or null on error
+	 */
+	public static List<JobPair> getUnfinishedJobPairsInJobSpaceHierarchy(
+			int jobSpaceId, PrimitivesToAnonymize primitivesToAnonymize
+	) {
+		return getJobPairsInJobSpaceHierarchy(
+				"getUnfinishedJobPairsInJobSpaceHierarchy", "GetUnfinishedJobPairsInJobSpaceHierarchy(?)",
+				"GetUnfinishedJobPairStagesInJobSpaceHierarchy(?)", jobSpaceId,
+				procedure -> procedure.setInt(1, jobSpaceId), primitivesToAnonymize
+		);
+	}
+
+	// calls a procedure that gets pairs and one that gets the stages of the same pairs, with the same parameters
+	private static List<JobPair> getJobPairsInJobSpaceHierarchy(
+			String methodName, String pairsCall, String stagesCall, int jobSpaceId,
+			ThrowingConsumer<CallableStatement, SQLException> setParameters, PrimitivesToAnonymize primitivesToAnonymize
+	) {
 		log.entry(methodName);
 		Connection con = null;
 		ResultSet results = null;
@@ -2320,14 +2905,8 @@ public class Jobs {
 			Spaces.updateJobSpaceClosureTable(jobSpaceId);
 
 			con = Common.getConnection();
-			procedure = con.prepareCall("{CALL GetJobPairsInJobSpaceHierarchy(?,?)}");
-
-			procedure.setInt(1, jobSpaceId);
-			if (since == null) {
-				procedure.setNull(2, java.sql.Types.INTEGER);
-			} else {
-				procedure.setInt(2, since);
-			}
+			procedure = con.prepareCall("{CALL " + pairsCall + "}");
+			setParameters.accept(procedure);
 			results = procedure.executeQuery();
 
 			List<JobPair> pairs = processStatResults(results, false, primitivesToAnonymize);
@@ -2335,13 +2914,8 @@ public class Jobs {
 
 			Common.safeClose(procedure);
 			Common.safeClose(results);
-			procedure = con.prepareCall("{CALL GetJobPairStagesInJobSpaceHierarchy(?,?)}");
-			procedure.setInt(1, jobSpaceId);
-			if (since == null) {
-				procedure.setNull(2, java.sql.Types.INTEGER);
-			} else {
-				procedure.setInt(2, since);
-			}
+			procedure = con.prepareCall("{CALL " + stagesCall + "}");
+			setParameters.accept(procedure);
 			results = procedure.executeQuery();
 			if (populateJobPairStages(pairs, results, true, primitivesToAnonymize)) {
 				return pairs;
@@ -2581,7 +3155,7 @@ public class Jobs {
 		try {
 			// we will actually not be using the alternate function calls; we found an easier way to filter out non-correct job pairs
 			// List<JobPair> pairs = Jobs.getSuccessfullyCompletedJobPairsInJobSpaceHierarchy(jobSpaceId, primitivesToAnonymize);
-			List<JobPair> pairs = Jobs.getJobPairsInJobSpaceHierarchy(jobSpaceId, primitivesToAnonymize);
+			List<JobPair> pairs = Jobs.getViewedJobPairsInJobSpaceHierarchy(jobSpaceId, primitivesToAnonymize);
 			List<List<JobPair>> pairLists = new ArrayList<>();
 
 
@@ -3474,6 +4048,7 @@ public class Jobs {
 			JobPairs.removePairFromCompletedTable(pairId);
 			JobPairs.setPairStatus(pairId, Status.StatusCode.STATUS_PENDING_SUBMIT.getVal());
 			JobPairs.setAllPairStageStatus(pairId, Status.StatusCode.STATUS_PENDING_SUBMIT.getVal());
+			PendingPairIndex.add(p.getJobId(), Collections.singletonList(pairId));
 			// the cache must be cleared AFTER changing the pair status code!
 			success = success && Jobs.removeCachedJobStats(p.getJobId());
 
@@ -3597,88 +4172,174 @@ public class Jobs {
 			procedure.setInt(1, j.getId());
 			procedure.setInt(2, limit);
 			results = procedure.executeQuery();
-			//we map ID's to  primitives so we don't need to query the database repeatedly for them
-			HashMap<Integer, JobPair> pairs = new HashMap<>();
-			HashMap<Integer, String> solverIdsToTimestamps = new HashMap<>();
-			while (results.next()) {
+			return resultsToPendingPairs(con, j, results);
+		} catch (Exception e) {
+			log.error("getPendingPairsDetailed", e);
+		} finally {
+			Common.safeClose(results);
+			Common.safeClose(procedure);
+		}
+		return null;
+	}
 
-				try {
-					int currentJobPairId = results.getInt("job_pairs.id");
+	/**
+	 * Builds detailed pending pairs out of the results of GetPendingJobPairsByJob or a procedure with the same
+	 * columns. Closes the given results.
+	 *
+	 * @param con The connection to make any further queries on
+	 * @param j The job the pairs belong to. Must have id and using_dependencies set.
+	 * @param results One row per stage of every pair
+	 * @return The pairs, with their stages in order
+	 * @throws SQLException on database error
+	 */
+	private static List<JobPair> resultsToPendingPairs(Connection con, Job j, ResultSet results) throws SQLException {
+		//we map ID's to  primitives so we don't need to query the database repeatedly for them
+		HashMap<Integer, JobPair> pairs = new HashMap<>();
+		HashMap<Integer, String> solverIdsToTimestamps = new HashMap<>();
+		while (results.next()) {
+
+			try {
+				int currentJobPairId = results.getInt("job_pairs.id");
+
+				JobPair jp = null;
+				// we have already seen this pair and are getting another stage
+				if (pairs.containsKey(currentJobPairId)) {
+					jp = pairs.get(currentJobPairId);
+				} else {
+					//we have never seen this pair and are getting it for the first time
+					jp = JobPairs.resultToPair(results);
+					Status s = new Status();
+					s.setCode(results.getInt("job_pairs.status_code"));
+					jp.setStatus(s);
+					Benchmark b = Benchmarks.resultToBenchmarkWithPrefix(results, "benchmarks");
+					b.setUsesDependencies(results.getInt("dependency_count") > 0);
+					b.setContentHash(results.getString("benchmarks.content_hash"));
+					jp.setBench(b);
 
-					JobPair jp = null;
-					// we have already seen this pair and are getting another stage
-					if (pairs.containsKey(currentJobPairId)) {
-						jp = pairs.get(currentJobPairId);
+					if (j.isUsingDependencies()) {
+						jp.setBenchInputPaths(JobPairs.getJobPairInputPaths(jp.getId(), con));
 					} else {
-						//we have never seen this pair and are getting it for the first time
-						jp = JobPairs.resultToPair(results);
-						Status s = new Status();
-						s.setCode(results.getInt("job_pairs.status_code"));
-						jp.setStatus(s);
-						Benchmark b = Benchmarks.resultToBenchmarkWithPrefix(results, "benchmarks");
-						b.setUsesDependencies(results.getInt("dependency_count") > 0);
-						jp.setBench(b);
-
-						if (j.isUsingDependencies()) {
-							jp.setBenchInputPaths(JobPairs.getJobPairInputPaths(jp.getId(), con));
-						} else {
-							jp.setBenchInputPaths(new ArrayList<>());
-						}
-						pairs.put(currentJobPairId, jp);
+						jp.setBenchInputPaths(new ArrayList<>());
 					}
+					pairs.put(currentJobPairId, jp);
+				}
 
-					JoblineStage stage = new JoblineStage();
-					stage.setStageNumber(results.getInt("stage_number"));
-					stage.setStageId(results.getInt("stage_id"));
-					jp.addStage(stage);
-					//we need to check to see if the benchId and configId are null, since they might
-					//have been deleted while the the job is still pending
+				JoblineStage stage = new JoblineStage();
+				stage.setStageNumber(results.getInt("stage_number"));
+				stage.setStageId(results.getInt("stage_id"));
+				jp.addStage(stage);
+				//we need to check to see if the benchId and configId are null, since they might
+				//have been deleted while the the job is still pending
 
-					int configId = results.getInt("jobpair_stage_data.config_id");
-					String configName = results.getString("jobpair_stage_data.config_name");
-					Configuration c = new Configuration();
-					c.setId(configId);
-					c.setName(configName);
-					stage.setConfiguration(c);
-
-					Solver s = Solvers.resultSetToSolver(results, "solvers");
-					stage.setSolver(s /* could be null, if Solver s above was null */);
-					if (s != null) {
-						if (!solverIdsToTimestamps.containsKey(s.getId())) {
-							solverIdsToTimestamps.put(s.getId(), Solvers.getMostRecentTimestamp(con, s.getId()));
-						}
-						s.setMostRecentUpdate(solverIdsToTimestamps.get(s.getId()));
+				int configId = results.getInt("jobpair_stage_data.config_id");
+				String configName = results.getString("jobpair_stage_data.config_name");
+				Configuration c = new Configuration();
+				c.setId(configId);
+				c.setName(configName);
+				stage.setConfiguration(c);
+
+				Solver s = Solvers.resultSetToSolver(results, "solvers");
+				stage.setSolver(s /* could be null, if Solver s above was null */);
+				if (s != null) {
+					if (!solverIdsToTimestamps.containsKey(s.getId())) {
+						solverIdsToTimestamps.put(s.getId(), Solvers.getMostRecentTimestamp(con, s.getId()));
 					}
-				} catch (Exception e) {
-					log.error("getPendingPairsDetailed", "there was an error making a single job pair object", e);
+					s.setMostRecentUpdate(solverIdsToTimestamps.get(s.getId()));
 				}
+			} catch (Exception e) {
+				log.error("getPendingPairsDetailed", "there was an error making a single job pair object", e);
 			}
+		}
 
-			Common.safeClose(results);
+		Common.safeClose(results);
 
-			for (JobPair jp : pairs.values()) {
-				if (j.isUsingDependencies()) {
-					//populate all the dependencies for the pair
-					HashMap<Integer, List<PipelineDependency>> deps =
-							Pipelines.getDependenciesForJobPair(jp.getId(), con);
-					for (JoblineStage stage : jp.getStages()) {
-						if (deps.containsKey(stage.getStageId())) {
-							stage.setDependencies(deps.get(stage.getStageId()));
-						}
+		for (JobPair jp : pairs.values()) {
+			if (j.isUsingDependencies()) {
+				//populate all the dependencies for the pair
+				HashMap<Integer, List<PipelineDependency>> deps =
+						Pipelines.getDependenciesForJobPair(jp.getId(), con);
+				for (JoblineStage stage : jp.getStages()) {
+					if (deps.containsKey(stage.getStageId())) {
+						stage.setDependencies(deps.get(stage.getStageId()));
 					}
 				}
-				//make sure all stages are in order
+			}
+			//make sure all stages are in order
 
-				jp.sortStages();
+			jp.sortStages();
+		}
+		List<JobPair> returnList = new ArrayList<>();
+		returnList.addAll(pairs.values());
+		return returnList;
+	}
+
+	/**
+	 * Gets the pending pairs with the given IDs for the given job, populated the same way as
+	 * getPendingPairsDetailed. Pairs that are no longer pending are left out.
+	 *
+	 * @param j The job to get pairs for. Must have id and using_dependencies set.
+	 * @param pairIds The IDs of the pairs to get, in ascending order
+	 * @return The pairs, or null on error
+	 */
+	public static List<JobPair> getPendingPairsDetailed(Job j, List<Integer> pairIds) {
+		Connection con = null;
+		CallableStatement procedure = null;
+		try {
+			con = Common.getConnection();
+			procedure = con.prepareCall("{CALL GetPendingJobPairsByJobInRange(?,?,?)}");
+			List<JobPair> pairs = new ArrayList<>();
+			// load runs of nearby IDs with one range query each, so sparse IDs don't turn into one huge range
+			int from = 0;
+			while (from < pairIds.size()) {
+				int to = from;
+				while (to + 1 < pairIds.size() && pairIds.get(to + 1) - pairIds.get(to) <= MAX_PENDING_PAIR_ID_GAP) {
+					to++;
+				}
+				procedure.setInt(1, j.getId());
+				procedure.setInt(2, pairIds.get(from));
+				procedure.setInt(3, pairIds.get(to));
+				pairs.addAll(resultsToPendingPairs(con, j, procedure.executeQuery()));
+				from = to + 1;
 			}
-			List<JobPair> returnList = new ArrayList<>();
-			returnList.addAll(pairs.values());
-			return returnList;
+			Set<Integer> wanted = new HashSet<>(pairIds);
+			pairs.removeIf(pair -> !wanted.contains(pair.getId()));
+			return pairs;
 		} catch (Exception e) {
 			log.error("getPendingPairsDetailed", e);
 		} finally {
-			Common.safeClose(results);
+			Common.safeClose(con);
+			Common.safeClose(procedure);
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the IDs of all pending pairs in the given job that can be submitted, in ascending order. Excludes pairs
+	 * using solvers that have not been built yet, like getPendingPairsDetailed.
+	 *
+	 * @param jobId The ID of the job
+	 * @return The pair IDs, or null on error
+	 */
+	public static List<Integer> getPendingPairIds(int jobId) {
+		Connection con = null;
+		CallableStatement procedure = null;
+		ResultSet results = null;
+		try {
+			con = Common.getConnection();
+			procedure = con.prepareCall("{CALL GetPendingJobPairIdsByJob(?)}");
+			procedure.setInt(1, jobId);
+			results = procedure.executeQuery();
+			List<Integer> ids = new ArrayList<>();
+			while (results.next()) {
+				ids.add(results.getInt("id"));
+			}
+			return ids;
+		} catch (Exception e) {
+			log.error("getPendingPairIds", e);
+		} finally {
+			Common.safeClose(con);
 			Common.safeClose(procedure);
+			Common.safeClose(results);
 		}
 		return null;
 	}
@@ -4197,6 +4858,7 @@ public class Jobs {
 			procedure = con.prepareCall("{CALL KillJob(?)}");
 			procedure.setInt(1, jobId);
 			procedure.executeUpdate();
+			PendingPairIndex.invalidate(jobId);
 
 			log.debug("Killing of job id = " + jobId + " was successful");
 
@@ -4284,6 +4946,8 @@ public class Jobs {
 			procedure = con.prepareCall("{CALL PauseJob(?)}");
 			procedure.setInt(1, jobId);
 			procedure.executeUpdate();
+			// every pending pair is now paused
+			PendingPairIndex.set(jobId, Collections.emptyList());
 
 			log.debug("Pausing of job with id = " + jobId + " was successful");
 
@@ -4374,6 +5038,8 @@ public class Jobs {
 						}
 					}
 					log.debug("Deletion of paused job pairs from queue was successful");
+					// the pairs that were taken off the queue are pending again
+					PendingPairIndex.invalidate(jobId);
 				}
 			}
 
@@ -4531,41 +5197,6 @@ public class Jobs {
 		return null;
 	}
 
-	private static void addStageToSolverStats(SolverStats stats, JoblineStage stage, boolean includeUnknown) {
-		StatusCode statusCode = stage.getStatus().getCode();
-
-		if (statusCode.failed()) {
-			stats.incrementFailedJobPairs();
-		}
-		if (statusCode.resource()) {
-			stats.incrementResourceOutPairs();
-		}
-		if (statusCode.incomplete()) {
-			stats.incrementIncompleteJobPairs();
-		}
-		if (statusCode.statComplete()) {
-			stats.incrementCompleteJobPairs();
-		}
-
-		int correct = JobPairs.isPairCorrect(stage);
-		if (correct == 0) {
-
-			stats.incrementWallTime(stage.getWallclockTime());
-			stats.incrementCpuTime(stage.getCpuTime());
-			stats.incrementCorrectJobPairs();
-		} else if (correct == 1) {
-			stats.incrementIncorrectJobPairs();
-		}
-		else if (correct == 2) {
-			//if the pair has unknown status, 
-			if (includeUnknown) {
-				stats.incrementWallTime(stage.getWallclockTime());
-				stats.incrementCpuTime(stage.getCpuTime());
-			}
-
-		}
-	}
-
 	/**
 	 * Given a list of JobPairs, compiles them into SolverStats objects.
 	 *
@@ -4579,67 +5210,11 @@ public class Jobs {
 		StopWatch stopWatch = new StopWatch();
 		stopWatch.start();
 		try {
-			//Map<String, Integer> solverIdToNumberOfConflicts = new HashMap<>();
-			//solverIdToNumberOfConflicts = buildSolverIdToNumberOfConflictsMap(jobId);
-
-			Hashtable<String, SolverStats> stats = new Hashtable<>();
-			String key;
+			SolverStatsAccumulator stats = new SolverStatsAccumulator(includeUnknown);
 			for (JobPair jp : pairs) {
-
-				for (JoblineStage stage : jp.getStages()) {
-
-					//we need to exclude noOp stages
-					if (stage.isNoOp()) {
-						continue;
-					}
-
-					//entries in the stats table determined by stage/configuration pairs
-					key = getStageConfigHashKey(stage);
-					log.trace("Got solver stats key: " + key);
-					int configId = stage.getConfiguration().getId();
-
-					// // print status
-					// log.debug( "in Jobs.processPairsToSolverStats(): current configId = " + stage.getConfiguration().getId() +
-					// 		"; current deleted status = " + stage.getConfiguration().getDeleted() );
-
-					int stageNumber = stage.getStageNumber();
-					Integer conflicts = null;
-					if (!stats.containsKey(key)) { // current stats entry does not yet exist
-						SolverStats newSolver = new SolverStats();
-						newSolver.setStageNumber(stage.getStageNumber());
-						newSolver.setSolver(stage.getSolver());
-						newSolver.setConfiguration(stage.getConfiguration());
-						// Compute the number of conflicts and save them in variable in case we need to use them again.
-						conflicts = Solvers.getConflictsForConfigInJobWithStage(jobId, configId, stageNumber);
-						newSolver.setConflicts(conflicts);
-						stats.put(key, newSolver);
-					}
-
-
-					//update stats info for entry that current job-pair belongs to
-					SolverStats curSolver = stats.get(key);
-					addStageToSolverStats(curSolver, stage, includeUnknown);
-					if (stage.getStageNumber().equals(jp.getPrimaryStageNumber())) {
-						//if we get here, we need to add this stage to the primary stats as well
-						key = 0 + ":" + String.valueOf(stage.getConfiguration().getId());
-						if (!stats.containsKey(key)) { // current stats entry does not yet exist
-							SolverStats newSolver = new SolverStats();
-							newSolver.setStageNumber(0);
-							newSolver.setSolver(stage.getSolver());
-							newSolver.setConfiguration(stage.getConfiguration());
-							if (conflicts == null) {
-								conflicts = Solvers.getConflictsForConfigInJobWithStage(jobId, configId, stageNumber);
-							}
-							newSolver.setConflicts(conflicts);
-							stats.put(key, newSolver);
-						}
-
-
-						//update stats info for entry that current job-pair belongs to
-						curSolver = stats.get(key);
-					}
-				}
+				stats.addPair(jp);
 			}
+			stats.setConflicts(getConflicts(jobId, stats.getConflictStages()));
 
 			stopWatch.stop();
 			log.debug(
@@ -4647,7 +5222,7 @@ public class Jobs {
 					"Time taken to process job pairs to stats for job with " + Jobs.getPairCount(jobId) + " pairs: " +
 							stopWatch.toString()
 			);
-			return stats.values();
+			return stats.getStats();
 		} catch (Exception e) {
 			log.error("processPairsToSolverStats", e);
 		}
@@ -4706,10 +5281,6 @@ public class Jobs {
 //		return stage.isNoOp() || stage.getStarexecResult().equals(R.STAREXEC_UNKNOWN);
 //	}
 
-	private static String getStageConfigHashKey(JoblineStage stage) {
-		return stage.getStageNumber() + ":" + String.valueOf(stage.getConfiguration().getId());
-	}
-
 	/**
 	 * Given the result set from a SQL query containing job pair info, produces a list of job pairs for which all the
 	 * necessary fields for solver stat production have been created
@@ -4873,6 +5444,8 @@ public class Jobs {
 			procedure.executeUpdate();
 
 			log.debug("Resume of job id = " + jobId + " was successful");
+			// we don't know which pairs were paused, so they are reloaded the next time they are needed
+			PendingPairIndex.invalidate(jobId);
 			Analytics.JOB_RESUME.record();
 			return true;
 		} catch (Exception e) {
@@ -4896,6 +5469,13 @@ public class Jobs {
 			con = Common.getConnection();
 			procedure = con.prepareCall("{CALL ResumeAll()}");
 			procedure.executeUpdate();
+			// we don't know which pairs were paused, so they are reloaded the next time they are needed
+			List<Integer> jobs = Jobs.getRunningJobs();
+			if (jobs != null) {
+				for (Integer jobId : jobs) {
+					PendingPairIndex.invalidate(jobId);
+				}
+			}
 
 			return true;
 		} catch (Exception e) {
@@ -5051,6 +5631,7 @@ public class Jobs {
 	 * @author Albert Giegerich
 	 */
 	public static void removeCachedJobStatsForConfigs(int jobId, Set<Integer> configIds) throws SQLException {
+		removeFinishedStats(jobId);
 		Connection con = null;
 		try {
 			con = Common.getConnection();
@@ -5094,6 +5675,7 @@ public class Jobs {
 	 * @return True on success and false otherwise
 	 */
 	public static boolean removeCachedJobStats(int jobId, Connection con) {
+		removeFinishedStats(jobId);
 		CallableStatement procedure = null;
 		try {
 			Job j = Jobs.get(jobId);
@@ -5126,6 +5708,11 @@ public class Jobs {
 	 */
 
 	public static boolean removeAllCachedJobStats(Connection con) {
+		synchronized (finishedStats) {
+			finishedStatsCleared++;
+			finishedStats.clear();
+		}
+		JobResultCube.invalidateAll();
 		CallableStatement procedure = null;
 		try {
 			procedure = con.prepareCall("{CALL RemoveAllJobStats()}");
@@ -0,0 +1,503 @@
+package org.starexec.data.database;
+
+import org.starexec.constants.R;
+import org.starexec.logger.StarLogger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the status updates, run statistics and attributes that job pairs report from the compute nodes. A report
+ * is a list of records, one per line with tab separated fields, which is parsed into calls to the same procedures the
+ * jobscript used to call through the mysql client.
+ *
+ * Reports are written by a single thread. Every report that arrives while one group is being written is written in
+ * the next group, in one transaction, with calls to the same procedure sent as a single JDBC batch. Calls from one
+ * report are always made in the order they were reported.
+ *
+ * Each run of a pair numbers its reports, and a report is only written the first time its number arrives. A pair
+ * that sends a report again because the response to it was lost does not have its statistics and events counted
+ * twice.
+ */
+public class PairReports {
+	private static final StarLogger log = StarLogger.getLogger(PairReports.class);
+
+	private static final BlockingQueue<PendingReport> queue = new ArrayBlockingQueue<>(R.PAIR_REPORT_QUEUE_SIZE);
+	private static ExecutorService writer = null;
+
+	/**
+	 * A call to a single stored procedure
+	 */
+	public static class Call {
+		private final String sql;
+		private final List<Object> args;
+		private final boolean returnsId;
+
+		private Call(String procedure, boolean returnsId, Object[] args) {
+			StringBuilder sb = new StringBuilder("{CALL ").append(procedure).append("(");
+			int params = args.length + (returnsId ? 1 : 0);
+			for (int i = 0; i < params; i++) {
+				sb.append(i == 0 ? "?" : ", ?");
+			}
+			this.sql = sb.append(")}").toString();
+			this.args = Collections.unmodifiableList(Arrays.asList(args));
+			this.returnsId = returnsId;
+		}
+
+		private Call(String procedure, Object... args) {
+			this(procedure, false, args);
+		}
+
+		/**
+		 * Makes a call to a procedure whose last parameter is an output parameter holding the ID of a new row
+		 */
+		private static Call returningId(String procedure, Object... args) {
+			return new Call(procedure, true, args);
+		}
+
+		/**
+		 * @return The SQL used to prepare this call
+		 */
+		public String getSql() {
+			return sql;
+		}
+
+		/**
+		 * @return The arguments to this call, in order
+		 */
+		public List<Object> getArgs() {
+			return args;
+		}
+
+		/**
+		 * @return Whether this call can be sent as part of a JDBC batch, which is not possible for calls with an
+		 * output parameter
+		 */
+		public boolean isBatchable() {
+			return !returnsId;
+		}
+
+		private void setParameters(CallableStatement procedure) throws SQLException {
+			for (int i = 0; i < args.size(); i++) {
+				procedure.setObject(i + 1, args.get(i));
+			}
+			if (returnsId) {
+				procedure.registerOutParameter(args.size() + 1, Types.INTEGER);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return sql + " " + args;
+		}
+	}
+
+	private static class PendingReport {
+		final int pairId;
+		final String run;
+		final int sequence;
+		final List<Call> calls;
+		final CompletableFuture<List<String>> result = new CompletableFuture<>();
+
+		PendingReport(int pairId, String run, int sequence, List<Call> calls) {
+			this.pairId = pairId;
+			this.run = run;
+			this.sequence = sequence;
+			this.calls = calls;
+		}
+	}
+
+	/**
+	 * Parses a report from a job pair.
+	 *
+	 * @param pairId The ID of the pair that sent the report
+	 * @param reader The body of the report
+	 * @return The procedure calls that apply the report, in the order they must be made
+	 * @throws IOException if the report cannot be read
+	 * @throws IllegalArgumentException if the report contains a record that is not understood
+	 */
+	public static List<Call> parse(int pairId, BufferedReader reader) throws IOException {
+		List<Call> calls = new ArrayList<>();
+		String line;
+		int lineNumber = 0;
+		while ((line = reader.readLine()) != null) {
+			lineNumber++;
+			if (line.isEmpty()) {
+				continue;
+			}
+			try {
+				parseRecord(pairId, line, calls);
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException("line " + lineNumber + ": " + e.getMessage(), e);
+			}
+		}
+		return calls;
+	}
+
+	private static void parseRecord(int pairId, String line, List<Call> calls) {
+		String[] f = line.split("\t", -1);
+		switch (f[0]) {
+		case "status":
+			expectFields(f, 2);
+			calls.add(new Call("UpdatePairStatus", pairId, toInt(f[1])));
+			break;
+		case "stage-status":
+			expectFields(f, 3);
+			calls.add(new Call("UpdatePairStageStatus", pairId, toInt(f[1]), toInt(f[2])));
+			break;
+		case "later-stage-status":
+			expectFields(f, 3);
+			calls.add(new Call("UpdateLaterStageStatuses", pairId, toInt(f[1]), toInt(f[2])));
+			break;
+		case "later-stats-zero":
+			expectFields(f, 2);
+			calls.add(new Call("SetRunStatsForLaterStagesToZero", pairId, toInt(f[1])));
+			break;
+		case "start-time":
+			expectFields(f, 1);
+			calls.add(new Call("SetPairStartTime", pairId));
+			break;
+		case "end-time":
+			expectFields(f, 1);
+			calls.add(new Call("SetPairEndTime", pairId));
+			calls.add(new Call("AddToEventOccurrencesNotRelatedToQueue", "job pairs run", 1));
+			calls.add(new Call("AddToEventOccurrencesForJobPairsQueue", "job pairs run", 1, pairId));
+			break;
+		case "node":
+			expectFields(f, 3);
+			calls.add(new Call("UpdateNodeId", pairId, f[1], toInt(f[2])));
+			break;
+		case "stats":
+			// host, wallclock, cpu, user time, system time, max virtual memory, max resident set, stage, disk size
+			expectFields(f, 10);
+			calls.add(new Call("UpdatePairRunSolverStats", pairId, f[1], toStat(f[2]), toStat(f[3]), toStat(f[4]),
+			                   toStat(f[5]), toStat(f[6]), (long) toStat(f[7]), toInt(f[8]), toLong(f[9])));
+			break;
+		case "attr":
+			// the value is everything after the key, so it may contain tabs
+			String[] attr = line.split("\t", 4);
+			expectFields(attr, 4);
+			if (attr[2].isEmpty()) {
+				throw new IllegalArgumentException("attribute with no key");
+			}
+			calls.add(new Call("AddJobAttr", pairId, attr[2], attr[3], toInt(attr[1])));
+			break;
+		case "runscript-error":
+			expectFields(f, 3);
+			calls.add(new Call("RunscriptError", f[1], pairId, toInt(f[2])));
+			break;
+		case "solver-path":
+			expectFields(f, 3);
+			calls.add(new Call("SetSolverPath", toInt(f[1]), f[2]));
+			break;
+		case "solver-build-status":
+			expectFields(f, 3);
+			calls.add(new Call("SetSolverBuildStatus", toInt(f[1]), toInt(f[2])));
+			break;
+		case "delete-build-config":
+			expectFields(f, 2);
+			calls.add(new Call("DeleteBuildConfig", toInt(f[1])));
+			break;
+		case "remove-benchmark":
+			expectFields(f, 2);
+			calls.add(new Call("RemoveBenchmarkFromDatabase", toInt(f[1])));
+			break;
+		case "add-benchmark":
+			// name, path, user, disk size, space
+			expectFields(f, 6);
+			calls.add(Call.returningId("AddAndAssociateBenchmark", f[1], f[2], false, toInt(f[3]), 1, toLong(f[4]),
+			                            toInt(f[5])));
+			break;
+		case "cache-add":
+			// node, solver, solver timestamp, disk size
+			expectFields(f, 5);
+			calls.add(new Call("UpdateSolverCacheEntry", f[1], toInt(f[2]), f[3], toLong(f[4])));
+			break;
+		case "cache-hit":
+			expectFields(f, 4);
+			calls.add(new Call("UpdateSolverCacheEntry", f[1], toInt(f[2]), f[3], null));
+			break;
+		case "cache-evict":
+			expectFields(f, 4);
+			calls.add(new Call("RemoveSolverCacheEntry", f[1], toInt(f[2]), f[3]));
+			break;
+		case "bench-cache-add":
+		case "bench-cache-hit":
+			// node, benchmark, content hash
+			expectFields(f, 4);
+			calls.add(new Call("UpdateBenchCacheEntry", f[1], toInt(f[2]), f[3]));
+			break;
+		case "bench-cache-evict":
+			expectFields(f, 4);
+			calls.add(new Call("RemoveBenchCacheEntry", f[1], toInt(f[2]), f[3]));
+			break;
+		case "bench-cache":
+			// node, hits, misses
+			expectFields(f, 4);
+			calls.add(new Call("AddBenchmarkCacheCounts", f[1], toLong(f[2]), toLong(f[3])));
+			break;
+		default:
+			throw new IllegalArgumentException("unknown record type '" + f[0] + "'");
+		}
+	}
+
+	private static void expectFields(String[] fields, int count) {
+		if (fields.length != count) {
+			throw new IllegalArgumentException(
+					"'" + fields[0] + "' expects " + (count - 1) + " fields but got " + (fields.length - 1));
+		}
+	}
+
+	private static int toInt(String s) {
+		try {
+			return Integer.parseInt(s);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("'" + s + "' is not an integer");
+		}
+	}
+
+	private static long toLong(String s) {
+		try {
+			return Long.parseLong(s);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("'" + s + "' is not an integer");
+		}
+	}
+
+	// runsolver and benchexec occasionally leave a statistic out, which should not cost the pair the rest of its report
+	private static double toStat(String s) {
+		try {
+			return Double.parseDouble(s);
+		} catch (NumberFormatException e) {
+			log.warn("toStat", "recording unreadable statistic '" + s + "' as 0");
+			return 0;
+		}
+	}
+
+	/**
+	 * Splits the calls of several reports into rounds, so that calls can be batched across reports without changing
+	 * the order of the calls within any report. Round i holds the i-th call of every report that has one, grouped by
+	 * the SQL of the call. Calls from different reports may be made in any order relative to each other.
+	 *
+	 * @param reports The calls of each report
+	 * @return The rounds, in order. Each maps the SQL of a call to every call in the round with that SQL.
+	 */
+	public static List<Map<String, List<Call>>> toRounds(List<List<Call>> reports) {
+		List<Map<String, List<Call>>> rounds = new ArrayList<>();
+		for (List<Call> report : reports) {
+			for (int i = 0; i < report.size(); i++) {
+				if (rounds.size() == i) {
+					rounds.add(new LinkedHashMap<>());
+				}
+				Call call = report.get(i);
+				rounds.get(i).computeIfAbsent(call.getSql(), k -> new ArrayList<>()).add(call);
+			}
+		}
+		return rounds;
+	}
+
+	/**
+	 * Queues a report to be written. The report is written along with any others that arrive while the previous
+	 * group is being written.
+	 *
+	 * @param pairId The ID of the pair that sent the report
+	 * @param run Identifies the run of the pair that sent the report, or null if the report is not numbered, in which
+	 * case it is written every time it is sent
+	 * @param sequence The number of the report within the run
+	 * @param calls The calls that apply the report, as returned by parse
+	 * @return A future for the calls that failed, described as one string each. The future holds an empty list if
+	 * the report was already written, and null if the report could not be written at all and should be sent again.
+	 * Returns null if too many reports are already waiting to be written.
+	 */
+	public static synchronized Future<List<String>> submit(int pairId, String run, int sequence, List<Call> calls) {
+		if (writer == null) {
+			writer = Executors.newSingleThreadExecutor();
+			writer.execute(PairReports::writeReports);
+		}
+		PendingReport report = new PendingReport(pairId, run, sequence, calls);
+		if (!queue.offer(report)) {
+			log.warn("submit", "report queue is full, turning away a report");
+			return null;
+		}
+		return report.result;
+	}
+
+	/**
+	 * Stops the thread that writes reports. Reports still in the queue are not written; the pairs that sent them
+	 * will send them again. Called when StarExec shuts down.
+	 *
+	 * @throws InterruptedException if interrupted while waiting for the thread to finish
+	 */
+	public static synchronized void shutdown() throws InterruptedException {
+		if (writer == null) {
+			return;
+		}
+		writer.shutdownNow();
+		writer.awaitTermination(10, TimeUnit.SECONDS);
+		writer = null;
+		for (PendingReport report; (report = queue.poll()) != null; ) {
+			report.result.complete(null);
+		}
+	}
+
+	private static void writeReports() {
+		List<PendingReport> group = new ArrayList<>();
+		while (!Thread.currentThread().isInterrupted()) {
+			try {
+				group.add(queue.take());
+			} catch (InterruptedException e) {
+				break;
+			}
+			queue.drainTo(group, R.PAIR_REPORT_BATCH_SIZE - 1);
+			try {
+				writeGroup(group);
+			} catch (Throwable e) {
+				log.error("writeReports", e);
+				for (PendingReport report : group) {
+					report.result.complete(null);
+				}
+			}
+			group.clear();
+		}
+	}
+
+	/**
+	 * Writes a group of reports in a single transaction. If that fails, every report in the group is written on its
+	 * own, call by call, so that one bad call does not cost any other pair its report.
+	 */
+	private static void writeGroup(List<PendingReport> group) {
+		Connection con = null;
+		try {
+			con = Common.getConnection();
+		} catch (SQLException e) {
+			log.error("writeGroup", e);
+		}
+		if (con == null) {
+			for (PendingReport report : group) {
+				report.result.complete(null);
+			}
+			return;
+		}
+		try {
+			try {
+				Common.beginTransaction(con);
+				List<List<Call>> reports = new ArrayList<>(group.size());
+				for (PendingReport report : group) {
+					if (addReport(con, report)) {
+						reports.add(report.calls);
+					}
+				}
+				for (Map<String, List<Call>> round : toRounds(reports)) {
+					for (List<Call> calls : round.values()) {
+						makeCalls(con, calls);
+					}
+				}
+				// not endTransaction, which hides a failed commit
+				con.commit();
+				Common.enableAutoCommit(con);
+				for (PendingReport report : group) {
+					report.result.complete(Collections.emptyList());
+				}
+				log.debug("wrote " + group.size() + " pair reports in one transaction");
+				return;
+			} catch (SQLException e) {
+				log.warn("writeGroup", "could not write " + group.size() + " reports together, writing them one by one",
+				         e);
+				Common.doRollback(con);
+			}
+			for (PendingReport report : group) {
+				List<String> failed = new ArrayList<>();
+				try {
+					if (!addReport(con, report)) {
+						report.result.complete(failed);
+						continue;
+					}
+				} catch (SQLException e) {
+					log.error("writeGroup", "could not record report " + report.sequence + " of pair " + report.pairId, e);
+					report.result.complete(null);
+					continue;
+				}
+				for (Call call : report.calls) {
+					try {
+						makeCalls(con, Collections.singletonList(call));
+					} catch (SQLException e) {
+						log.error("writeGroup", "call failed: " + call, e);
+						failed.add(call + ": " + e.getMessage());
+					}
+				}
+				report.result.complete(failed);
+			}
+		} finally {
+			Common.safeClose(con);
+		}
+	}
+
+	/**
+	 * Records that a report is being written, unless it was written before
+	 *
+	 * @return False if the report was already written, so its calls must not be made again
+	 */
+	private static boolean addReport(Connection con, PendingReport report) throws SQLException {
+		if (report.run == null) {
+			return true;
+		}
+		CallableStatement procedure = null;
+		try {
+			procedure = con.prepareCall("{CALL AddPairReport(?, ?, ?, ?)}");
+			procedure.setInt(1, report.pairId);
+			procedure.setString(2, report.run);
+			procedure.setInt(3, report.sequence);
+			procedure.registerOutParameter(4, Types.BOOLEAN);
+			procedure.execute();
+			if (!procedure.getBoolean(4)) {
+				log.info("report " + report.sequence + " of run " + report.run + " of pair " + report.pairId +
+				         " was already written, skipping it");
+				return false;
+			}
+			return true;
+		} finally {
+			Common.safeClose(procedure);
+		}
+	}
+
+	/**
+	 * Makes calls that all share the same SQL, as a batch if possible
+	 */
+	private static void makeCalls(Connection con, List<Call> calls) throws SQLException {
+		CallableStatement procedure = null;
+		try {
+			procedure = con.prepareCall(calls.get(0).getSql());
+			if (calls.get(0).isBatchable()) {
+				for (Call call : calls) {
+					call.setParameters(procedure);
+					procedure.addBatch();
+				}
+				procedure.executeBatch();
+			} else {
+				for (Call call : calls) {
+					call.setParameters(procedure);
+					procedure.execute();
+				}
+			}
+		} finally {
+			Common.safeClose(procedure);
+		}
+	}
+}
@@ -0,0 +1,188 @@
+package org.starexec.data.database;
+
+import org.starexec.constants.R;
+import org.starexec.data.to.Job;
+import org.starexec.data.to.JobPair;
+import org.starexec.data.to.Solver;
+import org.starexec.data.to.SolverBuildStatus.SolverBuildStatusCode;
+import org.starexec.data.to.pipelines.JoblineStage;
+import org.starexec.logger.StarLogger;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the IDs of the pending pairs of every job in memory, so that the job manager does not need to search
+ * job_pairs for pending pairs on every submission cycle. Only IDs are kept here; the detailed pairs are loaded by ID
+ * when they are about to be submitted.
+ *
+ * The index for a job is loaded from the database the first time it is needed and kept up to date as pairs are
+ * added, rerun, paused, resumed and submitted. Because not every status change goes through this class, the index
+ * for a job is reloaded after R.PENDING_PAIR_INDEX_RELOAD_MINUTES, and pairs that turn out not to be pending when
+ * they are loaded are dropped.
+ */
+public class PendingPairIndex {
+	private static final StarLogger log = StarLogger.getLogger(PendingPairIndex.class);
+
+	private static final ConcurrentHashMap<Integer, JobEntry> jobs = new ConcurrentHashMap<>();
+
+	private static class JobEntry {
+		final ConcurrentSkipListSet<Integer> pairIds = new ConcurrentSkipListSet<>();
+		final long createdAt = System.currentTimeMillis();
+
+		JobEntry(Collection<Integer> ids) {
+			pairIds.addAll(ids);
+		}
+
+		boolean isStale() {
+			return System.currentTimeMillis() - createdAt >
+			       TimeUnit.MINUTES.toMillis(R.PENDING_PAIR_INDEX_RELOAD_MINUTES);
+		}
+	}
+
+	/**
+	 * Gets the entry for a job, loading it from the database if it is missing or stale.
+	 *
+	 * @param jobId The ID of the job
+	 * @return The entry, or null if it could not be loaded
+	 */
+	private static JobEntry getEntry(int jobId) {
+		JobEntry entry = jobs.get(jobId);
+		if (entry == null || entry.isStale()) {
+			List<Integer> ids = Jobs.getPendingPairIds(jobId);
+			if (ids == null) {
+				jobs.remove(jobId);
+				return null;
+			}
+			entry = new JobEntry(ids);
+			jobs.put(jobId, entry);
+			log.debug("loaded " + ids.size() + " pending pairs for job " + jobId);
+		}
+		return entry;
+	}
+
+	/**
+	 * Gets up to limit pending pairs for the given job, with everything needed to submit them populated. Pairs are
+	 * taken in ID order. Pairs are not removed from the index until remove is called for them.
+	 *
+	 * @param job The job to get pairs for. Must have id and using_dependencies set.
+	 * @param limit The maximum number of pairs to return
+	 * @return The pairs, or null on error
+	 */
+	public static List<JobPair> getPendingPairs(Job job, int limit) {
+		JobEntry entry = getEntry(job.getId());
+		if (entry == null) {
+			return Jobs.getPendingPairsDetailed(job, limit);
+		}
+		List<Integer> ids = new ArrayList<>(limit);
+		Iterator<Integer> it = entry.pairIds.iterator();
+		while (ids.size() < limit && it.hasNext()) {
+			ids.add(it.next());
+		}
+		if (ids.isEmpty()) {
+			return new ArrayList<>();
+		}
+		List<JobPair> pairs = Jobs.getPendingPairsDetailed(job, ids);
+		if (pairs == null) {
+			return null;
+		}
+		if (pairs.size() < ids.size()) {
+			// anything we did not get back is no longer pending
+			for (JobPair pair : pairs) {
+				ids.remove((Integer) pair.getId());
+			}
+			entry.pairIds.removeAll(ids);
+			log.debug("dropped " + ids.size() + " pairs that are no longer pending from job " + job.getId());
+		}
+		return pairs;
+	}
+
+	/**
+	 * Gets the IDs of the new pairs that can be submitted, which are the pending pairs GetPendingJobPairIdsByJob finds:
+	 * pairs that run a solver that is not built yet wait for it, unless the job is the one that builds it.
+	 *
+	 * @param pairs New pairs, with their IDs and the solvers of their stages set
+	 * @param buildJob Whether the pairs belong to a build job
+	 * @return The IDs of the pairs that can be submitted
+	 */
+	public static List<Integer> getSubmittableIds(Collection<JobPair> pairs, boolean buildJob) {
+		List<Integer> ids = new ArrayList<>(pairs.size());
+		for (JobPair pair : pairs) {
+			if (buildJob || !hasUnbuiltSolver(pair)) {
+				ids.add(pair.getId());
+			}
+		}
+		return ids;
+	}
+
+	private static boolean hasUnbuiltSolver(JobPair pair) {
+		for (JoblineStage stage : pair.getStages()) {
+			Solver solver = stage.getSolver();
+			if (solver != null && solver.buildStatus() != null &&
+			    solver.buildStatus().getCode() == SolverBuildStatusCode.UNBUILT) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Records that a pair is no longer pending, usually because it was just submitted.
+	 *
+	 * @param jobId The ID of the job the pair belongs to
+	 * @param pairId The ID of the pair
+	 */
+	public static void remove(int jobId, int pairId) {
+		JobEntry entry = jobs.get(jobId);
+		if (entry != null) {
+			entry.pairIds.remove(pairId);
+		}
+	}
+
+	/**
+	 * Records that pairs have been set to pending. Does nothing if the job has not been loaded yet, since loading it
+	 * will find the pairs.
+	 *
+	 * @param jobId The ID of the job the pairs belong to
+	 * @param pairIds The IDs of the pairs
+	 */
+	public static void add(int jobId, Collection<Integer> pairIds) {
+		JobEntry entry = jobs.get(jobId);
+		if (entry != null) {
+			entry.pairIds.addAll(pairIds);
+		}
+	}
+
+	/**
+	 * Replaces the index for a job with exactly the given pending pairs. Used when the pending pairs of a job are
+	 * known without querying for them, as when the job was just created or paused.
+	 *
+	 * @param jobId The ID of the job
+	 * @param pairIds The IDs of every pending pair in the job
+	 */
+	public static void set(int jobId, Collection<Integer> pairIds) {
+		jobs.put(jobId, new JobEntry(pairIds));
+	}
+
+	/**
+	 * Forgets everything about a job, so that its pending pairs are loaded from the database the next time they are
+	 * needed.
+	 *
+	 * @param jobId The ID of the job
+	 */
+	public static void invalidate(int jobId) {
+		jobs.remove(jobId);
+	}
+
+	/**
+	 * Forgets everything about every job
+	 */
+	public static void clear() {
+		jobs.clear();
+	}
+}
@@ -0,0 +1,88 @@
+package org.starexec.data.database;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.starexec.data.to.enums.Primitive;
+import org.starexec.logger.StarLogger;
+
+import java.sql.SQLException;
+
+/**
+ * Lists just the IDs and names of the primitives in a space or owned by a user, a page at a time. Pages are in order
+ * of ID and start right after the last ID of the page before, so every page costs the same no matter how many
+ * primitives there are.
+ */
+public class PrimitiveListings {
+	private static final StarLogger log = StarLogger.getLogger(PrimitiveListings.class);
+
+	/**
+	 * @param type The type of primitive
+	 * @param byOwner True to list primitives owned by a user, false to list primitives in a space
+	 * @return The procedure that lists the type of primitive, or null if it can not be listed that way
+	 */
+	private static String getProcedure(Primitive type, boolean byOwner) {
+		switch (type) {
+		case SOLVER:
+			return byOwner ? "GetSolverListingByOwner" : "GetSolverListingInSpace";
+		case BENCHMARK:
+			return byOwner ? "GetBenchmarkListingByOwner" : "GetBenchmarkListingInSpace";
+		case JOB:
+			return byOwner ? "GetJobListingByOwner" : "GetJobListingInSpace";
+		case USER:
+			return byOwner ? null : "GetUserListingInSpace";
+		case SPACE:
+			return byOwner ? null : "GetSubspaceListingInSpace";
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * @param type The type of primitive
+	 * @param byOwner True to list primitives owned by a user, false to list primitives in a space
+	 * @return True if the type of primitive can be listed that way
+	 */
+	public static boolean canList(Primitive type, boolean byOwner) {
+		return getProcedure(type, byOwner) != null;
+	}
+
+	/**
+	 * Gets a page of the IDs and names of the primitives in a space or owned by a user.
+	 *
+	 * @param type The type of primitive. Must be one that canList
+	 * @param byOwner True to list primitives owned by a user, false to list primitives in a space
+	 * @param id The ID of the user or space
+	 * @param userId The ID of the user making the request. Only subspaces this user can see are listed
+	 * @param afterId The page starts with the first primitive with an ID greater than this
+	 * @param limit The most primitives on the page
+	 * @return A JSON array with the id and name of every primitive on the page, in order of ID, or null on error
+	 */
+	public static JsonArray getPage(Primitive type, boolean byOwner, int id, int userId, int afterId, int limit) {
+		String procedure = getProcedure(type, byOwner);
+		boolean subspaces = type == Primitive.SPACE;
+		String sql = "{CALL " + procedure + (subspaces ? "(?, ?, ?, ?)}" : "(?, ?, ?)}");
+		try {
+			return Common.query(sql, proc -> {
+				int i = 1;
+				proc.setInt(i++, id);
+				if (subspaces) {
+					proc.setInt(i++, userId);
+				}
+				proc.setInt(i++, afterId);
+				proc.setInt(i, limit);
+			}, results -> {
+				JsonArray prims = new JsonArray();
+				while (results.next()) {
+					JsonObject prim = new JsonObject();
+					prim.addProperty("id", results.getInt("id"));
+					prim.addProperty("name", results.getString("name"));
+					prims.add(prim);
+				}
+				return prims;
+			});
+		} catch (SQLException e) {
+			log.error("getPage", e);
+		}
+		return null;
+	}
+}
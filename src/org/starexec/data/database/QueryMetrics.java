@@ -0,0 +1,350 @@
+package org.starexec.data.database;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.apache.tomcat.jdbc.pool.ConnectionPool;
+import org.apache.tomcat.jdbc.pool.PooledConnection;
+import org.apache.tomcat.jdbc.pool.interceptor.AbstractCreateStatementInterceptor;
+import org.starexec.constants.R;
+import org.starexec.logger.NonSavingStarLogger;
+import org.starexec.util.LatencyHistogram;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Records how often each stored procedure is called, how long the calls take, how many rows they change or return
+ * and how long the caller waited for a connection before making them. Statements are measured by the Interceptor,
+ * which Common installs on every connection in the pool, so every prepareCall and prepareStatement in the webapp is
+ * counted whether or not it goes through Common.query and Common.update. Only the execute call is timed, not the time
+ * the caller spends reading the results.
+ */
+public class QueryMetrics {
+	// NonSavingStarLogger for the same reason as Common: saving an error log goes through the pool
+	private static final NonSavingStarLogger log = NonSavingStarLogger.getLogger(QueryMetrics.class);
+
+	private static final Pattern CALL = Pattern.compile("^\\s*\\{\\s*(?:\\?\\s*=\\s*)?CALL\\s+([\\w.]+)", Pattern.CASE_INSENSITIVE);
+	private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+	private static final int MAX_STATEMENT_NAME_LENGTH = 100;
+	// statements that do not fit in the map once it holds R.QUERY_METRICS_MAX_STATEMENTS are counted under this name
+	private static final String OTHER = "(other)";
+
+	private static final Map<String, Statistics> statistics = new ConcurrentHashMap<>();
+	private static volatile long since = System.currentTimeMillis();
+
+	// how long the current thread waited for the connection it most recently borrowed, if no statement has been
+	// prepared on that connection yet
+	private static final ThreadLocal<Long> pendingBorrowWait = new ThreadLocal<>();
+
+	/**
+	 * The measurements for one stored procedure or statement
+	 */
+	public static class Statistics {
+		private final String name;
+		private final LatencyHistogram latency = new LatencyHistogram();
+		private final LatencyHistogram connectionWait = new LatencyHistogram();
+		private final LongAdder rows = new LongAdder();
+		private final LongAdder errors = new LongAdder();
+
+		Statistics(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getCount() {
+			return latency.getCount();
+		}
+
+		public long getRows() {
+			return rows.sum();
+		}
+
+		public long getErrors() {
+			return errors.sum();
+		}
+
+		public LatencyHistogram getLatency() {
+			return latency;
+		}
+
+		public LatencyHistogram getConnectionWait() {
+			return connectionWait;
+		}
+
+		/**
+		 * Records rows read from the results of a query of the statement
+		 *
+		 * @param rowsReturned The number of rows read
+		 */
+		public void recordRowsReturned(long rowsReturned) {
+			if (rowsReturned > 0) {
+				rows.add(rowsReturned);
+			}
+		}
+
+		/**
+		 * Records one execution of the statement
+		 *
+		 * @param nanos How long the execution took
+		 * @param rowsAffected The number of rows it changed, or 0 for queries
+		 * @param failed True if the execution threw an exception
+		 */
+		public void recordExecution(long nanos, long rowsAffected, boolean failed) {
+			latency.record(nanos);
+			if (rowsAffected > 0) {
+				rows.add(rowsAffected);
+			}
+			if (failed) {
+				errors.increment();
+			}
+		}
+
+		private JsonObject toJson() {
+			JsonObject json = new JsonObject();
+			json.addProperty("name", name);
+			json.addProperty("count", getCount());
+			json.addProperty("errors", getErrors());
+			json.addProperty("totalMillis", latency.getTotalMicros() / 1000);
+			json.addProperty("rows", getRows());
+			json.add("latency", latency.toJson());
+			json.add("connectionWait", connectionWait.toJson());
+			return json;
+		}
+	}
+
+	/**
+	 * Gets the name statements are grouped under: the name of the procedure for procedure calls, and the statement
+	 * itself with whitespace collapsed and cut to 100 characters for everything else.
+	 *
+	 * @param sql The SQL the statement was prepared with
+	 * @return The name
+	 */
+	public static String getStatementName(String sql) {
+		if (sql == null) {
+			return OTHER;
+		}
+		Matcher m = CALL.matcher(sql);
+		if (m.find()) {
+			return m.group(1);
+		}
+		String name = WHITESPACE.matcher(sql.trim()).replaceAll(" ");
+		return name.length() > MAX_STATEMENT_NAME_LENGTH ? name.substring(0, MAX_STATEMENT_NAME_LENGTH) : name;
+	}
+
+	/**
+	 * Gets the statistics of a statement, creating them if this is the first time it has been prepared.
+	 *
+	 * @param sql The SQL the statement was prepared with
+	 * @return The statistics
+	 */
+	public static Statistics getStatistics(String sql) {
+		String name = getStatementName(sql);
+		Statistics s = statistics.get(name);
+		if (s != null) {
+			return s;
+		}
+		// procedures are bounded by sql/procedures, but plain statements built from strings may not be
+		if (statistics.size() >= R.QUERY_METRICS_MAX_STATEMENTS) {
+			name = OTHER;
+		}
+		return statistics.computeIfAbsent(name, Statistics::new);
+	}
+
+	/**
+	 * Called by Common when a connection is borrowed. The wait is charged to the first statement prepared on the
+	 * connection.
+	 *
+	 * @param nanos How long the thread waited for the connection
+	 */
+	static void recordBorrowWait(long nanos) {
+		pendingBorrowWait.set(nanos);
+	}
+
+	private static void chargeBorrowWait(Statistics s) {
+		Long wait = pendingBorrowWait.get();
+		if (wait != null) {
+			pendingBorrowWait.remove();
+			s.connectionWait.record(wait);
+		}
+	}
+
+	/**
+	 * @return The statistics of every statement, the one that has taken the most time in total first
+	 */
+	public static List<Statistics> getAllStatistics() {
+		List<Statistics> all = new ArrayList<>(statistics.values());
+		all.sort(Comparator.comparingLong((Statistics s) -> s.latency.getTotalMicros()).reversed());
+		return all;
+	}
+
+	/**
+	 * @return When the statistics started being collected, and the statistics of every statement, the one that has
+	 * taken the most time in total first
+	 */
+	public static JsonObject toJson() {
+		JsonObject json = new JsonObject();
+		json.addProperty("since", since);
+		JsonArray statements = new JsonArray();
+		for (Statistics s : getAllStatistics()) {
+			statements.add(s.toJson());
+		}
+		json.add("statements", statements);
+		return json;
+	}
+
+	/**
+	 * Logs the statements that have taken the most time in total
+	 *
+	 * @param top How many statements to log
+	 */
+	public static void logTopStatements(int top) {
+		List<Statistics> all = getAllStatistics();
+		StringBuilder sb = new StringBuilder("Statements taking the most time since ").append(new java.util.Date(since));
+		for (Statistics s : all.subList(0, Math.min(top, all.size()))) {
+			LatencyHistogram l = s.latency;
+			sb.append("\n\t").append(s.name)
+			  .append("\tcount=").append(l.getCount())
+			  .append("\ttotalMillis=").append(l.getTotalMicros() / 1000)
+			  .append("\tp50=").append(l.getPercentileMicros(50))
+			  .append("us\tp95=").append(l.getPercentileMicros(95))
+			  .append("us\tp99=").append(l.getPercentileMicros(99))
+			  .append("us\trows=").append(s.getRows())
+			  .append("\terrors=").append(s.getErrors())
+			  .append("\tp99Wait=").append(s.connectionWait.getPercentileMicros(99)).append("us");
+		}
+		log.info("logTopStatements", sb.toString());
+	}
+
+	/**
+	 * Forgets every statistic recorded so far
+	 */
+	public static void reset() {
+		statistics.clear();
+		since = System.currentTimeMillis();
+	}
+
+	private static Object invokeOn(Object target, Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Times the executions of a statement and counts the rows they change. The results of queries are wrapped in a
+	 * CountingResultSet so the rows read from them are counted too. Results that are never closed themselves are
+	 * recorded when the statement is closed or executed again, which closes them.
+	 */
+	private static class StatementHandler implements InvocationHandler {
+		private final Object statement;
+		private final Statistics statistics;
+		// the results of the most recent execution that are not recorded yet
+		private final List<CountingResultSet> open = new ArrayList<>(1);
+
+		StatementHandler(Object statement, Statistics statistics) {
+			this.statement = statement;
+			this.statistics = statistics;
+		}
+
+		private void recordResults() {
+			for (CountingResultSet results : open) {
+				results.recordRows();
+			}
+			open.clear();
+		}
+
+		private Object wrapResults(Object proxy, Object results) {
+			if (!(results instanceof ResultSet)) {
+				return results;
+			}
+			// a concrete class rather than a proxy, so reading the columns of every row does not go through
+			// reflection
+			CountingResultSet counting = new CountingResultSet((ResultSet) results, (Statement) proxy, statistics);
+			open.add(counting);
+			return counting;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (name.equals("close")) {
+				recordResults();
+				return invokeOn(statement, method, args);
+			}
+			if (name.equals("getResultSet")) {
+				return wrapResults(proxy, invokeOn(statement, method, args));
+			}
+			if (!name.startsWith("execute")) {
+				return invokeOn(statement, method, args);
+			}
+			recordResults();
+			long start = System.nanoTime();
+			Object result;
+			try {
+				result = invokeOn(statement, method, args);
+			} catch (Throwable t) {
+				statistics.recordExecution(System.nanoTime() - start, 0, true);
+				throw t;
+			}
+			statistics.recordExecution(System.nanoTime() - start, rowsAffected(result), false);
+			return wrapResults(proxy, result);
+		}
+
+		private static long rowsAffected(Object result) {
+			if (result instanceof Integer || result instanceof Long) {
+				return ((Number) result).longValue();
+			}
+			long rows = 0;
+			if (result instanceof int[]) {
+				for (int i : (int[]) result) {
+					rows += Math.max(i, 0);
+				}
+			} else if (result instanceof long[]) {
+				for (long i : (long[]) result) {
+					rows += Math.max(i, 0);
+				}
+			}
+			return rows;
+		}
+	}
+
+	/**
+	 * Installed on the connection pool by Common. Wraps every statement so that its executions are recorded.
+	 */
+	public static class Interceptor extends AbstractCreateStatementInterceptor {
+		@Override
+		public Object createStatement(Object proxy, Method method, Object[] args, Object statement, long time) {
+			String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null;
+			Statistics s = getStatistics(sql);
+			chargeBorrowWait(s);
+			return Proxy.newProxyInstance(QueryMetrics.class.getClassLoader(), new Class<?>[]{method.getReturnType()},
+			                              new StatementHandler(statement, s));
+		}
+
+		@Override
+		public void closeInvoked() {
+			// nothing is held per connection
+		}
+
+		@Override
+		public void reset(ConnectionPool parent, PooledConnection con) {
+			// nothing is held per connection
+		}
+	}
+}
@@ -6,6 +6,7 @@ import org.starexec.data.security.GeneralSecurity;
 import org.starexec.data.to.*;
 import org.starexec.data.to.Status.StatusCode;
 import org.starexec.data.to.pipelines.JoblineStage;
+import org.starexec.data.to.tuples.QueueUserLoad;
 import org.starexec.logger.StarLogger;
 import org.starexec.util.DataTablesQuery;
 import org.starexec.util.NamedParameterStatement;
@@ -706,6 +707,133 @@ public class Queues {
 		return null;
 	}
 
+	/**
+	 * Appends the given user loads to the fair-share log. Entries in the log are applied on top of the last snapshot
+	 * when the load balancing state is loaded.
+	 *
+	 * @param loads The current state of every user whose load changed
+	 * @return True on success and false otherwise
+	 */
+	public static boolean addUserLoadLogEntries(List<QueueUserLoad> loads) {
+		if (loads.isEmpty()) {
+			return true;
+		}
+		return addUserLoads("{CALL AddQueueUserLoadLogEntry(?,?,?,?,?)}", null, loads);
+	}
+
+	/**
+	 * Replaces the fair-share snapshot with the given user loads and empties the fair-share log, in one transaction.
+	 *
+	 * @param loads The state of every user on every queue
+	 * @return True on success and false otherwise
+	 */
+	public static boolean setUserLoadSnapshot(List<QueueUserLoad> loads) {
+		return addUserLoads("{CALL AddQueueUserLoad(?,?,?,?,?)}", -1, loads);
+	}
+
+	/**
+	 * Helper for writing user loads in a single transaction
+	 *
+	 * @param sql The procedure to call for every load
+	 * @param clearQueueId If this is not null, the snapshot and log for this queue (or every queue, for -1) are
+	 * cleared first
+	 * @param loads The loads to write
+	 * @return True on success and false otherwise
+	 */
+	private static boolean addUserLoads(String sql, Integer clearQueueId, List<QueueUserLoad> loads) {
+		Connection con = null;
+		CallableStatement procedure = null;
+		try {
+			con = Common.getConnection();
+			Common.beginTransaction(con);
+			if (clearQueueId != null) {
+				procedure = con.prepareCall("{CALL ClearQueueUserLoads(?)}");
+				procedure.setInt(1, clearQueueId);
+				procedure.executeUpdate();
+				Common.safeClose(procedure);
+			}
+			procedure = con.prepareCall(sql);
+			for (QueueUserLoad l : loads) {
+				procedure.setInt(1, l.queueId);
+				procedure.setInt(2, l.userId);
+				procedure.setLong(3, l.load);
+				procedure.setLong(4, l.minBasis);
+				procedure.setTimestamp(5, l.inactiveSince);
+				procedure.addBatch();
+			}
+			procedure.executeBatch();
+			Common.endTransaction(con);
+			return true;
+		} catch (Exception e) {
+			log.error("addUserLoads", e);
+			Common.doRollback(con);
+		} finally {
+			Common.safeClose(con);
+			Common.safeClose(procedure);
+		}
+		return false;
+	}
+
+	/**
+	 * Deletes the saved fair-share state of a queue
+	 *
+	 * @param queueId The ID of the queue, or -1 to delete the state of every queue
+	 * @return True on success and false otherwise
+	 */
+	public static boolean clearUserLoads(int queueId) {
+		Connection con = null;
+		CallableStatement procedure = null;
+		try {
+			con = Common.getConnection();
+			procedure = con.prepareCall("{CALL ClearQueueUserLoads(?)}");
+			procedure.setInt(1, queueId);
+			procedure.executeUpdate();
+			return true;
+		} catch (Exception e) {
+			log.error("clearUserLoads", e);
+		} finally {
+			Common.safeClose(con);
+			Common.safeClose(procedure);
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the saved fair-share state of every queue: the last snapshot followed by every log entry written since,
+	 * oldest first. Applying the returned loads in order gives the most recent state of each user.
+	 *
+	 * @return The loads, or null on error
+	 */
+	public static List<QueueUserLoad> getUserLoads() {
+		Connection con = null;
+		CallableStatement procedure = null;
+		ResultSet results = null;
+		try {
+			con = Common.getConnection();
+			List<QueueUserLoad> loads = new LinkedList<>();
+			for (String sql : new String[]{"{CALL GetQueueUserLoads()}", "{CALL GetQueueUserLoadLog()}"}) {
+				procedure = con.prepareCall(sql);
+				results = procedure.executeQuery();
+				while (results.next()) {
+					loads.add(new QueueUserLoad(results.getInt("queue_id"), results.getInt("user_id"),
+					                            results.getLong("user_load"), results.getLong("min_basis"),
+					                            results.getTimestamp("inactive_since")
+					));
+				}
+				Common.safeClose(results);
+				Common.safeClose(procedure);
+			}
+			return loads;
+		} catch (Exception e) {
+			log.error("getUserLoads", e);
+		} finally {
+			Common.safeClose(con);
+			Common.safeClose(procedure);
+			Common.safeClose(results);
+		}
+		return null;
+	}
+
 	/**
 	 * Returns the number of job pairs enqueued in the given queue
 	 *
@@ -0,0 +1,233 @@
+package org.starexec.data.database;
+
+import org.starexec.data.to.Configuration;
+import org.starexec.data.to.JobPair;
+import org.starexec.data.to.Solver;
+import org.starexec.data.to.SolverStats;
+import org.starexec.data.to.Status.StatusCode;
+import org.starexec.data.to.pipelines.JoblineStage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Adds job pairs up into one SolverStats object per stage and configuration. Pairs can be added one batch at a time,
+ * so stats that were compiled once can be brought up to date with only the pairs that finished since. Conflicts are
+ * not counted here, since they depend on every pair of the job; they are set once all the pairs have been added.
+ * <p>
+ * Finished pairs are remembered with the completion ID they were added with, so the same batch of finished pairs can
+ * be added more than once without counting a pair twice.
+ *
+ * @see Jobs#getAllJobStatsInJobSpaceHierarchyIncludeDeletedConfigs
+ */
+public class SolverStatsAccumulator {
+	private final boolean includeUnknown;
+	private final Map<String, SolverStats> stats = new LinkedHashMap<>();
+	// the stage whose conflicts are shown for each entry. Stage 0 entries show the conflicts of a primary stage
+	private final Map<String, Integer> conflictStages = new LinkedHashMap<>();
+	private int lastCompletionId = 0;
+	// the completion ID of every finished pair added so far, by pair ID
+	private final Map<Integer, Integer> completionIds = new HashMap<>();
+	// the size of completionIds, which may be read without holding the lock on these stats
+	private volatile int finishedPairCount = 0;
+
+	/**
+	 * @param includeUnknown Whether the time of pairs with unknown results counts towards the wallclock and cpu times
+	 */
+	public SolverStatsAccumulator(boolean includeUnknown) {
+		this.includeUnknown = includeUnknown;
+	}
+
+	/**
+	 * @return The largest completion ID of the pairs added so far, or 0 if no finished pairs have been added
+	 */
+	public int getLastCompletionId() {
+		return lastCompletionId;
+	}
+
+	/**
+	 * Adds a finished pair to the stats, unless it was already added with the same completion ID.
+	 *
+	 * @param jp A finished pair with its stages populated
+	 * @return False if the pair was already added with another completion ID, meaning it finished again since. The
+	 * stats then still count it as it was and have to be compiled again
+	 */
+	public boolean addFinishedPair(JobPair jp) {
+		Integer added = completionIds.putIfAbsent(jp.getId(), jp.getCompletionId());
+		if (added == null) {
+			finishedPairCount = completionIds.size();
+			addPair(jp);
+			return true;
+		}
+		return added == jp.getCompletionId();
+	}
+
+	/**
+	 * @return The number of finished pairs added so far, which is what remembering them costs
+	 */
+	public int getFinishedPairCount() {
+		return finishedPairCount;
+	}
+
+	/**
+	 * Adds every stage of a pair to the stats. NoOp stages are skipped.
+	 *
+	 * @param jp A pair with its stages populated
+	 */
+	public void addPair(JobPair jp) {
+		lastCompletionId = Math.max(lastCompletionId, jp.getCompletionId());
+		for (JoblineStage stage : jp.getStages()) {
+			//we need to exclude noOp stages
+			if (stage.isNoOp()) {
+				continue;
+			}
+			int stageNumber = stage.getStageNumber();
+			SolverStats s = getEntry(stageNumber, stage.getSolver(), stage.getConfiguration(), stageNumber);
+			addStage(s, stage);
+			if (stage.getStageNumber().equals(jp.getPrimaryStageNumber())) {
+				// the primary stats get an entry, but the stage itself is only counted towards its own stage number
+				getEntry(0, stage.getSolver(), stage.getConfiguration(), stageNumber);
+			}
+		}
+	}
+
+	/**
+	 * Adds a number of stages that all have the same stage number, configuration and status, and that do not have
+	 * STATUS_COMPLETE. The results of such stages are never looked at, so they can be counted without being loaded.
+	 *
+	 * @param solver The solver of the stages
+	 * @param configuration The configuration of the stages
+	 * @param stageNumber The stage number of the stages
+	 * @param primary Whether the stages are the primary stages of their pairs
+	 * @param statusCode The status of the stages
+	 * @param count The number of stages
+	 */
+	public void addStages(
+			Solver solver, Configuration configuration, int stageNumber, boolean primary, StatusCode statusCode,
+			int count
+	) {
+		SolverStats s = getEntry(stageNumber, solver, configuration, stageNumber);
+		if (statusCode.failed()) {
+			s.setFailedJobPairs(s.getFailedJobPairs() + count);
+		}
+		if (statusCode.resource()) {
+			s.setResourceOutJobPairs(s.getResourceOutJobPairs() + count);
+		}
+		if (statusCode.incomplete()) {
+			s.setIncompleteJobPairs(s.getIncompleteJobPairs() + count);
+		}
+		if (statusCode.statComplete()) {
+			s.setCompleteJobPairs(s.getCompleteJobPairs() + count);
+		}
+		if (primary) {
+			getEntry(0, solver, configuration, stageNumber);
+		}
+	}
+
+	private SolverStats getEntry(int stageNumber, Solver solver, Configuration configuration, int conflictStage) {
+		String key = stageNumber + ":" + configuration.getId();
+		SolverStats s = stats.get(key);
+		if (s == null) {
+			s = new SolverStats();
+			s.setStageNumber(stageNumber);
+			s.setSolver(solver);
+			s.setConfiguration(configuration);
+			stats.put(key, s);
+			conflictStages.put(key, conflictStage);
+		}
+		return s;
+	}
+
+	private void addStage(SolverStats stats, JoblineStage stage) {
+		StatusCode statusCode = stage.getStatus().getCode();
+
+		if (statusCode.failed()) {
+			stats.incrementFailedJobPairs();
+		}
+		if (statusCode.resource()) {
+			stats.incrementResourceOutPairs();
+		}
+		if (statusCode.incomplete()) {
+			stats.incrementIncompleteJobPairs();
+		}
+		if (statusCode.statComplete()) {
+			stats.incrementCompleteJobPairs();
+		}
+
+		int correct = JobPairs.isPairCorrect(stage);
+		if (correct == 0) {
+			stats.incrementWallTime(stage.getWallclockTime());
+			stats.incrementCpuTime(stage.getCpuTime());
+			stats.incrementCorrectJobPairs();
+		} else if (correct == 1) {
+			stats.incrementIncorrectJobPairs();
+		} else if (correct == 2) {
+			//if the pair has unknown status,
+			if (includeUnknown) {
+				stats.incrementWallTime(stage.getWallclockTime());
+				stats.incrementCpuTime(stage.getCpuTime());
+			}
+		}
+	}
+
+	/**
+	 * @return The stage numbers that conflicts need to be counted for
+	 */
+	public Set<Integer> getConflictStages() {
+		return new HashSet<>(conflictStages.values());
+	}
+
+	/**
+	 * Sets the conflicts of every entry.
+	 *
+	 * @param conflicts Maps a stage number to a map from configuration ID to the number of conflicting benchmarks the
+	 * configuration ran on in that stage. Configurations that are missing have no conflicts.
+	 */
+	public void setConflicts(Map<Integer, Map<Integer, Integer>> conflicts) {
+		for (Map.Entry<String, SolverStats> e : stats.entrySet()) {
+			Map<Integer, Integer> stageConflicts = conflicts.get(conflictStages.get(e.getKey()));
+			Integer count = stageConflicts == null ? null : stageConflicts.get(e.getValue().getConfiguration().getId());
+			e.getValue().setConflicts(count == null ? 0 : count);
+		}
+	}
+
+	/**
+	 * @return A copy of these stats that can be added to without changing this one. The copy does not remember which
+	 * finished pairs were added, so only addPair and addStages should be called on it
+	 */
+	public SolverStatsAccumulator copy() {
+		SolverStatsAccumulator copy = new SolverStatsAccumulator(includeUnknown);
+		for (Map.Entry<String, SolverStats> e : stats.entrySet()) {
+			SolverStats from = e.getValue();
+			SolverStats to = new SolverStats();
+			to.setStageNumber(from.getStageNumber());
+			to.setSolver(from.getSolver());
+			to.setConfiguration(from.getConfiguration());
+			to.setCompleteJobPairs(from.getCompleteJobPairs());
+			to.setCorrectJobPairs(from.getCorrectJobPairs());
+			to.setIncorrectJobPairs(from.getIncorrectJobPairs());
+			to.setIncompleteJobPairs(from.getIncompleteJobPairs());
+			to.setFailedJobPairs(from.getFailedJobPairs());
+			to.setResourceOutJobPairs(from.getResourceOutJobPairs());
+			to.setWallTime(from.getWallTime());
+			to.setCpuTime(from.getCpuTime());
+			to.setConflicts(from.getConflicts());
+			copy.stats.put(e.getKey(), to);
+		}
+		copy.conflictStages.putAll(conflictStages);
+		copy.lastCompletionId = lastCompletionId;
+		return copy;
+	}
+
+	/**
+	 * @return The stats, one per stage and configuration
+	 */
+	public Collection<SolverStats> getStats() {
+		return new ArrayList<>(stats.values());
+	}
+}
@@ -1286,6 +1286,29 @@ public class Solvers {
 		});
 	}
 
+	/**
+	 * Counts the conflicting benchmarks every configuration in a job was run against for a stage, in one query.
+	 *
+	 * @param jobId The job to count conflicts in
+	 * @param stageNumber The stage to count conflicts in
+	 * @return A map from configuration ID to the number of conflicting benchmarks. Configurations without conflicts
+	 * are left out.
+	 * @throws SQLException If there is a problem with the database
+	 */
+	public static Map<Integer, Integer> getConflictsByConfigInJobWithStage(int jobId, int stageNumber)
+			throws SQLException {
+		return Common.query("{CALL GetConflictsByConfigInJob(?, ?)}", procedure -> {
+			procedure.setInt(1, jobId);
+			procedure.setInt(2, stageNumber);
+		}, results -> {
+			Map<Integer, Integer> conflicts = new HashMap<>();
+			while (results.next()) {
+				conflicts.put(results.getInt("config_id"), results.getInt("conflicting_benchmarks"));
+			}
+			return conflicts;
+		});
+	}
+
 	/**
 	 * Gets a particular Configuration (excludes deleted configs)
 	 *
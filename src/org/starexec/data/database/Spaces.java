@@ -1414,6 +1414,54 @@ public class Spaces {
 		return null;
 	}
 
+	/**
+	 * Resolves many space paths at once against the hierarchy rooted at the given space. Each path is resolved the
+	 * same way as getSubSpaceIDByPath, but the whole hierarchy is read with a single query.
+	 *
+	 * @param rootSpaceId The space the paths are rooted at
+	 * @param paths Paths of the form "subspace1name/subspace2name/subspace3name"
+	 * @return A map from each path to the ID of the space it identifies, or -1 if it does not exist. Returns null on
+	 * error
+	 */
+	public static Map<String, Integer> getSubSpaceIDsByPath(int rootSpaceId, Collection<String> paths) {
+		Connection con = null;
+		CallableStatement procedure = null;
+		ResultSet results = null;
+		try {
+			con = Common.getConnection();
+			procedure = con.prepareCall("{CALL GetSubSpaceTreeEdges(?)}");
+			procedure.setInt(1, rootSpaceId);
+			results = procedure.executeQuery();
+			// parent id -> child name -> child id, or -1 if the parent has several children with that name
+			Map<Integer, Map<String, Integer>> children = new HashMap<>();
+			while (results.next()) {
+				Map<String, Integer> named = children.computeIfAbsent(results.getInt("parent_id"), k -> new HashMap<>());
+				named.merge(results.getString("name"), results.getInt("id"), (a, b) -> -1);
+			}
+
+			Map<String, Integer> ids = new HashMap<>();
+			for (String path : paths) {
+				int returnId = rootSpaceId;
+				for (String spaceName : path.split(R.JOB_PAIR_PATH_DELIMITER)) {
+					Map<String, Integer> named = children.get(returnId);
+					returnId = named == null ? -1 : named.getOrDefault(spaceName, -1);
+					if (returnId == -1) {
+						break;
+					}
+				}
+				ids.put(path, returnId);
+			}
+			return ids;
+		} catch (Exception e) {
+			log.error("getSubSpaceIDsByPath", e);
+		} finally {
+			Common.safeClose(con);
+			Common.safeClose(procedure);
+			Common.safeClose(results);
+		}
+		return null;
+	}
+
 	/**
 	 * returns id of subspace with a particular name (-1 if more or less than 1 found)
 	 *
@@ -29,6 +29,7 @@ public class Benchmark extends Identifiable implements Nameable, Locatable {
 	private boolean recycled;
 	private Boolean usesDependencies = null;
 	private List<BenchmarkDependency> dependencies = null;
+	private String contentHash = null;
 
 	public Benchmark() {
 		description = "";
@@ -201,4 +202,18 @@ public class Benchmark extends Identifiable implements Nameable, Locatable {
 	public void addDependency(BenchmarkDependency depend) {
 		this.dependencies.add(depend);
 	}
+
+	/**
+	 * @return the hex SHA-256 of the file of this benchmark when it was added, or null if it is not known
+	 */
+	public String getContentHash() {
+		return contentHash;
+	}
+
+	/**
+	 * @param contentHash the hex SHA-256 of the file of this benchmark
+	 */
+	public void setContentHash(String contentHash) {
+		this.contentHash = contentHash;
+	}
 }
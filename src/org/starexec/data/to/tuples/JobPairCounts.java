@@ -0,0 +1,16 @@
+package org.starexec.data.to.tuples;
+
+// The number of pairs in (part of) a job, the number of stages they have, and the largest completion ID among them
+public class JobPairCounts {
+
+	public final int pairs;
+	public final int stages;
+	// 0 if none of the pairs are complete
+	public final int maxCompletionId;
+
+	public JobPairCounts(int pairs, int stages, int maxCompletionId) {
+		this.pairs = pairs;
+		this.stages = stages;
+		this.maxCompletionId = maxCompletionId;
+	}
+}
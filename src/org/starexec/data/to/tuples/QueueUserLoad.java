@@ -0,0 +1,22 @@
+package org.starexec.data.to.tuples;
+
+import java.sql.Timestamp;
+
+// The fair-share state of a single user on a single queue, as kept by a LoadBalanceMonitor
+public class QueueUserLoad {
+
+	public final int queueId;
+	public final int userId;
+	public final long load;
+	public final long minBasis;
+	// null if the user is active
+	public final Timestamp inactiveSince;
+
+	public QueueUserLoad(int queueId, int userId, long load, long minBasis, Timestamp inactiveSince) {
+		this.queueId = queueId;
+		this.userId = userId;
+		this.load = load;
+		this.minBasis = minBasis;
+		this.inactiveSince = inactiveSince;
+	}
+}
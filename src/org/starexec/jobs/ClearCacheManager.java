@@ -2,6 +2,7 @@ package org.starexec.jobs;
 
 import org.apache.commons.io.FileUtils;
 import org.starexec.constants.R;
+import org.starexec.data.database.Cluster;
 import org.starexec.logger.StarLogger;
 
 import java.io.File;
@@ -34,17 +35,37 @@ public class ClearCacheManager {
 	 */
 	public static void clearSolverCacheOnAllNodes() throws IOException {
 		log.info("calling clearSolverCacheOnAllNodes");
+		submitToAllNodes(null);
+	}
+
+	/**
+	 * Submits one job per node to evict a single solver from the solver cache in every node. Copies of the solver
+	 * that job pairs are reading from at the time are left alone.
+	 * @param solverId The ID of the solver to evict
+	 * @throws IOException
+	 */
+	public static void evictSolverOnAllNodes(int solverId) throws IOException {
+		log.info("calling evictSolverOnAllNodes for solver " + solverId);
+		submitToAllNodes(solverId);
+	}
+
+	/**
+	 * @param solverId The solver to evict, or null to evict every solver
+	 */
+	private static void submitToAllNodes(Integer solverId) throws IOException {
 		initScriptTemplateIf();
 		File logBase = new File(R.JOB_SOLVER_CACHE_CLEAR_LOG_DIRECTORY);
+		String suffix = solverId == null ? "" : "_" + solverId;
 
 		for (String node : R.BACKEND.getWorkerNodes()) {
-			final String currentScript = scriptTemplate.replace("$$NODE_NAME$$", node);
-			File logPath = new File(logBase,node);
+			final String currentScript = scriptTemplate.replace("$$NODE_NAME$$", node)
+					.replace("$$SOLVER_ID$$", solverId == null ? "" : String.valueOf(solverId));
+			File logPath = new File(logBase,node+suffix);
 			if (logPath.exists()) {
 				logPath.delete();
 			}
 
-			String scriptPath = String.format("%s/%s", R.getJobInboxDir(), "cacheclear"+node+".bash");
+			String scriptPath = String.format("%s/%s", R.getJobInboxDir(), "cacheclear"+node+suffix+".bash");
 			File f = new File(scriptPath);
 
 			f.delete();
@@ -59,5 +80,9 @@ public class ClearCacheManager {
 			out.close();
 			R.BACKEND.submitScript(scriptPath, R.BACKEND_WORKING_DIR, logPath.getAbsolutePath());
 		}
+		// these jobs do not report back. Entries they skip because they are in use are recorded again when next used
+		if (!Cluster.clearSolverCacheEntries(solverId)) {
+			log.warn("submitToAllNodes", "Could not clear the solver cache records of solver " + solverId);
+		}
 	}
 }
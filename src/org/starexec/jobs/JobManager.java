@@ -3,6 +3,7 @@ package org.starexec.jobs;
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.starexec.backend.SubmitRequest;
 import org.starexec.constants.DB;
 import org.starexec.constants.R;
 import org.starexec.data.database.*;
@@ -16,6 +17,7 @@ import org.starexec.data.to.pipelines.PipelineDependency;
 import org.starexec.data.to.pipelines.PipelineDependency.PipelineInputType;
 import org.starexec.data.to.pipelines.StageAttributes;
 import org.starexec.data.to.pipelines.StageAttributes.SaveResultsOption;
+import org.starexec.data.to.tuples.QueueUserLoad;
 import org.starexec.data.to.tuples.JobCount;
 import org.starexec.exceptions.BenchmarkDependencyMissingException;
 import org.starexec.exceptions.StarExecException;
@@ -30,6 +32,12 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -40,9 +48,13 @@ import java.util.stream.Collectors;
 public abstract class JobManager {
 	private static final StarLogger log = StarLogger.getLogger(JobManager.class);
 
-	private static String mainTemplate = null; // initialized below
+	private static JobScriptTemplate mainTemplate = null; // initialized below
 
-	private static Map<Integer, LoadBalanceMonitor> queueToMonitor = new HashMap<>();
+	// renders and writes jobscripts while submitJobs keeps selecting pairs
+	private static final ExecutorService scriptWriterPool = Executors.newFixedThreadPool(R.JOB_SCRIPT_WRITER_THREADS);
+
+	// read by getLoadRepresentationForQueue from request threads while submitJobs updates it
+	private static final Map<Integer, LoadBalanceMonitor> queueToMonitor = new ConcurrentHashMap<>();
 
 	/**
 	 * Returns the string representation of the LoadBalanceMonitor for the given queue.
@@ -53,8 +65,9 @@ public abstract class JobManager {
 	 */
 	public static String getLoadRepresentationForQueue(int queueId) {
 		log.debug("getLoadRepresentationForQueue", "retrieving load data for queue: " + queueId);
-		if (queueToMonitor.containsKey(queueId)) {
-			return queueToMonitor.get(queueId).toString();
+		LoadBalanceMonitor monitor = queueToMonitor.get(queueId);
+		if (monitor != null) {
+			return monitor.toString();
 		}
 		String knownQueues = queueToMonitor.keySet().toString();
 		log.warn(
@@ -73,8 +86,45 @@ public abstract class JobManager {
 	 */
 	public synchronized static void clearLoadBalanceMonitors() {
 		log.debug("Clearing out all load balancing data");
-		queueToMonitor = new HashMap<>();
+		queueToMonitor.clear();
 		JobPairs.getAndClearTimeDeltas(-1);
+		Queues.clearUserLoads(-1);
+	}
+
+	/**
+	 * Loads the saved load balancing data for every queue, replacing whatever is in memory. Called when StarExec
+	 * starts so that fairness between users carries over a restart.
+	 */
+	public synchronized static void loadLoadBalanceMonitors() {
+		List<QueueUserLoad> loads = Queues.getUserLoads();
+		if (loads == null) {
+			log.warn("loadLoadBalanceMonitors", "could not load saved load balancing data");
+			return;
+		}
+		queueToMonitor.clear();
+		for (QueueUserLoad l : loads) {
+			getMonitor(l.queueId).restoreUserLoad(l);
+		}
+		for (LoadBalanceMonitor m : queueToMonitor.values()) {
+			m.setUserLoadDataFormattedString();
+		}
+		log.info("loadLoadBalanceMonitors", "loaded " + loads.size() + " saved user loads for " +
+		                                     queueToMonitor.size() + " queues");
+	}
+
+	/**
+	 * Saves a snapshot of the load balancing data for every queue, which replaces the previous snapshot and the
+	 * changes logged after every call to submitJobs. This function is synchronized so the snapshot never includes
+	 * a half finished round of submission.
+	 */
+	public synchronized static void saveLoadBalanceMonitors() {
+		List<QueueUserLoad> loads = new ArrayList<>();
+		for (Map.Entry<Integer, LoadBalanceMonitor> e : queueToMonitor.entrySet()) {
+			// everything changed so far is part of this snapshot
+			e.getValue().getAndClearChangedUserLoads(e.getKey());
+			loads.addAll(e.getValue().getUserLoads(e.getKey()));
+		}
+		Queues.setUserLoadSnapshot(loads);
 	}
 
 	public synchronized static void checkPendingJobs() {
@@ -123,6 +173,7 @@ public abstract class JobManager {
 							log.info("No jobs to submit, resetting monitor for queue with id: " + q.getId());
 							m.reset();
 							m.setUserLoadDataFormattedString();
+							Queues.clearUserLoads(q.getId());
 						}
 					}
 				} else {
@@ -149,28 +200,43 @@ public abstract class JobManager {
 		if (mainTemplate == null) {
 			// Read in the job script template and format it for this global configuration
 			File f = new File(R.CONFIG_PATH, "sge/jobscript");
+			String template;
 			try {
-				mainTemplate = FileUtils.readFileToString(f);
+				template = FileUtils.readFileToString(f);
 			} catch (IOException e) {
 				log.error("Error reading the jobscript at " + f, e);
+				return;
 			}
-			mainTemplate = mainTemplate.replace("$$DB_NAME$$", R.MYSQL_DATABASE);
-			mainTemplate = mainTemplate.replace("$$DB_USER$$", R.COMPUTE_NODE_MYSQL_USERNAME);
-			mainTemplate = mainTemplate.replace("$$DB_PASS$$", R.COMPUTE_NODE_MYSQL_PASSWORD);
-			mainTemplate = mainTemplate.replace("$$REPORT_HOST$$", R.REPORT_HOST);
-			mainTemplate = mainTemplate.replace("$$STAREXEC_DATA_DIR$$", R.STAREXEC_DATA_DIR);
+			Map<String, String> replacements = new HashMap<>();
+			replacements.put("$$REPORT_URL$$", R.REPORT_URL);
+			replacements.put("$$REPORT_TOKEN$$", R.REPORT_TOKEN);
+			replacements.put("$$STAREXEC_DATA_DIR$$", R.STAREXEC_DATA_DIR);
 			// Impose resource limits
-			mainTemplate = mainTemplate.replace("$$MAX_WRITE$$", String.valueOf(R.MAX_PAIR_FILE_WRITE));
-			mainTemplate = mainTemplate.replace("$$BENCH_NAME_LENGTH_MAX$$", String.valueOf(DB.BENCH_NAME_LEN));
-			mainTemplate = mainTemplate.replace("$$RUNSOLVER_PATH$$", R.RUNSOLVER_PATH);
-			mainTemplate = mainTemplate.replace("$$SANDBOX_USER_ONE$$", R.SANDBOX_USER_ONE);
-			mainTemplate = mainTemplate.replace("$$SANDBOX_USER_TWO$$", R.SANDBOX_USER_TWO);
-			mainTemplate = mainTemplate.replace("$$WORKING_DIR_BASE$$", R.BACKEND_WORKING_DIR);
-			mainTemplate = mainTemplate.replace("$$SCRIPT_DIR$$", R.getScriptDir());
-			mainTemplate = mainTemplate.replace("$$JOBPAR_EXECUTION_PREFIX$$", R.JOBPAIR_EXECUTION_PREFIX);
+			replacements.put("$$MAX_WRITE$$", String.valueOf(R.MAX_PAIR_FILE_WRITE));
+			replacements.put("$$BENCH_NAME_LENGTH_MAX$$", String.valueOf(DB.BENCH_NAME_LEN));
+			replacements.put("$$RUNSOLVER_PATH$$", R.RUNSOLVER_PATH);
+			replacements.put("$$SANDBOX_USER_ONE$$", R.SANDBOX_USER_ONE);
+			replacements.put("$$SANDBOX_USER_TWO$$", R.SANDBOX_USER_TWO);
+			replacements.put("$$WORKING_DIR_BASE$$", R.BACKEND_WORKING_DIR);
+			replacements.put("$$SOLVER_CACHE_MAX_MB$$", String.valueOf(R.SOLVER_CACHE_MAX_MB));
+			replacements.put("$$BENCH_CACHE_MAX_MB$$", String.valueOf(R.BENCHMARK_CACHE_MAX_MB));
+			replacements.put("$$SCRIPT_DIR$$", R.getScriptDir());
+			replacements.put("$$JOBPAR_EXECUTION_PREFIX$$", R.JOBPAIR_EXECUTION_PREFIX);
+			// the template is split into fragments once here, so writing a script for a pair is a single pass
+			mainTemplate = JobScriptTemplate.compile(template).bind(replacements);
 		}
 	}
 
+	/**
+	 * Stops the pool of threads that write jobscripts. Called when StarExec shuts down.
+	 *
+	 * @throws InterruptedException if interrupted while waiting for the pool to finish
+	 */
+	public static void shutdownScriptWriterPool() throws InterruptedException {
+		scriptWriterPool.shutdown();
+		scriptWriterPool.awaitTermination(2, TimeUnit.SECONDS);
+	}
+
 	/**
 	 * Gets the load balance monitor for a particular queue.
 	 *
@@ -178,10 +244,7 @@ public abstract class JobManager {
 	 * @return
 	 */
 	private static LoadBalanceMonitor getMonitor(int queueId) {
-		if (!queueToMonitor.containsKey(queueId)) {
-			queueToMonitor.put(queueId, new LoadBalanceMonitor());
-		}
-		return queueToMonitor.get(queueId);
+		return queueToMonitor.computeIfAbsent(queueId, k -> new LoadBalanceMonitor());
 	}
 
 	// Builds a map from user to the SchedulingStates containing high priority jobs in the schedule.
@@ -310,6 +373,14 @@ public abstract class JobManager {
 
 			final LinkedList<SchedulingState> schedule = buildSchedule(joblist, q, queueSize, nodeCount);
 
+			// steers pairs toward the nodes that already hold their solvers and benchmarks. Only the benchmarks of
+			// the pairs in the schedule are looked up, so no pending pairs are read from the database again
+			final Set<Integer> scheduledBenchIds = new HashSet<>();
+			for (SchedulingState s : schedule) {
+				scheduledBenchIds.addAll(s.cacheableBenchIds);
+			}
+			final PlacementHints hints = PlacementHints.forQueue(q.getId(), scheduledBenchIds);
+
 			// Map from (user id) -> ( (high priority job id) -> (# of times job been selected) )
 			// Balances out the number of times a high priority job can be selected.
 			final Map<Integer, Map<Integer, Integer>> highPriorityJobBalance = new HashMap<>();
@@ -337,6 +408,11 @@ public abstract class JobManager {
 			// happen
 			final int maxLoops = 500;
 			int curLoops = 0;
+
+			// scripts are written on the script writer pool while this thread keeps selecting pairs, and are
+			// handed to the backend in batches, so that refilling the queue costs a few backend calls and
+			// database round trips rather than several per pair
+			final List<PendingScript> pendingScripts = new ArrayList<>();
 			while (!schedule.isEmpty()) {
 
 				curLoops++;
@@ -437,6 +513,8 @@ public abstract class JobManager {
 						}
 
 						final JobPair pair = s.pairIter.next();
+						// from here on the pair is either submitted or given an error status
+						PendingPairIndex.remove(s.job.getId(), pair.getId());
 
 						if (pair.getPrimarySolver() == null || pair.getBench() == null) {
 							// if the solver or benchmark is null, they were deleted. Indicate that the pair's
@@ -447,71 +525,31 @@ public abstract class JobManager {
 						monitor.changeLoad(s.job.getUserId(), s.job.getWallclockTimeout());
 						i++;
 						log.trace("About to submit pair " + pair.getId());
-						// Check if the benchmark for this pair has any broken dependencies.
-						int benchId = pair.getBench().getId();
-						log.debug("Bench id for pair about to be submitted is: " + benchId);
-						try {
-							log.debug("Checking bench dependencies for bench with id: " + benchId);
-							if(!pair.getBenchInputs().isEmpty()) {
-								List<Benchmark> brokenDependencies = Benchmarks.getBrokenBenchDependencies(benchId);
-								log.debug("Found " + brokenDependencies.size() + " missing dependencies.");
-								if (!brokenDependencies.isEmpty()) {
-									log.debug("Skipping pair with broken bench dependency...");
-									JobPairs.setStatusForPairAndStages(pair
-											.getId(), StatusCode.ERROR_BENCH_DEPENDENCY_MISSING.getVal());
-									continue;
-								}
-							} else {
-								log.debug("bench had no dependencies-- skipping check");
-							}
-						} catch (SQLException e) {
-							log.error("submitJobs", "Database error while trying to get broken bench dependencies.", e);
-							// submit the pair anyway, if there are broken bench dependencies then we will get a
-							// submit_failed status.
+						// broken dependencies were looked up for all of the job's pairs when the state was built
+						if (s.brokenBenchIds.contains(pair.getBench().getId())) {
+							log.debug("Skipping pair with broken bench dependency...");
+							JobPairs.setStatusForPairAndStages(pair.getId(),
+							                                   StatusCode.ERROR_BENCH_DEPENDENCY_MISSING.getVal());
+							continue;
 						}
 
-						try {
-							// Write the script that will run this individual pair
-							final String scriptPath = JobManager.writeJobScript(s.jobTemplate, s.job, pair, q);
-							log.trace("About to get the log path from the database...");
-							final String logPath = JobPairs.getLogFilePath(pair);
-							log.trace("Just got the log path from the database.");
-							final File file = new File(logPath);
-							file.getParentFile().mkdirs();
-
-							if (file.exists()) {
-								log.debug("Deleting old log file for " + pair.getId());
-								file.delete();
-							}
-
-							
-							log.trace("About to set the pair and stage status...");
-							// do this first, before we submit to grid engine, to avoid race conditions
-							JobPairs.setStatusForPairAndStages(pair.getId(), StatusCode.STATUS_ENQUEUED.getVal());
-							// Submit to the grid engine
-
-							log.trace("About to submit pair " + pair.getId());
-
-							int execId = R.BACKEND.submitScript(scriptPath, R.BACKEND_WORKING_DIR, logPath);
-
-							log.trace("Just submitted pair " + pair.getId());
-
-							if (R.BACKEND.isError(execId)) {
-								JobPairs.setStatusForPairAndStages(pair.getId(), StatusCode.ERROR_SGE_REJECT.getVal());
-							} else {
-								JobPairs.updateBackendExecId(pair.getId(), execId);
-							}
-							queueSize++;
-						} catch (BenchmarkDependencyMissingException e) {
-							log.error("submitJobs", "ERROR_BENCHMARK for pair: " + pair.getId(), e);
-							JobPairs.setStatusForPairAndStages(pair.getId(), StatusCode.ERROR_BENCHMARK.getVal());
-						} catch (Exception e) {
-							log.error("submitJobs", "ERROR_SUBMIT_FAIL for pair: " + pair.getId(), e);
-							JobPairs.setStatusForPairAndStages(pair.getId(), StatusCode.ERROR_SUBMIT_FAIL.getVal());
+						// Write the script that will run this individual pair
+						final SchedulingState state = s;
+						final Future<SubmitRequest> request = scriptWriterPool.submit(() -> prepareJobScript(state, pair, q, hints));
+						pendingScripts.add(new PendingScript(pair, request));
+						queueSize++;
+						if (pendingScripts.size() >= R.SUBMIT_BATCH_SIZE) {
+							queueSize -= submitPendingScripts(pendingScripts);
 						}
 					}
 				} // end iterating once through the schedule
+				// queueSize already counts the pairs waiting in pendingScripts, so they are not flushed here: a
+				// pass takes only a few pairs from every job, and batches are only worth it when they are full
 			} // end looping until schedule is empty or we have submitted enough job pairs
+			submitPendingScripts(pendingScripts);
+
+			// log the load changes of this round, so they are not lost if StarExec restarts before the next snapshot
+			Queues.addUserLoadLogEntries(monitor.getAndClearChangedUserLoads(q.getId()));
 
 			log.info(methodName, "Finished in " + timer.getTime() + " milliseconds");
 
@@ -521,6 +559,101 @@ public abstract class JobManager {
 
 	} // end submitJobs()
 
+	/**
+	 * Writes the jobscript for a single pair and prepares its log file. Runs on the script writer pool.
+	 *
+	 * @param s The scheduling state of the job the pair belongs to
+	 * @param pair The pair to write a script for
+	 * @param q The queue the pair is being submitted to
+	 * @param hints The nodes pairs submitted to the queue should preferably run on
+	 * @return The request to hand to the backend for this pair
+	 * @throws Exception if the script could not be written
+	 */
+	private static SubmitRequest prepareJobScript(SchedulingState s, JobPair pair, Queue q, PlacementHints hints)
+			throws Exception {
+		final String scriptPath = JobManager.writeJobScript(s.jobTemplate, s.job, pair, q, s.subSpaceIds);
+		final String logPath = JobPairs.getLogFilePath(s.logDirectory, pair);
+		final File file = new File(logPath);
+		file.getParentFile().mkdirs();
+
+		if (file.exists()) {
+			log.debug("Deleting old log file for " + pair.getId());
+			file.delete();
+		}
+		return new SubmitRequest(scriptPath, R.BACKEND_WORKING_DIR, logPath, hints.getPreferredNodes(pair));
+	}
+
+	/**
+	 * Waits for every pending script to be written, then submits the ones that were written successfully as a
+	 * single batch. Pairs whose scripts could not be written get an error status. The list is cleared afterwards.
+	 *
+	 * @param pendingScripts The scripts handed to the script writer pool, in the order they were selected
+	 * @return The number of pairs that could not be submitted because writing their script failed
+	 */
+	private static int submitPendingScripts(List<PendingScript> pendingScripts) {
+		final List<JobPair> pairs = new ArrayList<>();
+		final List<SubmitRequest> requests = new ArrayList<>();
+		int failed = 0;
+		for (PendingScript p : pendingScripts) {
+			try {
+				requests.add(p.request.get());
+				pairs.add(p.pair);
+			} catch (ExecutionException e) {
+				failed++;
+				if (e.getCause() instanceof BenchmarkDependencyMissingException) {
+					log.error("submitJobs", "ERROR_BENCHMARK for pair: " + p.pair.getId(), e.getCause());
+					JobPairs.setStatusForPairAndStages(p.pair.getId(), StatusCode.ERROR_BENCHMARK.getVal());
+				} else {
+					log.error("submitJobs", "ERROR_SUBMIT_FAIL for pair: " + p.pair.getId(), e.getCause());
+					JobPairs.setStatusForPairAndStages(p.pair.getId(), StatusCode.ERROR_SUBMIT_FAIL.getVal());
+				}
+			} catch (InterruptedException e) {
+				failed++;
+				log.error("submitJobs", "interrupted while writing script for pair: " + p.pair.getId(), e);
+				JobPairs.setStatusForPairAndStages(p.pair.getId(), StatusCode.ERROR_SUBMIT_FAIL.getVal());
+				Thread.currentThread().interrupt();
+			}
+		}
+		pendingScripts.clear();
+		submitBatch(pairs, requests);
+		return failed;
+	}
+
+	/**
+	 * Submits a batch of job scripts to the backend and records the outcome for every pair in the batch.
+	 * Pairs are set to enqueued before submission to avoid race conditions with pairs that start running
+	 * right away. Both lists are cleared afterwards.
+	 *
+	 * @param pairs The pairs to submit
+	 * @param requests The submission request for each pair, in the same order as pairs
+	 */
+	private static void submitBatch(List<JobPair> pairs, List<SubmitRequest> requests) {
+		if (pairs.isEmpty()) {
+			return;
+		}
+		final List<Integer> pairIds = pairs.stream().map(JobPair::getId).collect(Collectors.toList());
+		JobPairs.setStatusForPairsAndStages(pairIds, StatusCode.STATUS_ENQUEUED.getVal());
+
+		log.trace("About to submit a batch of " + pairIds.size() + " pairs");
+		final List<Integer> execIds = R.BACKEND.submitScripts(requests);
+		log.trace("Just submitted a batch of " + pairIds.size() + " pairs");
+
+		final Map<Integer, Integer> pairIdsToExecIds = new HashMap<>();
+		final List<Integer> rejectedPairIds = new ArrayList<>();
+		for (int i = 0; i < pairIds.size(); i++) {
+			if (R.BACKEND.isError(execIds.get(i))) {
+				rejectedPairIds.add(pairIds.get(i));
+			} else {
+				pairIdsToExecIds.put(pairIds.get(i), execIds.get(i));
+			}
+		}
+		JobPairs.setStatusForPairsAndStages(rejectedPairIds, StatusCode.ERROR_SGE_REJECT.getVal());
+		JobPairs.updateBackendExecIds(pairIdsToExecIds);
+
+		pairs.clear();
+		requests.clear();
+	}
+
 	protected static String base64encode(String s) {
 		return new String(Base64.encodeBase64(s.getBytes()));
 	}
@@ -569,8 +702,6 @@ public abstract class JobManager {
 		// add all the jobs in jobList to a SchedulingState in the schedule.
 		for (final Job job : joblist) {
 
-			String jobTemplate = mainTemplate.replace("$$QUEUE$$", q.getName());
-
 
 			// contains users that we have identified as exceeding their quota. These users will be skipped
 			final Map<Integer, Boolean> quotaExceededUsers = new HashMap<>();
@@ -588,12 +719,13 @@ public abstract class JobManager {
 			// By default we split the memory
 			final String queueSlots = Jobs.getSlotsInJobQueue(job);
 			// jobTemplate is a version of mainTemplate customized for this job
-
-			jobTemplate = jobTemplate.replace("$$NUM_SLOTS$$", queueSlots);
-
-			jobTemplate = jobTemplate.replace("$$RANDSEED$$", "" + job.getSeed());
-			jobTemplate = jobTemplate.replace("$$USERID$$", "" + job.getUserId());
-			jobTemplate = jobTemplate.replace("$$DISK_QUOTA$$", "" + job.getUser().getDiskQuota());
+			Map<String, String> jobReplacements = new HashMap<>();
+			jobReplacements.put("$$QUEUE$$", q.getName());
+			jobReplacements.put("$$NUM_SLOTS$$", queueSlots);
+			jobReplacements.put("$$RANDSEED$$", "" + job.getSeed());
+			jobReplacements.put("$$USERID$$", "" + job.getUserId());
+			jobReplacements.put("$$DISK_QUOTA$$", "" + job.getUser().getDiskQuota());
+			final JobScriptTemplate jobTemplate = mainTemplate.bind(jobReplacements);
 			// for every job, retrieve no more than the number of pairs that would fill the queue.
 			// retrieving more than this is wasteful.
 			int limit = Math.max(R.NUM_JOB_PAIRS_AT_A_TIME, (nodeCount * R.NODE_MULTIPLIER) - queueSize);
@@ -605,12 +737,12 @@ public abstract class JobManager {
 				// pairs scheduled as if they had pairs scheduled from all jobs.
 				limit = (limit * jobCount.all) / jobCount.highPriority;
 			}
-			final List<JobPair> pairs = Jobs.getPendingPairsDetailed(job, limit);
+			final List<JobPair> pairs = PendingPairIndex.getPendingPairs(job, limit);
 			log.trace("finished call to getPendingPairsDetailed");
 
 			if (!pairs.isEmpty()) {
-				final Iterator<JobPair> pairIter = pairs.iterator();
-				final SchedulingState s = new SchedulingState(job, jobTemplate, pairIter);
+				final SchedulingState s =
+						new SchedulingState(job, jobTemplate, pairs, getSubSpaceIdsForPairs(job, pairs));
 				schedule.add(s);
 			} else {
 				log.trace("not adding any pairs from job " + job.getId());
@@ -621,16 +753,71 @@ public abstract class JobManager {
 	}
 
 	/**
-	 * Creates a new job script file based on the given job and job pair.
+	 * Finds the benchmarks of the given pairs that have broken dependencies, with one query for all of them rather
+	 * than one per pair. Only benchmarks of pairs with benchmark inputs can have dependencies.
+	 *
+	 * @param pairs The pairs about to be submitted
+	 * @return The IDs of the benchmarks with broken dependencies. Empty if they could not be looked up, in which
+	 * case the pairs are submitted anyway and get a submit_failed status if a dependency is missing
+	 */
+	private static Set<Integer> getBrokenBenchIds(List<JobPair> pairs) {
+		final Set<Integer> benchIds = new HashSet<>();
+		for (JobPair pair : pairs) {
+			if (pair.getBench() != null && !pair.getBenchInputs().isEmpty()) {
+				benchIds.add(pair.getBench().getId());
+			}
+		}
+		if (benchIds.isEmpty()) {
+			return Collections.emptySet();
+		}
+		try {
+			return Benchmarks.getBenchmarksWithBrokenDependencies(benchIds);
+		} catch (SQLException e) {
+			log.error("getBrokenBenchIds", "Database error while trying to get broken bench dependencies.", e);
+			return Collections.emptySet();
+		}
+	}
+
+	/**
+	 * Looks up the IDs of the spaces that the given pairs' results will be saved to, for every stage of the job
+	 * that saves results into a space. Uses one query per distinct root space instead of one query per pair and
+	 * stage.
+	 *
+	 * @param job The job the pairs belong to
+	 * @param pairs The pairs about to be submitted
+	 * @return A map from root space ID to a map from pair path to the ID of the subspace at that path
+	 */
+	private static Map<Integer, Map<String, Integer>> getSubSpaceIdsForPairs(Job job, List<JobPair> pairs) {
+		final Map<Integer, Map<String, Integer>> subSpaceIds = new HashMap<>();
+		final Set<String> paths = new HashSet<>();
+		for (JobPair pair : pairs) {
+			paths.add(pair.getPath());
+		}
+		for (StageAttributes attrs : job.getStageAttributes()) {
+			Integer rootSpaceId = attrs.getSpaceId();
+			if (rootSpaceId != null && !subSpaceIds.containsKey(rootSpaceId)) {
+				Map<String, Integer> ids = Spaces.getSubSpaceIDsByPath(rootSpaceId, paths);
+				if (ids != null) {
+					subSpaceIds.put(rootSpaceId, ids);
+				}
+			}
+		}
+		return subSpaceIds;
+	}
+
+	/**
+	 * Creates a new job script file based on the given job and job pair. This is called concurrently for pairs of
+	 * the same job, so it must not modify shared state without synchronizing.
 	 *
 	 * @param template The template to base the new script off of
 	 * @param job The job to tailor the script for
 	 * @param pair The job pair to tailor the script for
+	 * @param subSpaceIds Subspace IDs looked up ahead of time by getSubSpaceIdsForPairs. Anything missing is looked
+	 * up individually
 	 * @return The absolute path to the newly written script
 	 */
-	private static String writeJobScript(String template, Job job, JobPair pair, Queue queue) throws Exception {
-		String jobScript = template;
-
+	private static String writeJobScript(JobScriptTemplate template, Job job, JobPair pair, Queue queue,
+	                                     Map<Integer, Map<String, Integer>> subSpaceIds) throws Exception {
 		// all of these arrays are for containing individual attributes ordered by state number for all the stages in
 		// the pair.
 		List<Integer> stageCpuTimeouts = new ArrayList<>();
@@ -692,7 +879,13 @@ public abstract class JobManager {
 			if (attrs.getSpaceId() == null) {
 				spaceIds.add(null);
 			} else {
-				Integer spaceId = Spaces.getSubSpaceIDByPath(attrs.getSpaceId(), pair.getPath());
+				Map<String, Integer> idsByPath = subSpaceIds.get(attrs.getSpaceId());
+				Integer spaceId;
+				if (idsByPath != null && idsByPath.containsKey(pair.getPath())) {
+					spaceId = idsByPath.get(pair.getPath());
+				} else {
+					spaceId = Spaces.getSubSpaceIDByPath(attrs.getSpaceId(), pair.getPath());
+				}
 				if (spaceId == null || spaceId == -1) {
 					spaceIds.add(null);
 				} else {
@@ -740,21 +933,26 @@ public abstract class JobManager {
 			          " had stdout save option or extra save option enabled. Creating benchmark directory.");
 			try {
 				String benchDirPath;
-				if (job.getOutputBenchmarksPath() != null) {
-					// Get the directory that has already been created for this job if it exists.
-					benchDirPath = job.getOutputBenchmarksPath();
-				} else {
-					// If the bench directory was only updated this job scheduling cycle it won't in the Job object
-					// so we check the DB directly.
-					Optional<String> benchDir = Jobs.getOutputBenchmarksPath(job.getId());
-					if (benchDir.isPresent()) {
-						benchDirPath = benchDir.get();
+				// several pairs of this job may be written at the same time, and only one of them should create the
+				// directory
+				synchronized (job) {
+					if (job.getOutputBenchmarksPath() != null) {
+						// Get the directory that has already been created for this job if it exists.
+						benchDirPath = job.getOutputBenchmarksPath();
 					} else {
-						// Make a new directory for this job if it hasn't been done yet.
-						benchDirPath =
-								UploadBenchmark.getDirectoryForBenchmarkUpload(job.getUserId(), null)
-								.getAbsolutePath();
-						Jobs.setOutputBenchmarksPath(job.getId(), benchDirPath);
+						// If the bench directory was only updated this job scheduling cycle it won't in the Job object
+						// so we check the DB directly.
+						Optional<String> benchDir = Jobs.getOutputBenchmarksPath(job.getId());
+						if (benchDir.isPresent()) {
+							benchDirPath = benchDir.get();
+						} else {
+							// Make a new directory for this job if it hasn't been done yet.
+							benchDirPath =
+									UploadBenchmark.getDirectoryForBenchmarkUpload(job.getUserId(), null)
+									.getAbsolutePath();
+							Jobs.setOutputBenchmarksPath(job.getId(), benchDirPath);
+						}
+						job.setOutputBenchmarksPath(benchDirPath);
 					}
 				}
 				replacements.put("$$BENCH_SAVE_PATH$$", benchDirPath);
@@ -779,6 +977,7 @@ public abstract class JobManager {
 			replacements.put("$$HAS_DEPENDS$$", "0");
 		}
 		replacements.put("$$BENCH$$", base64encode(pair.getBench().getPath()));
+		replacements.put("$$BENCH_CACHE_KEY$$", benchCacheKey(pair.getBench()));
 		replacements.put("$$PAIRID$$", "" + pair.getId());
 		replacements.put("$$SPACE_PATH$$", pair.getPath());
 		replacements.put("$$PRIMARY_PREPROCESSOR_PATH$$", primaryPreprocessorPath);
@@ -826,7 +1025,7 @@ public abstract class JobManager {
 		replacements.put("$$SUPPRESS_TIMESTAMP_OPTION$$", String.valueOf(job.timestampIsSuppressed()));
 		File f = new File(scriptPath);
 		log.trace("Adding parameters to jobscript for pair " + pair.getId());
-		jobScript = addParametersToJobscript(jobScript, replacements);
+		String jobScript = template.render(replacements);
 
 		f.delete();
 		f.getParentFile().mkdirs();
@@ -935,6 +1134,15 @@ public abstract class JobManager {
 		return toBashArray(arrayName, strs, false);
 	}
 
+	/**
+	 * @param b A benchmark
+	 * @return The key of the benchmark in the benchmark caches of the compute nodes, or the empty string if the
+	 * contents of the benchmark were never hashed, in which case it is not cached
+	 */
+	protected static String benchCacheKey(Benchmark b) {
+		return b.getContentHash() == null ? "" : b.getId() + "-" + b.getContentHash();
+	}
+
 	/**
 	 * Writes a file containing benchmark dependencies ( note: these are NOT related to any of the pipeline
 	 * dependencies)
@@ -953,6 +1161,8 @@ public abstract class JobManager {
 			sb.append(bd.getSecondaryBench().getPath());
 			sb.append(separator);
 			sb.append(bd.getDependencyPath());
+			sb.append(separator);
+			sb.append(benchCacheKey(bd.getSecondaryBench()));
 			sb.append("\n");
 		}
 
@@ -1354,13 +1564,43 @@ public abstract class JobManager {
 
 	static class SchedulingState {
 		final Job job;
-		final String jobTemplate;
+		final JobScriptTemplate jobTemplate;
 		final Iterator<JobPair> pairIter;
-
-		SchedulingState(Job _job, String _jobTemplate, Iterator<JobPair> _pairIter) {
+		final Map<Integer, Map<String, Integer>> subSpaceIds;
+		// resolved once for the job instead of once for every pair submitted
+		final String logDirectory;
+		// the benchmarks of the pairs that may be in the benchmark caches of the nodes, for the placement hints
+		final Set<Integer> cacheableBenchIds = new HashSet<>();
+		// the benchmarks of the pairs that have a deleted or recycled dependency
+		final Set<Integer> brokenBenchIds;
+
+		SchedulingState(Job _job, JobScriptTemplate _jobTemplate, List<JobPair> _pairs,
+		                Map<Integer, Map<String, Integer>> _subSpaceIds) {
 			job = _job;
 			jobTemplate = _jobTemplate;
-			pairIter = _pairIter;
+			pairIter = _pairs.iterator();
+			subSpaceIds = _subSpaceIds;
+			logDirectory = Jobs.getLogDirectory(job.getId());
+			brokenBenchIds = getBrokenBenchIds(_pairs);
+			for (JobPair pair : _pairs) {
+				// benchmarks without a content hash are never cached
+				if (pair.getBench() != null && pair.getBench().getContentHash() != null) {
+					cacheableBenchIds.add(pair.getBench().getId());
+				}
+			}
+		}
+	}
+
+	/**
+	 * A pair whose jobscript has been handed to the script writer pool
+	 */
+	private static class PendingScript {
+		final JobPair pair;
+		final Future<SubmitRequest> request;
+
+		PendingScript(JobPair _pair, Future<SubmitRequest> _request) {
+			pair = _pair;
+			request = _request;
 		}
 	}
 
@@ -0,0 +1,92 @@
+package org.starexec.jobs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A jobscript template that has been split once into literal text and $$NAME$$ placeholders, so that
+ * rendering a script for a pair is a single pass over the fragments instead of a search over the whole
+ * template for every parameter. Instances are immutable and safe to share between threads.
+ */
+public class JobScriptTemplate {
+	private static final Pattern PLACEHOLDER = Pattern.compile("\\$\\$[A-Z0-9_]+\\$\\$");
+
+	// even indices hold literal text, odd indices hold placeholders (including the surrounding $$)
+	private final List<String> fragments;
+	private final int literalLength;
+
+	private JobScriptTemplate(List<String> fragments) {
+		this.fragments = Collections.unmodifiableList(fragments);
+		int length = 0;
+		for (int i = 0; i < fragments.size(); i += 2) {
+			length += fragments.get(i).length();
+		}
+		this.literalLength = length;
+	}
+
+	/**
+	 * Splits the given template into fragments.
+	 *
+	 * @param template The raw template text
+	 * @return The compiled template
+	 */
+	public static JobScriptTemplate compile(String template) {
+		List<String> fragments = new ArrayList<>();
+		Matcher m = PLACEHOLDER.matcher(template);
+		int last = 0;
+		while (m.find()) {
+			fragments.add(template.substring(last, m.start()));
+			fragments.add(m.group());
+			last = m.end();
+		}
+		fragments.add(template.substring(last));
+		return new JobScriptTemplate(fragments);
+	}
+
+	/**
+	 * Fills in some of the placeholders of this template, leaving the rest for a later call.
+	 *
+	 * @param values Map from placeholders (for example "$$QUEUE$$") to the text that replaces them
+	 * @return A new template in which the given placeholders are literal text
+	 */
+	public JobScriptTemplate bind(Map<String, String> values) {
+		List<String> bound = new ArrayList<>();
+		StringBuilder literal = new StringBuilder(fragments.get(0));
+		for (int i = 1; i < fragments.size(); i += 2) {
+			String placeholder = fragments.get(i);
+			String value = values.get(placeholder);
+			if (value == null) {
+				bound.add(literal.toString());
+				bound.add(placeholder);
+				literal.setLength(0);
+			} else {
+				literal.append(value);
+			}
+			literal.append(fragments.get(i + 1));
+		}
+		bound.add(literal.toString());
+		return new JobScriptTemplate(bound);
+	}
+
+	/**
+	 * Renders the template. Placeholders that have no value are left in the output unchanged.
+	 *
+	 * @param values Map from placeholders (for example "$$PAIRID$$") to the text that replaces them
+	 * @return The rendered script
+	 */
+	public String render(Map<String, String> values) {
+		StringBuilder sb = new StringBuilder(literalLength + 64 * fragments.size());
+		sb.append(fragments.get(0));
+		for (int i = 1; i < fragments.size(); i += 2) {
+			String placeholder = fragments.get(i);
+			String value = values.get(placeholder);
+			sb.append(value == null ? placeholder : value);
+			sb.append(fragments.get(i + 1));
+		}
+		return sb.toString();
+	}
+}
@@ -2,9 +2,11 @@ package org.starexec.jobs;
 
 import org.starexec.data.database.Users;
 import org.starexec.data.to.User;
+import org.starexec.data.to.tuples.QueueUserLoad;
 import org.starexec.logger.StarLogger;
 import org.starexec.constants.R;
 
+import java.sql.Timestamp;
 import java.util.*;
 
 public class LoadBalanceMonitor {
@@ -22,6 +24,9 @@ public class LoadBalanceMonitor {
 		 **/
 		Long minBasis;
 		Long load;
+
+		// position of this user in the heap of active users, or -1 if the user is not in the heap
+		int heapIndex = -1;
 		
 		// If this is null, the user is active. Otherwise, it is the time
 		// at which the user became inactive.
@@ -108,15 +113,16 @@ public class LoadBalanceMonitor {
 	}
 
 	// The basic operations we will be the following
-	// Add / Find / Remove users by userIds: All O(1) with a HashSet
-	// Find min load in set: O(n) with a HashSet
-	// This can be improved on with more complex data structures, but here n is going
-	// to get the number of users simultaneously running jobs on a single queue, which
-	// is always very small. Constant time overheads of more complex structures are
-	// substantial, and so for now this is a very simple and fast option. If we want
-	// to support very large numbers of simultaneous users, we likely want another structure
-	// such as a combination HashMap / PriorityQueue structure.
+	// Add / Find / Remove users by userIds: O(1) with a HashMap
+	// Find min load among active users: O(1) with an indexed binary min-heap of active users
+	// Change the load of a user: O(log n), since every user knows their position in the heap
+	// Inactive users are kept in the map but not in the heap. Their load decay is only
+	// computed when they are activated again.
 	private HashMap<Integer, UserLoadData> loads = new HashMap<>();
+	private ArrayList<UserLoadData> heap = new ArrayList<>();
+
+	// users whose state changed since getAndClearChangedUserLoads was last called
+	private Set<Integer> changedUsers = new HashSet<>();
 
 
 	/**
@@ -125,16 +131,81 @@ public class LoadBalanceMonitor {
 	 * @return Minimum value among all active users. Returns null if there are no active users
 	 */
 	public Long getMin() {
-		List<UserLoadData> activeUsers = new ArrayList<>();
-		for (UserLoadData d : loads.values()) {
-			if (d.active()) {
-				activeUsers.add(d);
+		if (heap.isEmpty()) {
+			return null;
+		}
+		return heap.get(0).load;
+	}
+
+	private void heapSwap(int i, int j) {
+		UserLoadData a = heap.get(i);
+		UserLoadData b = heap.get(j);
+		heap.set(i, b);
+		heap.set(j, a);
+		a.heapIndex = j;
+		b.heapIndex = i;
+	}
+
+	private void siftUp(int i) {
+		while (i > 0) {
+			int parent = (i - 1) / 2;
+			if (heap.get(i).compareTo(heap.get(parent)) >= 0) {
+				return;
+			}
+			heapSwap(i, parent);
+			i = parent;
+		}
+	}
+
+	private void siftDown(int i) {
+		int size = heap.size();
+		while (true) {
+			int smallest = i;
+			int left = 2 * i + 1;
+			int right = left + 1;
+			if (left < size && heap.get(left).compareTo(heap.get(smallest)) < 0) {
+				smallest = left;
 			}
+			if (right < size && heap.get(right).compareTo(heap.get(smallest)) < 0) {
+				smallest = right;
+			}
+			if (smallest == i) {
+				return;
+			}
+			heapSwap(i, smallest);
+			i = smallest;
+		}
+	}
+
+	private void heapAdd(UserLoadData d) {
+		d.heapIndex = heap.size();
+		heap.add(d);
+		siftUp(d.heapIndex);
+	}
+
+	private void heapRemove(UserLoadData d) {
+		int i = d.heapIndex;
+		int last = heap.size() - 1;
+		if (i != last) {
+			heapSwap(i, last);
 		}
-		if (!activeUsers.isEmpty()) {
-			return Collections.min(activeUsers).load;
+		heap.remove(last);
+		d.heapIndex = -1;
+		if (i < heap.size()) {
+			siftDown(i);
+			siftUp(i);
+		}
+	}
+
+	/**
+	 * Restores the heap after the load of the given user changed
+	 * @param d The user whose load changed
+	 */
+	private void heapUpdate(UserLoadData d) {
+		if (d.heapIndex >= 0) {
+			siftUp(d.heapIndex);
+			siftDown(d.heapIndex);
 		}
-		return null;
 	}
 	
 	/**
@@ -172,10 +243,15 @@ public class LoadBalanceMonitor {
 					d.load = defaultLoad;
 					d.minBasis = basis;
 				}
+				heapAdd(d);
+				changedUsers.add(userId);
 			}
 			return;
 		}
-		loads.put(userId, new UserLoadData(userId, basis, defaultLoad));
+		UserLoadData d = new UserLoadData(userId, basis, defaultLoad);
+		loads.put(userId, d);
+		heapAdd(d);
+		changedUsers.add(userId);
 	}
 	
 	/**
@@ -186,6 +262,8 @@ public class LoadBalanceMonitor {
 		UserLoadData u = loads.get(userId);
 		if (u!=null && u.active()) {
 			u.inactivate();
+			heapRemove(u);
+			changedUsers.add(userId);
 		}
 	}
 
@@ -194,6 +272,8 @@ public class LoadBalanceMonitor {
 	 */
 	public void reset() {
 		loads = new HashMap<>();
+		heap = new ArrayList<>();
+		changedUsers = new HashSet<>();
 	}
 	
 	/**
@@ -230,15 +310,17 @@ public class LoadBalanceMonitor {
 	 * @param load Increases user load if positive, decreases user load if negative.
 	 */
 	public void changeLoad(int userId, long load) {
-		if (!loads.containsKey(userId)) {
+		UserLoadData d = loads.get(userId);
+		if (d == null) {
 			return;
 		}
-		// the minimum may change only if this user has the current minimum load
-		loads.get(userId).load = loads.get(userId).load + load;
-		if (loads.get(userId).load < 0) {
+		d.load = d.load + load;
+		if (d.load < 0) {
 			log.warn("User "+userId +" has load value set to less than 0!");
-			loads.get(userId).load = 0L;
+			d.load = 0L;
 		}
+		heapUpdate(d);
+		changedUsers.add(userId);
 	}
 	
 	/**
@@ -251,8 +333,13 @@ public class LoadBalanceMonitor {
 				d.load = d.load - (d.minBasis - newBasis);
 				d.load = Math.max(0, d.load);
 				d.minBasis = newBasis;
+				changedUsers.add(d.userId);
 			}
 		}
+		// many loads may have changed, so rebuild the heap from the bottom up in O(n)
+		for (int i = heap.size() / 2 - 1; i >= 0; i--) {
+			siftDown(i);
+		}
 	}
 	
 	/**
@@ -285,7 +372,59 @@ public class LoadBalanceMonitor {
 		return userLoad - getMin() > R.LOAD_DIFFERENCE_THRESHOLD;
 	}
 	
-	private String stringRepresentation = null;
+	private QueueUserLoad toQueueUserLoad(int queueId, UserLoadData d) {
+		Timestamp inactiveSince = d.active() ? null : new Timestamp(d.inactiveDateTime.getTime());
+		return new QueueUserLoad(queueId, d.userId, d.load, d.minBasis, inactiveSince);
+	}
+
+	/**
+	 * Gets the state of every user in this monitor, so that it can be saved
+	 * @param queueId The ID of the queue this monitor belongs to
+	 * @return The state of every user, active or not
+	 */
+	public List<QueueUserLoad> getUserLoads(int queueId) {
+		List<QueueUserLoad> result = new ArrayList<>();
+		for (UserLoadData d : loads.values()) {
+			result.add(toQueueUserLoad(queueId, d));
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the state of every user whose state changed since the last call to this method
+	 * @param queueId The ID of the queue this monitor belongs to
+	 * @return The current state of every changed user
+	 */
+	public List<QueueUserLoad> getAndClearChangedUserLoads(int queueId) {
+		List<QueueUserLoad> result = new ArrayList<>();
+		for (Integer i : changedUsers) {
+			result.add(toQueueUserLoad(queueId, loads.get(i)));
+		}
+		changedUsers = new HashSet<>();
+		return result;
+	}
+
+	/**
+	 * Sets the state of a user to a previously saved state, replacing anything
+	 * this monitor knew about that user.
+	 * @param l The saved state
+	 */
+	public void restoreUserLoad(QueueUserLoad l) {
+		UserLoadData old = loads.get(l.userId);
+		if (old != null && old.heapIndex >= 0) {
+			heapRemove(old);
+		}
+		UserLoadData d = new UserLoadData(l.userId, l.minBasis, l.load);
+		if (l.inactiveSince != null) {
+			d.inactiveDateTime = new Date(l.inactiveSince.getTime());
+		}
+		loads.put(l.userId, d);
+		if (d.active()) {
+			heapAdd(d);
+		}
+	}
+
+	private volatile String stringRepresentation = null;
 	
 	
 	private String userLoadDataAsString(UserLoadData d) {
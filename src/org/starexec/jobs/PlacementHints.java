@@ -0,0 +1,130 @@
+package org.starexec.jobs;
+
+import org.starexec.constants.R;
+import org.starexec.data.database.Cluster;
+import org.starexec.data.to.Benchmark;
+import org.starexec.data.to.JobPair;
+import org.starexec.data.to.Solver;
+import org.starexec.data.to.pipelines.JoblineStage;
+import org.starexec.logger.StarLogger;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Picks the worker nodes a job pair should preferably run on: the nodes that already hold the solvers of the pair in
+ * their solver caches and its benchmark in their benchmark caches, so the pair does not have to copy them from the
+ * shared file system. Built from what the nodes report about their caches, once for every round of submitting to a
+ * queue. Instances are immutable and safe to share between threads.
+ */
+public class PlacementHints {
+	private static final StarLogger log = StarLogger.getLogger(PlacementHints.class);
+
+	private static final PlacementHints NONE = new PlacementHints(Collections.emptyMap(), Collections.emptyMap(), 0);
+
+	// solver ID -> solver timestamp -> names of the nodes holding that version of the solver
+	private final Map<Integer, Map<String, List<String>>> solverNodes;
+	// benchmark ID -> content hash -> names of the nodes holding that version of the benchmark
+	private final Map<Integer, Map<String, List<String>>> benchNodes;
+	private final int maxNodes;
+
+	/**
+	 * @param solverNodes A map from solver ID to solver timestamp to the names of the nodes that hold that version of
+	 * the solver in their caches
+	 * @param benchNodes A map from benchmark ID to content hash to the names of the nodes that hold that version of
+	 * the benchmark in their caches
+	 * @param maxNodes The most nodes to prefer for a single pair
+	 */
+	public PlacementHints(
+			Map<Integer, Map<String, List<String>>> solverNodes, Map<Integer, Map<String, List<String>>> benchNodes,
+			int maxNodes
+	) {
+		this.solverNodes = solverNodes;
+		this.benchNodes = benchNodes;
+		this.maxNodes = maxNodes;
+	}
+
+	/**
+	 * Gets the hints for the pairs submitted to a queue. When the caches of the nodes can not be read, no nodes are
+	 * preferred.
+	 *
+	 * @param queueId The ID of the queue
+	 * @param benchIds The IDs of the benchmarks of the pairs about to be submitted
+	 * @return The hints
+	 */
+	public static PlacementHints forQueue(int queueId, Collection<Integer> benchIds) {
+		if (R.PLACEMENT_HINT_MAX_NODES <= 0) {
+			return NONE;
+		}
+		try {
+			return new PlacementHints(Cluster.getSolverCacheNodesForQueue(queueId),
+			                          Cluster.getBenchCacheNodesForQueue(queueId, benchIds), R.PLACEMENT_HINT_MAX_NODES);
+		} catch (SQLException e) {
+			log.warn("forQueue", "Could not get the caches of the nodes of queue " + queueId, e);
+			return NONE;
+		}
+	}
+
+	/**
+	 * @param pair A pair with its stages and their solvers, and its benchmark
+	 * @return The names of the nodes that hold the most of the solvers and benchmark of the pair. When more nodes than
+	 * may be preferred hold as many, each pair gets a different run of them, in order of name starting from a node
+	 * picked by the ID of the pair. Empty if no node holds any of them
+	 */
+	public List<String> getPreferredNodes(JobPair pair) {
+		if ((solverNodes.isEmpty() && benchNodes.isEmpty()) || maxNodes <= 0) {
+			return Collections.emptyList();
+		}
+		Map<String, Integer> cachedOnNode = new HashMap<>();
+		Set<Integer> counted = new HashSet<>();
+		for (JoblineStage stage : pair.getStages()) {
+			Solver solver = stage.getSolver();
+			// pipelines may run one solver in many stages, and it is only copied once
+			if (solver == null || !counted.add(solver.getId())) {
+				continue;
+			}
+			List<String> nodes = solverNodes.getOrDefault(solver.getId(), Collections.emptyMap())
+			                                .get(solver.getMostRecentUpdate());
+			if (nodes != null) {
+				for (String node : nodes) {
+					cachedOnNode.merge(node, 1, Integer::sum);
+				}
+			}
+		}
+		// every stage reads the same benchmark, and benchmarks without a content hash are never cached
+		Benchmark bench = pair.getBench();
+		if (bench != null && bench.getContentHash() != null) {
+			List<String> nodes =
+					benchNodes.getOrDefault(bench.getId(), Collections.emptyMap()).get(bench.getContentHash());
+			if (nodes != null) {
+				for (String node : nodes) {
+					cachedOnNode.merge(node, 1, Integer::sum);
+				}
+			}
+		}
+		if (cachedOnNode.isEmpty()) {
+			return Collections.emptyList();
+		}
+		int most = Collections.max(cachedOnNode.values());
+		List<String> warmest = cachedOnNode.entrySet().stream().filter(e -> e.getValue() == most)
+		                                   .map(Map.Entry::getKey).sorted().collect(Collectors.toList());
+		if (warmest.size() <= maxNodes) {
+			return warmest;
+		}
+		// otherwise every pair of a solver would ask for the same few nodes and leave the rest of its cache unused
+		int first = Math.floorMod(pair.getId(), warmest.size());
+		List<String> preferred = new ArrayList<>(maxNodes);
+		for (int i = 0; i < maxNodes; i++) {
+			preferred.add(warmest.get((first + i) % warmest.size()));
+		}
+		return preferred;
+	}
+}
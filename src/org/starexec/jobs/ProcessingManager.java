@@ -1,29 +1,487 @@
 package org.starexec.jobs;
 
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.apache.commons.io.FileUtils;
 import org.starexec.constants.R;
 import org.starexec.data.database.JobPairs;
+import org.starexec.data.database.Jobs;
+import org.starexec.data.database.Processors;
+import org.starexec.data.to.Job;
+import org.starexec.data.to.JobPair;
+import org.starexec.data.to.Processor;
 import org.starexec.data.to.pipelines.PairStageProcessorTriple;
+import org.starexec.logger.StarLogger;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Post processes pairs on a pool of R.POST_PROCESS_THREADS workers. Work is handed out in batches of stages that are
+ * claimed in the database, so no two workers ever process the same stage, and jobs take turns getting batches, so a
+ * huge job being reprocessed does not hold up the others. The results of every batch are written in one transaction.
+ *
+ * If R.POST_PROCESS_CLUSTER_MIN_STAGES is set, jobs with at least that many stages awaiting processing are instead
+ * claimed in batches of up to R.POST_PROCESS_CLUSTER_BATCH_SIZE stages that are each submitted to the backend as a
+ * job of their own. Those jobs run the processors on a compute node and send the attributes back to ReportResults in
+ * bulk, so reprocessing large jobs scales with the cluster rather than competing with the web app for the head node.
+ * Every report renews the claims of the backend job, and the job reports at least every quarter of
+ * R.POST_PROCESS_CLAIM_TIMEOUT, so its stages stay claimed for as long as it runs.
+ */
 public class ProcessingManager {
+	private static final StarLogger log = StarLogger.getLogger(ProcessingManager.class);
+
+	private static final AtomicInteger workerCount = new AtomicInteger();
+	private static final ExecutorService workers = Executors.newFixedThreadPool(R.POST_PROCESS_THREADS, r -> {
+		Thread t = new Thread(r, "post-process-" + workerCount.incrementAndGet());
+		t.setDaemon(true);
+		return t;
+	});
+
+	// progress of every job that had stages awaiting processing the last time they were looked for
+	private static final Map<Integer, JobProgress> progress = new ConcurrentHashMap<>();
+
+	// claims of backend jobs start with this, so results can only be sent for stages a backend job claimed
+	private static final String CLUSTER_CLAIM_PREFIX = "cluster-";
+
+	private static String clusterScriptTemplate = null;
+
+	/**
+	 * Looks for the jobs with stages awaiting processing, updates their progress and submits the large ones to the
+	 * backend if that is turned on.
+	 *
+	 * @return The number of stages awaiting processing in each job, or null on error
+	 */
+	private static Map<Integer, Integer> findJobs() {
+		Map<Integer, Integer> jobs = JobPairs.getJobsWithPairsToBeProcessed();
+		if (jobs == null) {
+			return null;
+		}
+		progress.keySet().retainAll(jobs.keySet());
+		for (Map.Entry<Integer, Integer> job : jobs.entrySet()) {
+			progress.computeIfAbsent(job.getKey(), JobProgress::new).setRemaining(job.getValue());
+		}
+		if (R.POST_PROCESS_CLUSTER_MIN_STAGES > 0) {
+			for (Map.Entry<Integer, Integer> job : jobs.entrySet()) {
+				if (job.getValue() >= R.POST_PROCESS_CLUSTER_MIN_STAGES) {
+					submitToCluster(job.getKey());
+				}
+			}
+		}
+		return jobs;
+	}
+
+	/**
+	 * Checks to see which pairs need to be processed and runs the correct processors on them. Returns once no stage
+	 * is left that can be claimed. Jobs are looked for again every R.POST_PROCESS_RESCAN_BATCHES batches, so jobs
+	 * that get stages to process while a long run is going take turns with the others rather than waiting for the
+	 * run to end.
+	 */
+	public static void checkProcessingPairs() {
+		Map<Integer, Integer> jobs = findJobs();
+		if (jobs == null) {
+			return;
+		}
+
+		CompletionService<Void> done = new ExecutorCompletionService<>(workers);
+		// the jobs that may still have stages to claim, in the order they get their next batch
+		Deque<Integer> turns = new ArrayDeque<>(jobs.keySet());
+		int inFlight = 0;
+		int sinceRescan = 0;
+		try {
+			while (!turns.isEmpty() || inFlight > 0) {
+				if (sinceRescan >= R.POST_PROCESS_RESCAN_BATCHES) {
+					sinceRescan = 0;
+					jobs = findJobs();
+					if (jobs != null) {
+						// jobs that are new to this run go first, since they have had no turn yet
+						for (int jobId : jobs.keySet()) {
+							if (!turns.contains(jobId)) {
+								turns.addFirst(jobId);
+							}
+						}
+					}
+				}
+				// keep every worker busy, with one more batch each waiting
+				while (inFlight < 2 * R.POST_PROCESS_THREADS && !turns.isEmpty()) {
+					int jobId = turns.poll();
+					String owner = UUID.randomUUID().toString();
+					List<PairStageProcessorTriple> batch =
+							JobPairs.claimPairsToBeProcessed(jobId, owner, R.POST_PROCESS_BATCH_SIZE);
+					if (batch == null || batch.isEmpty()) {
+						continue;
+					}
+					done.submit(() -> processBatch(jobId, owner, batch), null);
+					inFlight++;
+					sinceRescan++;
+					turns.add(jobId);
+				}
+				if (inFlight > 0) {
+					Future<Void> finished = done.take();
+					inFlight--;
+					try {
+						finished.get();
+					} catch (ExecutionException e) {
+						log.error("checkProcessingPairs", "A batch of stages could not be processed", e.getCause());
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			log.warn("checkProcessingPairs", "Interrupted with " + inFlight + " batches still running");
+			Thread.currentThread().interrupt();
+		}
+		for (JobProgress p : progress.values()) {
+			log.info(p.toString());
+		}
+	}
+
+	/**
+	 * Runs the processors of a batch of claimed stages of one job and saves the results. Stages whose processor fails
+	 * keep their claim until it times out, so they are tried again later rather than on every round. The claims are
+	 * refreshed as every stage finishes, since every stage may take up to the time limit of its processor and the
+	 * batch together may take longer than the claims last.
+	 */
+	private static void processBatch(int jobId, String owner, List<PairStageProcessorTriple> batch) {
+		long start = System.nanoTime();
+		List<PairStageProcessorTriple> processed = new ArrayList<>();
+		List<Properties> results = new ArrayList<>();
+		for (int i = 0; i < batch.size(); i++) {
+			PairStageProcessorTriple triple = batch.get(i);
+			Properties props =
+					JobPairs.runPostProcessorOnPair(triple.getPairId(), triple.getStageNumber(), triple.getProcessorId());
+			if (props != null) {
+				processed.add(triple);
+				results.add(props);
+			}
+			if (i < batch.size() - 1) {
+				JobPairs.refreshProcessingClaims(owner);
+			}
+		}
+		int saved = JobPairs.savePostProcessingResults(jobId, processed, results);
+		JobProgress p = progress.computeIfAbsent(jobId, JobProgress::new);
+		p.record(saved, batch.size() - saved, System.nanoTime() - start);
+	}
+
 	/**
-     * Checks to see which pairs need to be processed and runs the correct 
-     * processors on them
-     */
-    public synchronized static void checkProcessingPairs(){
-    	List<PairStageProcessorTriple> triples=JobPairs.getAllPairsForProcessing();
-    	int num_processed = 0;
-    	
-    	for (PairStageProcessorTriple triple : triples) {
-    		if (num_processed > R.NUM_REPOSTPROCESS_AT_A_TIME) {
-				break;
-
-    		}
-		    
-		   
-		    JobPairs.postProcessPair(triple.getPairId(),triple.getStageNumber(), triple.getProcessorId());
-		    num_processed++;
-    	}
-    }
+	 * Claims the stages of a job that are awaiting processing in large batches and submits every batch to the backend.
+	 * Stops once what is left is too little to be worth a backend job, and leaves that to the workers.
+	 */
+	private static void submitToCluster(int jobId) {
+		Job job = Jobs.get(jobId);
+		if (job == null || job.getQueue() == null) {
+			return;
+		}
+		while (true) {
+			String owner = CLUSTER_CLAIM_PREFIX + UUID.randomUUID();
+			List<PairStageProcessorTriple> batch =
+					JobPairs.claimPairsToBeProcessed(jobId, owner, R.POST_PROCESS_CLUSTER_BATCH_SIZE);
+			if (batch == null || batch.isEmpty()) {
+				return;
+			}
+			if (batch.size() < R.POST_PROCESS_CLUSTER_MIN_STAGES || !submitBatch(job, owner, batch)) {
+				JobPairs.releaseProcessingClaims(owner);
+				return;
+			}
+			progress.computeIfAbsent(jobId, JobProgress::new).recordSubmitted(batch.size());
+		}
+	}
+
+	private static boolean initClusterScriptTemplateIf() {
+		if (clusterScriptTemplate == null) {
+			File f = new File(R.CONFIG_PATH, "sge/postProcessScript");
+			try {
+				String template = FileUtils.readFileToString(f, StandardCharsets.UTF_8);
+				template = template.replace("$$SANDBOX_USER_ONE$$", R.SANDBOX_USER_ONE);
+				template = template.replace("$$WORKING_DIR_BASE$$", R.BACKEND_WORKING_DIR);
+				template = template.replace("$$REPORT_URL$$", R.REPORT_URL);
+				template = template.replace("$$REPORT_TOKEN$$", R.REPORT_TOKEN);
+				template = template.replace("$$REPORT_INTERVAL$$", String.valueOf(R.POST_PROCESS_CLAIM_TIMEOUT / 4));
+				clusterScriptTemplate = template;
+			} catch (IOException e) {
+				log.error("initClusterScriptTemplateIf", "Error reading the post processing script at " + f, e);
+			}
+		}
+		return clusterScriptTemplate != null;
+	}
+
+	/**
+	 * Writes a script that post processes a batch of claimed stages and submits it to the backend
+	 *
+	 * @return True if the script was submitted
+	 */
+	private static boolean submitBatch(Job job, String owner, List<PairStageProcessorTriple> batch) {
+		if (!initClusterScriptTemplateIf()) {
+			return false;
+		}
+		// the script only copies a processor when it differs from that of the previous stage
+		batch.sort(Comparator.comparingInt(PairStageProcessorTriple::getProcessorId));
+		Map<Integer, Processor> processors = new HashMap<>();
+		Map<Integer, JobPair> pairs = new HashMap<>();
+		List<Integer> pairIds = new ArrayList<>();
+		List<Integer> stageNumbers = new ArrayList<>();
+		List<String> processorPaths = new ArrayList<>();
+		List<Integer> timeLimits = new ArrayList<>();
+		List<String> outputPaths = new ArrayList<>();
+		List<String> benchPaths = new ArrayList<>();
+		for (PairStageProcessorTriple triple : batch) {
+			Processor p = processors.computeIfAbsent(triple.getProcessorId(), Processors::get);
+			JobPair pair = pairs.computeIfAbsent(triple.getPairId(), JobPairs::getPairDetailed);
+			if (p == null || pair == null) {
+				// left claimed, so it is tried again once the claim times out
+				continue;
+			}
+			pairIds.add(triple.getPairId());
+			stageNumbers.add(triple.getStageNumber());
+			processorPaths.add(p.getFilePath());
+			timeLimits.add(p.getTimeLimit());
+			outputPaths.add(JobPairs.getFilePath(pair, triple.getStageNumber()));
+			benchPaths.add(pair.getBench().getPath());
+		}
+		if (pairIds.isEmpty()) {
+			return false;
+		}
+
+		try {
+			File script = new File(R.getJobInboxDir(), "postprocess_" + owner + ".bash");
+			Map<String, String> replacements = new HashMap<>();
+			replacements.put("$$QUEUE$$", job.getQueue().getName());
+			replacements.put("$$CLAIM$$", owner);
+			replacements.put("$$SCRIPT_PATH$$", script.getAbsolutePath());
+			replacements.put("$$PAIR_ID_ARRAY$$", JobManager.numsToBashArray("PAIR_IDS", pairIds));
+			replacements.put("$$STAGE_NUMBER_ARRAY$$", JobManager.numsToBashArray("STAGE_NUMBERS", stageNumbers));
+			replacements.put("$$PROCESSOR_PATH_ARRAY$$",
+			                 JobManager.toBashArray("PROCESSOR_PATHS", processorPaths, true));
+			replacements.put("$$PROCESSOR_TIME_LIMIT_ARRAY$$",
+			                 JobManager.numsToBashArray("PROCESSOR_TIME_LIMITS", timeLimits));
+			replacements.put("$$OUTPUT_PATH_ARRAY$$", JobManager.toBashArray("OUTPUT_PATHS", outputPaths, true));
+			replacements.put("$$BENCH_PATH_ARRAY$$", JobManager.toBashArray("BENCH_PATHS", benchPaths, true));
+
+			FileUtils.writeStringToFile(
+					script, JobManager.addParametersToJobscript(clusterScriptTemplate, replacements),
+					StandardCharsets.UTF_8
+			);
+			// the script holds the report token, so only its owner may read it
+			if (!script.setReadable(false, false) || !script.setReadable(true, true) || !script.setExecutable(true, true)) {
+				log.error("submitBatch", "Can't change permissions on post processing script " + script);
+			}
+			File logFile = new File(R.JOB_POST_PROCESS_LOG_DIRECTORY, owner + ".txt");
+			logFile.getParentFile().mkdirs();
+
+			int execId = R.BACKEND.submitScript(script.getAbsolutePath(), R.BACKEND_WORKING_DIR,
+			                                    logFile.getAbsolutePath());
+			if (R.BACKEND.isError(execId)) {
+				log.warn("submitBatch", "The backend could not run the post processing script " + script);
+				FileUtils.deleteQuietly(script);
+				return false;
+			}
+			log.info("submitBatch", "Submitted " + pairIds.size() + " stages of job " + job.getId() +
+			                        " to be post processed as " + owner);
+			return true;
+		} catch (IOException e) {
+			log.error("submitBatch", "jobId: " + job.getId(), e);
+		}
+		return false;
+	}
+
+	/**
+	 * Parses the results a backend job sends. Each line is a record of tab separated fields: "done", the pair ID, the
+	 * stage number and the base 64 encoded output of the processor.
+	 *
+	 * @param reader The body of the report
+	 * @return A map from pair ID to stage number to the attributes of that stage
+	 * @throws IOException if the report cannot be read
+	 * @throws IllegalArgumentException if the report contains a record that is not understood
+	 */
+	public static Map<Integer, Map<Integer, Properties>> parseClusterResults(BufferedReader reader)
+			throws IOException {
+		Map<Integer, Map<Integer, Properties>> results = new HashMap<>();
+		String line;
+		int lineNumber = 0;
+		while ((line = reader.readLine()) != null) {
+			lineNumber++;
+			if (line.isEmpty()) {
+				continue;
+			}
+			String[] f = line.split("\t", -1);
+			if (f.length != 4 || !f[0].equals("done")) {
+				throw new IllegalArgumentException("line " + lineNumber + ": not a done record");
+			}
+			try {
+				Properties props = new Properties();
+				props.load(new StringReader(new String(Base64.getDecoder().decode(f[3]), StandardCharsets.UTF_8)));
+				results.computeIfAbsent(Integer.parseInt(f[1]), k -> new HashMap<>())
+				       .put(Integer.parseInt(f[2]), props);
+			} catch (IllegalArgumentException e) {
+				// NumberFormatException is an IllegalArgumentException too
+				throw new IllegalArgumentException("line " + lineNumber + ": " + e.getMessage(), e);
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Saves the results a backend job sent for the stages it claimed, and renews the claims on the stages it has yet
+	 * to send. Results for stages the job no longer has claimed, because the claim timed out and the stage was
+	 * processed by someone else, are ignored.
+	 *
+	 * @param owner The claim of the backend job
+	 * @param results The results, as returned by parseClusterResults
+	 * @return One line per problem with the results, or null if the results could not be saved right now
+	 * @throws IllegalArgumentException if the owner is not the claim of a backend job
+	 */
+	public static List<String> saveClusterResults(String owner, Map<Integer, Map<Integer, Properties>> results) {
+		if (owner == null || !owner.startsWith(CLUSTER_CLAIM_PREFIX) || owner.length() > 64) {
+			throw new IllegalArgumentException("Invalid claim.");
+		}
+		if (!JobPairs.refreshProcessingClaims(owner)) {
+			return null;
+		}
+		Map<Integer, List<PairStageProcessorTriple>> claims = JobPairs.getProcessingClaims(owner);
+		if (claims == null) {
+			return null;
+		}
+		List<String> problems = new ArrayList<>();
+		int claimed = 0;
+		for (Map.Entry<Integer, List<PairStageProcessorTriple>> job : claims.entrySet()) {
+			List<PairStageProcessorTriple> stages = new ArrayList<>();
+			List<Properties> attrs = new ArrayList<>();
+			for (PairStageProcessorTriple triple : job.getValue()) {
+				Properties props = results.getOrDefault(triple.getPairId(), Collections.emptyMap())
+				                          .get(triple.getStageNumber());
+				if (props != null) {
+					stages.add(triple);
+					attrs.add(props);
+				}
+			}
+			int saved = JobPairs.savePostProcessingResults(job.getKey(), stages, attrs);
+			progress.computeIfAbsent(job.getKey(), JobProgress::new).record(saved, 0, 0);
+			if (saved < stages.size()) {
+				problems.add((stages.size() - saved) + " stages of job " + job.getKey() + " could not be saved");
+			}
+			claimed += stages.size();
+		}
+		int sent = 0;
+		for (Map<Integer, Properties> stages : results.values()) {
+			sent += stages.size();
+		}
+		if (sent > claimed) {
+			problems.add((sent - claimed) + " stages are no longer claimed by " + owner);
+		}
+		return problems;
+	}
+
+	/**
+	 * @return JSON of the progress and throughput of every job that is being post processed
+	 */
+	public static JsonObject getProgressJson() {
+		JsonObject json = new JsonObject();
+		json.addProperty("threads", R.POST_PROCESS_THREADS);
+		json.addProperty("clusterMinStages", R.POST_PROCESS_CLUSTER_MIN_STAGES);
+		JsonArray jobs = new JsonArray();
+		for (JobProgress p : progress.values()) {
+			jobs.add(p.toJson());
+		}
+		json.add("jobs", jobs);
+		return json;
+	}
+
+	/**
+	 * Stops the workers. Batches that are running are interrupted, and their stages are claimed again once the claims
+	 * time out.
+	 */
+	public static void shutdown() {
+		workers.shutdownNow();
+		try {
+			workers.awaitTermination(2, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * How far along the post processing of one job is
+	 */
+	private static class JobProgress {
+		private final int jobId;
+		private final long started = System.currentTimeMillis();
+		private final LongAdder processed = new LongAdder();
+		private final LongAdder failed = new LongAdder();
+		// stages handed to backend jobs
+		private final LongAdder submitted = new LongAdder();
+		// summed over all workers, so it can be more than the time since started
+		private final LongAdder workerNanos = new LongAdder();
+		private volatile int remaining;
+
+		JobProgress(int jobId) {
+			this.jobId = jobId;
+		}
+
+		synchronized void setRemaining(int remaining) {
+			this.remaining = remaining;
+		}
+
+		synchronized void record(int processed, int failed, long nanos) {
+			this.processed.add(processed);
+			this.failed.add(failed);
+			this.workerNanos.add(nanos);
+			this.remaining = Math.max(0, remaining - processed);
+		}
+
+		void recordSubmitted(int stages) {
+			this.submitted.add(stages);
+		}
+
+		/**
+		 * @return Stages processed per second since the job was first seen awaiting processing
+		 */
+		double getThroughput() {
+			long millis = Math.max(1, System.currentTimeMillis() - started);
+			return processed.sum() * 1000.0 / millis;
+		}
+
+		JsonObject toJson() {
+			JsonObject json = new JsonObject();
+			json.addProperty("jobId", jobId);
+			json.addProperty("started", started);
+			json.addProperty("processed", processed.sum());
+			json.addProperty("failed", failed.sum());
+			json.addProperty("submittedToCluster", submitted.sum());
+			json.addProperty("remaining", remaining);
+			json.addProperty("stagesPerSecond", getThroughput());
+			json.addProperty("workerSeconds", TimeUnit.NANOSECONDS.toSeconds(workerNanos.sum()));
+			return json;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Post processing job %d: %d stages processed, %d failed, about %d remaining, " +
+			                     "%.2f stages per second", jobId, processed.sum(), failed.sum(), remaining,
+			                     getThroughput()
+			);
+		}
+	}
 }
@@ -1,7 +1,7 @@
 package org.starexec.servlets;
 
+import org.apache.catalina.Globals;
 import org.apache.catalina.connector.ClientAbortException;
-import org.apache.commons.io.FileUtils;
 import org.starexec.constants.R;
 import org.starexec.constants.Web;
 import org.starexec.data.database.*;
@@ -13,6 +13,7 @@ import org.starexec.data.security.ValidatorStatusCode;
 import org.starexec.data.to.*;
 import org.starexec.data.to.enums.ProcessorType;
 import org.starexec.data.to.pipelines.JoblineStage;
+import org.starexec.data.to.tuples.JobPairCounts;
 import org.starexec.exceptions.StarExecException;
 import org.starexec.logger.StarLogger;
 import org.starexec.util.*;
@@ -22,13 +23,17 @@ import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.sql.SQLException;
 import java.util.*;
 
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 
 /**
@@ -266,86 +271,79 @@ public class Download extends HttpServlet {
 	}
 
 	/**
-	 * Processes a job csv file to be downloaded. The file contains the information of all the job pairs within the
-	 * specific job, given a random name, and placed in a secure folder on the server.
+	 * Streams a zip containing a csv file with the information of all the job pairs within the specific job. The
+	 * pairs are read from the database and written to the response one at a time, so memory use does not grow with
+	 * the size of the job.
 	 *
 	 * @param jobId the job needed to be processed.
 	 * @param userId the Id of the user who sends the request for the file.
 	 * @param response the servlet response sent back.
-	 * @return a file representing the archive to send back to the client
+	 * @param since If not null, only pairs with a completion ID greater than this are included
+	 * @param returnIds True to include the IDs of pairs and primitives
+	 * @param onlyCompleted True to include only pairs that have finished running
+	 * @return True if the csv was sent, false if the job could not be read
 	 * @throws IOException
+	 * @throws SQLException if the pairs could not be read after the response was started
 	 * @author Ruoyu Zhang
 	 */
 	private static boolean handleJob(
 			Integer jobId, int userId, HttpServletResponse response, Integer since, Boolean returnIds,
 			Boolean onlyCompleted
-	) throws Exception {
+	) throws IOException, SQLException {
 		log.info("Request for job " + jobId + " csv from user " + userId);
 
-		Job job = Jobs.get(jobId);
-		HashMap<Integer, HashMap<Integer, Properties>> props = null;
-		if (since == null) {
-			job.setJobPairs(Jobs.getJobPairsInJobSpaceHierarchy(job.getPrimarySpace(), PrimitivesToAnonymize.NONE));
-			props = Jobs.getJobAttributes(jobId);
-		} else {
-			job.setJobPairs(
-					Jobs.getJobPairsInJobSpaceHierarchy(job.getPrimarySpace(), since, PrimitivesToAnonymize.NONE));
-			props = Jobs.getNewJobAttributes(jobId, since);
-			int olderPairs = Jobs.countOlderPairs(jobId, since);
-
-			log.debug("found this many new job pairs " + job.getJobPairs().size());
+		JobPairCounts counts = Jobs.getPairAndStageCounts(jobId, since);
+		List<String> attrNames = Jobs.getCompletedPairAttributeNames(jobId, since);
+		if (counts == null || attrNames == null) {
+			return false;
+		}
+		int maxCompletion = 0;
+		if (since != null) {
+			log.debug("found this many new job pairs " + counts.pairs);
 			//we want to find the largest completion ID seen and send that back to the client
 			//so that they know what to ask for next time (mostly for StarexecCommand)
-			int maxCompletion = since;
-			for (JobPair x : job.getJobPairs()) {
-				log.trace("found pair id = " + x.getId() + " with completion id = " + x.getCompletionId());
-				if (x.getCompletionId() > maxCompletion) {
-					maxCompletion = x.getCompletionId();
-				}
-			}
+			maxCompletion = Math.max(since, counts.maxCompletionId);
 
 			response.addCookie(new Cookie("Max-Completion", String.valueOf(maxCompletion)));
-			response.addCookie(new Cookie("Pairs-Found", String.valueOf(job.getJobPairs().size())));
-			response.addCookie(new Cookie("Older-Pairs", String.valueOf(olderPairs)));
+			response.addCookie(new Cookie("Pairs-Found", String.valueOf(counts.pairs)));
+			response.addCookie(new Cookie("Older-Pairs", String.valueOf(Jobs.countOlderPairs(jobId, since))));
 			response.addCookie(new Cookie("Total-Pairs", String.valueOf(Jobs.getPairCount(jobId))));
 		}
-		Jobs.loadPropertiesIntoPairs(job.getJobPairs(), props);
-		log.debug("about to create a job CSV with " + job.getJobPairs().size() + " pairs");
-		String jobFile = CreateJobCSV(job, returnIds, onlyCompleted);
-		ArchiveUtil.createAndOutputZip(new File(jobFile), response.getOutputStream(), "Job"+jobId, false);
-
+		log.debug("about to stream a job CSV with " + counts.pairs + " pairs");
+
+		ZipArchiveOutputStream stream = new ZipArchiveOutputStream(response.getOutputStream());
+		String baseName = "Job" + jobId;
+		stream.putArchiveEntry(new ZipArchiveEntry(baseName + File.separator + baseName + "_info.csv"));
+		Writer csv = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+		writeJobCSV(jobId, since, maxCompletion, returnIds, onlyCompleted, counts.stages > counts.pairs, attrNames, csv);
+		csv.flush();
+		stream.closeArchiveEntry();
+		stream.finish();
+		stream.flush();
 		return true;
 	}
 
 	/**
-	 * Create the csv file for a specific job
+	 * Writes the csv for a specific job
 	 *
-	 * @param job the job needed to be processed
-	 * @return the file name of the created csv file
+	 * @param jobId the job needed to be processed
+	 * @param since If not null, only pairs with a completion ID greater than this and at most until are written
+	 * @param until The largest completion ID to write if since is not null
+	 * @param multiStage True if any pair has more than one stage, in which case every row starts with the stage number
+	 * @param attrNames The attribute columns to write after the result
+	 * @param csv Where to write the csv
 	 * @throws IOException
-	 * @author Ruoyu Zhang
+	 * @throws SQLException
 	 */
-	private static String CreateJobCSV(Job job, Boolean returnIds, Boolean getOnlyCompleted) throws IOException {
-		log.debug("CreateJobCSV called with returnIds set to " + returnIds);
+	private static void writeJobCSV(
+			int jobId, Integer since, int until, boolean returnIds, boolean getOnlyCompleted, boolean multiStage,
+			List<String> attrNames, Writer csv
+	) throws IOException, SQLException {
+		log.debug("writeJobCSV called with returnIds set to " + returnIds);
 		StringBuilder sb = new StringBuilder();
-		sb.append(R.STAREXEC_ROOT).append(R.DOWNLOAD_FILE_DIR);
-		sb.append(File.separator);
-		int maxStageNumbers = 0;
-		for (JobPair jp : job) {
-			maxStageNumbers = Math.max(maxStageNumbers, jp.getStages().size());
-		}
-		sb.append("Job");
-		sb.append(job.getId());
-		sb.append("_info");
-		sb.append(".csv");
-		String filename = sb.toString();
-
-		List<JobPair> pairs = job.getJobPairs();
-		Iterator<JobPair> itr = pairs.iterator();
 
 		/* generate the table header */
-		sb.delete(0, sb.length());
-		if (maxStageNumbers > 1) {
+		if (multiStage) {
 			sb.append("stage number,");
 		}
 		if (returnIds) {
@@ -356,46 +354,29 @@ public class Download extends HttpServlet {
 			sb.append("benchmark,solver,configuration,status,cpu time,wallclock time,memory usage,result");
 		}
 
-		HashMap<Integer, String> expectedValues = Jobs.getAllAttrsOfNameForJob(job.getId(), R.EXPECTED_RESULT);
-		for (JobPair jp : pairs) {
-			if (expectedValues.containsKey(jp.getBench().getId())) {
-				jp.getPrimaryStage().getAttributes().put(R.EXPECTED_RESULT, expectedValues.get(jp.getBench().getId()));
-			}
-		}
-		/* use the attribute names for the first completed job pair (if any) for more headings for the table
+		/* use the attribute names of the completed job pairs (if any) for more headings for the table
 		We will put result first, then expected if it is there; other attributes follow */
-		Set<String> attrNames = job.attributeNames();
-		boolean have_expected = false;
-		if (attrNames != null) {
-			if (attrNames.contains(R.EXPECTED_RESULT)) {
-				// we have the expected result attribute
-				have_expected = true;
-				sb.append(",expected");
-			}
-			for (String attr : attrNames) {
-				if (!attr.equals(R.STAREXEC_RESULT) && !attr.equals(R.EXPECTED_RESULT)) {
-					// skip printing result and expected result in the header of the table, since we already included
-					// them
-					sb.append(",");
-					sb.append(attr);
-				}
+		boolean have_expected = attrNames.contains(R.EXPECTED_RESULT);
+		if (have_expected) {
+			// we have the expected result attribute
+			sb.append(",expected");
+		}
+		for (String attr : attrNames) {
+			if (!attr.equals(R.STAREXEC_RESULT) && !attr.equals(R.EXPECTED_RESULT)) {
+				// skip printing result and expected result in the header of the table, since we already included
+				// them
+				sb.append(",");
+				sb.append(attr);
 			}
 		}
 		sb.append("\r\n");
+		csv.write(sb.toString());
 
-		while (itr.hasNext()) {
-			JobPair pair = itr.next();
-			if (getOnlyCompleted) {
-				if (pair.getStatus().getCode().incomplete()) {
-					log.debug("found an incomplete pair to exclude!");
-					continue;
-				}
-			}
-			pair.sortStages();
+		//users can optionally get only completed pairs; the query leaves out the others
+		Jobs.forEachPairWithAttributes(jobId, since, until, getOnlyCompleted, pair -> {
+			sb.setLength(0);
 			for (JoblineStage stage : pair.getStages()) {
-				//users can optionally get only completed pairs
-
-				if (maxStageNumbers > 1) {
+				if (multiStage) {
 					sb.append(stage.getStageNumber());
 					sb.append(",");
 				}
@@ -442,32 +423,30 @@ public class Download extends HttpServlet {
 
 				//escape commas
 				if (stage.getStarexecResult().contains(",")) {
-					sb.append("\""+stage.getStarexecResult().replaceAll("\"","\"\"")+"\"");	
+					sb.append("\""+stage.getStarexecResult().replaceAll("\"","\"\"")+"\"");
 				} else {
-					sb.append(stage.getStarexecResult());																		}
+					sb.append(stage.getStarexecResult());
+				}
 
-				if (attrNames != null) {
-					// print out attributes for this job pair
-					Properties props = stage.getAttributes();
+				// print out attributes for this job pair
+				Properties props = stage.getAttributes();
 
-					if (have_expected && props != null) {
+				if (have_expected) {
+					sb.append(",");
+					sb.append(props.getProperty(R.EXPECTED_RESULT, "-"));
+				}
+				for (String attr : attrNames) {
+					if (!attr.equals(R.STAREXEC_RESULT) && !attr.equals(R.EXPECTED_RESULT)) {
+						/* we skip printing the starexec-result, and starexec-expected-result attributes,
+						   because we printed them already */
 						sb.append(",");
-						sb.append(props.getProperty(R.EXPECTED_RESULT, "-"));
-					}
-					for (String attr : attrNames) {
-						if (!attr.equals(R.STAREXEC_RESULT) && !attr.equals(R.EXPECTED_RESULT)) {
-							/* we skip printing the starexec-result, and starexec-expected-result attributes,
-							   because we printed them already */
-							sb.append(",");
-							sb.append(props.getProperty(attr, "-"));
-						}
+						sb.append(props.getProperty(attr, "-"));
 					}
 				}
 				sb.append("\r\n");
 			}
-		}
-		FileUtils.write(new File(filename), sb.toString());
-		return filename;
+			csv.write(sb.toString());
+		});
 	}
 
 	/**
@@ -484,15 +463,26 @@ public class Download extends HttpServlet {
 	private static void addJobPairsToZipOutput(
 			List<JobPair> pairs, HttpServletResponse response, String baseName, boolean useSpacePath, Long earlyDate
 	) {
-		long lastModified;
-		if (earlyDate != null) {
-			lastModified = earlyDate;
-		} else {
-			lastModified = -1;
-		}
-		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-		ZipArchiveOutputStream stream = new ZipArchiveOutputStream(buffer);
 		try {
+			// decide whether there is anything to send from file times alone, so that the archive can be written
+			// straight to the response instead of being held in memory until the answer is known
+			long lastModified = earlyDate != null ? earlyDate : -1;
+			for (JobPair p : pairs) {
+				boolean running = p.getStatus().getCode().running();
+				long cutoff = !running || earlyDate == null ? -1 : earlyDate;
+				for (File file : JobPairs.getOutputPaths(p)) {
+					if (file.exists()) {
+						lastModified = Math.max(lastModified, ArchiveUtil.getLastModified(file, cutoff));
+					}
+				}
+			}
+			if (lastModified == -1 || earlyDate == Long.valueOf(lastModified)) {
+				response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+				response.getOutputStream().close();
+				return;
+			}
+			response.setDateHeader("Last-Modified", lastModified);
+			ZipArchiveOutputStream stream = new ZipArchiveOutputStream(response.getOutputStream());
 			for (JobPair p : pairs) {
 				String zipFileNameParent = "";
 				StringBuilder zipFileName = new StringBuilder(baseName);
@@ -507,7 +497,6 @@ public class Download extends HttpServlet {
 				boolean running = p.getStatus().getCode().running();
 				for (File file : files) {
 					if (file.exists()) {
-						long modified;
 						StringBuilder singleFileName;
 						if (file.isDirectory()) {
 							if (useSpacePath) {
@@ -521,27 +510,20 @@ public class Download extends HttpServlet {
 								singleFileName.append(p.getId()).append("_output");
 							}
 							if (!running || earlyDate == null) {
-								modified = ArchiveUtil.addDirToArchive(stream, file, singleFileName.toString());
+								ArchiveUtil.addDirToArchive(stream, file, singleFileName.toString());
 							} else {
-								modified =
-										ArchiveUtil.addDirToArchive(stream, file, singleFileName.toString(),
-										                            earlyDate);
+								ArchiveUtil.addDirToArchive(stream, file, singleFileName.toString(), earlyDate);
 							}
 						} else {
 							singleFileName = new StringBuilder(zipFileNameParent);
 							singleFileName.append(File.separator);
 							singleFileName.append(file.getName());
 							if (!running || earlyDate == null) {
-								modified = ArchiveUtil.addFileToArchive(stream, file, singleFileName.toString());
+								ArchiveUtil.addFileToArchive(stream, file, singleFileName.toString());
 							} else {
-								modified = ArchiveUtil
-										.addFileToArchive(stream, file, singleFileName.toString(), earlyDate);
+								ArchiveUtil.addFileToArchive(stream, file, singleFileName.toString(), earlyDate);
 							}
 						}
-
-						if (modified > lastModified) {
-							lastModified = modified;
-						}
 					} else {
 						//if we can't find output for the pair, just put an empty file there
 						zipFileName.append(".txt");
@@ -549,14 +531,7 @@ public class Download extends HttpServlet {
 					}
 				}
 			}
-			if (lastModified == -1 || earlyDate == Long.valueOf(lastModified)) {
-				response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
-			} else {
-				response.setDateHeader("Last-Modified", lastModified);
-				stream.finish();
-				buffer.writeTo(response.getOutputStream());
-			}
-			response.getOutputStream().close();
+			stream.finish();
 			stream.close();
 		} catch (Exception e) {
 			log.error("addJobPairsToZipOutput", e);
@@ -567,14 +542,16 @@ public class Download extends HttpServlet {
 	 * Get a zip file which contains the outputs of a job from all its job pairs.
 	 *
 	 * @param jobId The job to be handled
+	 * @param request The request being answered
 	 * @param response The servlet response sent back
 	 * @param lastModified The time to use as a cutoff for output for running job pairs
 	 * @return a file representing the archive to send back to the client
 	 * @throws IOException
 	 * @author Ruoyu Zhang
 	 */
-	private static boolean handleJobOutputs(int jobId, HttpServletResponse response, Integer since, Long lastModified)
-			throws Exception {
+	private static boolean handleJobOutputs(
+			int jobId, HttpServletRequest request, HttpServletResponse response, Integer since, Long lastModified
+	) throws Exception {
 		log.debug("got request to download output for job = " + jobId);
 		// If the user can actually see the job the pair is apart of
 		log.debug("confirmed user can download job = " + jobId);
@@ -631,14 +608,48 @@ public class Download extends HttpServlet {
 			Download.addJobPairsToZipOutput(pairs, response, baseName, true, lastModified);
 		} else {
 			log.debug("preparing to create archive for job = " + jobId);
-			ArchiveUtil.createAndOutputZip(new File(Jobs.getDirectory(jobId)), response.getOutputStream(), baseName,
-			                               false
-			);
+			File jobDirectory = new File(Jobs.getDirectory(jobId));
+			Integer maxCompletionId = Jobs.isJobComplete(jobId) ? Jobs.getMaxCompletionId(jobId) : null;
+			if (maxCompletionId == null) {
+				ArchiveUtil.createAndOutputZip(jobDirectory, response.getOutputStream(), baseName, false);
+				return true;
+			}
+			File cached = JobArchiveCache.getArchive(jobId, maxCompletionId);
+			if (cached != null) {
+				log.debug("sending cached archive for job = " + jobId);
+				sendFile(cached, request, response);
+			} else {
+				JobArchiveCache.writeArchive(jobId, maxCompletionId, response.getOutputStream(),
+				                             out -> ArchiveUtil.createAndOutputZip(jobDirectory, out, baseName, false)
+				);
+			}
 		}
 
 		return true;
 	}
 
+	/**
+	 * Sends a file as the body of a response. Where the connector supports it, Tomcat sends the file itself with
+	 * sendfile after the servlet returns, so the file is never copied through the webapp.
+	 *
+	 * @param file The file to send
+	 * @param request The request being answered
+	 * @param response The response to send the file in
+	 * @throws IOException
+	 */
+	private static void sendFile(File file, HttpServletRequest request, HttpServletResponse response)
+			throws IOException {
+		long length = file.length();
+		response.setHeader("Content-Length", String.valueOf(length));
+		if (Boolean.TRUE.equals(request.getAttribute(Globals.SENDFILE_SUPPORTED_ATTR))) {
+			request.setAttribute(Globals.SENDFILE_FILENAME_ATTR, file.getAbsolutePath());
+			request.setAttribute(Globals.SENDFILE_FILE_START_ATTR, 0L);
+			request.setAttribute(Globals.SENDFILE_FILE_END_ATTR, length);
+		} else {
+			Files.copy(file.toPath(), response.getOutputStream());
+		}
+	}
+
 	/**
 	 * Using a list of Solvers map each solver name to whether or not that solver name is duplicated in the solver
 	 * list.
@@ -1042,7 +1053,7 @@ public class Download extends HttpServlet {
 
 					shortName = "Job" + jobId + "_output";
 					response.addHeader("Content-Disposition", "attachment; filename=" + shortName + ".zip");
-					success = handleJobOutputs(jobId, response, since, lastModified);
+					success = handleJobOutputs(jobId, request, response, since, lastModified);
 				} else if (request.getParameter(PARAM_TYPE).equals(R.JOB_PAGE_DOWNLOAD_TYPE)) {
 					log.debug(methodName, "Handling " + R.JOB_PAGE_DOWNLOAD_TYPE);
 					int jobId = Integer.parseInt(request.getParameter(PARAM_ID));
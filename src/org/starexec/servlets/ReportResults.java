@@ -0,0 +1,166 @@
+package org.starexec.servlets;
+
+import org.starexec.constants.R;
+import org.starexec.data.database.PairReports;
+import org.starexec.data.database.Users;
+import org.starexec.jobs.ProcessingManager;
+import org.starexec.logger.StarLogger;
+import org.starexec.util.Util;
+import org.starexec.util.Validator;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+/**
+ * Receives the status updates, run statistics and attributes that job pairs send from the compute nodes, so that
+ * compute nodes do not need to connect to the database. Each request carries every record for one stage of one pair;
+ * see PairReports for the format. Also receives the attributes of the stages that post processing jobs processed on
+ * the compute nodes, and answers the disk usage queries the jobscript makes before copying output.
+ */
+public class ReportResults extends HttpServlet {
+	private static final long serialVersionUID = 1L;
+	private static final StarLogger log = StarLogger.getLogger(ReportResults.class);
+
+	public static final String TOKEN_HEADER = "X-StarExec-Report-Token";
+	private static final String PAIR_ID = "pair";
+	private static final String USER_ID = "user";
+	private static final String CLAIM = "claim";
+	private static final String RUN = "run";
+	private static final String SEQUENCE = "seq";
+	private static final Pattern RUN_PATTERN = Pattern.compile("[A-Za-z0-9-]{1,64}");
+
+	/**
+	 * Writes a report from a job pair. Responds with 200 and one line per call that failed, 400 if the report could
+	 * not be parsed, and 503 if the report could not be written right now and should be sent again. Reports that
+	 * carry a run and a sequence number are only written the first time they arrive.
+	 */
+	@Override
+	protected void doPost(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+		try {
+			if (!isAuthorized(request)) {
+				response.sendError(HttpServletResponse.SC_FORBIDDEN, "Invalid report token.");
+				return;
+			}
+			if (request.getParameter(CLAIM) != null) {
+				savePostProcessingResults(request, response);
+				return;
+			}
+			if (!Validator.isValidPosInteger(request.getParameter(PAIR_ID))) {
+				response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid pair id.");
+				return;
+			}
+			int pairId = Integer.parseInt(request.getParameter(PAIR_ID));
+			String run = request.getParameter(RUN);
+			int sequence = 0;
+			if (run != null) {
+				if (!RUN_PATTERN.matcher(run).matches() || !Validator.isValidPosInteger(request.getParameter(SEQUENCE))) {
+					response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid run or sequence number.");
+					return;
+				}
+				sequence = Integer.parseInt(request.getParameter(SEQUENCE));
+			}
+
+			List<PairReports.Call> calls;
+			try (BufferedReader reader = new BufferedReader(
+					new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8))) {
+				calls = PairReports.parse(pairId, reader);
+			} catch (IllegalArgumentException e) {
+				log.warn("doPost", "bad report from pair " + pairId + ": " + e.getMessage());
+				response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+				return;
+			}
+
+			List<String> failed;
+			if (calls.isEmpty()) {
+				failed = Collections.emptyList();
+			} else {
+				Future<List<String>> result = PairReports.submit(pairId, run, sequence, calls);
+				failed = result == null ? null : result.get();
+			}
+			if (failed == null) {
+				response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Report could not be written.");
+				return;
+			}
+			response.setContentType("text/plain");
+			response.setCharacterEncoding("UTF-8");
+			for (String s : failed) {
+				response.getWriter().println(s);
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			log.error("doPost", e);
+			response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Report could not be written.");
+		} catch (Exception e) {
+			log.warn("Caught Exception in ReportResults.doPost", e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Writes the results a post processing job sent for the stages it claimed. Responds like doPost.
+	 */
+	private static void savePostProcessingResults(HttpServletRequest request, HttpServletResponse response)
+			throws IOException {
+		String claim = request.getParameter(CLAIM);
+		List<String> failed;
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8))) {
+			Map<Integer, Map<Integer, Properties>> results = ProcessingManager.parseClusterResults(reader);
+			failed = ProcessingManager.saveClusterResults(claim, results);
+		} catch (IllegalArgumentException e) {
+			log.warn("savePostProcessingResults", "bad results from " + claim + ": " + e.getMessage());
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+			return;
+		}
+		if (failed == null) {
+			response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Results could not be written.");
+			return;
+		}
+		response.setContentType("text/plain");
+		response.setCharacterEncoding("UTF-8");
+		for (String s : failed) {
+			response.getWriter().println(s);
+		}
+	}
+
+	/**
+	 * Responds with the number of bytes on disk a user is using
+	 */
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+		if (!isAuthorized(request)) {
+			response.sendError(HttpServletResponse.SC_FORBIDDEN, "Invalid report token.");
+			return;
+		}
+		if (!Validator.isValidPosInteger(request.getParameter(USER_ID))) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid user id.");
+			return;
+		}
+		response.setContentType("text/plain");
+		response.getWriter().print(Users.getDiskUsage(Integer.parseInt(request.getParameter(USER_ID))));
+	}
+
+	private static boolean isAuthorized(HttpServletRequest request) {
+		String token = request.getHeader(TOKEN_HEADER);
+		if (Util.isNullOrEmpty(R.REPORT_TOKEN) || token == null) {
+			return false;
+		}
+		return MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8),
+		                             R.REPORT_TOKEN.getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,185 @@
+package org.starexec.test.benchmark;
+
+import org.apache.tomcat.jdbc.pool.DataSource;
+import org.apache.tomcat.jdbc.pool.PoolProperties;
+import org.starexec.data.database.Common;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Multi-threaded benchmark of borrowing connections through Common, against the synchronized accounting Common used to
+ * have. Both run on a Tomcat JDBC pool whose connections come from a stub data source, so only the cost of borrowing
+ * and returning connections is measured. Each thread repeatedly borrows a connection, optionally holds it to stand in
+ * for a query, and returns it. JMH is not on the classpath, so this is a plain main method; run it with the same
+ * classpath as the unit tests.
+ */
+public class ConnectionPoolBenchmark {
+	private static final int[] THREAD_COUNTS = {1, 8, 64};
+	private static final long[] HOLD_NANOS = {0, TimeUnit.MICROSECONDS.toNanos(50)};
+	private static final int POOL_SIZE = 64;
+	private static final long WARMUP_MILLIS = 1000;
+	private static final long MEASUREMENT_MILLIS = 3000;
+
+	/**
+	 * Answers every JDBC call with a stub: interfaces get another stub, primitives their default, everything else
+	 * null
+	 */
+	private static final InvocationHandler STUB = new InvocationHandler() {
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			Class<?> type = method.getReturnType();
+			switch (method.getName()) {
+			case "isValid":
+				return true;
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "equals":
+				return proxy == args[0];
+			case "toString":
+				return "stub " + method.getDeclaringClass().getSimpleName();
+			}
+			if (type == boolean.class) {
+				return false;
+			} else if (type == int.class) {
+				return 0;
+			} else if (type == long.class) {
+				return 0L;
+			} else if (type.isInterface()) {
+				return stub(type);
+			}
+			return null;
+		}
+	};
+
+	private static Object stub(Class<?> type) {
+		return Proxy.newProxyInstance(ConnectionPoolBenchmark.class.getClassLoader(), new Class<?>[]{type}, STUB);
+	}
+
+	private static PoolProperties stubPoolProperties() {
+		PoolProperties p = new PoolProperties();
+		p.setDataSource(stub(javax.sql.DataSource.class));
+		p.setMaxActive(POOL_SIZE);
+		p.setInitialSize(POOL_SIZE);
+		p.setMinIdle(POOL_SIZE);
+		p.setMaxIdle(POOL_SIZE);
+		p.setTestOnBorrow(false);
+		p.setJmxEnabled(false);
+		return p;
+	}
+
+	private interface Borrower {
+		void borrowAndReturn(long holdNanos) throws SQLException;
+	}
+
+	// what Common.getConnection and Common.safeClose did before: both synchronized on the class
+	private static class SynchronizedBorrower implements Borrower {
+		private final DataSource pool = new DataSource(stubPoolProperties());
+		private int connectionsOpened = 0;
+		private int connectionsDrift = 0;
+
+		private synchronized Connection getConnection() throws SQLException {
+			Connection c = pool.getConnection();
+			++connectionsOpened;
+			checkConnectionsCount();
+			return c;
+		}
+
+		private synchronized void checkConnectionsCount() {
+			if (connectionsOpened - pool.getActive() != connectionsDrift) {
+				connectionsDrift = connectionsOpened - pool.getActive();
+			}
+		}
+
+		private synchronized void safeClose(Connection c) throws SQLException {
+			if (c != null && !c.isClosed()) {
+				c.close();
+				--connectionsOpened;
+			}
+			checkConnectionsCount();
+		}
+
+		@Override
+		public void borrowAndReturn(long holdNanos) throws SQLException {
+			Connection c = getConnection();
+			if (holdNanos > 0) {
+				LockSupport.parkNanos(holdNanos);
+			}
+			safeClose(c);
+		}
+	}
+
+	// Common itself, subclassed for access to getConnection and safeClose
+	private static class CommonBorrower extends Common implements Borrower {
+		CommonBorrower() {
+			Common.initialize(stubPoolProperties());
+		}
+
+		@Override
+		public void borrowAndReturn(long holdNanos) throws SQLException {
+			Connection c = getConnection();
+			if (holdNanos > 0) {
+				LockSupport.parkNanos(holdNanos);
+			}
+			safeClose(c);
+		}
+	}
+
+	private static double measure(Borrower b, int threads, long holdNanos, long millis) throws InterruptedException {
+		LongAdder operations = new LongAdder();
+		AtomicBoolean running = new AtomicBoolean(true);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Thread> workers = new ArrayList<>();
+		for (int i = 0; i < threads; i++) {
+			Thread t = new Thread(() -> {
+				try {
+					start.await();
+					while (running.get()) {
+						b.borrowAndReturn(holdNanos);
+						operations.increment();
+					}
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			});
+			t.start();
+			workers.add(t);
+		}
+		long begin = System.nanoTime();
+		start.countDown();
+		Thread.sleep(millis);
+		running.set(false);
+		for (Thread t : workers) {
+			t.join();
+		}
+		double seconds = (System.nanoTime() - begin) / 1e9;
+		return operations.sum() / seconds;
+	}
+
+	public static void main(String[] args) throws Exception {
+		Borrower old = new SynchronizedBorrower();
+		Borrower current = new CommonBorrower();
+		System.out.println("hold (us)\tthreads\tsynchronized (ops/s)\tCommon (ops/s)");
+		for (long hold : HOLD_NANOS) {
+			for (int threads : THREAD_COUNTS) {
+				measure(old, threads, hold, WARMUP_MILLIS);
+				double oldRate = measure(old, threads, hold, MEASUREMENT_MILLIS);
+				measure(current, threads, hold, WARMUP_MILLIS);
+				double newRate = measure(current, threads, hold, MEASUREMENT_MILLIS);
+				System.out.printf("%d\t%d\t%.0f\t%.0f%n", TimeUnit.NANOSECONDS.toMicros(hold), threads, oldRate, newRate);
+			}
+		}
+		System.out.println(Common.getPoolMetrics());
+		Common.release();
+	}
+}
@@ -0,0 +1,123 @@
+package org.starexec.test.benchmark;
+
+import org.starexec.jobs.LoadBalanceMonitor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Micro-benchmark comparing LoadBalanceMonitor to the HashMap with a linear minimum scan it used to be, for the
+ * operations submitJobs performs per candidate pair (skipUser followed by changeLoad). Follows the usual JMH
+ * structure of warmup and measurement iterations, but is a plain main method since JMH is not on the classpath.
+ * Run it with the same classpath as the unit tests.
+ */
+public class LoadBalanceMonitorBenchmark {
+	private static final int[] USER_COUNTS = {10, 100, 1000};
+	private static final int OPERATIONS = 200000;
+	private static final int WARMUP_ITERATIONS = 5;
+	private static final int MEASUREMENT_ITERATIONS = 10;
+	private static final long THRESHOLD = 3000;
+
+	// the results of every run, printed at the end so the JIT can not drop the work as unused
+	private static long skippedTotal = 0;
+
+	// the previous structure: loads in a HashMap, minimum found by scanning every user
+	private static class LinearScanMonitor {
+		private final Map<Integer, Long> loads = new HashMap<>();
+
+		void setUsers(Map<Integer, Long> users) {
+			loads.putAll(users);
+		}
+
+		Long getMin() {
+			Long min = null;
+			for (Long l : loads.values()) {
+				if (min == null || l < min) {
+					min = l;
+				}
+			}
+			return min;
+		}
+
+		boolean skipUser(int userId) {
+			return loads.get(userId) - getMin() > THRESHOLD;
+		}
+
+		void changeLoad(int userId, long load) {
+			loads.put(userId, Math.max(0, loads.get(userId) + load));
+		}
+	}
+
+	private interface Workload {
+		long run(int[] users, int[] deltas);
+	}
+
+	private static double measure(Workload w, int[] users, int[] deltas) {
+		for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+			skippedTotal += w.run(users, deltas);
+		}
+		List<Long> times = new ArrayList<>();
+		for (int i = 0; i < MEASUREMENT_ITERATIONS; i++) {
+			long start = System.nanoTime();
+			skippedTotal += w.run(users, deltas);
+			times.add(System.nanoTime() - start);
+		}
+		long total = 0;
+		for (Long t : times) {
+			total += t;
+		}
+		return (double) total / MEASUREMENT_ITERATIONS / users.length;
+	}
+
+	private static Map<Integer, Long> initialUsers(int userCount) {
+		Map<Integer, Long> users = new HashMap<>();
+		for (int u = 0; u < userCount; u++) {
+			users.put(u, 0L);
+		}
+		return users;
+	}
+
+	public static void main(String[] args) {
+		Random rand = new Random(1);
+		System.out.println("users\tlinear scan (ns/op)\theap (ns/op)");
+		for (int userCount : USER_COUNTS) {
+			int[] users = new int[OPERATIONS];
+			int[] deltas = new int[OPERATIONS];
+			for (int i = 0; i < OPERATIONS; i++) {
+				users[i] = rand.nextInt(userCount);
+				deltas[i] = rand.nextInt(600);
+			}
+			double linear = measure((us, ds) -> {
+				LinearScanMonitor m = new LinearScanMonitor();
+				m.setUsers(initialUsers(userCount));
+				long skipped = 0;
+				for (int i = 0; i < us.length; i++) {
+					if (m.skipUser(us[i])) {
+						skipped++;
+					} else {
+						m.changeLoad(us[i], ds[i]);
+					}
+				}
+				return skipped;
+			}, users, deltas);
+			double heap = measure((us, ds) -> {
+				LoadBalanceMonitor m = new LoadBalanceMonitor();
+				m.setUsers(initialUsers(userCount));
+				long skipped = 0;
+				for (int i = 0; i < us.length; i++) {
+					if (m.skipUser(us[i])) {
+						skipped++;
+					} else {
+						m.changeLoad(us[i], ds[i]);
+					}
+				}
+				return skipped;
+			}, users, deltas);
+			System.out.printf("%d\t%.1f\t%.1f%n", userCount, linear, heap);
+		}
+		System.out.println("users skipped in all runs: " + skippedTotal);
+	}
+}
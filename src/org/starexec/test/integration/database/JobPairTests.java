@@ -177,6 +177,31 @@ public class JobPairTests extends TestSequence {
 		JobPairs.setStatusForPairAndStages(jp.getId(), StatusCode.STATUS_COMPLETE.getVal());
 	}
 
+	@StarexecTest
+	private void claimPairsToBeProcessedTest() {
+		JobPair jp = job.getJobPairs().get(0);
+		JobPairs.setStatusForPairAndStages(jp.getId(), StatusCode.STATUS_PROCESSING.getVal());
+		List<PairStageProcessorTriple> claimed = JobPairs.claimPairsToBeProcessed(job.getId(), "first", 1000);
+		List<PairStageProcessorTriple> claimedAgain = JobPairs.claimPairsToBeProcessed(job.getId(), "second", 1000);
+		PairStageProcessorTriple stage = null;
+		for (PairStageProcessorTriple triple : claimed) {
+			if (triple.getPairId() == jp.getId()) {
+				stage = triple;
+			}
+		}
+		Assert.assertNotNull(stage);
+		for (PairStageProcessorTriple triple : claimedAgain) {
+			Assert.assertNotEquals(jp.getId(), triple.getPairId());
+		}
+
+		Properties props = new Properties();
+		props.put("claimtest", "done");
+		Assert.assertEquals(1, JobPairs.savePostProcessingResults(job.getId(), Collections.singletonList(stage),
+		                                                          Collections.singletonList(props)));
+		Assert.assertEquals(StatusCode.STATUS_COMPLETE, JobPairs.getPair(jp.getId()).getStatus().getCode());
+		JobPairs.setStatusForPairAndStages(jp.getId(), StatusCode.STATUS_COMPLETE.getVal());
+	}
+
 	@StarexecTest
 	private void setBrokenPairsToErrorStatusNoChange() throws IOException {
 		JobPair jp=JobPairs.getPair(job.getJobPairs().get(0).getId());
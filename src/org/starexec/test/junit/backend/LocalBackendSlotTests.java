@@ -0,0 +1,55 @@
+package org.starexec.test.junit.backend;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.starexec.backend.LocalBackend;
+import org.starexec.constants.R;
+
+import java.util.Arrays;
+
+public class LocalBackendSlotTests {
+
+	@Test
+	public void testSlotsLimitedByCores() {
+		Assert.assertEquals(64, LocalBackend.getSlotCount(0, 1, 64, 0, 0));
+		Assert.assertEquals(16, LocalBackend.getSlotCount(0, 4, 64, 0, 0));
+		Assert.assertEquals(2, LocalBackend.getSlotCount(2, 4, 64, 0, 0));
+	}
+
+	@Test
+	public void testSlotsLimitedByMemory() {
+		Assert.assertEquals(8, LocalBackend.getSlotCount(0, 1, 64, 16384, 131072));
+		Assert.assertEquals(64, LocalBackend.getSlotCount(64, 1, 64, 0, 131072));
+	}
+
+	@Test
+	public void testAlwaysOneSlot() {
+		Assert.assertEquals(1, LocalBackend.getSlotCount(2, 8, 4, 0, 0));
+		Assert.assertEquals(1, LocalBackend.getSlotCount(2, 1, 4, 16384, 8192));
+	}
+
+	@Test
+	public void testSlotCores() {
+		Assert.assertEquals("0-3", LocalBackend.getSlotCores(0, 4, 8));
+		Assert.assertEquals("4-7", LocalBackend.getSlotCores(1, 4, 8));
+		Assert.assertEquals("63", LocalBackend.getSlotCores(63, 1, 64));
+		// slots share cores rather than run on cores the machine does not have
+		Assert.assertEquals("0-3", LocalBackend.getSlotCores(2, 4, 10));
+		Assert.assertEquals("0-3", LocalBackend.getSlotCores(0, 8, 4));
+	}
+
+	@Test
+	public void testOnlyJobScriptsNeedSandboxes() {
+		Assert.assertTrue(LocalBackend.isJobScript("/inbox/job_42.bash"));
+		Assert.assertFalse(LocalBackend.isJobScript("/inbox/postprocess_cluster-1234.bash"));
+		Assert.assertFalse(LocalBackend.isJobScript("/inbox/cacheclearn001.bash"));
+		Assert.assertFalse(LocalBackend.isJobScript("/inbox/job_.bash"));
+	}
+
+	@Test
+	public void testSandboxPerSlot() {
+		Assert.assertEquals(Arrays.asList("sb1", "sb2", "sb3"), LocalBackend.getSandboxUsers("sb1, sb2,sb3,sb1", 8));
+		Assert.assertEquals(Arrays.asList("sb1", "sb2"), LocalBackend.getSandboxUsers("sb1,sb2,sb3", 2));
+		Assert.assertEquals(Arrays.asList(R.SANDBOX_USER_ONE, R.SANDBOX_USER_TWO), LocalBackend.getSandboxUsers("", 4));
+	}
+}
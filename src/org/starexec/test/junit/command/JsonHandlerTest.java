@@ -1,15 +1,22 @@
 package org.starexec.test.junit.command;
 
 import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
+import org.apache.http.message.BasicHeader;
 import org.junit.Test;
 import org.mockito.Mockito;
 import org.starexec.command.JsonHandler;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 
 public class JsonHandlerTest {
 
@@ -22,4 +29,48 @@ public class JsonHandlerTest {
 		JsonElement e = JsonHandler.getJsonString(response);
 		assertEquals("\"hello!\"", e.toString());
 	}
+
+	private static HttpResponse mockResponse(byte[] content, String encoding) throws Exception {
+		HttpResponse response = Mockito.mock(HttpResponse.class);
+		HttpEntity mockEntity = Mockito.mock(HttpEntity.class);
+		Mockito.when(response.getEntity()).thenReturn(mockEntity);
+		Mockito.when(mockEntity.getContent()).thenReturn(new ByteArrayInputStream(content));
+		if (encoding != null) {
+			Mockito.when(mockEntity.getContentEncoding()).thenReturn(new BasicHeader("Content-Encoding", encoding));
+		}
+		return response;
+	}
+
+	@Test
+	public void testReadPrimListing() throws Exception {
+		String page = "{\"prims\":[{\"id\":3,\"name\":\"a\"},{\"id\":5,\"name\":\"b\"}],\"next\":5}";
+		Map<Integer, String> prims = new HashMap<>();
+		JsonObject rest = JsonHandler.readPrimListing(mockResponse(page.getBytes("UTF-8"), null), prims, 10);
+		assertEquals(2, prims.size());
+		assertEquals("b", prims.get(5));
+		assertEquals(5, rest.get("next").getAsInt());
+		assertFalse(rest.has("prims"));
+	}
+
+	@Test
+	public void testReadGzippedPrimListingStopsAtMaximum() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+			gzip.write("{\"prims\":[{\"id\":3,\"name\":\"a\"},{\"id\":5,\"name\":\"b\"}]}".getBytes("UTF-8"));
+		}
+		Map<Integer, String> prims = new HashMap<>();
+		JsonObject rest = JsonHandler.readPrimListing(mockResponse(bytes.toByteArray(), "gzip"), prims, 1);
+		assertEquals(1, prims.size());
+		assertEquals("a", prims.get(3));
+		assertFalse(rest.has("next"));
+	}
+
+	@Test
+	public void testReadPrimListingError() throws Exception {
+		String status = "{\"success\":false,\"message\":\"no permission\",\"statusCode\":0}";
+		Map<Integer, String> prims = new HashMap<>();
+		JsonObject rest = JsonHandler.readPrimListing(mockResponse(status.getBytes("UTF-8"), null), prims, 10);
+		assertEquals("no permission", rest.get("message").getAsString());
+		assertEquals(0, prims.size());
+	}
 }
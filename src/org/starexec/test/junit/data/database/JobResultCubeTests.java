@@ -0,0 +1,98 @@
+package org.starexec.test.junit.data.database;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.starexec.data.database.JobResultCube;
+import org.starexec.data.to.JobPair;
+import org.starexec.data.to.Status.StatusCode;
+import org.starexec.data.to.pipelines.JoblineStage;
+import org.starexec.util.DataTablesQuery;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+public class JobResultCubeTests {
+	private static final int COMPLETE = StatusCode.STATUS_COMPLETE.getVal();
+	private static final int FAILED = StatusCode.ERROR_SUBMIT_FAIL.getVal();
+
+	// pairs complete in the reverse order of their IDs
+	private static void stage(
+			JobResultCube.Builder b, int pairId, int benchId, int spaceId, int stageNumber, int configId, int status
+	) {
+		b.addStage(pairId, status, 100 - pairId, benchId, "bench" + benchId, spaceId, 1, stageNumber, configId, "solver" + configId,
+		           configId, "config" + configId, status, 1.5, 2.5, 100, "sat", "sat");
+	}
+
+	@Test
+	public void testSynchronizedPairs() {
+		JobResultCube.Builder b = new JobResultCube.Builder();
+		// bench 1 was completed by both configs, bench 2 only by config 10, and bench 3 failed on config 20
+		stage(b, 1, 1, 5, 1, 10, COMPLETE);
+		stage(b, 2, 1, 5, 1, 20, COMPLETE);
+		stage(b, 3, 2, 5, 1, 10, COMPLETE);
+		stage(b, 4, 3, 5, 1, 10, COMPLETE);
+		stage(b, 5, 3, 5, 1, 20, FAILED);
+		// pairs in other spaces do not count
+		stage(b, 6, 2, 6, 1, 20, COMPLETE);
+
+		List<JobPair> synced = b.build().getSynchronizedPairs(5, 1);
+		Assert.assertEquals(2, synced.size());
+		Assert.assertEquals(new HashSet<>(Arrays.asList(1, 2)),
+		                    new HashSet<>(Arrays.asList(synced.get(0).getId(), synced.get(1).getId())));
+		JoblineStage stage = synced.get(0).getStageFromNumber(0);
+		Assert.assertEquals("sat", stage.getStarexecResult());
+		Assert.assertEquals(1, stage.getSolver().getConfigurations().size());
+	}
+
+	@Test
+	public void testSynchronizedPairsPage() {
+		JobResultCube.Builder b = new JobResultCube.Builder();
+		for (int bench = 1; bench <= 3; bench++) {
+			stage(b, bench * 10 + 1, bench, 5, 1, 10, COMPLETE);
+			stage(b, bench * 10 + 2, bench, 5, 1, 20, COMPLETE);
+		}
+		JobResultCube cube = b.build();
+		int[] totals = new int[2];
+
+		// pair IDs, descending, second page of two
+		List<JobPair> page = cube.getSynchronizedPairsPage(5, 1, new DataTablesQuery(2, 2, 6, false, ""), true, totals);
+		Assert.assertEquals(6, totals[0]);
+		Assert.assertEquals(6, totals[1]);
+		Assert.assertEquals(Arrays.asList(22, 21), Arrays.asList(page.get(0).getId(), page.get(1).getId()));
+
+		page = cube.getSynchronizedPairsPage(5, 1, new DataTablesQuery(0, 10, 0, true, "CONFIG2"), true, totals);
+		Assert.assertEquals(6, totals[0]);
+		Assert.assertEquals(3, totals[1]);
+		Assert.assertEquals(3, page.size());
+		Assert.assertEquals("bench1", page.get(0).getBench().getName());
+		Assert.assertEquals(20, page.get(0).getStageFromNumber(1).getConfiguration().getId());
+
+		// completion order, ascending, first page of two
+		page = cube.getSynchronizedPairsPage(5, 1, new DataTablesQuery(0, 2, 7, true, ""), true, totals);
+		Assert.assertEquals(Arrays.asList(32, 31), Arrays.asList(page.get(0).getId(), page.get(1).getId()));
+		Assert.assertEquals(68, page.get(0).getCompletionId());
+	}
+
+	@Test
+	public void testPairsHaveAllTheirStages() {
+		JobResultCube.Builder b = new JobResultCube.Builder();
+		stage(b, 1, 1, 5, 1, 10, COMPLETE);
+		stage(b, 1, 1, 5, 2, 20, COMPLETE);
+		stage(b, 2, 1, 6, 1, 10, COMPLETE);
+		stage(b, 3, 1, 7, 1, 10, COMPLETE);
+		JobResultCube cube = b.build();
+
+		List<JobPair> pairs = cube.getPairs(new HashSet<>(Arrays.asList(5, 6)));
+		Assert.assertEquals(2, pairs.size());
+		Assert.assertEquals(2, pairs.get(0).getStages().size());
+		Assert.assertEquals(20, pairs.get(0).getStageFromNumber(2).getConfiguration().getId());
+		Assert.assertEquals(2.5, pairs.get(0).getStageFromNumber(2).getWallclockTime(), 0.0001);
+
+		Assert.assertEquals(3, cube.getPairsForStage(1).size());
+		Assert.assertEquals(1, cube.getPairsForStage(2).size());
+		Assert.assertEquals(3, cube.getPairsForStage(0).size());
+		Assert.assertTrue(cube.getPairs(Collections.singleton(8)).isEmpty());
+	}
+}
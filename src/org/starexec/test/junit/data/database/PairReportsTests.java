@@ -0,0 +1,127 @@
+package org.starexec.test.junit.data.database;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.starexec.data.database.PairReports;
+import org.starexec.data.database.PairReports.Call;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+public class PairReportsTests {
+
+	private static List<Call> parse(int pairId, String report) throws IOException {
+		return PairReports.parse(pairId, new BufferedReader(new StringReader(report)));
+	}
+
+	@Test
+	public void testParseStatusRecords() throws IOException {
+		List<Call> calls = parse(7, "status\t4\nstage-status\t1\t4\n\nnode\tn001\t2\n");
+		Assert.assertEquals(3, calls.size());
+		Assert.assertEquals("{CALL UpdatePairStatus(?, ?)}", calls.get(0).getSql());
+		Assert.assertEquals(Arrays.asList(7, 4), calls.get(0).getArgs());
+		Assert.assertEquals(Arrays.asList(7, 1, 4), calls.get(1).getArgs());
+		Assert.assertEquals(Arrays.asList(7, "n001", 2), calls.get(2).getArgs());
+	}
+
+	@Test
+	public void testParseAttributeKeepsTabsInValue() throws IOException {
+		List<Call> calls = parse(3, "attr\t2\tstarexec-result\tsat\tand more\n");
+		Assert.assertEquals("{CALL AddJobAttr(?, ?, ?, ?)}", calls.get(0).getSql());
+		Assert.assertEquals(Arrays.asList(3, "starexec-result", "sat\tand more", 2), calls.get(0).getArgs());
+	}
+
+	@Test
+	public void testParseStatsWithMissingValue() throws IOException {
+		List<Call> calls = parse(3, "stats\tn001\t1.5\t1.25\t1\t0.25\t\t100\t1\t2048\n");
+		Assert.assertEquals(Arrays.asList(3, "n001", 1.5, 1.25, 1.0, 0.25, 0.0, 100L, 1, 2048L),
+		                    calls.get(0).getArgs());
+	}
+
+	@Test
+	public void testParseEndTimeRecordsEvents() throws IOException {
+		List<Call> calls = parse(3, "end-time\n");
+		Assert.assertEquals(3, calls.size());
+		Assert.assertEquals("{CALL SetPairEndTime(?)}", calls.get(0).getSql());
+	}
+
+	@Test
+	public void testParseAddBenchmarkIsNotBatchable() throws IOException {
+		Call call = parse(3, "add-benchmark\tout.txt\t/a/out.txt\t5\t100\t9\n").get(0);
+		Assert.assertFalse(call.isBatchable());
+		Assert.assertEquals("{CALL AddAndAssociateBenchmark(?, ?, ?, ?, ?, ?, ?, ?)}", call.getSql());
+	}
+
+	@Test
+	public void testParseSolverCacheRecords() throws IOException {
+		String timestamp = "2020-01-01 10:00:00.0";
+		List<Call> calls = parse(3, "cache-add\tn001\t12\t" + timestamp + "\t4096\ncache-hit\tn001\t12\t" + timestamp +
+		                            "\ncache-evict\tn001\t11\t" + timestamp + "\n");
+		Assert.assertEquals("{CALL UpdateSolverCacheEntry(?, ?, ?, ?)}", calls.get(0).getSql());
+		Assert.assertEquals(Arrays.asList("n001", 12, timestamp, 4096L), calls.get(0).getArgs());
+		// a hit leaves the recorded size alone
+		Assert.assertEquals(Arrays.asList("n001", 12, timestamp, null), calls.get(1).getArgs());
+		Assert.assertEquals("{CALL RemoveSolverCacheEntry(?, ?, ?)}", calls.get(2).getSql());
+	}
+
+	@Test
+	public void testParseBenchmarkCacheRecords() throws IOException {
+		String hash = "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08";
+		List<Call> calls = parse(3, "bench-cache-add\tn001\t7\t" + hash + "\nbench-cache-hit\tn002\t7\t" + hash +
+		                            "\nbench-cache-evict\tn001\t6\t" + hash + "\n");
+		Assert.assertEquals("{CALL UpdateBenchCacheEntry(?, ?, ?)}", calls.get(0).getSql());
+		Assert.assertEquals(Arrays.asList("n001", 7, hash), calls.get(0).getArgs());
+		Assert.assertEquals(Arrays.asList("n002", 7, hash), calls.get(1).getArgs());
+		Assert.assertEquals("{CALL RemoveBenchCacheEntry(?, ?, ?)}", calls.get(2).getSql());
+		Assert.assertEquals(Arrays.asList("n001", 6, hash), calls.get(2).getArgs());
+	}
+
+	@Test
+	public void testParseBenchmarkCacheCounts() throws IOException {
+		Call call = parse(3, "bench-cache\tn001\t2\t1\n").get(0);
+		Assert.assertEquals("{CALL AddBenchmarkCacheCounts(?, ?, ?)}", call.getSql());
+		Assert.assertEquals(Arrays.asList("n001", 2L, 1L), call.getArgs());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParseUnknownRecord() throws IOException {
+		parse(3, "status\t4\nDROP TABLE users\n");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParseBadInteger() throws IOException {
+		parse(3, "status\tcomplete\n");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParseWrongFieldCount() throws IOException {
+		parse(3, "stage-status\t1\n");
+	}
+
+	@Test
+	public void testRoundsKeepReportOrder() throws IOException {
+		List<Call> first = parse(1, "stats\tn\t1\t1\t1\t1\t1\t1\t1\t1\nattr\t1\tk\tv\nstatus\t7\nend-time\n");
+		List<Call> second = parse(2, "status\t4\nstats\tn\t1\t1\t1\t1\t1\t1\t1\t1\nattr\t1\tk\tv\n");
+		List<Map<String, List<Call>>> rounds = PairReports.toRounds(Arrays.asList(first, second));
+
+		Assert.assertEquals(first.size(), rounds.size());
+		for (int i = 0; i < first.size(); i++) {
+			int calls = 0;
+			for (List<Call> group : rounds.get(i).values()) {
+				for (Call c : group) {
+					Assert.assertEquals(group.get(0).getSql(), c.getSql());
+				}
+				calls += group.size();
+			}
+			Assert.assertEquals(i < second.size() ? 2 : 1, calls);
+			Assert.assertTrue(rounds.get(i).get(first.get(i).getSql()).contains(first.get(i)));
+			if (i < second.size()) {
+				Assert.assertTrue(rounds.get(i).get(second.get(i).getSql()).contains(second.get(i)));
+			}
+		}
+	}
+}
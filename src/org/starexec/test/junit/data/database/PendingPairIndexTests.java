@@ -0,0 +1,41 @@
+package org.starexec.test.junit.data.database;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.starexec.data.database.PendingPairIndex;
+import org.starexec.data.to.JobPair;
+import org.starexec.data.to.Solver;
+import org.starexec.data.to.SolverBuildStatus;
+import org.starexec.data.to.SolverBuildStatus.SolverBuildStatusCode;
+import org.starexec.data.to.pipelines.JoblineStage;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class PendingPairIndexTests {
+
+	private static JobPair pair(int id, SolverBuildStatusCode build) {
+		Solver solver = new Solver();
+		SolverBuildStatus status = new SolverBuildStatus();
+		status.setCode(build);
+		solver.setBuildStatus(status);
+		JoblineStage stage = new JoblineStage();
+		stage.setStageNumber(1);
+		stage.setSolver(solver);
+		JobPair jp = new JobPair();
+		jp.setId(id);
+		jp.addStage(stage);
+		return jp;
+	}
+
+	@Test
+	public void testPairsWithUnbuiltSolversWait() {
+		List<JobPair> pairs = Arrays.asList(pair(1, SolverBuildStatusCode.BUILT), pair(2, SolverBuildStatusCode.UNBUILT),
+		                                    pair(3, SolverBuildStatusCode.BUILT_BY_STAREXEC));
+		Assert.assertEquals(Arrays.asList(1, 3), PendingPairIndex.getSubmittableIds(pairs, false));
+		// the build job is what builds the solver
+		Assert.assertEquals(Arrays.asList(1, 2, 3), PendingPairIndex.getSubmittableIds(pairs, true));
+		Assert.assertEquals(Collections.emptyList(), PendingPairIndex.getSubmittableIds(Collections.emptyList(), false));
+	}
+}
@@ -0,0 +1,124 @@
+package org.starexec.test.junit.data.database;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.starexec.data.database.QueryMetrics;
+
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+public class QueryMetricsTests {
+
+	@Before
+	public void reset() {
+		QueryMetrics.reset();
+	}
+
+	// a statement whose queries return the given number of rows and whose updates change 2 rows
+	private static CallableStatement statementReturning(int rowCount) {
+		int[] read = {0};
+		ResultSet results = (ResultSet) Proxy.newProxyInstance(
+				QueryMetricsTests.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+				(proxy, method, args) -> method.getName().equals("next") ? read[0]++ < rowCount : null);
+		return (CallableStatement) Proxy.newProxyInstance(
+				QueryMetricsTests.class.getClassLoader(), new Class<?>[]{CallableStatement.class},
+				(proxy, method, args) -> {
+					switch (method.getName()) {
+					case "executeQuery":
+						return results;
+					case "executeUpdate":
+						return 2;
+					case "execute":
+						throw new SQLException("failed");
+					}
+					return null;
+				});
+	}
+
+	private static CallableStatement intercept(String sql, CallableStatement statement) throws NoSuchMethodException {
+		return (CallableStatement) new QueryMetrics.Interceptor().createStatement(
+				null, Connection.class.getMethod("prepareCall", String.class), new Object[]{sql}, statement, 0);
+	}
+
+	@Test
+	public void testStatementNames() {
+		Assert.assertEquals("GetJobById", QueryMetrics.getStatementName("{CALL GetJobById(?, ?)}"));
+		Assert.assertEquals("GetJobById", QueryMetrics.getStatementName(" { call GetJobById()}"));
+		Assert.assertEquals("SELECT 1 FROM jobs", QueryMetrics.getStatementName("SELECT 1\n\tFROM   jobs"));
+	}
+
+	@Test
+	public void testQueryCountsRowsReturned() throws Exception {
+		CallableStatement procedure = intercept("{CALL GetPairs(?)}", statementReturning(3));
+		ResultSet results = procedure.executeQuery();
+		// the execution is recorded as soon as it returns, and the rows once they are read
+		QueryMetrics.Statistics s = QueryMetrics.getStatistics("{CALL GetPairs(?)}");
+		Assert.assertEquals(1, s.getCount());
+		Assert.assertEquals(0, s.getRows());
+
+		while (results.next()) {
+		}
+		results.close();
+		procedure.close();
+		Assert.assertEquals(1, s.getCount());
+		Assert.assertEquals(3, s.getRows());
+	}
+
+	@Test
+	public void testRowsRecordedWhenStatementClosed() throws Exception {
+		CallableStatement procedure = intercept("{CALL GetPairs(?)}", statementReturning(3));
+		ResultSet results = procedure.executeQuery();
+		results.next();
+		results.next();
+		procedure.close();
+		Assert.assertEquals(2, QueryMetrics.getStatistics("{CALL GetPairs(?)}").getRows());
+	}
+
+	@Test
+	public void testRowsRecordedWhenStatementClosedThroughResults() throws Exception {
+		CallableStatement procedure = intercept("{CALL GetPairs(?)}", statementReturning(3));
+		ResultSet results = procedure.executeQuery();
+		results.next();
+		Assert.assertSame(procedure, results.getStatement());
+		results.getStatement().close();
+		Assert.assertEquals(1, QueryMetrics.getStatistics("{CALL GetPairs(?)}").getRows());
+	}
+
+	@Test
+	public void testUpdateCountsRowsChanged() throws Exception {
+		CallableStatement procedure = intercept("{CALL SetPairs(?)}", statementReturning(0));
+		procedure.executeQuery();
+		procedure.executeUpdate();
+
+		QueryMetrics.Statistics s = QueryMetrics.getStatistics("{CALL SetPairs(?)}");
+		Assert.assertEquals(2, s.getCount());
+		Assert.assertEquals(2, s.getRows());
+		Assert.assertEquals(0, s.getErrors());
+	}
+
+	@Test
+	public void testFailedExecutionIsCounted() throws Exception {
+		CallableStatement procedure = intercept("{CALL Broken()}", statementReturning(0));
+		try {
+			procedure.execute();
+			Assert.fail("the statement's exception should be rethrown");
+		} catch (SQLException e) {
+			Assert.assertEquals("failed", e.getMessage());
+		}
+		QueryMetrics.Statistics s = QueryMetrics.getStatistics("{CALL Broken()}");
+		Assert.assertEquals(1, s.getCount());
+		Assert.assertEquals(1, s.getErrors());
+	}
+
+	@Test
+	public void testAllStatisticsSortedByTotalTime() throws Exception {
+		QueryMetrics.getStatistics("{CALL Fast()}").recordExecution(1_000, 0, false);
+		QueryMetrics.getStatistics("{CALL Slow()}").recordExecution(5_000_000, 0, false);
+		Assert.assertEquals("Slow", QueryMetrics.getAllStatistics().get(0).getName());
+		Assert.assertEquals(2, QueryMetrics.toJson().getAsJsonArray("statements").size());
+	}
+}
@@ -0,0 +1,125 @@
+package org.starexec.test.junit.data.database;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.starexec.constants.R;
+import org.starexec.data.database.SolverStatsAccumulator;
+import org.starexec.data.to.Configuration;
+import org.starexec.data.to.JobPair;
+import org.starexec.data.to.Solver;
+import org.starexec.data.to.SolverStats;
+import org.starexec.data.to.Status.StatusCode;
+import org.starexec.data.to.pipelines.JoblineStage;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class SolverStatsAccumulatorTests {
+	private final Solver solver = new Solver();
+	private final Configuration config = new Configuration();
+
+	public SolverStatsAccumulatorTests() {
+		solver.setId(1);
+		config.setId(2);
+		solver.addConfiguration(config);
+	}
+
+	private JobPair pair(int completionId, StatusCode status, String result, String expected) {
+		JoblineStage stage = new JoblineStage();
+		stage.setStageNumber(1);
+		stage.setSolver(solver);
+		stage.setConfiguration(config);
+		stage.getStatus().setCode(status.getVal());
+		stage.setWallclockTime(2.0);
+		stage.setCpuUsage(3.0);
+		stage.getAttributes().put(R.STAREXEC_RESULT, result);
+		stage.getAttributes().put(R.EXPECTED_RESULT, expected);
+		JobPair jp = new JobPair();
+		jp.setCompletionId(completionId);
+		jp.setPrimaryStageNumber(1);
+		jp.addStage(stage);
+		return jp;
+	}
+
+	private static SolverStats stage(SolverStatsAccumulator accumulator, int stageNumber) {
+		for (SolverStats s : accumulator.getStats()) {
+			if (s.getStageNumber() == stageNumber) {
+				return s;
+			}
+		}
+		return null;
+	}
+
+	@Test
+	public void testAddedPairsMatchOneBatch() {
+		SolverStatsAccumulator all = new SolverStatsAccumulator(false);
+		SolverStatsAccumulator batched = new SolverStatsAccumulator(false);
+		JobPair[] pairs = {pair(1, StatusCode.STATUS_COMPLETE, "sat", "sat"),
+				pair(2, StatusCode.STATUS_COMPLETE, "unsat", "sat"), pair(3, StatusCode.EXCEED_RUNTIME, "", "sat")};
+		for (JobPair jp : pairs) {
+			all.addPair(jp);
+		}
+		batched.addPair(pairs[0]);
+		batched = batched.copy();
+		batched.addPair(pairs[1]);
+		batched.addPair(pairs[2]);
+
+		for (SolverStatsAccumulator accumulator : new SolverStatsAccumulator[]{all, batched}) {
+			SolverStats s = stage(accumulator, 1);
+			Assert.assertEquals(1, s.getCorrectJobPairs());
+			Assert.assertEquals(1, s.getIncorrectJobPairs());
+			Assert.assertEquals(1, s.getResourceOutJobPairs());
+			Assert.assertEquals(2.0, s.getWallTime(), 0.0001);
+			Assert.assertEquals(3, accumulator.getLastCompletionId());
+			Assert.assertNotNull(stage(accumulator, 0));
+		}
+	}
+
+	@Test
+	public void testFinishedPairIsCountedOnce() {
+		SolverStatsAccumulator accumulator = new SolverStatsAccumulator(false);
+		JobPair first = pair(5, StatusCode.STATUS_COMPLETE, "sat", "sat");
+		first.setId(10);
+		JobPair second = pair(4, StatusCode.STATUS_COMPLETE, "sat", "sat");
+		second.setId(11);
+		Assert.assertTrue(accumulator.addFinishedPair(first));
+		// read again along with a pair that was committed after it but has a lower completion ID
+		Assert.assertTrue(accumulator.addFinishedPair(first));
+		Assert.assertTrue(accumulator.addFinishedPair(second));
+		Assert.assertEquals(2, stage(accumulator, 1).getCorrectJobPairs());
+		Assert.assertEquals(2, accumulator.getFinishedPairCount());
+
+		JobPair again = pair(6, StatusCode.STATUS_COMPLETE, "unsat", "sat");
+		again.setId(10);
+		Assert.assertFalse(accumulator.addFinishedPair(again));
+	}
+
+	@Test
+	public void testCopyIsIndependent() {
+		SolverStatsAccumulator original = new SolverStatsAccumulator(false);
+		original.addPair(pair(1, StatusCode.STATUS_COMPLETE, "sat", "sat"));
+		SolverStatsAccumulator copy = original.copy();
+		copy.addStages(solver, config, 1, true, StatusCode.STATUS_PENDING_SUBMIT, 5);
+		copy.addPair(pair(2, StatusCode.STATUS_COMPLETE, "sat", "sat"));
+
+		Assert.assertEquals(1, stage(original, 1).getCorrectJobPairs());
+		Assert.assertEquals(0, stage(original, 1).getIncompleteJobPairs());
+		Assert.assertEquals(1, original.getLastCompletionId());
+		Assert.assertEquals(2, stage(copy, 1).getCorrectJobPairs());
+		Assert.assertEquals(5, stage(copy, 1).getIncompleteJobPairs());
+	}
+
+	@Test
+	public void testPrimaryStatsShowConflictsOfPrimaryStage() {
+		SolverStatsAccumulator accumulator = new SolverStatsAccumulator(false);
+		accumulator.addPair(pair(1, StatusCode.STATUS_COMPLETE, "sat", "sat"));
+		Assert.assertEquals(Collections.singleton(1), accumulator.getConflictStages());
+
+		Map<Integer, Map<Integer, Integer>> conflicts = new HashMap<>();
+		conflicts.put(1, Collections.singletonMap(config.getId(), 4));
+		accumulator.setConflicts(conflicts);
+		Assert.assertEquals(4, stage(accumulator, 1).getConflicts());
+		Assert.assertEquals(4, stage(accumulator, 0).getConflicts());
+	}
+}
@@ -0,0 +1,47 @@
+package org.starexec.test.junit.jobs;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.starexec.jobs.JobManager;
+import org.starexec.jobs.JobScriptTemplate;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class JobScriptTemplateTests {
+	private static final String TEMPLATE = "#!/bin/bash\nQUEUE=$$QUEUE$$\nPAIR=$$PAIRID$$\necho $$ $$QUEUE$$ $$UNKNOWN$$\n";
+
+	@Test
+	public void renderMatchesReplaceEachTest() {
+		Map<String, String> values = new HashMap<>();
+		values.put("$$QUEUE$$", "all.q");
+		values.put("$$PAIRID$$", "42");
+		Assert.assertEquals(JobManager.addParametersToJobscript(TEMPLATE, values),
+		                    JobScriptTemplate.compile(TEMPLATE).render(values));
+	}
+
+	@Test
+	public void bindThenRenderTest() {
+		Map<String, String> queue = new HashMap<>();
+		queue.put("$$QUEUE$$", "all.q");
+		Map<String, String> pair = new HashMap<>();
+		pair.put("$$PAIRID$$", "42");
+		String rendered = JobScriptTemplate.compile(TEMPLATE).bind(queue).render(pair);
+		Assert.assertEquals("#!/bin/bash\nQUEUE=all.q\nPAIR=42\necho $$ all.q $$UNKNOWN$$\n", rendered);
+	}
+
+	@Test
+	public void boundValuesAreNotReplacedAgainTest() {
+		Map<String, String> queue = new HashMap<>();
+		queue.put("$$QUEUE$$", "$$PAIRID$$");
+		Map<String, String> pair = new HashMap<>();
+		pair.put("$$PAIRID$$", "42");
+		String rendered = JobScriptTemplate.compile("$$QUEUE$$ $$PAIRID$$").bind(queue).render(pair);
+		Assert.assertEquals("$$PAIRID$$ 42", rendered);
+	}
+
+	@Test
+	public void templateWithoutPlaceholdersTest() {
+		Assert.assertEquals("echo hi", JobScriptTemplate.compile("echo hi").render(new HashMap<>()));
+	}
+}
@@ -6,9 +6,14 @@ import org.junit.Before;
 import org.junit.Test;
 import org.starexec.jobs.LoadBalanceMonitor;
 import org.starexec.constants.R;
+import org.starexec.data.to.tuples.QueueUserLoad;
 
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.Set;
 
 public class LoadBalanceMonitorTests {
 	private LoadBalanceMonitor monitor = null;
@@ -229,4 +234,80 @@ public class LoadBalanceMonitorTests {
 		Assert.assertEquals(twentyFourHours, userOneLoad);
 		Assert.assertEquals(noLoad, userTwoLoad);
 	}
+
+	@Test
+	public void testMinMatchesScanAfterRandomOperations() {
+		Random rand = new Random(42);
+		Map<Integer, Long> users = new HashMap<>();
+		for (int i = 0; i < 50; i++) {
+			users.put(i, (long) rand.nextInt(100));
+		}
+		monitor.setUsers(users);
+		Set<Integer> active = new HashSet<>(users.keySet());
+		for (int step = 0; step < 2000; step++) {
+			int user = rand.nextInt(60);
+			int op = rand.nextInt(10);
+			if (op == 0) {
+				// deactivate or reactivate a user
+				if (!active.remove(user)) {
+					active.add(user);
+				}
+				Map<Integer, Long> current = new HashMap<>();
+				for (Integer u : active) {
+					current.put(u, 0L);
+				}
+				monitor.setUsers(current);
+			} else {
+				monitor.changeLoad(user, rand.nextInt(200) - 100);
+			}
+			Long expected = null;
+			for (Integer u : active) {
+				long load = monitor.getLoad(u);
+				if (expected == null || load < expected) {
+					expected = load;
+				}
+			}
+			Assert.assertEquals(expected, monitor.getMin());
+		}
+	}
+
+	@Test
+	public void testRestoreSavedUserLoads() {
+		Map<Integer, Long> users = new HashMap<>();
+		users.put(1, 0L);
+		users.put(2, 0L);
+		users.put(3, 0L);
+		monitor.setUsers(users);
+		monitor.changeLoad(1, 5);
+		monitor.changeLoad(2, 9);
+		users.remove(3);
+		monitor.setUsers(users);
+
+		LoadBalanceMonitor restored = new LoadBalanceMonitor();
+		for (QueueUserLoad l : monitor.getUserLoads(4)) {
+			Assert.assertEquals(4, l.queueId);
+			restored.restoreUserLoad(l);
+		}
+		for (int user = 1; user <= 3; user++) {
+			Assert.assertEquals(monitor.getLoad(user), restored.getLoad(user));
+		}
+		Assert.assertEquals(monitor.getMin(), restored.getMin());
+		Assert.assertFalse(restored.skipUser(3));
+	}
+
+	@Test
+	public void testChangedUserLoads() {
+		Map<Integer, Long> users = new HashMap<>();
+		users.put(1, 0L);
+		users.put(2, 0L);
+		monitor.setUsers(users);
+		monitor.getAndClearChangedUserLoads(1);
+		monitor.changeLoad(2, 3);
+
+		List<QueueUserLoad> changed = monitor.getAndClearChangedUserLoads(1);
+		Assert.assertEquals(1, changed.size());
+		Assert.assertEquals(2, changed.get(0).userId);
+		Assert.assertEquals(3, changed.get(0).load);
+		Assert.assertTrue(monitor.getAndClearChangedUserLoads(1).isEmpty());
+	}
 }
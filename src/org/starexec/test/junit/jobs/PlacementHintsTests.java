@@ -0,0 +1,107 @@
+package org.starexec.test.junit.jobs;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.starexec.data.to.Benchmark;
+import org.starexec.data.to.JobPair;
+import org.starexec.data.to.Solver;
+import org.starexec.data.to.pipelines.JoblineStage;
+import org.starexec.jobs.PlacementHints;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class PlacementHintsTests {
+	private static final String TIMESTAMP = "2020-01-01 10:00:00.0";
+	private static final String HASH = "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08";
+
+	private static JobPair pairWithSolvers(int... solverIds) {
+		JobPair pair = new JobPair();
+		for (int i = 0; i < solverIds.length; i++) {
+			Solver solver = new Solver();
+			solver.setId(solverIds[i]);
+			solver.setMostRecentUpdate(TIMESTAMP);
+			JoblineStage stage = new JoblineStage();
+			stage.setStageNumber(i + 1);
+			stage.setSolver(solver);
+			pair.addStage(stage);
+		}
+		return pair;
+	}
+
+	private static JobPair withBench(JobPair pair, String contentHash) {
+		Benchmark bench = new Benchmark();
+		bench.setId(9);
+		bench.setContentHash(contentHash);
+		pair.setBench(bench);
+		return pair;
+	}
+
+	private static Map<Integer, Map<String, List<String>>> caches() {
+		Map<Integer, Map<String, List<String>>> caches = new HashMap<>();
+		caches.put(1, new HashMap<>());
+		caches.get(1).put(TIMESTAMP, Arrays.asList("n003", "n001", "n002"));
+		caches.get(1).put("2019-01-01 10:00:00.0", Collections.singletonList("n004"));
+		caches.put(2, new HashMap<>());
+		caches.get(2).put(TIMESTAMP, Arrays.asList("n002", "n005"));
+		return caches;
+	}
+
+	@Test
+	public void testPrefersNodesHoldingTheSolver() {
+		PlacementHints hints = new PlacementHints(caches(), Collections.emptyMap(), 16);
+		Assert.assertEquals(Arrays.asList("n001", "n002", "n003"), hints.getPreferredNodes(pairWithSolvers(1)));
+	}
+
+	@Test
+	public void testPrefersNodesHoldingMostSolvers() {
+		PlacementHints hints = new PlacementHints(caches(), Collections.emptyMap(), 16);
+		Assert.assertEquals(Collections.singletonList("n002"), hints.getPreferredNodes(pairWithSolvers(1, 2, 1)));
+	}
+
+	@Test
+	public void testIgnoresOtherVersionsAndUncachedSolvers() {
+		PlacementHints hints = new PlacementHints(caches(), Collections.emptyMap(), 16);
+		JobPair pair = pairWithSolvers(1);
+		pair.getPrimarySolver().setMostRecentUpdate("2018-01-01 10:00:00.0");
+		Assert.assertTrue(hints.getPreferredNodes(pair).isEmpty());
+		Assert.assertTrue(hints.getPreferredNodes(pairWithSolvers(3)).isEmpty());
+	}
+
+	@Test
+	public void testPrefersNodesHoldingTheBenchmark() {
+		Map<Integer, Map<String, List<String>>> benchCaches = new HashMap<>();
+		benchCaches.put(9, new HashMap<>());
+		benchCaches.get(9).put(HASH, Collections.singletonList("n003"));
+		benchCaches.get(9).put("0000", Collections.singletonList("n001"));
+		PlacementHints hints = new PlacementHints(caches(), benchCaches, 16);
+		Assert.assertEquals(Collections.singletonList("n003"),
+		                    hints.getPreferredNodes(withBench(pairWithSolvers(1), HASH)));
+		// a benchmark that was changed since it was cached is not held anywhere
+		Assert.assertEquals(Arrays.asList("n001", "n002", "n003"),
+		                    hints.getPreferredNodes(withBench(pairWithSolvers(1), "ffff")));
+		Assert.assertEquals(Collections.singletonList("n003"),
+		                    hints.getPreferredNodes(withBench(pairWithSolvers(), HASH)));
+	}
+
+	@Test
+	public void testLimitsPreferredNodes() {
+		PlacementHints hints = new PlacementHints(caches(), Collections.emptyMap(), 2);
+		JobPair pair = pairWithSolvers(1);
+		pair.setId(3);
+		Assert.assertEquals(Arrays.asList("n001", "n002"), hints.getPreferredNodes(pair));
+	}
+
+	@Test
+	public void testSpreadsPairsOverEquallyWarmNodes() {
+		PlacementHints hints = new PlacementHints(caches(), Collections.emptyMap(), 2);
+		JobPair pair = pairWithSolvers(1);
+		pair.setId(1);
+		Assert.assertEquals(Arrays.asList("n002", "n003"), hints.getPreferredNodes(pair));
+		pair.setId(5);
+		Assert.assertEquals(Arrays.asList("n003", "n001"), hints.getPreferredNodes(pair));
+	}
+}
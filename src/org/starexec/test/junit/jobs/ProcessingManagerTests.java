@@ -0,0 +1,46 @@
+package org.starexec.test.junit.jobs;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.starexec.jobs.ProcessingManager;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Properties;
+
+public class ProcessingManagerTests {
+
+	private static Map<Integer, Map<Integer, Properties>> parse(String report) throws IOException {
+		return ProcessingManager.parseClusterResults(new BufferedReader(new StringReader(report)));
+	}
+
+	private static String encode(String s) {
+		return Base64.getEncoder().encodeToString(s.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testParseClusterResults() throws IOException {
+		Map<Integer, Map<Integer, Properties>> results =
+				parse("done\t7\t1\t" + encode("starexec-result=sat\nsteps = 12\n") + "\n\ndone\t7\t2\t\ndone\t9\t1\t" +
+				      encode("# no attributes\n") + "\n");
+		Assert.assertEquals(2, results.size());
+		Assert.assertEquals("sat", results.get(7).get(1).getProperty("starexec-result"));
+		Assert.assertEquals("12", results.get(7).get(1).getProperty("steps"));
+		Assert.assertTrue(results.get(7).get(2).isEmpty());
+		Assert.assertTrue(results.get(9).get(1).isEmpty());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParseRejectsOtherRecords() throws IOException {
+		parse("status\t7\t1\n");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParseRejectsBadAttributes() throws IOException {
+		parse("done\t7\t1\tnot base 64!\n");
+	}
+}
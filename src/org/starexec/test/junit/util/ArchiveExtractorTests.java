@@ -0,0 +1,173 @@
+package org.starexec.test.junit.util;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.starexec.util.ArchiveExtractor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Set;
+
+public class ArchiveExtractorTests {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final ArchiveExtractor extractor = new ArchiveExtractor(100, 1000, 5000);
+
+	private File tarGz(String name, String... namesAndContents) throws IOException {
+		File archive = new File(folder.getRoot(), name);
+		try (OutputStream file = Files.newOutputStream(archive.toPath());
+		     TarArchiveOutputStream tar = new TarArchiveOutputStream(new GzipCompressorOutputStream(file))) {
+			for (int i = 0; i < namesAndContents.length; i += 2) {
+				byte[] data = namesAndContents[i + 1].getBytes(StandardCharsets.UTF_8);
+				TarArchiveEntry entry = new TarArchiveEntry(namesAndContents[i]);
+				entry.setSize(data.length);
+				entry.setMode(0100755);
+				tar.putArchiveEntry(entry);
+				tar.write(data);
+				tar.closeArchiveEntry();
+			}
+		}
+		return archive;
+	}
+
+	private File zip(String name, String... namesAndContents) throws IOException {
+		File archive = new File(folder.getRoot(), name);
+		try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(archive)) {
+			for (int i = 0; i < namesAndContents.length; i += 2) {
+				zip.putArchiveEntry(new ZipArchiveEntry(namesAndContents[i]));
+				zip.write(namesAndContents[i + 1].getBytes(StandardCharsets.UTF_8));
+				zip.closeArchiveEntry();
+			}
+		}
+		return archive;
+	}
+
+	private static String read(File f) throws IOException {
+		return new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void testExtractTarGz() throws IOException {
+		File destination = new File(folder.getRoot(), "out");
+		extractor.extract(tarGz("bench.tar.gz", "a/one.smt2", "one", "a/b/two.smt2", "two"), destination);
+		Assert.assertEquals("one", read(new File(destination, "a/one.smt2")));
+		Assert.assertEquals("two", read(new File(destination, "a/b/two.smt2")));
+		Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(new File(destination, "a/one.smt2").toPath());
+		Assert.assertTrue(permissions.contains(PosixFilePermission.OWNER_EXECUTE));
+		Assert.assertTrue(permissions.contains(PosixFilePermission.GROUP_WRITE));
+	}
+
+	@Test
+	public void testExtractZip() throws IOException {
+		File destination = new File(folder.getRoot(), "out");
+		extractor.extract(zip("bench.zip", "one.smt2", "one", "dir/two.smt2", "two"), destination);
+		Assert.assertEquals("one", read(new File(destination, "one.smt2")));
+		Assert.assertEquals("two", read(new File(destination, "dir/two.smt2")));
+		Assert.assertTrue(Files.getPosixFilePermissions(new File(destination, "one.smt2").toPath())
+		                       .contains(PosixFilePermission.GROUP_READ));
+	}
+
+	@Test
+	public void testRejectsPathTraversal() throws IOException {
+		File destination = new File(folder.getRoot(), "out");
+		try {
+			extractor.extract(zip("evil.zip", "../escaped.txt", "gotcha"), destination);
+			Assert.fail("an entry outside of the destination should be rejected");
+		} catch (IOException e) {
+			Assert.assertTrue(e.getMessage().contains("outside of the destination"));
+		}
+		Assert.assertFalse(new File(folder.getRoot(), "escaped.txt").exists());
+	}
+
+	@Test
+	public void testRejectsSymbolicLinkChain() throws IOException {
+		File archive = new File(folder.getRoot(), "chain.tar");
+		try (TarArchiveOutputStream tar = new TarArchiveOutputStream(Files.newOutputStream(archive.toPath()))) {
+			TarArchiveEntry here = new TarArchiveEntry("a", TarArchiveEntry.LF_SYMLINK);
+			here.setLinkName(".");
+			tar.putArchiveEntry(here);
+			tar.closeArchiveEntry();
+			// only .. once a is followed, which the name alone does not show
+			TarArchiveEntry up = new TarArchiveEntry("a/b", TarArchiveEntry.LF_SYMLINK);
+			up.setLinkName("..");
+			tar.putArchiveEntry(up);
+			tar.closeArchiveEntry();
+			byte[] data = "gotcha".getBytes(StandardCharsets.UTF_8);
+			TarArchiveEntry evil = new TarArchiveEntry("b/evil.txt");
+			evil.setSize(data.length);
+			tar.putArchiveEntry(evil);
+			tar.write(data);
+			tar.closeArchiveEntry();
+		}
+		File destination = new File(folder.getRoot(), "out");
+		try {
+			extractor.extract(archive, destination);
+			Assert.fail("a link that leads out of the destination should be rejected");
+		} catch (IOException e) {
+			// expected
+		}
+		Assert.assertFalse(new File(folder.getRoot(), "evil.txt").exists());
+	}
+
+	@Test
+	public void testExtractsSymbolicLinkInside() throws IOException {
+		File archive = new File(folder.getRoot(), "link.tar");
+		try (TarArchiveOutputStream tar = new TarArchiveOutputStream(Files.newOutputStream(archive.toPath()))) {
+			TarArchiveEntry link = new TarArchiveEntry("dir/link.smt2", TarArchiveEntry.LF_SYMLINK);
+			link.setLinkName("../one.smt2");
+			tar.putArchiveEntry(link);
+			tar.closeArchiveEntry();
+			byte[] data = "one".getBytes(StandardCharsets.UTF_8);
+			TarArchiveEntry file = new TarArchiveEntry("one.smt2");
+			file.setSize(data.length);
+			tar.putArchiveEntry(file);
+			tar.write(data);
+			tar.closeArchiveEntry();
+		}
+		File destination = new File(folder.getRoot(), "out");
+		extractor.extract(archive, destination);
+		Assert.assertTrue(Files.isSymbolicLink(new File(destination, "dir/link.smt2").toPath()));
+		Assert.assertEquals("one", read(new File(destination, "dir/link.smt2")));
+	}
+
+	@Test
+	public void testRejectsLargeEntry() throws IOException {
+		StringBuilder big = new StringBuilder();
+		for (int i = 0; i < 1001; i++) {
+			big.append('x');
+		}
+		try {
+			extractor.extract(tarGz("big.tgz", "big.txt", big.toString()), new File(folder.getRoot(), "out"));
+			Assert.fail("an entry over the size limit should be rejected");
+		} catch (IOException e) {
+			Assert.assertTrue(e.getMessage().contains("larger than"));
+		}
+	}
+
+	@Test
+	public void testRejectsTooManyEntries() throws IOException {
+		String[] entries = new String[2 * 101];
+		for (int i = 0; i < 101; i++) {
+			entries[2 * i] = "f" + i;
+			entries[2 * i + 1] = "";
+		}
+		try {
+			extractor.extract(zip("many.zip", entries), new File(folder.getRoot(), "out"));
+			Assert.fail("an archive with too many entries should be rejected");
+		} catch (IOException e) {
+			Assert.assertTrue(e.getMessage().contains("entries"));
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package org.starexec.test.junit.util;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.utils.IOUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.starexec.util.ArchiveUtil;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+public class ArchiveUtilTests {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File fileModifiedAt(File dir, String name, String contents, long millis) throws Exception {
+		File f = new File(dir, name);
+		Files.write(f.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+		Assert.assertTrue(f.setLastModified(millis));
+		return f;
+	}
+
+	@Test
+	public void testLastModifiedMatchesAddDirToArchive() throws Exception {
+		File dir = folder.newFolder("output");
+		File sub = new File(dir, "sub");
+		Assert.assertTrue(sub.mkdir());
+		fileModifiedAt(dir, "old.txt", "old", 1_000_000L);
+		fileModifiedAt(sub, "new.txt", "new", 5_000_000L);
+
+		Assert.assertEquals(5_000_000L, ArchiveUtil.getLastModified(dir, -1));
+		Assert.assertEquals(9_000_000L, ArchiveUtil.getLastModified(dir, 9_000_000L));
+
+		ZipArchiveOutputStream zos = new ZipArchiveOutputStream(new ByteArrayOutputStream());
+		Assert.assertEquals(ArchiveUtil.getLastModified(dir, 2_000_000L),
+		                    ArchiveUtil.addDirToArchive(zos, dir, "output", 2_000_000L));
+		zos.close();
+	}
+
+	@Test
+	public void testFilesAreStreamedWhole() throws Exception {
+		File dir = folder.newFolder("files");
+		File text = fileModifiedAt(dir, "stdout.txt", "some output\n", 1_000_000L);
+		File gz = fileModifiedAt(dir, "result.gz", "not really gzip", 1_000_000L);
+
+		// the response stream cannot seek, so entries must be written without going back to fill in their sizes
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ZipArchiveOutputStream zos = new ZipArchiveOutputStream(new FilterOutputStream(bytes));
+		ArchiveUtil.addFileToArchive(zos, text, "a/stdout.txt");
+		ArchiveUtil.addFileToArchive(zos, gz, "a/result.gz");
+		zos.finish();
+		zos.close();
+
+		ZipArchiveInputStream in = new ZipArchiveInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		ZipArchiveEntry entry = in.getNextZipEntry();
+		Assert.assertEquals("a/stdout.txt", entry.getName());
+		Assert.assertEquals("some output\n", new String(IOUtils.toByteArray(in), StandardCharsets.UTF_8));
+		entry = in.getNextZipEntry();
+		Assert.assertEquals("a/result.gz", entry.getName());
+		Assert.assertEquals("not really gzip", new String(IOUtils.toByteArray(in), StandardCharsets.UTF_8));
+		Assert.assertNull(in.getNextZipEntry());
+		in.close();
+	}
+}
@@ -2,10 +2,19 @@ package org.starexec.test.junit.util;
 
 
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.starexec.util.Hash;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
 public class HashTests {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
 
 	@Test
 	public void testGetHex() {
@@ -13,4 +22,11 @@ public class HashTests {
 		Assert.assertEquals("0a", Hash.getHex(new byte[]{10}));
 		Assert.assertEquals("7f0010", Hash.getHex(new byte[]{127, 0, 16}));
 	}
+
+	@Test
+	public void testHashFileMatchesSha256sum() throws IOException {
+		File f = folder.newFile();
+		Files.write(f.toPath(), "abc".getBytes(StandardCharsets.UTF_8));
+		Assert.assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", Hash.hashFile(f));
+	}
 }
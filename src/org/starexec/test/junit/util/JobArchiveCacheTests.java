@@ -0,0 +1,83 @@
+package org.starexec.test.junit.util;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.starexec.util.JobArchiveCache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+public class JobArchiveCacheTests {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File cacheDir;
+
+	@Before
+	public void useTemporaryDirectory() throws IOException {
+		cacheDir = folder.newFolder("cache");
+		JobArchiveCache.setDirectory(cacheDir);
+	}
+
+	private static void write(int jobId, int maxCompletionId, String contents) throws IOException {
+		JobArchiveCache.writeArchive(jobId, maxCompletionId, new ByteArrayOutputStream(),
+		                             out -> out.write(contents.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	@Test
+	public void testWrittenArchiveIsCached() throws IOException {
+		Assert.assertNull(JobArchiveCache.getArchive(1, 10));
+		ByteArrayOutputStream response = new ByteArrayOutputStream();
+		JobArchiveCache.writeArchive(1, 10, response, out -> out.write("archive".getBytes(StandardCharsets.UTF_8)));
+		Assert.assertEquals("archive", response.toString("UTF-8"));
+
+		File cached = JobArchiveCache.getArchive(1, 10);
+		Assert.assertNotNull(cached);
+		Assert.assertEquals("archive", new String(Files.readAllBytes(cached.toPath()), StandardCharsets.UTF_8));
+		Assert.assertNull(JobArchiveCache.getArchive(1, 11));
+	}
+
+	@Test
+	public void testNewCompletionReplacesArchive() throws IOException {
+		write(1, 10, "old");
+		write(1, 11, "new");
+		Assert.assertNull(JobArchiveCache.getArchive(1, 10));
+		Assert.assertNotNull(JobArchiveCache.getArchive(1, 11));
+	}
+
+	@Test
+	public void testFailedWriteIsNotCached() {
+		try {
+			JobArchiveCache.writeArchive(1, 10, new ByteArrayOutputStream(), out -> {
+				out.write(1);
+				throw new IOException("client went away");
+			});
+			Assert.fail("the writer's exception should be rethrown");
+		} catch (IOException e) {
+			Assert.assertEquals("client went away", e.getMessage());
+		}
+		Assert.assertNull(JobArchiveCache.getArchive(1, 10));
+		Assert.assertEquals(0, cacheDir.list().length);
+	}
+
+	@Test
+	public void testEvictsLeastRecentlyUsed() throws IOException {
+		write(1, 1, "0123456789");
+		write(2, 1, "0123456789");
+		write(3, 1, "0123456789");
+		Assert.assertTrue(new File(cacheDir, "1_1.zip").setLastModified(3_000_000L));
+		Assert.assertTrue(new File(cacheDir, "2_1.zip").setLastModified(1_000_000L));
+		Assert.assertTrue(new File(cacheDir, "3_1.zip").setLastModified(2_000_000L));
+
+		JobArchiveCache.evict(25);
+		Assert.assertTrue(new File(cacheDir, "1_1.zip").exists());
+		Assert.assertFalse(new File(cacheDir, "2_1.zip").exists());
+		Assert.assertTrue(new File(cacheDir, "3_1.zip").exists());
+	}
+}
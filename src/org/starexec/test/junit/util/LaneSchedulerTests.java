@@ -0,0 +1,72 @@
+package org.starexec.test.junit.util;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.starexec.util.LaneScheduler;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LaneSchedulerTests {
+	private final LaneScheduler scheduler = new LaneScheduler("test");
+
+	@After
+	public void shutdown() {
+		scheduler.shutdownNow();
+	}
+
+	@Test
+	public void testPendingTaskSkipsRuns() throws InterruptedException {
+		scheduler.addLane("lane", 2, 4, Thread.NORM_PRIORITY);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger runs = new AtomicInteger();
+		scheduler.schedule("slow", "lane", () -> {
+			runs.incrementAndGet();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}, 0, 5, TimeUnit.MILLISECONDS);
+
+		LaneScheduler.TaskStats stats = scheduler.getTaskStats().get(0);
+		long deadline = System.currentTimeMillis() + 5000;
+		while (stats.getSkipped() < 3 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+		Assert.assertEquals(1, runs.get());
+		Assert.assertTrue(stats.getSkipped() >= 3);
+		Assert.assertTrue(stats.isRunning());
+		release.countDown();
+	}
+
+	@Test
+	public void testSlowLaneDoesNotHoldUpOtherLanes() throws InterruptedException {
+		scheduler.addLane("critical", 1, 4, Thread.NORM_PRIORITY);
+		scheduler.addLane("background", 1, 4, Thread.MIN_PRIORITY);
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch criticalRuns = new CountDownLatch(3);
+		scheduler.schedule("housekeeping", "background", () -> {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}, 0, 5, TimeUnit.MILLISECONDS);
+		scheduler.schedule("submit", "critical", criticalRuns::countDown, 0, 5, TimeUnit.MILLISECONDS);
+
+		Assert.assertTrue(criticalRuns.await(5, TimeUnit.SECONDS));
+		release.countDown();
+		LaneScheduler.TaskStats submit = scheduler.getTaskStats().get(1);
+		Assert.assertEquals("critical", submit.getLane());
+		Assert.assertTrue(submit.getRunTime().getCount() >= 2);
+		Assert.assertEquals(0, submit.getRejected());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownLane() {
+		scheduler.schedule("task", "missing", () -> {}, 0, 1, TimeUnit.SECONDS);
+	}
+}
@@ -0,0 +1,59 @@
+package org.starexec.test.junit.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.starexec.util.LatencyHistogram;
+
+import java.util.concurrent.TimeUnit;
+
+public class LatencyHistogramTests {
+
+	private static void recordMicros(LatencyHistogram h, long micros) {
+		h.record(TimeUnit.MICROSECONDS.toNanos(micros));
+	}
+
+	@Test
+	public void testEmpty() {
+		LatencyHistogram h = new LatencyHistogram();
+		Assert.assertEquals(0, h.getCount());
+		Assert.assertEquals(0, h.getPercentileMicros(99));
+		Assert.assertEquals(0, h.getMeanMicros(), 0);
+	}
+
+	@Test
+	public void testPercentilesWithinBucketError() {
+		LatencyHistogram h = new LatencyHistogram();
+		for (int i = 1; i <= 1000; i++) {
+			recordMicros(h, i);
+		}
+		Assert.assertEquals(1000, h.getCount());
+		long p50 = h.getPercentileMicros(50);
+		long p99 = h.getPercentileMicros(99);
+		Assert.assertTrue(p50 >= 500 && p50 <= 625);
+		Assert.assertTrue(p99 >= 990 && p99 <= 1000);
+		Assert.assertEquals(1000, h.getPercentileMicros(100));
+		Assert.assertEquals(500.5, h.getMeanMicros(), 0.001);
+		Assert.assertEquals(1000, h.getMaxMicros());
+	}
+
+	@Test
+	public void testSmallDurationsAreExact() {
+		LatencyHistogram h = new LatencyHistogram();
+		recordMicros(h, 0);
+		recordMicros(h, 1);
+		recordMicros(h, 2);
+		recordMicros(h, 3);
+		Assert.assertEquals(1, h.getPercentileMicros(50));
+		Assert.assertEquals(3, h.getPercentileMicros(100));
+	}
+
+	@Test
+	public void testReset() {
+		LatencyHistogram h = new LatencyHistogram();
+		recordMicros(h, 5000);
+		h.reset();
+		Assert.assertEquals(0, h.getCount());
+		Assert.assertEquals(0, h.getMaxMicros());
+		Assert.assertEquals(0, h.getPercentileMicros(50));
+	}
+}
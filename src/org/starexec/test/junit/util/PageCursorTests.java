@@ -0,0 +1,46 @@
+package org.starexec.test.junit.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.starexec.util.DataTablesQuery;
+import org.starexec.util.PageCursor;
+import org.starexec.util.PaginationQueryBuilder;
+
+public class PageCursorTests {
+	private static final String baseSQL = "select * from job_pairs where 1";
+
+	private static DataTablesQuery page(int start) {
+		return new DataTablesQuery(start, 10, 0, true, null);
+	}
+
+	private static String seekSQL(PageCursor cursor, DataTablesQuery query, String scope) {
+		PaginationQueryBuilder b = new PaginationQueryBuilder(baseSQL, "bench_name", "id", query);
+		return cursor.seek(b, query, scope) ? b.getSQL() : null;
+	}
+
+	@Test
+	public void testEncodeAndDecode() {
+		PageCursor cursor = new PageCursor("5:1:true:0:true:", 10, 10, "a.b.c", 3, "zz\tz", 40);
+		String encoded = cursor.encode();
+		Assert.assertTrue(encoded.matches("[A-Za-z0-9_.-]+"));
+		Assert.assertEquals(encoded, PageCursor.decode(encoded).encode());
+	}
+
+	@Test
+	public void testDecodeRejectsGarbage() {
+		Assert.assertNull(PageCursor.decode(null));
+		Assert.assertNull(PageCursor.decode("not a cursor"));
+		Assert.assertNull(PageCursor.decode("a.b.c.d.e.f.g"));
+	}
+
+	@Test
+	public void testSeeksToNeighbouringPages() {
+		PageCursor cursor = PageCursor.decode(new PageCursor("scope", 10, 10, "first", 3, "last", 40).encode());
+		Assert.assertTrue(seekSQL(cursor, page(20), "scope").endsWith("LIMIT 0, 10;"));
+		Assert.assertTrue(seekSQL(cursor, page(0), "scope").contains("ORDER BY bench_name DESC, id DESC"));
+		// pages further away, and pages of other tables, are gotten the usual way
+		Assert.assertNull(seekSQL(cursor, page(30), "scope"));
+		Assert.assertNull(seekSQL(cursor, page(10), "scope"));
+		Assert.assertNull(seekSQL(cursor, page(20), "other scope"));
+	}
+}
@@ -35,4 +35,42 @@ public class PaginationQueryBuilderTests {
 		Assert.assertEquals(expected, b.getSQL());
 		
 	}
+
+	@Test
+	public void testSeekAfter() {
+		PaginationQueryBuilder b = new PaginationQueryBuilder(baseSQL + " where 1", "first_name", "id", query);
+		b.seekAfter("bob", 4);
+		String expected = "select * from users where 1\nAND (first_name < :seekKey OR (first_name = :seekKey AND id < " +
+		                  ":seekId))\nORDER BY first_name DESC, id DESC\nLIMIT 0, 5;";
+		Assert.assertEquals(expected, b.getSQL());
+		Assert.assertFalse(b.isReversed());
+	}
+
+	@Test
+	public void testSeekBefore() {
+		query.setSortASC(true);
+		PaginationQueryBuilder b = new PaginationQueryBuilder(baseSQL + " where 1", "first_name", "id", query);
+		b.seekBefore("bob", 4);
+		String expected = "select * from users where 1\nAND (first_name < :seekKey OR (first_name = :seekKey AND id < " +
+		                  ":seekId))\nORDER BY first_name DESC, id DESC\nLIMIT 0, 5;";
+		Assert.assertEquals(expected, b.getSQL());
+		Assert.assertTrue(b.isReversed());
+	}
+
+	@Test
+	public void testCountFromEnd() {
+		query.setStartingRecord(95);
+		query.setNumRecords(10);
+		PaginationQueryBuilder b = new PaginationQueryBuilder(baseSQL, "first_name", "id", query);
+		b.countFromEnd(100);
+		Assert.assertEquals("select * from users\nORDER BY first_name ASC, id ASC\nLIMIT 0, 5;", b.getSQL());
+		Assert.assertTrue(b.isReversed());
+
+		// pages in the first half are still counted from the start
+		query.setStartingRecord(20);
+		b = new PaginationQueryBuilder(baseSQL, "first_name", "id", query);
+		b.countFromEnd(100);
+		Assert.assertEquals("select * from users\nORDER BY first_name DESC, id DESC\nLIMIT 20, 10;", b.getSQL());
+		Assert.assertFalse(b.isReversed());
+	}
 }
@@ -0,0 +1,55 @@
+package org.starexec.test.junit.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.starexec.util.ProcessorPool;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+
+public class ProcessorPoolTests {
+	private static final String MARKER = "endOfRunMarker";
+
+	// what the driver writes for one run: the output of the processor, a line break and the marker
+	private static String run(String output) {
+		return output + "\n" + MARKER + "\n";
+	}
+
+	private static BufferedReader driver(String text) {
+		return new BufferedReader(new StringReader(text));
+	}
+
+	@Test
+	public void testOutputWithTrailingNewline() throws IOException {
+		String output = "starexec-result=sat" + System.lineSeparator();
+		Assert.assertEquals(output, ProcessorPool.readOutput(driver(run("starexec-result=sat\n")), MARKER));
+	}
+
+	@Test
+	public void testOutputWithoutTrailingNewline() throws IOException {
+		Assert.assertEquals("starexec-result=sat", ProcessorPool.readOutput(driver(run("starexec-result=sat")), MARKER));
+	}
+
+	@Test
+	public void testEmptyOutput() throws IOException {
+		Assert.assertEquals("", ProcessorPool.readOutput(driver(run("")), MARKER));
+	}
+
+	@Test
+	public void testRunsAreReadOneAtATime() throws IOException {
+		BufferedReader out = driver(run("a=1\nb=2") + run("c=3\n"));
+		Assert.assertEquals("a=1" + System.lineSeparator() + "b=2", ProcessorPool.readOutput(out, MARKER));
+		Assert.assertEquals("c=3" + System.lineSeparator(), ProcessorPool.readOutput(out, MARKER));
+	}
+
+	@Test
+	public void testShellDiesMidFile() {
+		try {
+			ProcessorPool.readOutput(driver("a=1\nb="), MARKER);
+			Assert.fail("output that ends before the marker should fail");
+		} catch (IOException e) {
+			Assert.assertTrue(e.getMessage().contains("b="));
+		}
+	}
+}
@@ -0,0 +1,406 @@
+package org.starexec.util;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.starexec.constants.R;
+import org.starexec.logger.StarLogger;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Extracts .zip, .tar and .tar.gz archives without starting tar or unzip. The archive is read on the calling thread
+ * and files are written out by a shared pool of threads. Every entry is checked as it is read: an archive with more
+ * entries, or whose files are larger, than the extractor allows, or with an entry that would be written outside of the
+ * destination, fails as soon as the entry is reached. Sizes are counted from the bytes actually written rather than
+ * taken from the entry headers.
+ * <p>
+ * Entries are checked against the real path of the directory they are written to, not just their names, so that a
+ * symbolic link cannot lead an entry out of the destination. Like GNU tar, symbolic links are made only once every
+ * file, directory and hard link has been, and a link may not replace a directory or another link.
+ * <p>
+ * Files get the permissions recorded in the archive plus read, write and execute for the group, which is what
+ * running chmod -R g+rwx over the destination used to do.
+ */
+public class ArchiveExtractor {
+	private static final StarLogger log = StarLogger.getLogger(ArchiveExtractor.class);
+
+	private static final ExecutorService writerPool = Executors.newFixedThreadPool(R.ARCHIVE_EXTRACTION_THREADS);
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	// files up to this size are read into memory by the reading thread and written by the pool. Larger files are
+	// written by the reading thread itself, since tar entries can only be read in order
+	private static final int HANDOFF_BYTES = 1024 * 1024;
+	// how many bytes of read but unwritten files the reading thread may hold at once
+	private static final int MAX_PENDING_BYTES = 64 * 1024 * 1024;
+
+	private static final int DEFAULT_FILE_MODE = 0644;
+	private static final int DEFAULT_DIRECTORY_MODE = 0755;
+	private static final int GROUP_RWX = 0070;
+	private static final int OWNER_RWX = 0700;
+
+	private final int maxEntries;
+	private final long maxEntryBytes;
+	private final long maxTotalBytes;
+
+	/**
+	 * @param maxEntries The most entries an archive may have
+	 * @param maxEntryBytes The largest a single extracted file may be
+	 * @param maxTotalBytes The most bytes all the extracted files together may take up
+	 */
+	public ArchiveExtractor(int maxEntries, long maxEntryBytes, long maxTotalBytes) {
+		this.maxEntries = maxEntries;
+		this.maxEntryBytes = maxEntryBytes;
+		this.maxTotalBytes = maxTotalBytes;
+	}
+
+	/**
+	 * Stops the threads that write files. Called when StarExec shuts down.
+	 *
+	 * @throws InterruptedException if interrupted while waiting for the pool to finish
+	 */
+	public static void shutdown() throws InterruptedException {
+		writerPool.shutdownNow();
+		writerPool.awaitTermination(2, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Extracts an archive. Files that were extracted before a failure are left where they are.
+	 *
+	 * @param archive A file ending in .zip, .tar, .tar.gz or .tgz
+	 * @param destination The directory to extract into. It is created if it does not exist.
+	 * @throws IOException If the archive cannot be read or breaks one of the limits, or a file cannot be written
+	 */
+	public void extract(File archive, File destination) throws IOException {
+		String name = archive.getName();
+		Files.createDirectories(destination.toPath());
+		Extraction extraction = new Extraction(destination.toPath().toRealPath());
+		try {
+			if (name.endsWith(".zip")) {
+				extraction.extractZip(archive);
+			} else if (name.endsWith(".tar")) {
+				try (InputStream in = new BufferedInputStream(Files.newInputStream(archive.toPath()), BUFFER_SIZE)) {
+					extraction.extractTar(in);
+				}
+			} else if (name.endsWith(".tar.gz") || name.endsWith(".tgz")) {
+				// archives made by pigz are several gzip members one after another
+				try (InputStream in = new GzipCompressorInputStream(
+						new BufferedInputStream(Files.newInputStream(archive.toPath()), BUFFER_SIZE), true)) {
+					extraction.extractTar(in);
+				}
+			} else {
+				throw new IOException("Unsupported archive type: " + name);
+			}
+			extraction.finish();
+		} finally {
+			extraction.cancel();
+		}
+	}
+
+	/**
+	 * The state of extracting one archive
+	 */
+	private class Extraction {
+		private final Path destination;
+		private final AtomicLong totalBytes = new AtomicLong();
+		private final Semaphore pendingBytes = new Semaphore(MAX_PENDING_BYTES);
+		private final List<Future<?>> writes = new ArrayList<>();
+		// modes are set on directories last, so that a directory that is not writable can still be filled
+		private final Map<Path, Integer> directoryModes = new LinkedHashMap<>();
+		private final Map<Path, Path> hardLinks = new LinkedHashMap<>();
+		private final Map<Path, String> symbolicLinks = new LinkedHashMap<>();
+		private int entries = 0;
+
+		Extraction(Path destination) {
+			this.destination = destination;
+		}
+
+		private void extractZip(File archive) throws IOException {
+			try (ZipFile zip = new ZipFile(archive)) {
+				try {
+					extractZipEntries(zip);
+					// the zip must stay open until every entry has been read
+					finish();
+				} finally {
+					cancel();
+				}
+			}
+		}
+
+		private void extractZipEntries(ZipFile zip) throws IOException {
+			Enumeration<ZipArchiveEntry> all = zip.getEntriesInPhysicalOrder();
+			while (all.hasMoreElements()) {
+				ZipArchiveEntry entry = all.nextElement();
+				Path target = resolve(entry.getName());
+				int mode = entry.getPlatform() == ZipArchiveEntry.PLATFORM_UNIX ? entry.getUnixMode() & 07777 : 0;
+				if (entry.isDirectory()) {
+					directory(target, mode);
+				} else if (entry.isUnixSymlink()) {
+					symbolicLink(target, zip.getUnixSymlink(entry));
+				} else {
+					Path file = realTarget(target);
+					// the zip can be read at any entry, so the pool can read and inflate entries as well
+					writes.add(writerPool.submit(() -> {
+						try (InputStream in = zip.getInputStream(entry)) {
+							write(in, file, mode);
+						}
+						return null;
+					}));
+				}
+			}
+		}
+
+		private void extractTar(InputStream in) throws IOException {
+			TarArchiveInputStream tar = new TarArchiveInputStream(in);
+			TarArchiveEntry entry;
+			while ((entry = tar.getNextTarEntry()) != null) {
+				Path target = resolve(entry.getName());
+				int mode = entry.getMode() & 07777;
+				if (entry.isDirectory()) {
+					directory(target, mode);
+				} else if (entry.isSymbolicLink()) {
+					symbolicLink(target, entry.getLinkName());
+				} else if (entry.isLink()) {
+					// the file linked to may still be being written, so links are made once every file has been
+					hardLinks.put(target, inside(entry.getLinkName()));
+				} else if (entry.isFile()) {
+					Path file = realTarget(target);
+					if (entry.getSize() > HANDOFF_BYTES) {
+						write(tar, file, mode);
+					} else {
+						handOff(tar, (int) entry.getSize(), file, mode);
+					}
+				} else {
+					log.debug("skipping special file " + entry.getName());
+				}
+			}
+		}
+
+		// reads a small file into memory and has the pool write it
+		private void handOff(InputStream in, int size, Path target, int mode) throws IOException {
+			int permits = Math.max(size, 1);
+			try {
+				pendingBytes.acquire(permits);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while extracting", e);
+			}
+			byte[] data;
+			try {
+				data = new byte[size];
+				int read = 0;
+				while (read < size) {
+					int n = in.read(data, read, size - read);
+					if (n == -1) {
+						throw new IOException("Archive ends in the middle of " + target);
+					}
+					read += n;
+				}
+			} catch (IOException e) {
+				pendingBytes.release(permits);
+				throw e;
+			}
+			writes.add(writerPool.submit(() -> {
+				try {
+					write(new ByteArrayInputStream(data), target, mode);
+				} finally {
+					pendingBytes.release(permits);
+				}
+				return null;
+			}));
+		}
+
+		// counts an entry and finds where it is to be extracted to
+		private Path resolve(String name) throws IOException {
+			if (++entries > maxEntries) {
+				throw new IOException("Archive has more than " + maxEntries + " entries");
+			}
+			return inside(name);
+		}
+
+		private Path inside(String name) throws IOException {
+			// like tar, extract absolute names relative to the destination
+			Path target = destination.resolve(name.replaceFirst("^/+", "")).normalize();
+			if (!target.startsWith(destination)) {
+				throw new IOException("Archive entry " + name + " is outside of the destination");
+			}
+			return target;
+		}
+
+		private void createParent(Path target) throws IOException {
+			Path parent = target.getParent();
+			if (!Files.isDirectory(parent)) {
+				Files.createDirectories(parent);
+			}
+		}
+
+		// creates the parent of an entry and finds where the entry really is once the links on the way are followed
+		private Path realTarget(Path target) throws IOException {
+			createParent(target);
+			Path parent = target.getParent().toRealPath();
+			if (!parent.startsWith(destination)) {
+				throw new IOException("Archive entry " + target + " is outside of the destination");
+			}
+			return parent.resolve(target.getFileName());
+		}
+
+		private void directory(Path target, int mode) throws IOException {
+			Files.createDirectories(target);
+			if (!target.toRealPath().startsWith(destination)) {
+				throw new IOException("Archive entry " + target + " is outside of the destination");
+			}
+			directoryModes.put(target, mode);
+		}
+
+		private void symbolicLink(Path target, String linkName) throws IOException {
+			if (!target.getParent().resolve(linkName).normalize().startsWith(destination)) {
+				throw new IOException("Archive link " + target + " points outside of the destination");
+			}
+			symbolicLinks.put(target, linkName);
+		}
+
+		// makes the symbolic links, each once what it points to exists, since links may point to links that come later
+		private void makeSymbolicLinks() throws IOException {
+			boolean made = true;
+			while (made && !symbolicLinks.isEmpty()) {
+				made = false;
+				Iterator<Map.Entry<Path, String>> pending = symbolicLinks.entrySet().iterator();
+				while (pending.hasNext()) {
+					Map.Entry<Path, String> link = pending.next();
+					Path target = realTarget(link.getKey());
+					Path linked = target.getParent().resolve(link.getValue());
+					if (!Files.exists(linked)) {
+						continue;
+					}
+					if (!linked.toRealPath().startsWith(destination)) {
+						throw new IOException("Archive link " + link.getKey() + " points outside of the destination");
+					}
+					if (Files.isDirectory(target, LinkOption.NOFOLLOW_LINKS) || Files.isSymbolicLink(target)) {
+						throw new IOException("Archive link " + link.getKey() + " would replace a directory or link");
+					}
+					Files.deleteIfExists(target);
+					Files.createSymbolicLink(target, target.getFileSystem().getPath(link.getValue()));
+					pending.remove();
+					made = true;
+				}
+			}
+			for (Path dangling : symbolicLinks.keySet()) {
+				log.debug("skipping link " + dangling + " to a file that is not in the archive");
+			}
+			symbolicLinks.clear();
+		}
+
+		private void write(InputStream in, Path target, int mode) throws IOException {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			long written = 0;
+			// a link already at the target is not followed
+			try (OutputStream out = Files.newOutputStream(target, StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE, LinkOption.NOFOLLOW_LINKS)) {
+				int n;
+				while ((n = in.read(buffer)) != -1) {
+					written += n;
+					if (written > maxEntryBytes) {
+						throw new IOException("Archive entry " + target + " is larger than " + maxEntryBytes + " bytes");
+					}
+					if (totalBytes.addAndGet(n) > maxTotalBytes) {
+						throw new IOException("Archive is larger than " + maxTotalBytes + " bytes when extracted");
+					}
+					out.write(buffer, 0, n);
+				}
+			}
+			Files.setPosixFilePermissions(target, permissions((mode == 0 ? DEFAULT_FILE_MODE : mode) | GROUP_RWX));
+		}
+
+		// waits for every file to be written, then makes hard links, then symbolic links, and sets the modes of
+		// directories
+		private void finish() throws IOException {
+			for (Future<?> write : writes) {
+				try {
+					write.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while extracting", e);
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof IOException) {
+						throw (IOException) e.getCause();
+					}
+					throw new IOException(e.getCause());
+				}
+			}
+			writes.clear();
+			for (Map.Entry<Path, Path> link : hardLinks.entrySet()) {
+				Path target = realTarget(link.getKey());
+				Path linked = link.getValue().toRealPath();
+				if (!linked.startsWith(destination)) {
+					throw new IOException("Archive link " + link.getKey() + " points outside of the destination");
+				}
+				try {
+					Files.createLink(target, linked);
+				} catch (FileAlreadyExistsException e) {
+					Files.delete(target);
+					Files.createLink(target, linked);
+				}
+			}
+			hardLinks.clear();
+			makeSymbolicLinks();
+			for (Map.Entry<Path, Integer> dir : directoryModes.entrySet()) {
+				int mode = dir.getValue() == 0 ? DEFAULT_DIRECTORY_MODE : dir.getValue();
+				Files.setPosixFilePermissions(dir.getKey(), permissions(mode | OWNER_RWX | GROUP_RWX));
+			}
+			directoryModes.clear();
+		}
+
+		// stops writing files once extraction has failed
+		private void cancel() {
+			for (Future<?> write : writes) {
+				write.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * Converts the permission bits of a Unix mode to a set of permissions
+	 *
+	 * @param mode A Unix mode, such as 0755
+	 * @return The permissions
+	 */
+	static Set<PosixFilePermission> permissions(int mode) {
+		Set<PosixFilePermission> permissions = EnumSet.noneOf(PosixFilePermission.class);
+		PosixFilePermission[] bits = PosixFilePermission.values();
+		// PosixFilePermission lists the permissions from OWNER_READ, the highest bit, to OTHERS_EXECUTE, the lowest
+		for (int i = 0; i < bits.length; i++) {
+			if ((mode & (1 << (bits.length - 1 - i))) != 0) {
+				permissions.add(bits[i]);
+			}
+		}
+		return permissions;
+	}
+}
@@ -15,6 +15,8 @@ import java.io.*;
 import java.util.*;
 import java.nio.file.attribute.PosixFilePermission;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.zip.Deflater;
 
 /**
  * Contains helper methods for dealing with .zip files
@@ -22,6 +24,13 @@ import java.nio.file.Files;
 public class ArchiveUtil {
 	private static final StarLogger log = StarLogger.getLogger(ArchiveUtil.class);
 
+	private static final ArchiveExtractor extractor =
+			new ArchiveExtractor(R.ARCHIVE_MAX_ENTRIES, R.ARCHIVE_MAX_ENTRY_BYTES, R.ARCHIVE_MAX_EXTRACTED_BYTES);
+
+	private static final int COPY_BUFFER_SIZE = 64 * 1024;
+	private static final String[] COMPRESSED_EXTENSIONS =
+			{".zip", ".gz", ".tgz", ".bz2", ".tbz2", ".xz", ".txz", ".7z", ".jar", ".png", ".jpg", ".jpeg"};
+
 	/**
 	 * Gets the uncompressed size of an archive
 	 *
@@ -203,59 +212,16 @@ public class ArchiveUtil {
 	 */
 	public static Boolean extractArchive(String fileName, String destination) {
 		log.debug("ExtractingArchive for " + fileName);
+		if (!(fileName.endsWith(".zip") || fileName.endsWith(".tar") || fileName.endsWith(".tar.gz") ||
+		      fileName.endsWith(".tgz"))) {
+			// No valid file type found :(
+			log.warn(String.format("Unsupported file extension for [%s] attempted to uncompress", fileName));
+			return false;
+		}
 		try {
-			// Check for the appropriate file extension and hand off to the appropriate method
-			if (fileName.endsWith(".zip")) {
-				ArchiveUtil.extractArchiveOfType(fileName, destination, ArchiveType.ZIP);
-			} else if (fileName.endsWith(".tar")) {
-				ArchiveUtil.extractArchiveOfType(fileName, destination, ArchiveType.TAR);
-			} else if (fileName.endsWith(".tar.gz") || fileName.endsWith(".tgz")) {
-				// First rename it if it's a .tgz
-
-				String[] lsCmd = new String[3];
-				lsCmd[0] = "ls";
-				lsCmd[1] = "-l";
-
-				log.debug("destination is " + destination);
-
-				lsCmd[2] = fileName;
-				String results = Util.executeCommand(lsCmd);
-				log.debug("ls -l of tgz results = " + results);
-
-				lsCmd[2] = destination;
-				results = Util.executeCommand(lsCmd);
-				log.debug("ls -l destination results = " + results);
-
-				/* it appears that the permissions are not set correctly by tar for tomcat.
-				   We need group read permissions for files, because elsewhere,
-				   we try to copy these files as the sandbox user, and hence need
-				   to be able to read them.  So we do an explicit chmod*/
-				String[] tarCmd = new String[5];
-				tarCmd[0] = "tar";
-				tarCmd[1] = "-xf";
-				tarCmd[2] = fileName;
-				tarCmd[3] = "-C";
-				tarCmd[4] = destination;
-				log.debug("about to execute command tar command");
-				results = Util.executeCommand(tarCmd);
-				log.debug("command was executed, results = " + results);
-				log.debug("now removing the archived file " + fileName);
-				ArchiveUtil.removeArchive(fileName);
-
-				// now chmod the directory so sandbox can access it
-
-				Util.chmodDirectory(destination, true);
-
-				lsCmd[2] = destination;
-				results = Util.executeCommand(lsCmd);
-				log.debug("command was executed - ls -l destination results = " + results);
-
-			} else {
-				// No valid file type found :(
-				log.warn(String.format("Unsupported file extension for [%s] attempted to uncompress", fileName));
-				return false;
-			}
-
+			extractor.extract(new File(fileName), new File(destination));
+			log.debug("now removing the archived file " + fileName);
+			ArchiveUtil.removeArchive(fileName);
 			log.debug(String.format("Successfully extracted [%s] to [%s]", fileName, destination));
 			return true;
 		} catch (Exception e) {
@@ -282,56 +248,6 @@ public class ArchiveUtil {
 		}
 	}
 
-	/**
-	 * Unpacks a tar file and removes the original if the unpack was successful.
-	 *
-	 * @param fileName The full path to the file
-	 * @param destination Where to unpack the contents to
-	 * @author Tyler Jensen
-	 */
-	private static void extractArchiveOfType(String fileName, String destination, ArchiveType archiveType) throws
-			Exception {
-		final String methodName = "extractArchiveOfType";
-		// Use the Apache commons compression library to open up the tar file...
-		log.debug("extracting " + archiveType);
-		InputStream is = new FileInputStream(fileName);
-		BufferedInputStream bis = new BufferedInputStream(is);
-		ArchiveInputStream ais = new ArchiveStreamFactory().createArchiveInputStream(archiveType.type, bis);
-		ArchiveEntry entry = null;
-
-		// For each 'file' in the tar file...
-		while ((entry = ais.getNextEntry()) != null) {
-			if (!entry.isDirectory()) {
-				// If it's not a directory...
-				File fileToCreate = new File(destination, entry.getName());
-				File dir = new File(fileToCreate.getParent());
-				boolean success = true;
-				if (!dir.exists()) {
-					// And create it if it doesn't exist so we can write a file inside it
-					success = dir.mkdirs();
-					if (!success) {
-						log.warn("Could not create directory: " + dir.getAbsolutePath() + "\n" +
-						         Util.getCurrentStackTrace());
-						log.warn(methodName, "Did file already exist: " + dir.exists());
-						log.warn(methodName, "User was: " + System.getProperty("user.name"));
-						log.warn(methodName, "canWrite for file: " + dir.canWrite());
-					}
-				}
-				if (success) {
-					// Finally, extract the file
-					OutputStream out = new FileOutputStream(fileToCreate);
-					IOUtils.copy(ais, out);
-					out.close();
-				}
-
-			}
-		}
-		is.close();
-		bis.close();
-		ais.close();
-		ArchiveUtil.removeArchive(fileName);
-	}
-
 	/**
 	 * Checks the global remove archive setting and removes the archive file if the setting is true.
 	 *
@@ -409,16 +325,19 @@ public class ArchiveUtil {
 	 */
 	public static long addFileToArchive(ZipArchiveOutputStream zos, File srcFile, String zipFileName) throws IOException {
 		ZipArchiveEntry entry = new ZipArchiveEntry(srcFile, zipFileName);
-		try {
+		try (FileInputStream input = new FileInputStream(srcFile)) {
 			long timestamp = srcFile.lastModified();
-			zos.putArchiveEntry(entry);
-			FileInputStream input = new FileInputStream(srcFile);
+			// the size is known before the entry is written so that files over 4GB get a Zip64 entry, and only that
+			// much is copied, so output that is still growing cannot outgrow its entry
+			long size = srcFile.length();
 			entry.setUnixMode(getUnixMode(srcFile));
-			entry.setSize(srcFile.length());
+			entry.setSize(size);
 			//entry.setInternalAttributes(Util.isBinaryFile(srcFile)?0:1);
-			IOUtils.copy(input, zos);
+			// compressing an archive again takes time and saves nothing
+			zos.setLevel(isCompressed(zipFileName) ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION);
+			zos.putArchiveEntry(entry);
+			copy(input, zos, size);
 			zos.closeArchiveEntry();
-			input.close();
 			return timestamp;
 		} catch (java.io.FileNotFoundException e) {
 			if (srcFile.getCanonicalPath().equals(srcFile.getAbsolutePath())) {
@@ -430,6 +349,72 @@ public class ArchiveUtil {
 
 	}
 
+	/**
+	 * Copies at most the given number of bytes from one stream to another
+	 *
+	 * @param input The stream to copy from
+	 * @param output The stream to copy to
+	 * @param length The most bytes to copy
+	 * @throws IOException
+	 */
+	private static void copy(InputStream input, OutputStream output, long length) throws IOException {
+		byte[] buffer = new byte[COPY_BUFFER_SIZE];
+		long remaining = length;
+		while (remaining > 0) {
+			int read = input.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+			if (read == -1) {
+				// the file shrank after its size was read
+				break;
+			}
+			output.write(buffer, 0, read);
+			remaining -= read;
+		}
+	}
+
+	/**
+	 * @param fileName The name of a file
+	 * @return True if the file name has the extension of a compressed format
+	 */
+	private static boolean isCompressed(String fileName) {
+		String lower = fileName.toLowerCase();
+		for (String extension : COMPRESSED_EXTENSIONS) {
+			if (lower.endsWith(extension)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the time the given file, or the most recently modified file under the given directory, was last modified,
+	 * without reading any file. Gives the same result as addFileToArchive and addDirToArchive would for the same
+	 * arguments, so it can be used to decide whether to send an archive before writing any of it.
+	 *
+	 * @param srcFile The file or directory
+	 * @param earlyDate Milliseconds since the epoch. Only files modified after this are considered
+	 * @return max of earlyDate and timestamp of most recently modified file
+	 * @throws IOException
+	 */
+	public static long getLastModified(File srcFile, long earlyDate) throws IOException {
+		if (!srcFile.isDirectory()) {
+			try {
+				long timestamp = Files.getLastModifiedTime(srcFile.toPath()).toMillis();
+				return Math.max(timestamp, earlyDate);
+			} catch (NoSuchFileException e) {
+				// a broken symlink, which addFileToArchive skips
+				return earlyDate;
+			}
+		}
+		long maxTime = earlyDate;
+		File[] files = srcFile.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				maxTime = Math.max(maxTime, getLastModified(file, earlyDate));
+			}
+		}
+		return maxTime;
+	}
+
 	/**
 	 * Recursively adds the given directory to the given zipoutputstream, using the given name as the prefix
 	 * for all files that get added. Only add files that were modified after the specified time.
@@ -567,14 +552,4 @@ public class ArchiveUtil {
 		stream.close();
 	}
 
-	private enum ArchiveType {
-		ZIP("zip"), TAR("tar");
-
-		final String type;
-
-		ArchiveType(String type) {
-			this.type = type;
-		}
-	}
-
 }
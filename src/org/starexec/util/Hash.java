@@ -3,6 +3,10 @@ package org.starexec.util;
 import org.starexec.constants.R;
 import org.starexec.logger.StarLogger;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
@@ -34,6 +38,30 @@ public class Hash {
 		}
 	}
 
+	/**
+	 * Hashes the contents of a file with SHA-256, which the compute nodes can check with sha256sum.
+	 *
+	 * @param file The file to hash
+	 * @return The hash as 64 hexadecimal characters
+	 * @throws IOException if the file could not be read
+	 */
+	public static String hashFile(File file) throws IOException {
+		try {
+			MessageDigest hasher = MessageDigest.getInstance("SHA-256");
+			byte[] buffer = new byte[64 * 1024];
+			try (InputStream in = Files.newInputStream(file.toPath())) {
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					hasher.update(buffer, 0, read);
+				}
+			}
+			return Hash.getHex(hasher.digest());
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform has SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
 	/**
 	 * @param raw A raw byte array
 	 * @return A string representing the hexidecimal version of the raw input. Every
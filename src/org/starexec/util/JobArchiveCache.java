@@ -0,0 +1,157 @@
+package org.starexec.util;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.TeeOutputStream;
+import org.starexec.constants.R;
+import org.starexec.logger.StarLogger;
+import org.starexec.util.functionalInterfaces.ThrowingConsumer;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps archives of the output of complete jobs on disk so that downloading the output of the same job again does not
+ * walk and compress the job's output directory again. An archive is identified by its job and the largest completion
+ * ID among the job's pairs: rerunning any pair of the job gives it a new completion ID, so an archive can never be
+ * served after the output it was built from has changed. The cache is held to R.JOB_ARCHIVE_CACHE_BYTES by
+ * evicting the archives that were downloaded least recently.
+ */
+public class JobArchiveCache {
+	private static final StarLogger log = StarLogger.getLogger(JobArchiveCache.class);
+
+	private static final String ARCHIVE_EXTENSION = ".zip";
+	private static final String PARTIAL_EXTENSION = ".part";
+
+	// archives that some thread is building right now
+	private static final Set<String> building = ConcurrentHashMap.newKeySet();
+
+	private static File directory = new File(R.getJobArchiveCacheDir());
+
+	private JobArchiveCache() {
+	}
+
+	/**
+	 * Sets the directory archives are kept in. Only for testing.
+	 *
+	 * @param dir The new directory
+	 */
+	public static void setDirectory(File dir) {
+		directory = dir;
+	}
+
+	private static String archiveName(int jobId, int maxCompletionId) {
+		return jobId + "_" + maxCompletionId + ARCHIVE_EXTENSION;
+	}
+
+	/**
+	 * Gets the archive of a job's output if it is in the cache
+	 *
+	 * @param jobId The ID of a complete job
+	 * @param maxCompletionId The largest completion ID among the job's pairs
+	 * @return The archive, or null if it is not in the cache
+	 */
+	public static File getArchive(int jobId, int maxCompletionId) {
+		File archive = new File(directory, archiveName(jobId, maxCompletionId));
+		if (!archive.exists()) {
+			return null;
+		}
+		// eviction goes by modification time, so this marks the archive as recently used
+		archive.setLastModified(System.currentTimeMillis());
+		return archive;
+	}
+
+	/**
+	 * Writes the archive of a job's output to a stream and keeps a copy in the cache, so the first download of a job
+	 * is not held up waiting for the archive to be built. If another download is already building the same archive,
+	 * the archive is only written to the stream.
+	 *
+	 * @param jobId The ID of a complete job
+	 * @param maxCompletionId The largest completion ID among the job's pairs
+	 * @param out The stream to write the archive to
+	 * @param writer Writes the archive to the given stream
+	 * @throws IOException If the archive could not be written to out
+	 */
+	public static void writeArchive(
+			int jobId, int maxCompletionId, OutputStream out, ThrowingConsumer<OutputStream, IOException> writer
+	) throws IOException {
+		String name = archiveName(jobId, maxCompletionId);
+		if (!building.add(name)) {
+			writer.accept(out);
+			return;
+		}
+		File partial = new File(directory, name + PARTIAL_EXTENSION);
+		boolean cached = false;
+		try {
+			directory.mkdirs();
+			try (OutputStream copy = new BufferedOutputStream(Files.newOutputStream(partial.toPath()))) {
+				writer.accept(new TeeOutputStream(out, copy));
+			}
+			// renaming in one step means a reader only ever sees a whole archive
+			Files.move(partial.toPath(), new File(directory, name).toPath(), StandardCopyOption.ATOMIC_MOVE);
+			cached = true;
+			removeOtherArchives(jobId, name);
+		} finally {
+			building.remove(name);
+			if (!cached) {
+				FileUtils.deleteQuietly(partial);
+			}
+		}
+	}
+
+	// archives of the same job from before some of its pairs were rerun will never be served again
+	private static void removeOtherArchives(int jobId, String current) {
+		File[] archives = directory.listFiles((dir, name) -> name.startsWith(jobId + "_") &&
+		                                                     name.endsWith(ARCHIVE_EXTENSION) && !name.equals(current));
+		if (archives != null) {
+			for (File old : archives) {
+				FileUtils.deleteQuietly(old);
+			}
+		}
+	}
+
+	/**
+	 * Deletes the least recently used archives until the cache fits in its disk budget, and deletes partial archives
+	 * left behind by builds that never finished.
+	 *
+	 * @param budget The most bytes the archives may take up
+	 */
+	public static void evict(long budget) {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return;
+		}
+		long partialCutoff = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1);
+		File[] archives = Arrays.stream(files).filter(f -> {
+			if (f.getName().endsWith(PARTIAL_EXTENSION)) {
+				if (f.lastModified() < partialCutoff) {
+					FileUtils.deleteQuietly(f);
+				}
+				return false;
+			}
+			return f.getName().endsWith(ARCHIVE_EXTENSION);
+		}).sorted(Comparator.comparingLong(File::lastModified).reversed()).toArray(File[]::new);
+
+		long used = 0;
+		int evicted = 0;
+		for (File archive : archives) {
+			if (used + archive.length() > budget) {
+				FileUtils.deleteQuietly(archive);
+				evicted++;
+			} else {
+				used += archive.length();
+			}
+		}
+		if (evicted > 0) {
+			log.info("evicted " + evicted + " job output archives to stay under " + budget + " bytes");
+		}
+	}
+}
@@ -0,0 +1,294 @@
+package org.starexec.util;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.starexec.logger.StarLogger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs periodic tasks in lanes. Every lane has its own bounded pool of threads and bounded queue, so that slow tasks
+ * in one lane never hold up the tasks of another. A single timer thread only decides when tasks are due and hands
+ * them to their lanes.
+ *
+ * A task that is still queued or running when it is due again skips that run instead of piling up behind itself, and
+ * a task that does not fit in the queue of its lane is turned away until it is next due. How long every task runs, and
+ * its lag (how long it waited in its lane between being due and starting), are recorded.
+ */
+public class LaneScheduler {
+	private static final StarLogger log = StarLogger.getLogger(LaneScheduler.class);
+
+	private final String name;
+	private final ScheduledExecutorService timer;
+	private final Map<String, ThreadPoolExecutor> lanes = new ConcurrentHashMap<>();
+	private final List<TaskStats> tasks = new CopyOnWriteArrayList<>();
+
+	/**
+	 * @param name Prefix for the names of the threads of the scheduler
+	 */
+	public LaneScheduler(String name) {
+		this.name = name;
+		this.timer = Executors.newSingleThreadScheduledExecutor(threadFactory(name + "-timer", Thread.MAX_PRIORITY));
+	}
+
+	private static ThreadFactory threadFactory(String prefix, int priority) {
+		AtomicInteger count = new AtomicInteger();
+		return r -> {
+			Thread t = new Thread(r, prefix + "-" + count.incrementAndGet());
+			t.setPriority(priority);
+			return t;
+		};
+	}
+
+	/**
+	 * Adds a lane that tasks can be scheduled in
+	 *
+	 * @param lane The name of the lane
+	 * @param threads The most tasks of the lane that can run at once
+	 * @param queueCapacity The most tasks of the lane that can wait for a thread at once
+	 * @param priority The priority of the threads of the lane, between Thread.MIN_PRIORITY and Thread.MAX_PRIORITY
+	 */
+	public void addLane(String lane, int threads, int queueCapacity, int priority) {
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+		                                                 new ArrayBlockingQueue<>(queueCapacity),
+		                                                 threadFactory(name + "-" + lane, priority)
+		);
+		pool.allowCoreThreadTimeOut(true);
+		if (lanes.putIfAbsent(lane, pool) != null) {
+			throw new IllegalArgumentException("There already is a lane named " + lane);
+		}
+	}
+
+	/**
+	 * Runs a task periodically in a lane
+	 *
+	 * @param taskName The name the task is reported under
+	 * @param lane The lane to run the task in. It must have been added already
+	 * @param task The task
+	 * @param delay The time until the task is first due
+	 * @param period The time between the times the task is due
+	 * @param unit The unit of delay and period
+	 */
+	public void schedule(String taskName, String lane, Runnable task, long delay, long period, TimeUnit unit) {
+		ThreadPoolExecutor pool = lanes.get(lane);
+		if (pool == null) {
+			throw new IllegalArgumentException("There is no lane named " + lane);
+		}
+		TaskStats stats = new TaskStats(taskName, lane);
+		tasks.add(stats);
+		timer.scheduleAtFixedRate(() -> dispatch(pool, stats, task), delay, period, unit);
+	}
+
+	/**
+	 * Hands a task that is due to its lane. Runs on the timer thread, so it must be quick and must never throw, since
+	 * a periodic task that throws is never run again.
+	 */
+	private static void dispatch(ThreadPoolExecutor pool, TaskStats stats, Runnable task) {
+		try {
+			if (!stats.pending.compareAndSet(false, true)) {
+				stats.skipped.increment();
+				log.debug("dispatch", stats.name + " is still pending, so it skips this run");
+				return;
+			}
+			long due = System.nanoTime();
+			try {
+				pool.execute(() -> run(stats, task, due));
+			} catch (RejectedExecutionException e) {
+				stats.pending.set(false);
+				stats.rejected.increment();
+				if (!pool.isShutdown()) {
+					log.warn("dispatch", "The " + stats.lane + " lane is full, so " + stats.name + " skips this run");
+				}
+			}
+		} catch (Throwable e) {
+			log.error("dispatch", "Could not dispatch " + stats.name, e);
+		}
+	}
+
+	private static void run(TaskStats stats, Runnable task, long due) {
+		long start = System.nanoTime();
+		stats.lag.record(start - due);
+		stats.lastStart = System.currentTimeMillis();
+		stats.running = true;
+		try {
+			task.run();
+		} catch (Throwable e) {
+			log.warn("run", stats.name + " caught throwable: " + e, e);
+		} finally {
+			stats.runTime.record(System.nanoTime() - start);
+			stats.running = false;
+			stats.pending.set(false);
+		}
+	}
+
+	/**
+	 * @return The stats of every task, in the order they were scheduled
+	 */
+	public List<TaskStats> getTaskStats() {
+		return new ArrayList<>(tasks);
+	}
+
+	/**
+	 * @return JSON of the threads and queue of every lane, and of the stats of every task
+	 */
+	public JsonObject toJson() {
+		JsonObject json = new JsonObject();
+		JsonArray laneArray = new JsonArray();
+		for (Map.Entry<String, ThreadPoolExecutor> e : lanes.entrySet()) {
+			ThreadPoolExecutor pool = e.getValue();
+			JsonObject lane = new JsonObject();
+			lane.addProperty("name", e.getKey());
+			lane.addProperty("threads", pool.getMaximumPoolSize());
+			lane.addProperty("active", pool.getActiveCount());
+			lane.addProperty("queued", pool.getQueue().size());
+			laneArray.add(lane);
+		}
+		json.add("lanes", laneArray);
+		JsonArray taskArray = new JsonArray();
+		for (TaskStats s : tasks) {
+			taskArray.add(s.toJson());
+		}
+		json.add("tasks", taskArray);
+		return json;
+	}
+
+	/**
+	 * Stops dispatching tasks and lets the tasks that were already dispatched finish
+	 */
+	public void shutdown() {
+		timer.shutdown();
+		for (ThreadPoolExecutor pool : lanes.values()) {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Waits for the tasks that were dispatched before shutdown to finish, waiting on every lane in turn
+	 *
+	 * @param timeout How long to wait on each lane
+	 * @param unit The unit of timeout
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public void awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		timer.awaitTermination(timeout, unit);
+		for (ThreadPoolExecutor pool : lanes.values()) {
+			pool.awaitTermination(timeout, unit);
+		}
+	}
+
+	/**
+	 * Interrupts the tasks that are still running
+	 */
+	public void shutdownNow() {
+		timer.shutdownNow();
+		for (ThreadPoolExecutor pool : lanes.values()) {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * @return True if no task is running or will run
+	 */
+	public boolean isTerminated() {
+		if (!timer.isTerminated()) {
+			return false;
+		}
+		for (ThreadPoolExecutor pool : lanes.values()) {
+			if (!pool.isTerminated()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * What is known about the runs of one task
+	 */
+	public static class TaskStats {
+		private final String name;
+		private final String lane;
+		// true from the time the task is handed to its lane until it finishes running
+		private final AtomicBoolean pending = new AtomicBoolean(false);
+		private volatile boolean running = false;
+		private volatile long lastStart = 0;
+		private final LatencyHistogram runTime = new LatencyHistogram();
+		private final LatencyHistogram lag = new LatencyHistogram();
+		private final LongAdder skipped = new LongAdder();
+		private final LongAdder rejected = new LongAdder();
+
+		TaskStats(String name, String lane) {
+			this.name = name;
+			this.lane = lane;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getLane() {
+			return lane;
+		}
+
+		/**
+		 * @return True if the task is running right now
+		 */
+		public boolean isRunning() {
+			return running;
+		}
+
+		/**
+		 * @return How long each run of the task took
+		 */
+		public LatencyHistogram getRunTime() {
+			return runTime;
+		}
+
+		/**
+		 * @return How long each run of the task waited in its lane before starting
+		 */
+		public LatencyHistogram getLag() {
+			return lag;
+		}
+
+		/**
+		 * @return How many times the task was due while it was still queued or running
+		 */
+		public long getSkipped() {
+			return skipped.sum();
+		}
+
+		/**
+		 * @return How many times the task was due while the queue of its lane was full
+		 */
+		public long getRejected() {
+			return rejected.sum();
+		}
+
+		JsonObject toJson() {
+			JsonObject json = new JsonObject();
+			json.addProperty("name", name);
+			json.addProperty("lane", lane);
+			json.addProperty("running", running);
+			json.addProperty("lastStart", lastStart);
+			json.addProperty("skipped", getSkipped());
+			json.addProperty("rejected", getRejected());
+			json.add("runTime", runTime.toJson());
+			json.add("lag", lag.toJson());
+			return json;
+		}
+	}
+}
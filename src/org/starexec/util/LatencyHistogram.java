@@ -0,0 +1,155 @@
+package org.starexec.util;
+
+import com.google.gson.JsonObject;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations that many threads can record into without locking. Durations are kept in microseconds,
+ * in buckets that split every power of two into four, so percentiles are accurate to within 25%.
+ */
+public class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 2;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	// enough buckets for durations of up to 2^42 microseconds, about 50 days
+	private static final int BUCKETS = SUB_BUCKETS * 42;
+
+	private final LongAdder[] counts = new LongAdder[BUCKETS];
+	private final LongAdder count = new LongAdder();
+	private final LongAdder totalMicros = new LongAdder();
+	private final LongAccumulator maxMicros = new LongAccumulator(Long::max, 0);
+
+	public LatencyHistogram() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Gets the bucket a duration falls in
+	 *
+	 * @param micros A duration in microseconds
+	 * @return The index of the bucket
+	 */
+	static int bucketOf(long micros) {
+		if (micros < SUB_BUCKETS) {
+			return (int) Math.max(micros, 0);
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		int sub = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return Math.min(SUB_BUCKETS * (exponent - SUB_BUCKET_BITS + 1) + sub, BUCKETS - 1);
+	}
+
+	/**
+	 * Gets the longest duration that falls in a bucket
+	 *
+	 * @param bucket The index of the bucket
+	 * @return The largest duration, in microseconds, that bucketOf maps to the bucket
+	 */
+	static long upperBoundOf(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		int sub = bucket % SUB_BUCKETS;
+		return ((long) (SUB_BUCKETS + sub + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+
+	/**
+	 * Records a duration
+	 *
+	 * @param nanos The duration in nanoseconds, as measured with System.nanoTime
+	 */
+	public void record(long nanos) {
+		long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+		counts[bucketOf(micros)].increment();
+		count.increment();
+		totalMicros.add(micros);
+		maxMicros.accumulate(micros);
+	}
+
+	/**
+	 * @return The number of durations recorded
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * Estimates a percentile of the recorded durations. Since recording does not lock, durations recorded while this
+	 * runs may or may not be counted.
+	 *
+	 * @param percentile The percentile, from 0 to 100
+	 * @return An upper bound on the percentile in microseconds, or 0 if nothing has been recorded
+	 */
+	public long getPercentileMicros(double percentile) {
+		long[] snapshot = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = counts[i].sum();
+			total += snapshot[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(total * percentile / 100.0);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= rank && snapshot[i] > 0) {
+				return Math.min(upperBoundOf(i), maxMicros.get());
+			}
+		}
+		return maxMicros.get();
+	}
+
+	/**
+	 * @return The mean of the recorded durations in microseconds, or 0 if nothing has been recorded
+	 */
+	public double getMeanMicros() {
+		long n = count.sum();
+		return n == 0 ? 0 : (double) totalMicros.sum() / n;
+	}
+
+	/**
+	 * @return The sum of the recorded durations in microseconds
+	 */
+	public long getTotalMicros() {
+		return totalMicros.sum();
+	}
+
+	/**
+	 * @return The longest recorded duration in microseconds
+	 */
+	public long getMaxMicros() {
+		return maxMicros.get();
+	}
+
+	/**
+	 * Forgets every recorded duration. Durations recorded while this runs may or may not be forgotten.
+	 */
+	public void reset() {
+		for (LongAdder c : counts) {
+			c.reset();
+		}
+		count.reset();
+		totalMicros.reset();
+		maxMicros.reset();
+	}
+
+	/**
+	 * @return The count, mean, 50th, 95th and 99th percentiles and maximum, with durations in microseconds
+	 */
+	public JsonObject toJson() {
+		JsonObject json = new JsonObject();
+		json.addProperty("count", getCount());
+		json.addProperty("meanMicros", Math.round(getMeanMicros()));
+		json.addProperty("p50Micros", getPercentileMicros(50));
+		json.addProperty("p95Micros", getPercentileMicros(95));
+		json.addProperty("p99Micros", getPercentileMicros(99));
+		json.addProperty("maxMicros", getMaxMicros());
+		return json;
+	}
+}
@@ -0,0 +1,105 @@
+package org.starexec.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Remembers where a page of a DataTables table was in the table, so that the page right after it or right before it
+ * can be gotten by seeking from its last or first record instead of by skipping over every record in front of it.
+ * Cursors are handed to the client as opaque strings and come back with the request for the next page.
+ *
+ * @see PaginationQueryBuilder#seekAfter
+ */
+public class PageCursor {
+	private static final String SEPARATOR = ".";
+
+	private final String scope;
+	private final int start;
+	private final int size;
+	private final String firstKey;
+	private final int firstId;
+	private final String lastKey;
+	private final int lastId;
+
+	/**
+	 * @param scope Identifies the table, sort order, and search query the page belongs to
+	 * @param start The index of the first record of the page
+	 * @param size The number of records on the page
+	 * @param firstKey The sort key of the first record of the page
+	 * @param firstId The ID of the first record of the page
+	 * @param lastKey The sort key of the last record of the page
+	 * @param lastId The ID of the last record of the page
+	 */
+	public PageCursor(String scope, int start, int size, String firstKey, int firstId, String lastKey, int lastId) {
+		this.scope = scope;
+		this.start = start;
+		this.size = size;
+		this.firstKey = firstKey;
+		this.firstId = firstId;
+		this.lastKey = lastKey;
+		this.lastId = lastId;
+	}
+
+	/**
+	 * Points the query at the requested page by seeking from this page, if the requested page is right after or right
+	 * before this one. Otherwise, the query is left alone.
+	 *
+	 * @param builder A builder for the query of the requested page
+	 * @param query The requested page
+	 * @param scope The scope of the requested page. Nothing is done if it is not the scope of this page
+	 * @return True if the query will seek from this page
+	 */
+	public boolean seek(PaginationQueryBuilder builder, DataTablesQuery query, String scope) {
+		if (!builder.canSeek() || !this.scope.equals(scope) || size == 0) {
+			return false;
+		}
+		if (query.getStartingRecord() == start + size) {
+			builder.seekAfter(lastKey, lastId);
+			return true;
+		}
+		if (query.getStartingRecord() + query.getNumRecords() == start) {
+			builder.seekBefore(firstKey, firstId);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return This cursor as an opaque string that is safe to put in a URL
+	 */
+	public String encode() {
+		return String.join(SEPARATOR, encode(scope), String.valueOf(start), String.valueOf(size), encode(firstKey),
+		                   String.valueOf(firstId), encode(lastKey), String.valueOf(lastId));
+	}
+
+	/**
+	 * @param cursor A string from encode
+	 * @return The cursor, or null if the string is not a valid cursor
+	 */
+	public static PageCursor decode(String cursor) {
+		if (Util.isNullOrEmpty(cursor)) {
+			return null;
+		}
+		String[] parts = cursor.split("\\" + SEPARATOR, -1);
+		if (parts.length != 7) {
+			return null;
+		}
+		try {
+			return new PageCursor(decodePart(parts[0]), Integer.parseInt(parts[1]), Integer.parseInt(parts[2]),
+			                      decodePart(parts[3]), Integer.parseInt(parts[4]), decodePart(parts[5]),
+			                      Integer.parseInt(parts[6])
+			);
+		} catch (IllegalArgumentException e) {
+			// covers both bad numbers and bad base 64
+			return null;
+		}
+	}
+
+	private static String encode(String s) {
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(s.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static String decodePart(String s) {
+		return new String(Base64.getUrlDecoder().decode(s), StandardCharsets.UTF_8);
+	}
+}
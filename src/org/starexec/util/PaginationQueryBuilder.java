@@ -1,21 +1,28 @@
 package org.starexec.util;
 
+import java.sql.SQLException;
+
 /**
  * This is a simple class that is used to build up pagination queries, which for us
  * are queries that have an order by, a starting record, and a number of records
- * 
+ *
  * Note that the insertion of an order column, which is a string, is NOT SAFE against SQL injection!
  * This class is designed to be used ONLY for queries where such strings are provided
  * by Starexec, NOT by users. Other columns are numeric, and so are safe against SQL injection.
+ *
+ * Queries that have a unique ID column can also be paged by seeking: instead of skipping over
+ * every record before the page with an offset, the query starts right after (or right before)
+ * the sort key and ID of a record that is already known. This costs the same no matter how deep
+ * into the table the page is, provided there is an index on the order column.
  * @author Eric
  *
  */
 
 public class PaginationQueryBuilder {
 
-	
+
 	private String getOrderDirectionString() {
-		if (query.isSortASC()) {
+		if (query.isSortASC() != reversed) {
 			return "ASC";
 		}
 		return "DESC";
@@ -23,20 +30,127 @@ public class PaginationQueryBuilder {
 	DataTablesQuery query = null;
 	final String orderColumn;
 	/**
-	 * This is the SQL query without any order by statement or limit statement, and also without a 
+	 * The column that breaks ties between records with the same value in the order column. Null if
+	 * the query cannot be paged by seeking.
+	 */
+	final String idColumn;
+	/**
+	 * This is the SQL query without any order by statement or limit statement, and also without a
 	 * closing semicolon
 	 */
 	private String baseSQL = null;
-	
+
+	// the record to seek from, if any. The page starts right after it in the order of the query,
+	// or right before it if the query is reversed
+	private String seekKey = null;
+	private int seekId = -1;
+	private boolean reversed = false;
+	private int offset;
+	private int limit;
+
 	public PaginationQueryBuilder(String sql, String orderColumn, DataTablesQuery query) {
+		this(sql, orderColumn, null, query);
+	}
+
+	/**
+	 * @param sql The query without an order by or limit statement. It must end in a WHERE clause if the query is
+	 * going to seek, since the seek condition is appended to it with an AND
+	 * @param orderColumn The column to order by. Must never be NULL if the query is going to seek
+	 * @param idColumn A unique column that breaks ties in the order column
+	 * @param query The page to get
+	 */
+	public PaginationQueryBuilder(String sql, String orderColumn, String idColumn, DataTablesQuery query) {
 		baseSQL = sql;
 		this.query=query;
 		this.orderColumn=orderColumn;
+		this.idColumn=idColumn;
+		this.offset=query.getStartingRecord();
+		this.limit=query.getNumRecords();
+	}
+
+	/**
+	 * Gets the page that starts right after the given record instead of skipping over the records before the page
+	 *
+	 * @param key The value of the order column of the last record before the page
+	 * @param id The ID of the last record before the page
+	 */
+	public void seekAfter(String key, int id) {
+		seekKey = key;
+		seekId = id;
+		reversed = false;
+		offset = 0;
+	}
+
+	/**
+	 * Gets the page that ends right before the given record. The records are returned in reverse order.
+	 *
+	 * @param key The value of the order column of the first record after the page
+	 * @param id The ID of the first record after the page
+	 */
+	public void seekBefore(String key, int id) {
+		seekKey = key;
+		seekId = id;
+		reversed = true;
+		offset = 0;
 	}
-	
-	public String getSQL() {
 
-		return baseSQL + "\n" + "ORDER BY " + orderColumn + " " + getOrderDirectionString() + "\n" + "LIMIT " +
-		            query.getStartingRecord() + ", " + query.getNumRecords() + ";";
+	/**
+	 * Counts the page from the end of the table, which skips over fewer records for pages in the second half of it.
+	 * The records are returned in reverse order. Does nothing if the page is in the first half of the table.
+	 *
+	 * @param totalRecords The number of records in the table, including those not on the page
+	 */
+	public void countFromEnd(int totalRecords) {
+		int start = query.getStartingRecord();
+		if (start <= totalRecords / 2 || start >= totalRecords) {
+			return;
+		}
+		reversed = true;
+		limit = Math.min(query.getNumRecords(), totalRecords - start);
+		offset = totalRecords - start - limit;
+	}
+
+	/**
+	 * @return True if the records returned by the query are in the reverse of the requested order
+	 */
+	public boolean isReversed() {
+		return reversed;
+	}
+
+	/**
+	 * @return True if the query can be paged by seeking
+	 */
+	public boolean canSeek() {
+		return idColumn != null;
+	}
+
+	/**
+	 * Sets the parameters of the seek condition, if there is one
+	 *
+	 * @param statement A statement prepared with the SQL from getSQL
+	 * @throws SQLException if the parameters cannot be set
+	 */
+	public void setParameters(NamedParameterStatement statement) throws SQLException {
+		if (seekKey != null) {
+			statement.setString("seekKey", seekKey);
+			statement.setInt("seekId", seekId);
+		}
+	}
+
+	public String getSQL() {
+		StringBuilder sql = new StringBuilder(baseSQL);
+		String direction = getOrderDirectionString();
+		if (seekKey != null) {
+			String comparison = direction.equals("ASC") ? ">" : "<";
+			sql.append("\nAND (").append(orderColumn).append(" ").append(comparison).append(" :seekKey OR (")
+			   .append(orderColumn).append(" = :seekKey AND ").append(idColumn).append(" ").append(comparison)
+			   .append(" :seekId))");
+		}
+		sql.append("\nORDER BY ").append(orderColumn).append(" ").append(direction);
+		if (idColumn != null) {
+			sql.append(", ").append(idColumn).append(" ").append(direction);
+		}
+		sql.append("\nLIMIT ").append(offset).append(", ").append(limit).append(";");
+		return sql.toString();
 	}
 }
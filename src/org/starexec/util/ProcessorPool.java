@@ -0,0 +1,235 @@
+package org.starexec.util;
+
+import org.apache.commons.io.FileUtils;
+import org.starexec.constants.R;
+import org.starexec.logger.StarLogger;
+import org.starexec.test.TestUtil;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a processor over many files on a fixed number of slots. Every slot is one long running shell, started as the
+ * sandbox user in a sandbox of its own that the processor is copied into once, and the files are handed to it one at
+ * a time on its standard input. Running the processor through Util.executeSandboxCommand instead costs two sandbox
+ * copies, a sudo and the start of a new process for every single file.
+ *
+ * For every file, the combined standard output and error of the processor is returned, as executeSandboxCommand would
+ * return it. Slots whose shell dies are started again the next time they are used.
+ *
+ * No more than R.BENCHMARK_PROCESSOR_SLOTS shells run at once across every pool, so uploads that are processed at the
+ * same time share the cores of the head node rather than each starting a shell per core. A pool takes the shells of
+ * all of its slots at once when its first file is processed and gives them back when it is closed, so two pools can
+ * never each hold some shells while waiting for the rest.
+ */
+public class ProcessorPool implements Closeable {
+	private static final StarLogger log = StarLogger.getLogger(ProcessorPool.class);
+
+	// runs the processor on every path read from standard input, and ends the output of every run with the marker
+	// given as the first argument. The processor gets no standard input so it can not eat the paths that follow, and
+	// is killed once it has run for the number of seconds given as the second argument, so a processor that hangs
+	// on one file does not hold its slot, and the shells of the pool, forever
+	private static final String DRIVER =
+			"while IFS= read -r f; do timeout -k 5 \"$2\" ./" + R.PROCESSOR_RUN_SCRIPT + " \"$f\" < /dev/null 2>&1; " +
+			"printf '\\n%s\\n' \"$1\"; done";
+
+	// shells that may run at once across every pool. Fair, so a pool waiting for many shells is not passed over by
+	// pools that need fewer
+	private static final Semaphore shells = new Semaphore(R.BENCHMARK_PROCESSOR_SLOTS, true);
+
+	private final File processor;
+	private final int timeLimit;
+	private final List<Slot> slots = new ArrayList<>();
+	private final BlockingQueue<Slot> idle;
+	private final AtomicInteger files = new AtomicInteger();
+	// whether this pool holds the shells of its slots
+	private boolean holdsShells = false;
+
+	/**
+	 * @param processor The directory of the processor
+	 * @param slots How many files may be processed at once
+	 * @param timeLimit The most seconds the processor may run on one file. Its output so far is returned when it is
+	 * stopped
+	 */
+	public ProcessorPool(File processor, int slots, int timeLimit) {
+		this.processor = processor;
+		this.timeLimit = timeLimit;
+		// a pool never needs more shells than there are, or it could never get them
+		int count = Math.max(1, Math.min(slots, R.BENCHMARK_PROCESSOR_SLOTS));
+		this.idle = new ArrayBlockingQueue<>(count);
+		for (int i = 0; i < count; i++) {
+			Slot slot = new Slot();
+			this.slots.add(slot);
+			this.idle.add(slot);
+		}
+	}
+
+	/**
+	 * @return How many files may be processed at once
+	 */
+	public int getSlots() {
+		return slots.size();
+	}
+
+	/**
+	 * Runs the processor on a file, waiting for a slot to be free first. Safe to call from many threads at once.
+	 *
+	 * @param file The file to process. The processor gets a copy of it
+	 * @return The combined standard output and error of the processor
+	 * @throws IOException if the file could not be copied or the processor could not be run
+	 * @throws InterruptedException if interrupted while waiting for the shells or a slot
+	 */
+	public String process(File file) throws IOException, InterruptedException {
+		takeShells();
+		Slot slot = idle.take();
+		try {
+			return slot.process(file, files.incrementAndGet());
+		} finally {
+			idle.add(slot);
+		}
+	}
+
+	/**
+	 * Takes the shells of every slot at once, the first time this pool is used
+	 *
+	 * @throws InterruptedException if interrupted while waiting for the shells
+	 */
+	private synchronized void takeShells() throws InterruptedException {
+		if (!holdsShells) {
+			shells.acquire(slots.size());
+			holdsShells = true;
+		}
+	}
+
+	/**
+	 * Reads the output of one run of the processor from the driver: every line up to the marker the driver prints
+	 * after it. The driver puts a line break before the marker, which is not part of the output.
+	 *
+	 * @param out The output of the driver
+	 * @param marker The marker the driver ends every run with
+	 * @return The output of the processor
+	 * @throws IOException if the output ends before the marker, such as when the shell dies
+	 */
+	public static String readOutput(BufferedReader out, String marker) throws IOException {
+		StringBuilder result = new StringBuilder();
+		String line;
+		while ((line = out.readLine()) != null) {
+			if (line.equals(marker)) {
+				int end = result.length() - System.lineSeparator().length();
+				return end >= 0 ? result.substring(0, end) : "";
+			}
+			result.append(line).append(System.lineSeparator());
+		}
+		throw new IOException("The output ended before the processor finished. Output: " + result);
+	}
+
+	/**
+	 * Stops every slot and deletes their sandboxes, once the files the slots are processing right now are done
+	 */
+	@Override
+	public void close() {
+		for (Slot slot : slots) {
+			slot.stop();
+		}
+		synchronized (this) {
+			if (holdsShells) {
+				holdsShells = false;
+				shells.release(slots.size());
+			}
+		}
+	}
+
+	private class Slot {
+		private File sandbox = null;
+		private File inbox = null;
+		private String marker = null;
+		private Process shell = null;
+		private BufferedWriter in = null;
+		private BufferedReader out = null;
+
+		private void start() throws IOException {
+			stop();
+			sandbox = Util.copyFilesToNewSandbox(Collections.singletonList(processor));
+			// files are copied here by us and read by the sandbox user
+			inbox = Util.getRandomSandboxDirectory();
+			Util.sandboxChmodDirectoryDirect(inbox);
+			marker = TestUtil.getRandomAlphaString(32);
+
+			ProcessBuilder builder = new ProcessBuilder(
+					"sudo", "-u", R.SANDBOX_USER_ONE, "bash", "-c", DRIVER, "processor", marker,
+					String.valueOf(timeLimit));
+			builder.directory(new File(sandbox, processor.getName()));
+			builder.redirectErrorStream(true);
+			shell = builder.start();
+			in = new BufferedWriter(new OutputStreamWriter(shell.getOutputStream(), StandardCharsets.UTF_8));
+			out = new BufferedReader(new InputStreamReader(shell.getInputStream(), StandardCharsets.UTF_8));
+			log.debug("start", "Started a slot for " + processor + " in " + sandbox);
+		}
+
+		private synchronized String process(File file, int number) throws IOException {
+			if (shell == null || !shell.isAlive()) {
+				start();
+			}
+			// a directory per file keeps the name of the file, which some processors look at
+			File dir = new File(inbox, String.valueOf(number));
+			try {
+				if (!dir.mkdir()) {
+					throw new IOException("Could not make " + dir);
+				}
+				File copy = new File(dir, file.getName().replace('\n', '_'));
+				Files.copy(file.toPath(), copy.toPath());
+				return run(copy);
+			} finally {
+				FileUtils.deleteQuietly(dir);
+			}
+		}
+
+		private String run(File file) throws IOException {
+			try {
+				in.write(file.getAbsolutePath());
+				in.newLine();
+				in.flush();
+				return readOutput(out, marker);
+			} catch (IOException e) {
+				stop();
+				throw new IOException("The processor slot stopped while processing " + file + ": " + e.getMessage(), e);
+			}
+		}
+
+		private synchronized void stop() {
+			if (shell != null) {
+				try {
+					in.close();
+					if (!shell.waitFor(5, TimeUnit.SECONDS)) {
+						shell.destroyForcibly();
+					}
+				} catch (IOException e) {
+					shell.destroyForcibly();
+				} catch (InterruptedException e) {
+					shell.destroyForcibly();
+					Thread.currentThread().interrupt();
+				}
+				shell = null;
+			}
+			FileUtils.deleteQuietly(sandbox);
+			FileUtils.deleteQuietly(inbox);
+			sandbox = null;
+			inbox = null;
+		}
+	}
+}
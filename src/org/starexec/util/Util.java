@@ -42,7 +42,13 @@ import static java.util.Objects.nonNull;
  * @author Eric and Aguo2
  */
 public class Util {
+	// not bounded: the work run here is uploads and deletes started by requests, which can each take minutes. Queueing
+	// them behind each other would hold up every upload behind the slowest, and running them on the requesting thread
+	// would tie up Tomcat. The requests that start the work bound it, and periodic tasks run in their own lanes
 	protected static final ExecutorService threadPool = Executors.newCachedThreadPool();
+	// every stream being drained belongs to a running process, which bounds these threads. Draining must never wait
+	// in a queue, since the process blocks once the pipe it writes to is full
+	private static final ExecutorService streamDrainers = Executors.newCachedThreadPool();
 	private static final StarLogger log = StarLogger.getLogger(Util.class);
 	private static String docRoot = null;
 	private static String docRootUrl = null;
@@ -153,6 +159,7 @@ public class Util {
 	 */
 	public static void shutdownThreadPool() throws Exception {
 		threadPool.shutdown();
+		streamDrainers.shutdown();
 		threadPool.awaitTermination(2, TimeUnit.SECONDS);
 	}
 
@@ -490,7 +497,7 @@ public class Util {
 		   and prevent the other from making progress as well (since
 		   the process cannot advance in that case). */
 		final StringBuffer message = new StringBuffer();
-		threadPool.execute(() -> {
+		streamDrainers.execute(() -> {
 			try {
 				//if we got an error from stderr, we throw our custom exception
 				if (drainInputStream(message, p.getErrorStream())) {